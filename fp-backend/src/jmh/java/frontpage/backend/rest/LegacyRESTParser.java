@@ -0,0 +1,99 @@
+package frontpage.backend.rest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Split based response parser RESTReport used before the streaming
+ * parser, kept as the baseline for benchmarks.</p>
+ */
+@SuppressWarnings({"WeakerAccess", "unchecked"})
+final class LegacyRESTParser {
+    /**
+     * parses response data into an array of maps
+     * @param body raw data
+     * @return parsed response
+     */
+    static Map<String, String>[] parse(final String body) {
+        int count = 0;
+        if (body.contains("variablepayload")) {
+            for (String s : body.split("\r\n")) {
+                if (s.contains("variablepayload")) {
+                    String[] kv = s.split("=");
+                    count = Integer.parseInt(kv[1]);
+                    break;
+                }
+            }
+        }
+        final Map<String, String>[] maps =
+                (Map<String, String>[]) new HashMap[count + 1];
+        addKVPairsToMaps(maps, body, count > 0);
+        return maps;
+    }
+
+    /**
+     * loads raw data into maps
+     * @param maps maps
+     * @param raw raw data
+     * @param dyn if the data has dynamic length
+     */
+    private static void addKVPairsToMaps(final Map<String, String>[] maps,
+                                         final String raw,
+                                         final boolean dyn) {
+        if (!dyn) {
+            maps[0] = new HashMap<>();
+            addKVPairsToMap(maps[0], raw, false);
+        } else {
+            maps[0] = new HashMap<>();
+            int mapIndex = 1;
+            boolean inDynDataSec = false;
+            for (final String line : raw.split("\r\n")) {
+                if (line.equalsIgnoreCase("--- BEGIN ---")) {
+                    inDynDataSec = true;
+                } else if (line.equalsIgnoreCase("--- END ---")) {
+                    inDynDataSec = false;
+                } else if (inDynDataSec) {
+                    maps[mapIndex] = new HashMap<>();
+                    addKVPairsToMap(maps[mapIndex++], line, true);
+                } else {
+                    addKVPairsToMap(maps[0], line, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * loads raw data into a map
+     * @param map map
+     * @param raw raw data
+     * @param dyn if the data is part of a dynamic entry
+     */
+    private static void addKVPairsToMap(final Map<String, String> map,
+                                        final String raw,
+                                        final boolean dyn) {
+        if (!dyn) {
+            for (final String line : raw.split("\r\n")) {
+                final String[] kvPair = line.split("=");
+                if (kvPair.length >= 2) {
+                    String value = "";
+                    for (int i = 1; i < kvPair.length; i++) {
+                        value += kvPair[i];
+                    }
+                    map.put(kvPair[0], value);
+                } else if (kvPair.length == 1) {
+                    map.put(kvPair[0], "");
+                }
+            }
+        } else {
+            String[] indDataPair = raw.split(":", 2);
+            map.put("index", indDataPair[0]);
+            addKVPairsToMap(map, indDataPair[1].replace("|", "\r\n"), false);
+        }
+    }
+
+    /**
+     * utility constructor
+     */
+    private LegacyRESTParser() { }
+}
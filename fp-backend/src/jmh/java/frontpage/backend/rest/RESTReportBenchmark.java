@@ -0,0 +1,109 @@
+package frontpage.backend.rest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author willstuckey
+ * <p>Throughput of response parsing on large report listings.</p>
+ *
+ * Run with gradle :fp-backend:jmh. The legacy benchmark is the split
+ * based parser RESTReport used to have.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RESTReportBenchmark {
+    /**
+     * number of rows in the payload
+     */
+    @Param({"100000"})
+    private int rows;
+
+    /**
+     * payload
+     */
+    private String body;
+
+    /**
+     * builds a source report listing as report.php formats it, with
+     * every column report.php sends, uniqid style report ids and values
+     * of the lengths the app writes
+     */
+    @Setup
+    public void setup() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("status=success\r\n");
+        sb.append("message=fetched report\r\n");
+        sb.append("variablepayload=").append(rows).append("\r\n");
+        sb.append("--- BEGIN ---\r\n");
+        for (int i = 0; i < rows; i++) {
+            final int user = i % 97;
+            sb.append(i + 1).append(':')
+                    .append("username=user").append(user)
+                    .append("|id=user").append(user).append("@example.com")
+                    .append("|reportid=")
+                    .append(Long.toHexString(0x582a1c3b4d5eL + i))
+                    .append('.').append(10000000 + i)
+                    .append("|reportdt=2016-11-")
+                    .append(String.format("%02d", 1 + (i % 28)))
+                    .append("T12:").append(String.format("%02d", i % 60))
+                    .append("|location=").append(i % 1000)
+                    .append(" North Ave NW, Atlanta, GA 30332")
+                    .append("|type=BOTTLED|cond=POTABLE")
+                    .append("|name=Fountain ").append(i % 1000)
+                    .append("|description=Drinking fountain by the main ")
+                    .append("entrance, checked on the weekly walk")
+                    .append("\r\n");
+        }
+        sb.append("--- END ---\r\n");
+        body = sb.toString();
+    }
+
+    /**
+     * split based parser
+     * @return parsed response
+     */
+    @Benchmark
+    public Map<String, String>[] legacy() {
+        return LegacyRESTParser.parse(body);
+    }
+
+    /**
+     * streaming parser over a String
+     * @return parsed response
+     */
+    @Benchmark
+    public Map<String, String>[] streamingString() {
+        return new RESTReport(200, "OK", body).getResponseValues();
+    }
+
+    /**
+     * streaming parser over a Reader
+     * @return parsed response
+     * @throws IOException never
+     */
+    @Benchmark
+    public Map<String, String>[] streamingReader() throws IOException {
+        return new RESTReport(200, "OK", new StringReader(body))
+                .getResponseValues();
+    }
+}
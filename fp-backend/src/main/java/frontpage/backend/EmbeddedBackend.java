@@ -0,0 +1,86 @@
+package frontpage.backend;
+
+import frontpage.backend.profile.ProfileManagerFactory;
+import frontpage.backend.report.ReportManagerFactory;
+import frontpage.backend.user.UserManagerFactory;
+import frontpage.bind.Backend;
+import frontpage.bind.report.PurityReportManager;
+import frontpage.bind.report.SourceReportManager;
+import frontpage.bind.user.UserManager;
+import frontpage.bind.errorhandling.ProfileManagementException;
+import frontpage.bind.profile.ProfileManager;
+import org.apache.log4j.Logger;
+
+/**
+ * @author willstuckey
+ * <p>
+ * This class represents the api provided for an embedded database
+ * backend.
+ *
+ * Everything is kept in the SQL database named by the embedded-db
+ * property, which runs in process, so the app works without the server
+ * against as many reports as the disk holds.
+ * </p>
+ */
+@SuppressWarnings("unused")
+public class EmbeddedBackend implements Backend {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = Logger.getLogger(EmbeddedBackend.class);
+    }
+
+    /**
+     * initializes the embedded backend
+     */
+    public EmbeddedBackend() {
+        try {
+            LOGGER.info("initializing embedded database backend");
+            UserManagerFactory.createInstance("embedded");
+            ProfileManagerFactory.createInstance("embedded");
+            ReportManagerFactory.createInstance("embedded");
+        } catch (UserManagerFactory.NoSuchUserAuthenticatorException
+                | ProfileManagementException e) {
+            LOGGER.fatal("could not provide backend", e);
+        }
+    }
+
+    /**
+     * gets embedded user manager
+     * @return manager
+     */
+    @Override
+    public UserManager getUserManager() {
+        return UserManagerFactory.getInstance();
+    }
+
+    /**
+     * gets embedded profile manager
+     * @return manager
+     */
+    @Override
+    public ProfileManager getProfileManager() {
+        return ProfileManagerFactory.getInstance();
+    }
+
+    /**
+     * gets embedded source report manager
+     * @return manager
+     */
+    @Override
+    public SourceReportManager getSourceReportManager() {
+        return ReportManagerFactory.getSourceInstance();
+    }
+
+    /**
+     * gets embedded purity report manager
+     * @return manager
+     */
+    @Override
+    public PurityReportManager getPurityReportManager() {
+        return ReportManagerFactory.getPurityInstance();
+    }
+}
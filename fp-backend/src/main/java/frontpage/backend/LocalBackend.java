@@ -2,9 +2,14 @@ package frontpage.backend;
 
 import frontpage.backend.profile.LocalProfileManager;
 import frontpage.backend.profile.ProfileManagerFactory;
+import frontpage.backend.report.LocalPurityReportManager;
+import frontpage.backend.report.LocalSourceReportManager;
+import frontpage.backend.report.ReportManagerFactory;
+import frontpage.backend.store.LogStore;
 import frontpage.backend.user.LocalUserManager;
 import frontpage.backend.user.UserManagerFactory;
 import frontpage.bind.Backend;
+import frontpage.bind.GlobalProperties;
 import frontpage.bind.report.PurityReportManager;
 import frontpage.bind.report.SourceReportManager;
 import frontpage.bind.user.UserManager;
@@ -12,12 +17,17 @@ import frontpage.bind.errorhandling.ProfileManagementException;
 import frontpage.bind.profile.ProfileManager;
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 /**
  * @author willstuckey
  * <p>
  * This class represents the api provided for a local backend.
  *
- * This class under partial implementation.
+ * Everything is held in memory and persisted to the log store named by
+ * the local-store property, which is replayed on startup. An empty
+ * name keeps everything in memory only.
  * </p>
  */
 @SuppressWarnings("unused")
@@ -36,6 +46,11 @@ public class LocalBackend implements Backend {
      */
     private UserManager userManager;
 
+    /**
+     * store changes are persisted to, null if in memory only
+     */
+    private LogStore store;
+
     /**
      * initializes the local backend
      */
@@ -44,10 +59,67 @@ public class LocalBackend implements Backend {
             LOGGER.info("initializing local user authenticator");
             UserManagerFactory.createInstance("local");
             ProfileManagerFactory.createInstance("local");
+            ReportManagerFactory.createInstance("local");
         } catch (UserManagerFactory.NoSuchUserAuthenticatorException
                 | ProfileManagementException e) {
             LOGGER.fatal("could not provide backend", e);
+            return;
+        }
+        openStore();
+    }
+
+    /**
+     * attaches the managers to the local store and replays it. If the
+     * store cannot be opened the backend carries on in memory.
+     */
+    private void openStore() {
+        final String file = GlobalProperties.getProperties().getProperty(
+                "local-store", Paths.get(System.getProperty("user.home"),
+                        ".frontpage", "local.log").toString());
+        if (file.isEmpty()) {
+            LOGGER.info("local store disabled, changes will not be saved");
+            return;
+        }
+
+        final LocalUserManager users =
+                (LocalUserManager) UserManagerFactory.getInstance();
+        final LocalProfileManager profiles =
+                (LocalProfileManager) ProfileManagerFactory.getInstance();
+        final LocalSourceReportManager sources = (LocalSourceReportManager)
+                ReportManagerFactory.getSourceInstance();
+        final LocalPurityReportManager purities = (LocalPurityReportManager)
+                ReportManagerFactory.getPurityInstance();
+        LocalProfileManager.setLum(users);
+
+        // users first, profiles replay onto existing users
+        final LogStore log = new LogStore(Paths.get(file));
+        users.attach(log);
+        profiles.attach(log);
+        sources.attach(log);
+        purities.attach(log);
+        try {
+            log.open();
+        } catch (IOException e) {
+            LOGGER.error("could not open local store " + file
+                    + ", changes will not be saved", e);
+            users.attach(null);
+            profiles.attach(null);
+            sources.attach(null);
+            purities.attach(null);
+            return;
         }
+
+        store = log;
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(log::close, "local-store-close"));
+    }
+
+    /**
+     * gets the store changes are persisted to
+     * @return store, null if in memory only
+     */
+    public LogStore getStore() {
+        return store;
     }
 
     /**
@@ -76,7 +148,9 @@ public class LocalBackend implements Backend {
      */
     @Override
     public SourceReportManager getSourceReportManager() {
-        return null;
+        LocalSourceReportManager.setLum(
+                (LocalUserManager) UserManagerFactory.getInstance());
+        return ReportManagerFactory.getSourceInstance();
     }
 
     /**
@@ -85,6 +159,8 @@ public class LocalBackend implements Backend {
      */
     @Override
     public PurityReportManager getPurityReportManager() {
-        return null;
+        LocalPurityReportManager.setLum(
+                (LocalUserManager) UserManagerFactory.getInstance());
+        return ReportManagerFactory.getPurityInstance();
     }
 }
@@ -0,0 +1,128 @@
+package frontpage.backend.profile;
+
+import frontpage.backend.store.EmbeddedDatabase;
+import frontpage.bind.errorhandling.ProfileManagementException;
+import frontpage.bind.profile.ProfileManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Implementation of backend Profile Manager on the embedded
+ * database.</p>
+ */
+@SuppressWarnings({"FeatureEnvy", "ChainedMethodCall", "LawOfDemeter"})
+public class EmbeddedProfileManager implements ProfileManager {
+    /**
+     * database
+     */
+    private final EmbeddedDatabase db;
+
+    /**
+     * creates a profile manager on the shared embedded database
+     * @throws SQLException if the database could not be opened
+     */
+    public EmbeddedProfileManager() throws SQLException {
+        this(EmbeddedDatabase.getInstance());
+    }
+
+    /**
+     * creates a profile manager on a database
+     * @param db database
+     */
+    public EmbeddedProfileManager(final EmbeddedDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * gets the profile of the authenticated user
+     * @param email email
+     * @param tok auth token
+     * @return profile
+     * @throws ProfileManagementException if no user matches or the
+     *                                    database failed
+     */
+    @Override
+    public Map<String, String> getProfile(final String email,
+                                          final String tok)
+        throws ProfileManagementException {
+        final Map<String, String> ret;
+        try {
+            ret = db.execute(c -> {
+                try (ResultSet rs = c.prepare("SELECT p.address, p.city, "
+                        + "p.state, p.zip, p.title FROM profiles p "
+                        + "JOIN users u ON u.id = p.userid "
+                        + "WHERE u.email = ? AND u.tok = ?",
+                        lower(email), tok).executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+
+                    final Map<String, String> profile = new HashMap<>();
+                    profile.put("address", rs.getString("address"));
+                    profile.put("city", rs.getString("city"));
+                    profile.put("state", rs.getString("state"));
+                    profile.put("zip", rs.getString("zip"));
+                    profile.put("title", rs.getString("title"));
+                    return profile;
+                }
+            });
+        } catch (SQLException e) {
+            throw new ProfileManagementException("could not get profile", e);
+        }
+
+        if (ret == null) {
+            throw new ProfileManagementException("no matching user found");
+        }
+        return ret;
+    }
+
+    /**
+     * overwrites the profile of the authenticated user
+     * @param email email
+     * @param tok auth token
+     * @param profiles profile
+     * @return true
+     * @throws ProfileManagementException if no user matches or the
+     *                                    database failed
+     */
+    @Override
+    public boolean setProfile(final String email,
+                              final String tok,
+                              final Map<String, String> profiles)
+        throws ProfileManagementException {
+        final int updated;
+        try {
+            updated = db.execute(c -> c.prepare("UPDATE profiles SET "
+                    + "address = ?, city = ?, state = ?, zip = ?, "
+                    + "title = ? WHERE userid = "
+                    + "(SELECT id FROM users WHERE email = ? AND tok = ?)",
+                    profiles.get("address"), profiles.get("city"),
+                    profiles.get("state"), profiles.get("zip"),
+                    profiles.get("title"), lower(email), tok)
+                    .executeUpdate());
+        } catch (SQLException e) {
+            throw new ProfileManagementException("could not save profile", e);
+        }
+
+        if (updated == 0) {
+            throw new ProfileManagementException("no matching user found");
+        }
+        return true;
+    }
+
+    /**
+     * lowercases an email
+     * @param email email, may be null
+     * @return lowercase email, null if null
+     */
+    private static String lower(final String email) {
+        if (email == null) {
+            return null;
+        }
+        return email.toLowerCase();
+    }
+}
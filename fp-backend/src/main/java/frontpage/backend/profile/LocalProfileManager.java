@@ -1,13 +1,18 @@
 package frontpage.backend.profile;
 
+import frontpage.backend.store.LogStore;
 import frontpage.backend.user.LocalUserManager;
 import frontpage.bind.errorhandling.ProfileManagementException;
 import frontpage.bind.profile.ProfileManager;
 import frontpage.model.user.User;
 import frontpage.model.user.UserProfile;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * @author willstuckey
@@ -20,6 +25,11 @@ public class LocalProfileManager implements ProfileManager {
      */
     private static LocalUserManager lum;
 
+    /**
+     * log profiles are saved to, null if kept in memory only
+     */
+    private LogStore store;
+
     /**
      * default constructor
      */
@@ -34,6 +44,41 @@ public class LocalProfileManager implements ProfileManager {
         LocalProfileManager.lum = lum;
     }
 
+    /**
+     * persists profiles to a log store, which replays them when opened.
+     * Must be attached after the user manager, so users are replayed
+     * before their profiles.
+     * @param store store, null to keep profiles in memory only
+     */
+    public void attach(final LogStore store) {
+        this.store = store;
+        if (store == null) {
+            return;
+        }
+
+        store.register("profile", new LogStore.Table() {
+            @Override
+            public void apply(final String key,
+                              final Map<String, String> values) {
+                for (User u : lum.getUsers()) {
+                    if (u.getEmail().equalsIgnoreCase(key)) {
+                        write(u.getUserProfile(), values);
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            public void snapshot(
+                    final BiConsumer<String, Map<String, String>> out) {
+                for (User u : new ArrayList<>(lum.getUsers())) {
+                    out.accept(u.getEmail().toLowerCase(),
+                            read(u.getUserProfile()));
+                }
+            }
+        });
+    }
+
     /**
      * gets a profile
      * @param email email for auth
@@ -48,14 +93,7 @@ public class LocalProfileManager implements ProfileManager {
         for (User u : lum.getUsers()) {
             if (u.getEmail().equalsIgnoreCase(email)
                     && u.getTok().equals(tok)) {
-                UserProfile up = u.getUserProfile();
-                Map<String, String> ret = new HashMap<>();
-                ret.put("address", up.getAddress());
-                ret.put("city", up.getCity());
-                ret.put("state", up.getState());
-                ret.put("zip", up.getZip());
-                ret.put("title", up.getTitle());
-                return ret;
+                return read(u.getUserProfile());
             }
         }
 
@@ -78,16 +116,55 @@ public class LocalProfileManager implements ProfileManager {
         for (User u : lum.getUsers()) {
             if (u.getEmail().equalsIgnoreCase(email)
                     && u.getTok().equals(tok)) {
-                UserProfile up = u.getUserProfile();
-                up.setAddress(profiles.get("address"));
-                up.setCity(profiles.get("city"));
-                up.setState(profiles.get("state"));
-                up.setZip(profiles.get("zip"));
-                up.setTitle(profiles.get("title"));
+                CompletableFuture<Void> pending = null;
+                synchronized (u) {
+                    UserProfile up = u.getUserProfile();
+                    write(up, profiles);
+                    if (store != null) {
+                        pending = store.append("profile",
+                                u.getEmail().toLowerCase(), read(up));
+                    }
+                }
+
+                try {
+                    LogStore.await(pending);
+                } catch (IOException e) {
+                    throw new ProfileManagementException(
+                            "could not save profile", e);
+                }
                 return true;
             }
         }
 
         throw new ProfileManagementException("no matching user found");
     }
+
+    /**
+     * sets the fields of a profile
+     * @param up profile
+     * @param profiles profile data
+     */
+    private static void write(final UserProfile up,
+                              final Map<String, String> profiles) {
+        up.setAddress(profiles.get("address"));
+        up.setCity(profiles.get("city"));
+        up.setState(profiles.get("state"));
+        up.setZip(profiles.get("zip"));
+        up.setTitle(profiles.get("title"));
+    }
+
+    /**
+     * gets the fields of a profile
+     * @param up profile
+     * @return profile data
+     */
+    private static Map<String, String> read(final UserProfile up) {
+        Map<String, String> ret = new HashMap<>();
+        ret.put("address", up.getAddress());
+        ret.put("city", up.getCity());
+        ret.put("state", up.getState());
+        ret.put("zip", up.getZip());
+        ret.put("title", up.getTitle());
+        return ret;
+    }
 }
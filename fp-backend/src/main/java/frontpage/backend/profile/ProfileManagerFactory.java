@@ -1,8 +1,8 @@
 package frontpage.backend.profile;
 
+import frontpage.bind.Logging;
 import frontpage.bind.errorhandling.ProfileManagementException;
 import frontpage.bind.profile.ProfileManager;
-import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import java.util.HashMap;
@@ -33,7 +33,7 @@ public final class ProfileManagerFactory {
 
     static {
         LOGGER = Logger.getLogger(ProfileManagerFactory.class);
-        LOGGER.setLevel(Level.ALL);
+        Logging.configure(LOGGER);
         USER_AUTHENTICATOR_MAP = new HashMap<>();
         USER_AUTHENTICATOR_MAP.put("remote", RemoteProfileManager.class);
         LOGGER.trace("Added map <\"remote\", "
@@ -41,11 +41,14 @@ public final class ProfileManagerFactory {
         USER_AUTHENTICATOR_MAP.put("local", LocalProfileManager.class);
         LOGGER.trace("Added map <\"local\", "
                 + "frontpage.backend.auth.LocalUserManager>");
+        USER_AUTHENTICATOR_MAP.put("embedded", EmbeddedProfileManager.class);
+        LOGGER.trace("Added map <\"embedded\", "
+                + "frontpage.backend.profile.EmbeddedProfileManager>");
     }
 
     /**
      *
-     * @param type authenticator [remote, local]
+     * @param type authenticator [remote, local, embedded]
      * @throws ProfileManagementException if an invalid
      */
     public static void createInstance(final String type)
@@ -2,11 +2,14 @@ package frontpage.backend.profile;
 
 import frontpage.backend.rest.RESTHandler;
 import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.RequestScheduler;
+import frontpage.backend.rest.RequestScheduler.Priority;
 import frontpage.bind.errorhandling.ProfileManagementException;
 import frontpage.bind.profile.ProfileManager;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author willstuckey
@@ -106,4 +109,36 @@ public class RemoteProfileManager implements ProfileManager {
 
         return true;
     }
+
+    /**
+     * gets a profile on the I/O executor
+     * @see RemoteProfileManager#getProfile(String, String)
+     *
+     * @param email email for auth
+     * @param tok token for auth
+     * @return future completed with the profile data
+     */
+    public CompletableFuture<Map<String, String>> getProfileAsync(
+            final String email,
+            final String tok) {
+        return RequestScheduler.submit(Priority.INTERACTIVE,
+                () -> getProfile(email, tok));
+    }
+
+    /**
+     * sets profile data on the I/O executor
+     * @see RemoteProfileManager#setProfile(String, String, Map)
+     *
+     * @param email email for auth
+     * @param tok token for auth
+     * @param profiles profile data
+     * @return future completed with the success of the update
+     */
+    public CompletableFuture<Boolean> setProfileAsync(
+            final String email,
+            final String tok,
+            final Map<String, String> profiles) {
+        return RequestScheduler.submit(Priority.INTERACTIVE,
+                () -> setProfile(email, tok, profiles));
+    }
 }
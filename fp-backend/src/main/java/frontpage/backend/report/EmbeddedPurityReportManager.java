@@ -0,0 +1,258 @@
+package frontpage.backend.report;
+
+import frontpage.backend.store.EmbeddedDatabase;
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.report.PurityReportManager;
+import frontpage.bind.report.ReportQuery;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @author willstuckey
+ * <p>Implementation of backend Purity Report Manager on the embedded
+ * database.</p>
+ *
+ * Reports have the fields the server returns and are indexed by report
+ * id, submitter, condition and the source report they were taken at,
+ * which is stored as sourcerptid as on the server.
+ */
+@SuppressWarnings({"FeatureEnvy", "ChainedMethodCall", "LawOfDemeter"})
+public class EmbeddedPurityReportManager implements PurityReportManager {
+    /**
+     * reports
+     */
+    private final EmbeddedReportTable table;
+
+    /**
+     * creates a report manager on the shared embedded database
+     * @throws SQLException if the database could not be opened
+     */
+    public EmbeddedPurityReportManager() throws SQLException {
+        this(EmbeddedDatabase.getInstance());
+    }
+
+    /**
+     * creates a report manager on a database
+     * @param db database
+     */
+    public EmbeddedPurityReportManager(final EmbeddedDatabase db) {
+        final Map<String, String> columns = new LinkedHashMap<>();
+        columns.put("userid", "userid");
+        columns.put("sourceid", "sourcerptid");
+        for (final String field : new String[] {EmbeddedReportTable.ID,
+                "reportdt", "location", "cond", "virusppm",
+                "contaminantppm"}) {
+            columns.put(field, field);
+        }
+        table = new EmbeddedReportTable(db, "purityreports", "userid",
+                columns);
+    }
+
+    /**
+     * adds a blank purity report submitted by the authenticated user
+     * @param email email for auth
+     * @param tok token for auth
+     * @return id of blank report
+     * @throws BackendRequestException if authentication fails or the
+     *                                  change could not be saved
+     */
+    @Override
+    public String addPurityReport(final String email,
+                                  final String tok)
+            throws BackendRequestException {
+        return table.insert(email, tok);
+    }
+
+    /**
+     * adds complete purity reports in batches, in one transaction
+     * @param email email for auth
+     * @param tok token for auth
+     * @param reports report data, submitted by the authenticated user
+     *                unless they name a submitter
+     * @return number of reports added
+     * @throws BackendRequestException if authentication fails or the
+     *                                  reports could not be saved
+     */
+    public int addPurityReports(final String email,
+                                final String tok,
+                                final Collection<Map<String, String>> reports)
+            throws BackendRequestException {
+        final List<Map<String, String>> values =
+                new ArrayList<>(reports.size());
+        for (final Map<String, String> report : reports) {
+            values.add(withSourceId(report));
+        }
+        return table.insertAll(email, tok, values);
+    }
+
+    /**
+     * updates a purity report, keeping stored values for properties
+     * that are absent or empty
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id UUID of purity report
+     * @param properties report properties to be written
+     * @return if the report exists
+     * @throws BackendRequestException if authentication fails or the
+     *                                  change could not be saved
+     */
+    @Override
+    public boolean updatePurityReport(final String email,
+                                      final String tok,
+                                      final String id,
+                                      final Map<String, String> properties)
+            throws BackendRequestException {
+        return table.update(email, tok, id, withSourceId(properties));
+    }
+
+    /**
+     * gets a purity report
+     * @param id UUID of purity report
+     * @return report data
+     * @throws BackendRequestException if there is no such report
+     */
+    @Override
+    public Map<String, String> getPurityReport(final String id)
+            throws BackendRequestException {
+        final Map<String, String> ret = table.get(id);
+        if (ret == null) {
+            throw new BackendRequestException("no purity report " + id);
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, String> createPurityReport(final String email,
+                                                  final String tok)
+            throws BackendRequestException {
+        return getPurityReport(addPurityReport(email, tok));
+    }
+
+    /**
+     * gets the most recent purity reports, oldest first
+     * @param num number of reports, 0 or less for all of them
+     * @return report data
+     * @throws BackendRequestException if the database failed
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String>[] getPurityReports(final int num)
+            throws BackendRequestException {
+        final List<Map<String, String>> ret = new ArrayList<>();
+        table.recent(num, ret::add);
+        return (Map<String, String>[]) ret.toArray(new Map[ret.size()]);
+    }
+
+    /**
+     * hands the most recent purity reports to a consumer, oldest first
+     * @param num number of reports, 0 or less for all of them
+     * @param consumer receives report data
+     * @throws BackendRequestException if the database failed
+     */
+    @Override
+    public void getPurityReports(final int num,
+                              final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        table.recent(num, consumer);
+    }
+
+    /**
+     * hands a page of purity reports to a consumer, in insertion order
+     * @param pageSize largest number of reports in the page
+     * @param cursor cursor returned with the previous page, null for the
+     *               first page
+     * @param consumer receives report data
+     * @return cursor of the next page, null after the last page
+     * @throws BackendRequestException if the page size or cursor is
+     *                                  invalid or the database failed
+     */
+    @Override
+    public String getPurityReportPage(final int pageSize,
+                                  final String cursor,
+                                  final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        final long next = table.page(ReportTable.checkPageSize(pageSize),
+                ReportTable.parseCursor(cursor), consumer);
+        return ReportTable.formatCursor(next);
+    }
+
+    /**
+     * gets the purity reports matching a {@link ReportQuery}, filtered
+     * by the database
+     * @param properties properties to search for
+     * @param searchConstraints constraints for properties
+     * @return report data
+     * @throws BackendRequestException if the query is invalid or the
+     *                                  database failed
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String>[] getPurityReports(
+            final Map<String, String> properties,
+            final Map<String, String> searchConstraints)
+            throws BackendRequestException {
+        final List<Map<String, String>> ret = table.find(
+                ReportQuery.parse(ReportQuery.PURITY, properties,
+                        searchConstraints));
+        return (Map<String, String>[]) ret.toArray(new Map[ret.size()]);
+    }
+
+    /**
+     * deletes a purity report
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id report id
+     * @throws BackendRequestException if authentication fails or the
+     *                                  change could not be saved
+     */
+    @Override
+    public void deletePurityReport(final String email,
+                                   final String tok,
+                                   final String id)
+            throws BackendRequestException {
+        table.delete(email, tok, id);
+    }
+
+    /**
+     * deletes a purity report.
+     * Stops on failure rather than propagating it on. Use under error
+     * recovery routines.
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id report id to delete
+     */
+    @Override
+    public void __deletePurityReport_fs_na(final String email,
+                                           final String tok,
+                                           final String id) {
+        //noinspection EmptyCatchBlock
+        try {
+            deletePurityReport(email, tok, id);
+        } catch (Exception e) { }
+    }
+
+    /**
+     * takes the bound report from sourcerptid, as the server does, when
+     * sourceid is not given
+     * @param properties report properties
+     * @return report properties with sourceid set where possible
+     */
+    private static Map<String, String> withSourceId(
+            final Map<String, String> properties) {
+        final Map<String, String> values = new HashMap<>(properties);
+        final String sourceRptId = values.get("sourcerptid");
+        if (((values.get("sourceid") == null)
+                || values.get("sourceid").isEmpty())
+                && (sourceRptId != null)) {
+            values.put("sourceid", sourceRptId);
+        }
+        return values;
+    }
+}
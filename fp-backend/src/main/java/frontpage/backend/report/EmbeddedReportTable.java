@@ -0,0 +1,571 @@
+package frontpage.backend.report;
+
+import frontpage.backend.store.EmbeddedDatabase;
+import frontpage.backend.user.EmbeddedUserManager;
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.report.ReportQuery;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * @author willstuckey
+ * <p>Table of reports in the embedded database.</p>
+ *
+ * Maps the fields clients see to the columns of a report table, joining
+ * the submitter's username from the users table as the server does.
+ * Every statement but searches is fixed, so each is prepared once per
+ * pooled connection. Reports are read back in insertion order and
+ * blank columns read as empty values, as they do in the local backend.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+final class EmbeddedReportTable {
+    /**
+     * field holding the report id
+     */
+    static final String ID = "reportid";
+
+    /**
+     * field holding the submitter's username
+     */
+    static final String USERNAME = "username";
+
+    /**
+     * database
+     */
+    private final EmbeddedDatabase db;
+
+    /**
+     * table name
+     */
+    private final String table;
+
+    /**
+     * field and column holding the submitter's email
+     */
+    private final String owner;
+
+    /**
+     * columns by field, in field order
+     */
+    private final Map<String, String> columns;
+
+    /**
+     * columns written by updates, in statement order
+     */
+    private final List<String> writable;
+
+    /**
+     * select list and join shared by every read
+     */
+    private final String select;
+
+    /**
+     * insert of a blank report
+     */
+    private final String insertSql;
+
+    /**
+     * insert of a full report
+     */
+    private final String importSql;
+
+    /**
+     * update keeping stored values for empty parameters
+     */
+    private final String updateSql;
+
+    /**
+     * report by id
+     */
+    private final String getSql;
+
+    /**
+     * reports by insertion
+     */
+    private final String allSql;
+
+    /**
+     * most recent reports, newest first
+     */
+    private final String recentSql;
+
+    /**
+     * page of reports by insertion
+     */
+    private final String pageSql;
+
+    /**
+     * deletion by id
+     */
+    private final String deleteSql;
+
+    /**
+     * creates a table
+     * @param db database
+     * @param table table name
+     * @param owner field and column holding the submitter's email
+     * @param columns columns by field, excluding the username, in the
+     *                order fields are returned
+     */
+    EmbeddedReportTable(final EmbeddedDatabase db,
+                        final String table,
+                        final String owner,
+                        final Map<String, String> columns) {
+        this.db = db;
+        this.table = table;
+        this.owner = owner;
+        this.columns = Collections.unmodifiableMap(
+                new LinkedHashMap<>(columns));
+        final List<String> w = new ArrayList<>();
+        final StringBuilder list = new StringBuilder("r.seq AS seq, ")
+                .append("u.username AS ").append(USERNAME);
+        final StringBuilder sets = new StringBuilder();
+        for (final Map.Entry<String, String> e : columns.entrySet()) {
+            list.append(", r.").append(e.getValue()).append(" AS ")
+                    .append(e.getKey());
+            if (ID.equals(e.getKey())) {
+                continue;
+            }
+
+            w.add(e.getValue());
+            if (sets.length() > 0) {
+                sets.append(", ");
+            }
+            sets.append(e.getValue()).append(" = COALESCE(NULLIF(?, ''), ")
+                    .append(e.getValue()).append(')');
+        }
+        this.writable = Collections.unmodifiableList(w);
+
+        this.select = "SELECT " + list + " FROM " + table + " r "
+                + "LEFT JOIN users u ON u.email = r." + owner;
+        this.insertSql = "INSERT INTO " + table + " (reportid, " + owner
+                + ") VALUES (?, ?)";
+        this.importSql = "INSERT INTO " + table + " (reportid, "
+                + String.join(", ", w) + ") VALUES (?"
+                + String.join("", Collections.nCopies(w.size(), ", ?"))
+                + ")";
+        this.updateSql = "UPDATE " + table + " SET " + sets
+                + " WHERE reportid = ?";
+        this.getSql = select + " WHERE r.reportid = ?";
+        this.allSql = select + " ORDER BY r.seq";
+        this.recentSql = select + " ORDER BY r.seq DESC LIMIT ?";
+        this.pageSql = select + " WHERE r.seq > ? ORDER BY r.seq LIMIT ?";
+        this.deleteSql = "DELETE FROM " + table + " WHERE reportid = ?";
+    }
+
+    /**
+     * inserts a blank report submitted by the authenticated user
+     * @param email email for auth
+     * @param tok token for auth
+     * @return report id
+     * @throws BackendRequestException if authentication fails or the
+     *                                  report could not be saved
+     */
+    String insert(final String email, final String tok)
+            throws BackendRequestException {
+        final String id = UUID.randomUUID().toString();
+        final boolean inserted;
+        try {
+            inserted = db.execute(c -> {
+                if (!EmbeddedUserManager.isAuthenticated(c, email, tok)) {
+                    return false;
+                }
+                c.prepare(insertSql, id, email.toLowerCase()).executeUpdate();
+                return true;
+            });
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not save " + table, e);
+        }
+
+        if (!inserted) {
+            throw new BackendRequestException("invalid credentials");
+        }
+        return id;
+    }
+
+    /**
+     * inserts full reports in batches in one transaction. Reports
+     * without a report id are given one and reports without a
+     * submitter are submitted by the authenticated user.
+     * @param email email for auth
+     * @param tok token for auth
+     * @param reports reports by field
+     * @return number of reports inserted
+     * @throws BackendRequestException if authentication fails or the
+     *                                  reports could not be saved, none
+     *                                  are then saved
+     */
+    int insertAll(final String email,
+                  final String tok,
+                  final Collection<Map<String, String>> reports)
+            throws BackendRequestException {
+        final List<Object[]> rows = new ArrayList<>(reports.size());
+        for (final Map<String, String> report : reports) {
+            final Object[] row = new Object[writable.size() + 1];
+            row[0] = report.get(ID);
+            if (blank(report.get(ID))) {
+                row[0] = UUID.randomUUID().toString();
+            }
+            int i = 1;
+            for (final Map.Entry<String, String> e : columns.entrySet()) {
+                if (!ID.equals(e.getKey())) {
+                    row[i++] = emptyToNull(report.get(e.getKey()));
+                }
+            }
+            rows.add(row);
+        }
+
+        try {
+            if (!db.execute(c ->
+                    EmbeddedUserManager.isAuthenticated(c, email, tok))) {
+                throw new BackendRequestException("invalid credentials");
+            }
+            final int ownerIndex = writable.indexOf(owner) + 1;
+            for (final Object[] row : rows) {
+                if (row[ownerIndex] == null) {
+                    row[ownerIndex] = email.toLowerCase();
+                }
+            }
+            return db.insertBatch(importSql, rows);
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not save " + table, e);
+        }
+    }
+
+    /**
+     * overwrites the columns of a report given non-empty values, keeping
+     * stored values for the rest. The report id cannot be changed.
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id report id
+     * @param values values by field, unknown fields are ignored
+     * @return if the report exists
+     * @throws BackendRequestException if authentication fails or the
+     *                                  change could not be saved
+     */
+    boolean update(final String email,
+                   final String tok,
+                   final String id,
+                   final Map<String, String> values)
+            throws BackendRequestException {
+        final Object[] params = new Object[writable.size() + 1];
+        int i = 0;
+        for (final Map.Entry<String, String> e : columns.entrySet()) {
+            if (!ID.equals(e.getKey())) {
+                params[i++] = values.get(e.getKey());
+            }
+        }
+        params[i] = id;
+
+        final Integer updated;
+        try {
+            updated = db.execute(c -> {
+                if (!EmbeddedUserManager.isAuthenticated(c, email, tok)) {
+                    return null;
+                }
+                return c.prepare(updateSql, params).executeUpdate();
+            });
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not save " + table, e);
+        }
+
+        if (updated == null) {
+            throw new BackendRequestException("invalid credentials");
+        }
+        return updated > 0;
+    }
+
+    /**
+     * gets a report
+     * @param id report id
+     * @return report by field, null if there is none
+     * @throws BackendRequestException if the database failed
+     */
+    Map<String, String> get(final String id) throws BackendRequestException {
+        try {
+            return db.execute(c -> {
+                try (ResultSet rs = c.prepare(getSql, id).executeQuery()) {
+                    if (rs.next()) {
+                        return read(rs);
+                    }
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not get " + table, e);
+        }
+    }
+
+    /**
+     * hands the most recent reports to a consumer, oldest first
+     * @param num number of reports, 0 or less for all of them
+     * @param consumer receives each report by field
+     * @throws BackendRequestException if the database failed
+     */
+    void recent(final int num, final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        try {
+            if (num <= 0) {
+                db.execute(c -> {
+                    try (ResultSet rs = c.prepare(allSql).executeQuery()) {
+                        while (rs.next()) {
+                            consumer.accept(read(rs));
+                        }
+                    }
+                    return null;
+                });
+                return;
+            }
+
+            final Deque<Map<String, String>> ret = new ArrayDeque<>(num);
+            db.execute(c -> {
+                try (ResultSet rs = c.prepare(recentSql, num)
+                        .executeQuery()) {
+                    while (rs.next()) {
+                        ret.addFirst(read(rs));
+                    }
+                }
+                return null;
+            });
+            ret.forEach(consumer);
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not get " + table, e);
+        }
+    }
+
+    /**
+     * hands a page of reports to a consumer, in insertion order
+     * @param pageSize largest number of reports in the page
+     * @param after insertion sequence of the last report of the previous
+     *              page, 0 for the first page
+     * @param consumer receives each report by field
+     * @return insertion sequence of the last report handed out, 0 if no
+     *         report follows it
+     * @throws BackendRequestException if the database failed
+     */
+    long page(final int pageSize,
+              final long after,
+              final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        final List<Map<String, String>> ret = new ArrayList<>(pageSize);
+        final long last;
+        try {
+            // one report past the page tells if another page follows
+            last = db.execute(c -> {
+                long seq = 0;
+                try (ResultSet rs = c.prepare(pageSql, after, pageSize + 1)
+                        .executeQuery()) {
+                    while (rs.next()) {
+                        if (ret.size() == pageSize) {
+                            return seq;
+                        }
+                        seq = rs.getLong("seq");
+                        ret.add(read(rs));
+                    }
+                }
+                return 0L;
+            });
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not get " + table, e);
+        }
+
+        ret.forEach(consumer);
+        return last;
+    }
+
+    /**
+     * finds the reports matching a query. Clauses are written in field
+     * order so that equal shapes of query share a cached statement.
+     * Substrings are matched with LIKE on the lower cased column and
+     * ppm ranges compare the column cast to a number.
+     * @param query query
+     * @return matching reports by field, oldest first
+     * @throws BackendRequestException if the database failed
+     */
+    List<Map<String, String>> find(final ReportQuery query)
+            throws BackendRequestException {
+        final Map<String, ReportQuery.Clause> clauses = new TreeMap<>();
+        for (final ReportQuery.Clause c : query.getClauses()) {
+            clauses.put(c.getField(), c);
+        }
+
+        final StringBuilder sql = new StringBuilder(select);
+        final List<Object> params = new ArrayList<>();
+        String sep = " WHERE ";
+        for (final ReportQuery.Clause c : clauses.values()) {
+            String column = "u.username";
+            if (!USERNAME.equals(c.getField())) {
+                if (!columns.containsKey(c.getField())) {
+                    return new ArrayList<>();
+                }
+                column = "r." + columns.get(c.getField());
+            }
+
+            final List<String> values = c.getValues();
+            if (c.getOperator() == ReportQuery.Operator.CONTAINS) {
+                for (final String term : values) {
+                    sql.append(sep).append("LOWER(").append(column)
+                            .append(") LIKE ? ESCAPE '\\'");
+                    sep = " AND ";
+                    params.add("%" + escapeLike(term) + "%");
+                }
+            } else if (c.getOperator() == ReportQuery.Operator.RANGE) {
+                Object lower = values.get(0);
+                Object upper = values.get(1);
+                if (c.isNumeric()) {
+                    column = "CAST(NULLIF(" + column + ", '') AS DOUBLE)";
+                    lower = number(values.get(0));
+                    upper = number(values.get(1));
+                }
+                if (!values.get(0).isEmpty()) {
+                    sql.append(sep).append(column).append(" >= ?");
+                    sep = " AND ";
+                    params.add(lower);
+                }
+                if (!values.get(1).isEmpty()) {
+                    sql.append(sep).append(column).append(" < ?");
+                    sep = " AND ";
+                    params.add(upper);
+                }
+            } else if (blank(values.get(0))) {
+                sql.append(sep).append('(').append(column)
+                        .append(" IS NULL OR ").append(column)
+                        .append(" = '')");
+                sep = " AND ";
+            } else {
+                sql.append(sep).append(column).append(" = ?");
+                sep = " AND ";
+                params.add(values.get(0));
+            }
+        }
+        sql.append(" ORDER BY r.seq");
+
+        try {
+            return db.execute(c -> {
+                final List<Map<String, String>> ret = new ArrayList<>();
+                try (ResultSet rs = c.prepare(sql.toString(),
+                        params.toArray()).executeQuery()) {
+                    while (rs.next()) {
+                        ret.add(read(rs));
+                    }
+                }
+                return ret;
+            });
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not search " + table, e);
+        }
+    }
+
+    /**
+     * deletes a report
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id report id
+     * @return if the report existed
+     * @throws BackendRequestException if authentication fails or the
+     *                                  deletion could not be saved
+     */
+    boolean delete(final String email, final String tok, final String id)
+            throws BackendRequestException {
+        final Integer deleted;
+        try {
+            deleted = db.execute(c -> {
+                if (!EmbeddedUserManager.isAuthenticated(c, email, tok)) {
+                    return null;
+                }
+                return c.prepare(deleteSql, id).executeUpdate();
+            });
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not delete from "
+                    + table, e);
+        }
+
+        if (deleted == null) {
+            throw new BackendRequestException("invalid credentials");
+        }
+        return deleted > 0;
+    }
+
+    /**
+     * reads the report at the cursor of a result set
+     * @param rs result set
+     * @return report by field
+     * @throws SQLException if a column could not be read
+     */
+    private Map<String, String> read(final ResultSet rs) throws SQLException {
+        final Map<String, String> ret = new HashMap<>();
+        ret.put(USERNAME, nullToEmpty(rs.getString(USERNAME)));
+        for (final String field : columns.keySet()) {
+            ret.put(field, nullToEmpty(rs.getString(field)));
+        }
+        return ret;
+    }
+
+    /**
+     * escapes the wildcards of a LIKE pattern
+     * @param term literal text
+     * @return pattern matching the text
+     */
+    private static String escapeLike(final String term) {
+        return term.replace("\\", "\\\\").replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    /**
+     * parses a numeric bound checked by the query
+     * @param val bound, blank for none
+     * @return bound, null for none
+     */
+    private static Double number(final String val) {
+        if (val.isEmpty()) {
+            return null;
+        }
+        return Double.valueOf(val);
+    }
+
+    /**
+     * returns if a value is null or empty
+     * @param val value
+     * @return if blank
+     */
+    private static boolean blank(final String val) {
+        return (val == null) || val.isEmpty();
+    }
+
+    /**
+     * replaces an empty value with null, as blank columns are stored
+     * @param val value
+     * @return value, null if blank
+     */
+    private static String emptyToNull(final String val) {
+        if (blank(val)) {
+            return null;
+        }
+        return val;
+    }
+
+    /**
+     * replaces null with an empty value, as blank fields are returned
+     * @param val value
+     * @return value, empty if null
+     */
+    private static String nullToEmpty(final String val) {
+        if (val == null) {
+            return "";
+        }
+        return val;
+    }
+}
@@ -1,64 +1,269 @@
 package frontpage.backend.report;
 
+import frontpage.backend.store.LogStore;
+import frontpage.backend.user.LocalUserManager;
 import frontpage.bind.errorhandling.BackendRequestException;
 import frontpage.bind.report.PurityReportManager;
+import frontpage.bind.report.ReportQuery;
+import frontpage.model.user.User;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @author willstuckey
- * <p></p>
+ * <p>Implementation of backend Purity Report Manager held in memory.</p>
+ *
+ * Reports have the fields the server returns and are indexed by
+ * submitter, condition and the source report they were taken at.
+ * Reads never lock, so the manager holds up under concurrent writers
+ * when used offline or for benchmarking.
  */
+@SuppressWarnings({"FeatureEnvy", "ChainedMethodCall", "LawOfDemeter"})
 public class LocalPurityReportManager implements PurityReportManager {
+    /**
+     * fields of a purity report
+     */
+    private static final List<String> COLUMNS = Arrays.asList("username",
+            "userid", "sourceid", ReportTable.ID, "reportdt", "location",
+            "cond", "virusppm", "contaminantppm");
+
+    /**
+     * user manager instance
+     */
+    private static LocalUserManager lum;
+
+    /**
+     * reports
+     */
+    private final ReportTable table = new ReportTable(COLUMNS,
+            Arrays.asList("username", "cond", "sourceid"));
+
+    /**
+     * sets user manager instance
+     * @param lum user manager
+     */
+    public static void setLum(final LocalUserManager lum) {
+        LocalPurityReportManager.lum = lum;
+    }
+
+    /**
+     * persists reports to a log store, which replays them when opened
+     * @param store store, null to keep reports in memory only
+     */
+    public void attach(final LogStore store) {
+        table.attach(store, "purity");
+    }
+
+    /**
+     * adds a blank purity report submitted by the authenticated user
+     * @param email email for auth
+     * @param tok token for auth
+     * @return id of blank report
+     * @throws BackendRequestException if authentication fails or the
+     *                                  change could not be saved
+     */
     @Override
-    public String addPurityReport(final String email, final String tok)
+    public String addPurityReport(final String email,
+                                  final String tok)
             throws BackendRequestException {
-        return null;
+        final User u = authenticate(email, tok);
+        final Map<String, String> values = new HashMap<>();
+        values.put("username", u.getUsername());
+        values.put("userid", u.getEmail());
+        try {
+            return table.insert(values);
+        } catch (IOException e) {
+            throw new BackendRequestException("could not save purity report",
+                    e);
+        }
     }
 
+    /**
+     * updates a purity report, keeping stored values for properties
+     * that are absent or empty
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id UUID of purity report
+     * @param properties report properties to be written
+     * @return if the report exists
+     * @throws BackendRequestException if authentication fails or the
+     *                                  change could not be saved
+     */
     @Override
     public boolean updatePurityReport(final String email,
                                       final String tok,
                                       final String id,
                                       final Map<String, String> properties)
             throws BackendRequestException {
-        return false;
+        authenticate(email, tok);
+        final Map<String, String> values = new HashMap<>(properties);
+        // the server takes the bound report as sourcerptid
+        final String sourceRptId = values.get("sourcerptid");
+        if (((values.get("sourceid") == null)
+                || values.get("sourceid").isEmpty())
+                && (sourceRptId != null)) {
+            values.put("sourceid", sourceRptId);
+        }
+        try {
+            return table.update(id, values);
+        } catch (IOException e) {
+            throw new BackendRequestException("could not save purity report",
+                    e);
+        }
     }
 
+    /**
+     * gets a purity report
+     * @param id UUID of purity report
+     * @return report data
+     * @throws BackendRequestException if there is no such report
+     */
     @Override
     public Map<String, String> getPurityReport(final String id)
             throws BackendRequestException {
-        return null;
+        final Map<String, String> ret = table.get(id);
+        if (ret == null) {
+            throw new BackendRequestException("no purity report " + id);
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, String> createPurityReport(final String email,
+                                                  final String tok)
+            throws BackendRequestException {
+        return getPurityReport(addPurityReport(email, tok));
     }
 
+    /**
+     * gets the most recent purity reports, oldest first
+     * @param num number of reports, 0 or less for all of them
+     * @return report data
+     */
     @Override
     @SuppressWarnings("unchecked")
-    public Map<String, String>[] getPurityReports(final int num)
+    public Map<String, String>[] getPurityReports(final int num) {
+        final List<Map<String, String>> ret = new ArrayList<>();
+        table.recent(num, ret::add);
+        return (Map<String, String>[]) ret.toArray(new Map[ret.size()]);
+    }
+
+    /**
+     * hands the most recent purity reports to a consumer, oldest first
+     * @param num number of reports, 0 or less for all of them
+     * @param consumer receives report data
+     */
+    @Override
+    public void getPurityReports(final int num,
+                              final Consumer<Map<String, String>> consumer) {
+        table.recent(num, consumer);
+    }
+
+    /**
+     * hands a page of purity reports to a consumer, in insertion order
+     * @param pageSize largest number of reports in the page
+     * @param cursor cursor returned with the previous page, null for the
+     *               first page
+     * @param consumer receives report data
+     * @return cursor of the next page, null after the last page
+     * @throws BackendRequestException if the page size or cursor is
+     *                                  invalid
+     */
+    @Override
+    public String getPurityReportPage(final int pageSize,
+                                  final String cursor,
+                                  final Consumer<Map<String, String>> consumer)
             throws BackendRequestException {
-        return (Map<String, String>[]) new Map[0];
+        final long next = table.page(ReportTable.checkPageSize(pageSize),
+                ReportTable.parseCursor(cursor), consumer);
+        return ReportTable.formatCursor(next);
     }
 
+    /**
+     * gets the purity reports matching a {@link ReportQuery}, using the
+     * submitter, condition and source report indexes for equality where
+     * possible
+     * @param properties properties to search for
+     * @param searchConstraints constraints for properties
+     * @return report data
+     * @throws BackendRequestException if the query is invalid
+     */
     @Override
     @SuppressWarnings("unchecked")
     public Map<String, String>[] getPurityReports(
             final Map<String, String> properties,
             final Map<String, String> searchConstraints)
             throws BackendRequestException {
-        return (Map<String, String>[]) new Map[0];
+        final List<Map<String, String>> ret = table.find(
+                ReportQuery.parse(ReportQuery.PURITY, properties,
+                        searchConstraints));
+        return (Map<String, String>[]) ret.toArray(new Map[ret.size()]);
     }
 
+    /**
+     * deletes a purity report
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id report id
+     * @throws BackendRequestException if authentication fails or the
+     *                                  change could not be saved
+     */
     @Override
     public void deletePurityReport(final String email,
                                    final String tok,
                                    final String id)
             throws BackendRequestException {
-
+        authenticate(email, tok);
+        try {
+            table.delete(id);
+        } catch (IOException e) {
+            throw new BackendRequestException("could not delete purity report",
+                    e);
+        }
     }
 
+    /**
+     * deletes a purity report.
+     * Stops on failure rather than propagating it on. Use under error
+     * recovery routines.
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id report id to delete
+     */
     @Override
     public void __deletePurityReport_fs_na(final String email,
                                            final String tok,
                                            final String id) {
+        //noinspection EmptyCatchBlock
+        try {
+            deletePurityReport(email, tok, id);
+        } catch (Exception e) { }
+    }
+
+    /**
+     * finds the user with matching credentials
+     * @param email email for auth
+     * @param tok token for auth
+     * @return user
+     * @throws BackendRequestException if no user matches
+     */
+    private static User authenticate(final String email, final String tok)
+            throws BackendRequestException {
+        if ((lum != null) && (email != null) && (tok != null)) {
+            for (User u : lum.getUsers()) {
+                if (u.getEmail().equalsIgnoreCase(email)
+                        && u.getTok().equals(tok)) {
+                    return u;
+                }
+            }
+        }
 
+        throw new BackendRequestException("invalid credentials");
     }
 }
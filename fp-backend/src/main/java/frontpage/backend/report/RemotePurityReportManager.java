@@ -2,11 +2,21 @@ package frontpage.backend.report;
 
 import frontpage.backend.rest.RESTHandler;
 import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.RequestScheduler;
+import frontpage.backend.rest.RequestScheduler.Priority;
+import frontpage.bind.GlobalProperties;
 import frontpage.bind.errorhandling.BackendRequestException;
 import frontpage.bind.report.PurityReportManager;
+import frontpage.bind.report.ReportQuery;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * @author willstuckey
@@ -15,6 +25,11 @@ import java.util.Map;
 @SuppressWarnings({"FeatureEnvy", "ChainedMethodCall",
         "LiteralAsArgToStringEquals", "LawOfDemeter"})
 public class RemotePurityReportManager implements PurityReportManager {
+    /**
+     * default number of reports per page of a listing
+     */
+    private static final int DEFAULT_PAGE_SIZE = 200;
+
     /**
      * adds a purity report
      * @param email email for auth
@@ -103,7 +118,7 @@ public class RemotePurityReportManager implements PurityReportManager {
         attribs.put("reporttype", "purity");
         attribs.put("action", "GET");
         attribs.put("reportid", id);
-        RESTReport rr = RESTHandler.apiRequest(
+        RESTReport rr = RESTHandler.apiRequestShared(
                 RESTHandler.RestAction.POST,
                 RESTHandler.REPORT_ENTRY_POINT,
                 attribs);
@@ -115,62 +130,309 @@ public class RemotePurityReportManager implements PurityReportManager {
             throw new BackendRequestException(rr.getResponseValue("message"));
         }
 
-        Map<String, String> ret = rr.getResponseValues()[1];
+        Map<String, String> ret = rr.copyEntry(0);
         ret.keySet().stream().filter(k -> (ret.get(k) == null)
                 || ret.get(k).isEmpty()
                 || ret.get(k).equalsIgnoreCase("null"))
                 .forEach(k -> ret.put(k, ""));
-        return rr.getResponseValues()[1];
+        return ret;
     }
 
     /**
-     * gets a number of purity reports
-     * @param num number of reports in history
+     * adds a blank purity report and reads it back in one batch
+     * @param email email for auth
+     * @param tok token for auth
      * @return report data
-     * @throws BackendRequestException error
+     * @throws BackendRequestException if something goes wrong
      */
     @Override
-    public Map<String, String>[] getPurityReports(final int num)
+    public Map<String, String> createPurityReport(final String email,
+                                                  final String tok)
             throws BackendRequestException {
-        Map<String, String> attribs = new HashMap<>();
-        attribs.put("reporttype", "purity");
-        attribs.put("action", "GET");
-        attribs.put("reportid", "ALL");
-        RESTReport rr = RESTHandler.apiRequest(
-                RESTHandler.RestAction.POST,
-                RESTHandler.REPORT_ENTRY_POINT,
-                attribs);
-        if (rr.rejected()) {
-            throw new BackendRequestException(rr.toString());
-        }
+        final ReportBatch batch = new ReportBatch(email, tok);
+        final ReportBatch.Operation add = batch.add(ReportBatch.PURITY);
+        final ReportBatch.Operation get =
+                batch.get(ReportBatch.PURITY, add.reference());
+        batch.send();
 
-        if (!rr.success()) {
-            throw new BackendRequestException(rr.getResponseValue("message"));
+        final String id = add.get().get("reportid");
+        if ((id == null) || id.isEmpty()) {
+            throw new BackendRequestException("invalid report id");
         }
 
-        Map<String, String>[] ret = rr.getResponseValues();
-        for (Map<String, String> m : ret) {
-            m.keySet().stream().filter(k -> (m.get(k) == null)
-                    || m.get(k).isEmpty()
-                    || m.get(k).equalsIgnoreCase("null"))
-                    .forEach(k -> m.put(k, ""));
+        try {
+            return reportData(get.get());
+        } catch (BackendRequestException e) {
+            __deletePurityReport_fs_na(email, tok, id);
+            throw e;
         }
-        return rr.getResponseValues();
     }
 
     /**
-     * CURRENTLY UNDER MINIMAL IMPLEMENTATION (returns null)
+     * gets the most recent purity reports, oldest first, reading the
+     * listing a page at a time. Each page is buffered, so identical
+     * pages read concurrently share a single request.
+     * @param num number of reports, 0 or less for all of them
+     * @return report data
+     * @throws BackendRequestException if something goes wrong
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String>[] getPurityReports(final int num)
+            throws BackendRequestException {
+        final List<Map<String, String>> ret = new ArrayList<>();
+        list(num, true, ret::add);
+        return (Map<String, String>[]) ret.toArray(new Map[ret.size()]);
+    }
+
+    /**
+     * hands the most recent purity reports to a consumer one at a time,
+     * oldest first. The listing is read a page at a time, each page a
+     * request of its own, so no response holds more than a page. Only
+     * the pages holding the most recent reports are read, newest first,
+     * so the consumer is called once all of them have arrived.
+     * @param num number of reports, 0 or less for all of them
+     * @param consumer receives report data
+     * @throws BackendRequestException if something goes wrong
+     */
+    @Override
+    public void getPurityReports(final int num,
+                              final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        list(num, false, consumer);
+    }
+
+    /**
+     * hands one page of purity reports to a consumer one at a time, in
+     * report id order, as they are read off the connection
+     * @param pageSize largest number of reports in the page, the server
+     *                 caps it
+     * @param cursor cursor returned with the previous page, null for the
+     *               first page
+     * @param consumer receives report data
+     * @return cursor of the next page, null after the last page
+     * @throws BackendRequestException if something goes wrong
+     */
+    @Override
+    public String getPurityReportPage(final int pageSize,
+                                  final String cursor,
+                                  final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        return page(pageSize, cursor, null, false, consumer);
+    }
+
+    /**
+     * gets the purity reports matching a {@link ReportQuery}. The query is
+     * sent with the listing and run by the server, so only matching
+     * reports are downloaded, still a page at a time.
      * @param properties properties to search for
      * @param searchConstraints constraints for properties
-     * @return null
-     * @throws BackendRequestException errors
+     * @return report data, in report id order
+     * @throws BackendRequestException if the query is invalid or
+     *                                  something goes wrong
      */
     @Override
+    @SuppressWarnings("unchecked")
     public Map<String, String>[] getPurityReports(
             final Map<String, String> properties,
             final Map<String, String> searchConstraints)
             throws BackendRequestException {
-        return null;
+        final ReportQuery query = ReportQuery.parse(ReportQuery.PURITY,
+                properties, searchConstraints);
+        final int pageSize = GlobalProperties.getInt("report-page-size",
+                DEFAULT_PAGE_SIZE);
+        final List<Map<String, String>> ret = new ArrayList<>();
+        String cursor = null;
+        do {
+            cursor = sharedPage(pageSize, cursor, query, false, ret::add);
+        } while (cursor != null);
+        return (Map<String, String>[]) ret.toArray(new Map[ret.size()]);
+    }
+
+    /**
+     * hands the most recent purity reports to a consumer, oldest first.
+     * Without a bound the listing is read in id order from the first
+     * page. With one it is read newest first and stops once num reports
+     * have arrived, so the transfer is bounded by num rather than by the
+     * size of the listing.
+     * @param num number of reports, 0 or less for all of them
+     * @param shared if pages are buffered and shared with concurrent
+     *               identical reads rather than streamed
+     * @param consumer receives report data
+     * @throws BackendRequestException if something goes wrong
+     */
+    private void list(final int num,
+                      final boolean shared,
+                      final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        final int pageSize = GlobalProperties.getInt("report-page-size",
+                DEFAULT_PAGE_SIZE);
+        if (num <= 0) {
+            String cursor = null;
+            do {
+                cursor = read(shared, pageSize, cursor, false, consumer);
+            } while (cursor != null);
+            return;
+        }
+
+        final List<Map<String, String>> newest = new ArrayList<>();
+        String cursor = null;
+        do {
+            cursor = read(shared, Math.min(pageSize, num - newest.size()),
+                    cursor, true, newest::add);
+        } while ((cursor != null) && (newest.size() < num));
+        Collections.reverse(newest);
+        newest.forEach(consumer);
+    }
+
+    /**
+     * hands one page of the unfiltered purity report listing to a consumer
+     * @param shared if the page is buffered and shared with concurrent
+     *               identical reads rather than streamed
+     * @param pageSize largest number of reports in the page
+     * @param cursor cursor of the page, null for the first page
+     * @param newestFirst if the listing runs newest first
+     * @param consumer receives report data
+     * @return cursor of the next page, null after the last page
+     * @throws BackendRequestException if something goes wrong
+     */
+    private String read(final boolean shared,
+                        final int pageSize,
+                        final String cursor,
+                        final boolean newestFirst,
+                        final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        if (shared) {
+            return sharedPage(pageSize, cursor, null, newestFirst, consumer);
+        }
+        return page(pageSize, cursor, null, newestFirst, consumer);
+    }
+
+    /**
+     * hands one page of the purity report listing to a consumer, streaming
+     * each entry off the connection as it arrives
+     * @param pageSize largest number of reports in the page
+     * @param cursor cursor of the page, null for the first page
+     * @param query query, null for every report
+     * @param newestFirst if the listing runs newest first
+     * @param consumer receives report data
+     * @return cursor of the next page, null after the last page
+     * @throws BackendRequestException if something goes wrong
+     */
+    private String page(final int pageSize,
+                        final String cursor,
+                        final ReportQuery query,
+                        final boolean newestFirst,
+                        final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        final RESTReport rr = RESTHandler.apiRequest(
+                RESTHandler.RestAction.POST,
+                RESTHandler.REPORT_ENTRY_POINT,
+                pageAttribs(pageSize, cursor, query, newestFirst),
+                m -> consumer.accept(blankNulls(m)));
+        check(rr);
+        return rr.getCursor();
+    }
+
+    /**
+     * hands one page of the purity report listing to a consumer, sharing
+     * the request with concurrent identical reads. The response is
+     * buffered for every caller, so each entry is decoded from it as a
+     * private copy.
+     * @param pageSize largest number of reports in the page
+     * @param cursor cursor of the page, null for the first page
+     * @param query query, null for every report
+     * @param newestFirst if the listing runs newest first
+     * @param consumer receives report data
+     * @return cursor of the next page, null after the last page
+     * @throws BackendRequestException if something goes wrong
+     */
+    private String sharedPage(final int pageSize,
+                              final String cursor,
+                              final ReportQuery query,
+                              final boolean newestFirst,
+                              final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException {
+        final RESTReport rr = RESTHandler.apiRequestShared(
+                RESTHandler.RestAction.POST,
+                RESTHandler.REPORT_ENTRY_POINT,
+                pageAttribs(pageSize, cursor, query, newestFirst));
+        check(rr);
+        for (int i = 0; i < rr.getEntryCount(); i++) {
+            consumer.accept(blankNulls(rr.copyEntry(i)));
+        }
+        return rr.getCursor();
+    }
+
+    /**
+     * builds the attributes of a page of the listing. Each clause of the
+     * query is sent as q_&lt;field&gt; holding its value and
+     * qop_&lt;field&gt; holding its operator.
+     * @param pageSize largest number of reports in the page
+     * @param cursor cursor of the page, null for the first page
+     * @param query query, null for every report
+     * @param newestFirst if the listing runs newest first
+     * @return attributes
+     * @throws BackendRequestException if the page size is invalid
+     */
+    private static Map<String, String> pageAttribs(final int pageSize,
+                                                   final String cursor,
+                                                   final ReportQuery query,
+                                                   final boolean newestFirst)
+            throws BackendRequestException {
+        if (pageSize <= 0) {
+            throw new BackendRequestException("invalid page size "
+                    + pageSize);
+        }
+
+        final Map<String, String> attribs = new HashMap<>();
+        attribs.put("reporttype", "purity");
+        attribs.put("action", "GET");
+        attribs.put("reportid", "ALL");
+        attribs.put("pagesize", Integer.toString(pageSize));
+        if (cursor != null) {
+            attribs.put("cursor", cursor);
+        }
+        if (newestFirst) {
+            attribs.put("order", "desc");
+        }
+        if (query != null) {
+            query.getProperties().forEach((k, v) ->
+                    attribs.put("q_" + k, v));
+            query.getSearchConstraints().forEach((k, v) ->
+                    attribs.put("qop_" + k, v));
+        }
+        return attribs;
+    }
+
+    /**
+     * throws if a listing request failed
+     * @param rr report of the request
+     * @throws BackendRequestException if the request was rejected or
+     *                                  failed
+     */
+    private static void check(final RESTReport rr)
+            throws BackendRequestException {
+        if (rr.rejected()) {
+            throw new BackendRequestException(rr.toString());
+        }
+
+        if (!rr.success()) {
+            throw new BackendRequestException(rr.getResponseValue("message"));
+        }
+    }
+
+    /**
+     * replaces values the server sends for missing columns with blanks
+     * @param m report data, modified
+     * @return report data
+     */
+    private static Map<String, String> blankNulls(final Map<String, String> m) {
+        m.keySet().stream().filter(k -> (m.get(k) == null)
+                || m.get(k).isEmpty()
+                || m.get(k).equalsIgnoreCase("null"))
+                .forEach(k -> m.put(k, ""));
+        return m;
     }
 
     /**
@@ -221,4 +483,121 @@ public class RemotePurityReportManager implements PurityReportManager {
             deletePurityReport(email, tok, id);
         } catch (Exception e) { }
     }
+
+    /**
+     * adds a purity report in the next report batch
+     * @see RemotePurityReportManager#addPurityReport(String, String)
+     *
+     * @param email email for auth
+     * @param tok token for auth
+     * @return future completed with the report id
+     */
+    public CompletableFuture<String> addPurityReportAsync(
+            final String email,
+            final String tok) {
+        return ReportBatcher.getInstance()
+                .submit(email, tok, ReportBatch.PURITY, "ADD", null, null)
+                .thenApply(m -> {
+                    final String id = ReportBatch.checked(m).get("reportid");
+                    if ((id == null) || id.isEmpty()) {
+                        throw new CompletionException(
+                                new BackendRequestException(
+                                        "invalid report id"));
+                    }
+                    return id;
+                });
+    }
+
+    /**
+     * updates a purity report in the next report batch
+     * @see RemotePurityReportManager#updatePurityReport(String, String,
+     *      String, Map)
+     *
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id UUID of source report
+     * @param properties report properties to be written
+     * @return future completed with the success of the update
+     */
+    public CompletableFuture<Boolean> updatePurityReportAsync(
+            final String email,
+            final String tok,
+            final String id,
+            final Map<String, String> properties) {
+        return ReportBatcher.getInstance()
+                .submit(email, tok, ReportBatch.PURITY, "UPDATE", id,
+                        properties)
+                .thenApply(m -> {
+                    ReportBatch.checked(m);
+                    return true;
+                });
+    }
+
+    /**
+     * gets a purity report in the next report batch
+     * @see RemotePurityReportManager#getPurityReport(String)
+     *
+     * @param id UUID of source report
+     * @return future completed with the report data
+     */
+    public CompletableFuture<Map<String, String>> getPurityReportAsync(
+            final String id) {
+        return ReportBatcher.getInstance()
+                .submit(null, null, ReportBatch.PURITY, "GET", id, null)
+                .thenApply(m -> reportData(ReportBatch.checked(m)));
+    }
+
+    /**
+     * gets a number of purity reports as background traffic
+     * @see RemotePurityReportManager#getPurityReports(int)
+     *
+     * @param num number of reports in history
+     * @return future completed with the report data
+     */
+    public CompletableFuture<Map<String, String>[]> getPurityReportsAsync(
+            final int num) {
+        return RequestScheduler.submit(Priority.BACKGROUND,
+                () -> getPurityReports(num));
+    }
+
+    /**
+     * deletes a purity report in the next report batch
+     * @see RemotePurityReportManager#deletePurityReport(String, String,
+     *      String)
+     *
+     * @param email email for auth
+     * @param tok token for auth
+     * @param id report id
+     * @return future completed once the report is deleted
+     */
+    public CompletableFuture<Void> deletePurityReportAsync(
+            final String email,
+            final String tok,
+            final String id) {
+        return ReportBatcher.getInstance()
+                .submit(email, tok, ReportBatch.PURITY, "DELETE", id, null)
+                .thenApply(m -> {
+                    ReportBatch.checked(m);
+                    return null;
+                });
+    }
+
+    /**
+     * strips the batch status from the entry of a batched read and
+     * blanks null values, as getPurityReport does
+     * @param entry entry
+     * @return report data
+     */
+    private static Map<String, String> reportData(
+            final Map<String, String> entry) {
+        final Map<String, String> ret = new HashMap<>(entry);
+        ret.remove("code");
+        ret.remove("status");
+        ret.remove("message");
+        ret.keySet().stream().filter(k -> (ret.get(k) == null)
+                || ret.get(k).isEmpty()
+                || ret.get(k).equalsIgnoreCase("null"))
+                .forEach(k -> ret.put(k, ""));
+        return ret;
+    }
 }
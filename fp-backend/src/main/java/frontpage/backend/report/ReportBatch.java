@@ -0,0 +1,438 @@
+package frontpage.backend.report;
+
+import frontpage.backend.rest.Deadline;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTReport;
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.trace.Span;
+import frontpage.bind.trace.Tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author willstuckey
+ * <p>Report operations sent to the backend in one request.</p>
+ *
+ * Operations are queued with add, get, update and delete and go out
+ * together as a single BATCH request, which the server authenticates
+ * once. Each queued operation completes with its own entry of the
+ * response. A later operation can name the report created by an
+ * earlier one through Operation.reference(), so a report can be
+ * created, written and read back in one round trip. Closing a batch
+ * that has not been sent sends it.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ReportBatch implements AutoCloseable {
+    /**
+     * source report type
+     */
+    public static final String SOURCE = "source";
+
+    /**
+     * purity report type
+     */
+    public static final String PURITY = "purity";
+
+    /**
+     * email for auth, null for a read only batch
+     */
+    private final String email;
+
+    /**
+     * token for auth, null for a read only batch
+     */
+    private final String tok;
+
+    /**
+     * queued operations
+     */
+    private final List<Operation> ops = new ArrayList<>();
+
+    /**
+     * span current when the batch was created, requests made for the
+     * batch join its trace
+     */
+    private final Span origin = Tracing.current();
+
+    /**
+     * earliest deadline of the queued operations
+     */
+    private Deadline deadline = Deadline.NONE;
+
+    /**
+     * if the batch has been sent
+     */
+    private boolean sent;
+
+    /**
+     * creates a batch
+     * @param email email for auth
+     * @param tok token for auth
+     */
+    public ReportBatch(final String email, final String tok) {
+        this.email = email;
+        this.tok = tok;
+    }
+
+    /**
+     * creates a read only batch, which may only hold gets
+     */
+    public ReportBatch() {
+        this(null, null);
+    }
+
+    /**
+     * queues the creation of a blank report
+     * @param reporttype SOURCE or PURITY
+     * @return operation, completed with the new report id
+     */
+    public Operation add(final String reporttype) {
+        return enqueue(reporttype, "ADD", null, null);
+    }
+
+    /**
+     * queues a read of one report
+     * @param reporttype SOURCE or PURITY
+     * @param id report id or reference
+     * @return operation, completed with the report data
+     */
+    public Operation get(final String reporttype, final String id) {
+        return enqueue(reporttype, "GET", id, null);
+    }
+
+    /**
+     * queues an update of a report
+     * @param reporttype SOURCE or PURITY
+     * @param id report id or reference
+     * @param properties report properties to be written
+     * @return operation
+     */
+    public Operation update(final String reporttype,
+                            final String id,
+                            final Map<String, String> properties) {
+        return enqueue(reporttype, "UPDATE", id, properties);
+    }
+
+    /**
+     * queues the deletion of a report
+     * @param reporttype SOURCE or PURITY
+     * @param id report id or reference
+     * @return operation
+     */
+    public Operation delete(final String reporttype, final String id) {
+        return enqueue(reporttype, "DELETE", id, null);
+    }
+
+    /**
+     * queues an operation
+     * @param reporttype report type
+     * @param action report action
+     * @param id report id or reference, null for none
+     * @param properties properties, null for none
+     * @return operation
+     */
+    synchronized Operation enqueue(final String reporttype,
+                                   final String action,
+                                   final String id,
+                                   final Map<String, String> properties) {
+        if (sent) {
+            throw new IllegalStateException("batch already sent");
+        }
+
+        final Operation op = new Operation(ops.size(), reporttype, action,
+                id, properties);
+        ops.add(op);
+        deadline = deadline.min(RESTHandler.deadlineFor(
+                RESTHandler.REPORT_ENTRY_POINT,
+                Collections.singletonMap("action", action)));
+        return op;
+    }
+
+    /**
+     * gets the earliest deadline of the queued operations, which the
+     * batch is sent under
+     * @return deadline
+     */
+    public synchronized Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * gets the number of queued operations
+     * @return operations
+     */
+    public synchronized int size() {
+        return ops.size();
+    }
+
+    /**
+     * sends the batch and completes every operation. The request is
+     * made under the earliest deadline of the operations. A failure of
+     * the request as a whole fails every operation; failures of single
+     * operations are reported through their own results.
+     * @throws BackendRequestException if the request failed
+     */
+    public void send() throws BackendRequestException {
+        final List<Operation> pending;
+        final Deadline due;
+        synchronized (this) {
+            if (sent) {
+                throw new IllegalStateException("batch already sent");
+            }
+            sent = true;
+            pending = new ArrayList<>(ops);
+            due = deadline;
+        }
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        final Map<String, String> attribs = new HashMap<>();
+        for (final Operation op : pending) {
+            final String prefix = "op" + op.index + "_";
+            if (op.properties != null) {
+                for (final Map.Entry<String, String> e
+                        : op.properties.entrySet()) {
+                    String val = e.getValue();
+                    if ((val == null) || val.isEmpty()) {
+                        val = "NULL";
+                    }
+                    attribs.put(prefix + e.getKey(), val);
+                }
+            }
+            attribs.put(prefix + "reporttype", op.reporttype);
+            attribs.put(prefix + "action", op.action);
+            if (op.id != null) {
+                attribs.put(prefix + "reportid", op.id);
+            }
+        }
+        attribs.put("action", "BATCH");
+        attribs.put("ops", Integer.toString(pending.size()));
+        if (email != null) {
+            attribs.put("email", email);
+            attribs.put("tok", tok);
+        }
+
+        final RESTReport rr;
+        final Deadline previous = Deadline.bind(due);
+        try (Span span = Tracing.span(origin,
+                "report batch of " + pending.size())) {
+            rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                    RESTHandler.REPORT_ENTRY_POINT,
+                    attribs);
+            span.setStatus(Integer.toString(rr.getHttpResponseCode()));
+        } catch (RuntimeException e) {
+            fail(pending, e);
+            throw e;
+        } finally {
+            Deadline.bind(previous);
+        }
+
+        if (rr.rejected() || !rr.success()) {
+            final BackendRequestException e;
+            if (rr.rejected()) {
+                e = new BackendRequestException(rr.toString());
+            } else {
+                e = new BackendRequestException(
+                        rr.getResponseValue("message"));
+            }
+            fail(pending, e);
+            throw e;
+        }
+
+        for (int i = 0; i < rr.getEntryCount(); i++) {
+            final Map<String, String> entry = rr.getEntry(i);
+            if (entry == null) {
+                continue;
+            }
+
+            final int index;
+            try {
+                index = Integer.parseInt(entry.get("index"));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            if ((index >= 0) && (index < pending.size())) {
+                pending.get(index).result.complete(entry);
+            }
+        }
+
+        fail(pending, new BackendRequestException(
+                "no result for batched operation"));
+    }
+
+    /**
+     * fails every operation of the batch not yet completed
+     * @param t cause
+     */
+    void fail(final Throwable t) {
+        final List<Operation> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(ops);
+        }
+        fail(pending, t);
+    }
+
+    /**
+     * fails every operation not yet completed
+     * @param pending operations
+     * @param t cause
+     */
+    private static void fail(final List<Operation> pending,
+                             final Throwable t) {
+        for (final Operation op : pending) {
+            op.result.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * sends the batch if it has not been sent
+     * @throws BackendRequestException if the request failed
+     */
+    @Override
+    public void close() throws BackendRequestException {
+        final boolean send;
+        synchronized (this) {
+            send = !sent;
+        }
+
+        if (send) {
+            send();
+        }
+    }
+
+    /**
+     * checks the entry of an operation for failure, for use in future
+     * pipelines
+     * @param entry entry
+     * @return entry
+     * @throws CompletionException wrapping a BackendRequestException if
+     *         the operation failed
+     */
+    static Map<String, String> checked(final Map<String, String> entry) {
+        if (!"success".equals(entry.get("status"))) {
+            throw new CompletionException(
+                    new BackendRequestException(entry.get("message")));
+        }
+        return entry;
+    }
+
+    /**
+     * one queued operation
+     */
+    public static final class Operation {
+        /**
+         * position in the batch
+         */
+        private final int index;
+
+        /**
+         * report type
+         */
+        private final String reporttype;
+
+        /**
+         * report action
+         */
+        private final String action;
+
+        /**
+         * report id or reference, null for none
+         */
+        private final String id;
+
+        /**
+         * properties, null for none
+         */
+        private final Map<String, String> properties;
+
+        /**
+         * entry of the response for this operation
+         */
+        private final CompletableFuture<Map<String, String>> result =
+                new CompletableFuture<>();
+
+        /**
+         * creates an operation
+         * @param index position in the batch
+         * @param reporttype report type
+         * @param action report action
+         * @param id report id or reference
+         * @param properties properties
+         */
+        private Operation(final int index,
+                          final String reporttype,
+                          final String action,
+                          final String id,
+                          final Map<String, String> properties) {
+            this.index = index;
+            this.reporttype = reporttype;
+            this.action = action;
+            this.id = id;
+            if (properties == null) {
+                this.properties = null;
+            } else {
+                this.properties = new HashMap<>(properties);
+            }
+        }
+
+        /**
+         * gets a reference to the report id this operation produces or
+         * acts on, usable as the id of later operations in the batch
+         * @return reference
+         */
+        public String reference() {
+            return "@" + index;
+        }
+
+        /**
+         * gets the entry of the response for this operation. The entry
+         * holds status and message, plus reportid for adds and the
+         * report data for gets.
+         * @return future completed when the batch is answered
+         */
+        public CompletableFuture<Map<String, String>> result() {
+            return result;
+        }
+
+        /**
+         * gets the entry of the response for this operation once the
+         * batch has been sent
+         * @return entry
+         * @throws BackendRequestException if the batch or the operation
+         *         failed
+         */
+        public Map<String, String> get() throws BackendRequestException {
+            if (!result.isDone()) {
+                throw new IllegalStateException("batch not sent");
+            }
+
+            final Map<String, String> entry;
+            try {
+                entry = result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BackendRequestException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof BackendRequestException) {
+                    throw (BackendRequestException) e.getCause();
+                }
+                throw new BackendRequestException(e.getCause());
+            }
+
+            if (!"success".equals(entry.get("status"))) {
+                throw new BackendRequestException(entry.get("message"));
+            }
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package frontpage.backend.report;
+
+import frontpage.backend.rest.RESTExecutor;
+import frontpage.backend.rest.RequestScheduler;
+import frontpage.backend.rest.RequestScheduler.Priority;
+import frontpage.bind.CancellationToken;
+import frontpage.bind.GlobalProperties;
+import org.apache.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author willstuckey
+ * <p>Collects report operations issued close together into batches.</p>
+ *
+ * The first operation submitted for a set of credentials opens a
+ * batch; operations with the same credentials that arrive within the
+ * batch window join it, and the batch is sent on the I/O executor when
+ * the window closes or it reaches its size limit. The window and the
+ * limit are read from the report-batch-window (milliseconds) and
+ * report-batch-size properties; a window of zero sends every operation
+ * on its own. A batch is sent early if the deadline of one of its
+ * operations would pass before the window closes.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ReportBatcher {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * default batch window in milliseconds
+     */
+    private static final int DEFAULT_WINDOW = 5;
+
+    /**
+     * default largest number of operations per batch, half the server
+     * limit
+     */
+    private static final int DEFAULT_SIZE = 32;
+
+    /**
+     * shared batcher
+     */
+    private static final ReportBatcher INSTANCE;
+
+    static {
+        LOGGER = Logger.getLogger(ReportBatcher.class.getName());
+        INSTANCE = new ReportBatcher(
+                GlobalProperties.getInt("report-batch-window",
+                        DEFAULT_WINDOW),
+                GlobalProperties.getInt("report-batch-size", DEFAULT_SIZE));
+    }
+
+    /**
+     * batch window in milliseconds
+     */
+    private final long window;
+
+    /**
+     * largest number of operations per batch
+     */
+    private final int size;
+
+    /**
+     * open batches by credentials
+     */
+    private final Map<String, ReportBatch> open = new HashMap<>();
+
+    /**
+     * creates a batcher
+     * @param window batch window in milliseconds
+     * @param size largest number of operations per batch
+     */
+    private ReportBatcher(final long window, final int size) {
+        this.window = window;
+        this.size = Math.max(1, size);
+    }
+
+    /**
+     * gets the shared batcher
+     * @return batcher
+     */
+    public static ReportBatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * submits an operation to the open batch for its credentials
+     * @param email email for auth, null for reads
+     * @param tok token for auth, null for reads
+     * @param reporttype ReportBatch.SOURCE or ReportBatch.PURITY
+     * @param action ADD, GET, UPDATE or DELETE
+     * @param id report id, null for adds
+     * @param properties report properties, null for none
+     * @return future completed with the entry of the response for the
+     *         operation
+     */
+    public CompletableFuture<Map<String, String>> submit(
+            final String email,
+            final String tok,
+            final String reporttype,
+            final String action,
+            final String id,
+            final Map<String, String> properties) {
+        final String key = key(email, tok);
+        final ReportBatch batch;
+        final ReportBatch.Operation op;
+        final boolean opened;
+        final boolean full;
+        synchronized (this) {
+            ReportBatch b = open.get(key);
+            opened = (b == null);
+            if (opened) {
+                b = new ReportBatch(email, tok);
+                open.put(key, b);
+            }
+
+            op = b.enqueue(reporttype, action, id, properties);
+            // an operation that cannot wait out the window is sent now
+            full = (window <= 0) || (b.size() >= size)
+                    || (b.getDeadline().remainingMillis() <= window);
+            if (full) {
+                open.remove(key);
+            }
+            batch = b;
+        }
+
+        if (full) {
+            send(batch);
+        } else if (opened) {
+            RESTExecutor.getTimer().schedule(() -> expire(key, batch),
+                    window, TimeUnit.MILLISECONDS);
+        }
+        return op.result();
+    }
+
+    /**
+     * sends a batch when its window closes, unless it already filled
+     * @param key credentials key
+     * @param batch batch
+     */
+    private void expire(final String key, final ReportBatch batch) {
+        synchronized (this) {
+            if (open.get(key) != batch) {
+                return;
+            }
+            open.remove(key);
+        }
+        send(batch);
+    }
+
+    /**
+     * sends a batch on the I/O executor
+     * @param batch batch
+     */
+    private void send(final ReportBatch batch) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("sending report batch of " + batch.size());
+        }
+        // a batch serves callers from any view, so leaving one view
+        // must not cancel it
+        RequestScheduler.submit(Priority.INTERACTIVE,
+                CancellationToken.NONE, () -> {
+            batch.send();
+            return null;
+        }).whenComplete((r, t) -> {
+            if (t != null) {
+                batch.fail(t);
+            }
+        });
+    }
+
+    /**
+     * builds the key batches are grouped by
+     * @param email email
+     * @param tok token
+     * @return key
+     */
+    private static String key(final String email, final String tok) {
+        String ret = "";
+        if (email != null) {
+            ret += email;
+        }
+        ret += "\n";
+        if (tok != null) {
+            ret += tok;
+        }
+        return ret;
+    }
+}
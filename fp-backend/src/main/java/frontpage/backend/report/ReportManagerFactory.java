@@ -1,8 +1,8 @@
 package frontpage.backend.report;
 
+import frontpage.bind.Logging;
 import frontpage.bind.report.PurityReportManager;
 import frontpage.bind.report.SourceReportManager;
-import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import java.util.HashMap;
@@ -43,7 +43,7 @@ public final class ReportManagerFactory {
 
     static {
         LOGGER = Logger.getLogger(ReportManagerFactory.class.getName());
-        LOGGER.setLevel(Level.ALL);
+        Logging.configure(LOGGER);
         SOURCE_REPORT_MANAGER_MAP = new HashMap<>();
         PURITY_REPORT_MANAGER_MAP = new HashMap<>();
         SOURCE_REPORT_MANAGER_MAP.put("remote",
@@ -52,8 +52,12 @@ public final class ReportManagerFactory {
                 LocalSourceReportManager.class);
         PURITY_REPORT_MANAGER_MAP.put("remote",
                 RemotePurityReportManager.class);
+        SOURCE_REPORT_MANAGER_MAP.put("embedded",
+                EmbeddedSourceReportManager.class);
         PURITY_REPORT_MANAGER_MAP.put("local",
                 LocalPurityReportManager.class);
+        PURITY_REPORT_MANAGER_MAP.put("embedded",
+                EmbeddedPurityReportManager.class);
     }
 
     /**
@@ -0,0 +1,758 @@
+package frontpage.backend.report;
+
+import frontpage.backend.store.LogStore;
+import frontpage.backend.store.SnapshotFile;
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.report.ReportQuery;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * @author willstuckey
+ * <p>Concurrent in-memory table of reports for the local backend.</p>
+ *
+ * Rows are kept in a concurrent hash map keyed by report id as
+ * immutable maps, so readers never lock and never see a row half
+ * updated. Writes to one report are serialized by the per key compute
+ * of that map, which also keeps the secondary indexes in step. An
+ * index maps a column value to the ids of the reports holding it. A
+ * reader may briefly find an id under a value the row no longer has,
+ * so every lookup rechecks the row it lands on. Insertion order is
+ * kept for most recent listings. Attached to a log store, each change
+ * is appended from within the same compute, so the log orders changes
+ * to a report as the table does, and is durable before a write returns.
+ *
+ * Reports loaded from a mapped snapshot stay in the snapshot as the
+ * base of the table and are only decoded when read. The map holds the
+ * reports changed or added since, which shadow the base, and the base
+ * reports deleted since are remembered so they stay hidden.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+final class ReportTable {
+    /**
+     * column holding the report id
+     */
+    static final String ID = "reportid";
+
+    /**
+     * columns of every row
+     */
+    private final List<String> columns;
+
+    /**
+     * secondary indexes by column, from value to report ids
+     */
+    private final Map<String, Map<String, Set<String>>> indexes;
+
+    /**
+     * rows added or changed since the base was loaded, by report id
+     */
+    private final Map<String, Row> rows = new ConcurrentHashMap<>();
+
+    /**
+     * ids of reports added since the base was loaded, by insertion
+     * sequence
+     */
+    private final ConcurrentSkipListMap<Long, String> order =
+            new ConcurrentSkipListMap<>();
+
+    /**
+     * ids of base reports deleted since the base was loaded
+     */
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * last insertion sequence handed out, base reports take the first
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * number of reports
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * snapshot section holding the base reports, null if none
+     */
+    private volatile SnapshotFile.Section base;
+
+    /**
+     * log changes are appended to, null if not persisted
+     */
+    private volatile LogStore store;
+
+    /**
+     * table name in the log
+     */
+    private volatile String name;
+
+    /**
+     * creates a table
+     * @param columns columns of every row, including the report id
+     * @param indexed columns with a secondary index
+     */
+    ReportTable(final List<String> columns,
+                final Collection<String> indexed) {
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        final Map<String, Map<String, Set<String>>> idx = new HashMap<>();
+        for (final String column : indexed) {
+            if (!columns.contains(column)) {
+                throw new IllegalArgumentException("no column " + column);
+            }
+            idx.put(column, new ConcurrentHashMap<>());
+        }
+        this.indexes = Collections.unmodifiableMap(idx);
+    }
+
+    /**
+     * persists the table to a log store, which loads its snapshot and
+     * replays its log into the table when opened
+     * @param log store, null to stop persisting
+     * @param table table name in the log
+     */
+    void attach(final LogStore log, final String table) {
+        this.name = table;
+        this.store = log;
+        if (log == null) {
+            return;
+        }
+
+        log.register(table, new LogStore.Table() {
+            @Override
+            public void apply(final String key,
+                              final Map<String, String> values) {
+                restore(key, values);
+            }
+
+            @Override
+            public void snapshot(
+                    final BiConsumer<String, Map<String, String>> out) {
+                recent(0, row -> out.accept(row.get(ID), row));
+            }
+
+            @Override
+            public Collection<String> indexed() {
+                return indexes.keySet();
+            }
+
+            @Override
+            public void load(final SnapshotFile.Section section) {
+                loadBase(section);
+            }
+        });
+    }
+
+    /**
+     * makes a snapshot section the base of the table. Must be called
+     * before anything else is put in the table.
+     * @param section section
+     */
+    void loadBase(final SnapshotFile.Section section) {
+        base = section;
+        count.set(section.size());
+        sequence.set(section.size());
+    }
+
+    /**
+     * inserts a report under a new id. Columns not given are blank.
+     * @param values column values, unknown columns are ignored
+     * @return report id
+     * @throws IOException if the report could not be persisted
+     */
+    String insert(final Map<String, String> values) throws IOException {
+        final String id = UUID.randomUUID().toString();
+        final Map<String, String> row = new HashMap<>();
+        for (final String column : columns) {
+            row.put(column, blankIfNull(values.get(column)));
+        }
+        row.put(ID, id);
+
+        final long seq = sequence.incrementAndGet();
+        final List<CompletableFuture<Void>> pending = new ArrayList<>(1);
+        rows.compute(id, (k, old) -> {
+            final Row r = new Row(seq, row);
+            index(id, null, r);
+            order.put(seq, id);
+            count.incrementAndGet();
+            log(pending, id, r.values);
+            return r;
+        });
+        await(pending);
+        return id;
+    }
+
+    /**
+     * overwrites the columns of a report given non-empty values, keeping
+     * stored values for the rest. The report id cannot be changed.
+     * @param id report id
+     * @param values column values, unknown columns are ignored
+     * @return if the report exists
+     * @throws IOException if the change could not be persisted
+     */
+    boolean update(final String id, final Map<String, String> values)
+            throws IOException {
+        if (id == null) {
+            return false;
+        }
+
+        final List<CompletableFuture<Void>> pending = new ArrayList<>(1);
+        rows.compute(id, (k, old) -> {
+            final Row cur = current(id, old);
+            if (cur == null) {
+                return null;
+            }
+
+            final Map<String, String> row = new HashMap<>(cur.values);
+            for (final String column : columns) {
+                final String val = values.get(column);
+                if (!ID.equals(column) && (val != null) && !val.isEmpty()) {
+                    row.put(column, val);
+                }
+            }
+            final Row r = new Row(cur.seq, row);
+            index(id, old, r);
+            log(pending, id, r.values);
+            return r;
+        });
+        await(pending);
+        return !pending.isEmpty();
+    }
+
+    /**
+     * deletes a report
+     * @param id report id
+     * @return if the report existed
+     * @throws IOException if the deletion could not be persisted
+     */
+    boolean delete(final String id) throws IOException {
+        if (id == null) {
+            return false;
+        }
+
+        final List<CompletableFuture<Void>> pending = new ArrayList<>(1);
+        rows.compute(id, (k, old) -> {
+            if (remove(id, old)) {
+                log(pending, id, null);
+            }
+            return null;
+        });
+        await(pending);
+        return !pending.isEmpty();
+    }
+
+    /**
+     * puts or removes a report replayed from the log, without logging it
+     * again. A known report keeps its place in insertion order.
+     * @param id report id
+     * @param values full report, null if deleted
+     */
+    void restore(final String id, final Map<String, String> values) {
+        if (values == null) {
+            rows.compute(id, (k, old) -> {
+                remove(id, old);
+                return null;
+            });
+            return;
+        }
+
+        final Map<String, String> row = new HashMap<>();
+        for (final String column : columns) {
+            row.put(column, blankIfNull(values.get(column)));
+        }
+        row.put(ID, id);
+        rows.compute(id, (k, old) -> {
+            final Row cur = current(id, old);
+            long seq;
+            if (cur == null) {
+                seq = sequence.incrementAndGet();
+                order.put(seq, id);
+                deleted.remove(id);
+                count.incrementAndGet();
+            } else {
+                seq = cur.seq;
+            }
+            final Row r = new Row(seq, row);
+            index(id, old, r);
+            return r;
+        });
+    }
+
+    /**
+     * gets a report
+     * @param id report id
+     * @return copy of the report, null if there is none
+     */
+    Map<String, String> get(final String id) {
+        if (id == null) {
+            return null;
+        }
+
+        final Row r = current(id, rows.get(id));
+        if (r == null) {
+            return null;
+        }
+        return new HashMap<>(r.values);
+    }
+
+    /**
+     * hands the most recent reports to a consumer, oldest first
+     * @param num number of reports, 0 or less for all of them
+     * @param consumer receives a copy of each report
+     */
+    void recent(final int num, final Consumer<Map<String, String>> consumer) {
+        final SnapshotFile.Section b = base;
+        if (num <= 0) {
+            if (b != null) {
+                for (int i = 0; i < b.size(); i++) {
+                    final Map<String, String> row = baseRow(b, i);
+                    if (row != null) {
+                        consumer.accept(row);
+                    }
+                }
+            }
+            for (final String id : order.values()) {
+                accept(id, consumer);
+            }
+            return;
+        }
+
+        final Deque<Map<String, String>> ret = new ArrayDeque<>(num);
+        final Iterator<String> it = order.descendingMap().values().iterator();
+        while (it.hasNext() && (ret.size() < num)) {
+            accept(it.next(), ret::addFirst);
+        }
+        if (b != null) {
+            for (int i = b.size() - 1; (i >= 0) && (ret.size() < num); i--) {
+                final Map<String, String> row = baseRow(b, i);
+                if (row != null) {
+                    ret.addFirst(row);
+                }
+            }
+        }
+        for (final Map<String, String> row : ret) {
+            consumer.accept(row);
+        }
+    }
+
+    /**
+     * hands a page of reports to a consumer, in insertion order
+     * @param pageSize largest number of reports in the page
+     * @param after insertion sequence of the last report of the previous
+     *              page, 0 for the first page
+     * @param consumer receives a copy of each report
+     * @return insertion sequence of the last report handed out, 0 if no
+     *         report follows it
+     */
+    long page(final int pageSize,
+              final long after,
+              final Consumer<Map<String, String>> consumer) {
+        final SnapshotFile.Section b = base;
+        int n = 0;
+        long last = after;
+        if (b != null) {
+            for (long s = after + 1; (s <= b.size()) && (n < pageSize); s++) {
+                final Map<String, String> row = baseRow(b, (int) (s - 1));
+                last = s;
+                if (row != null) {
+                    consumer.accept(row);
+                    n++;
+                }
+            }
+        }
+
+        final Iterator<Map.Entry<Long, String>> it =
+                order.tailMap(last, false).entrySet().iterator();
+        while (it.hasNext() && (n < pageSize)) {
+            final Map.Entry<Long, String> e = it.next();
+            last = e.getKey();
+            final Row r = rows.get(e.getValue());
+            if (r != null) {
+                consumer.accept(new HashMap<>(r.values));
+                n++;
+            }
+        }
+
+        if (((b != null) && (last < b.size()))
+                || (order.higherKey(last) != null)) {
+            return last;
+        }
+        return 0;
+    }
+
+    /**
+     * finds the reports matching a query. The indexed column whose
+     * equality clause matches the fewest reports narrows the search, a
+     * full scan is made if no such clause is on an indexed column.
+     * @param query query
+     * @return copies of the matching reports, oldest first
+     */
+    List<Map<String, String>> find(final ReportQuery query) {
+        final SnapshotFile.Section b = base;
+        Set<String> candidates = null;
+        int[] baseCandidates = null;
+        for (final ReportQuery.Clause c : query.getClauses()) {
+            final Map<String, Set<String>> index = indexes.get(c.getField());
+            final String value = c.getValues().get(0);
+            if ((c.getOperator() != ReportQuery.Operator.EQ)
+                    || (index == null) || value.isEmpty()) {
+                continue;
+            }
+
+            Set<String> ids = index.get(value);
+            if (ids == null) {
+                ids = Collections.emptySet();
+            }
+            int[] ordinals = new int[0];
+            if ((b != null) && b.isIndexed(c.getField())) {
+                ordinals = b.lookup(c.getField(), value);
+            }
+            if ((candidates == null) || (ids.size() + ordinals.length
+                    < candidates.size() + baseCandidates.length)) {
+                candidates = ids;
+                baseCandidates = ordinals;
+            }
+        }
+
+        // keyed by id, a row moving from the base to the map while the
+        // search runs may otherwise be found twice
+        final Map<String, Row> matches = new LinkedHashMap<>();
+        if (candidates == null) {
+            for (final Row r : rows.values()) {
+                match(r, query, matches);
+            }
+            if (b != null) {
+                for (int i = 0; i < b.size(); i++) {
+                    match(baseCandidate(b, i), query, matches);
+                }
+            }
+        } else {
+            for (final String id : candidates) {
+                match(rows.get(id), query, matches);
+            }
+            for (final int i : baseCandidates) {
+                match(baseCandidate(b, i), query, matches);
+            }
+        }
+
+        final List<Row> sorted = new ArrayList<>(matches.values());
+        sorted.sort((x, y) -> Long.compare(x.seq, y.seq));
+        final List<Map<String, String>> ret = new ArrayList<>(sorted.size());
+        for (final Row r : sorted) {
+            ret.add(new HashMap<>(r.values));
+        }
+        return ret;
+    }
+
+    /**
+     * gets the number of reports
+     * @return size
+     */
+    int size() {
+        return count.get();
+    }
+
+    /**
+     * gets the columns of every row
+     * @return columns
+     */
+    List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * checks the size of a page asked for
+     * @param pageSize largest number of reports in the page
+     * @return page size
+     * @throws BackendRequestException if not positive
+     */
+    static int checkPageSize(final int pageSize)
+            throws BackendRequestException {
+        if (pageSize <= 0) {
+            throw new BackendRequestException("invalid page size "
+                    + pageSize);
+        }
+        return pageSize;
+    }
+
+    /**
+     * decodes a cursor handed out with a page
+     * @param cursor cursor, null for the first page
+     * @return insertion sequence of the last report of the previous
+     *         page, 0 for the first page
+     * @throws BackendRequestException if the cursor is not one handed out
+     */
+    static long parseCursor(final String cursor)
+            throws BackendRequestException {
+        if (cursor == null) {
+            return 0;
+        }
+
+        final long ret;
+        try {
+            ret = Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new BackendRequestException("invalid cursor " + cursor, e);
+        }
+        if (ret <= 0) {
+            throw new BackendRequestException("invalid cursor " + cursor);
+        }
+        return ret;
+    }
+
+    /**
+     * encodes the cursor of the next page
+     * @param after insertion sequence of the last report of the page, 0
+     *              if no report follows it
+     * @return cursor, null after the last page
+     */
+    static String formatCursor(final long after) {
+        if (after <= 0) {
+            return null;
+        }
+        return Long.toString(after);
+    }
+
+    /**
+     * gets the current row of a report, reading it from the base if it
+     * has not changed since the base was loaded
+     * @param id report id
+     * @param old row in the map, null if none
+     * @return row, null if there is no such report
+     */
+    private Row current(final String id, final Row old) {
+        if (old != null) {
+            return old;
+        }
+
+        final SnapshotFile.Section b = base;
+        if ((b == null) || deleted.contains(id)) {
+            return null;
+        }
+        final int ordinal = b.find(id);
+        if (ordinal < 0) {
+            return null;
+        }
+        return new Row(ordinal + 1L, b.values(ordinal));
+    }
+
+    /**
+     * removes a report. Called from within the compute of the row.
+     * @param id report id
+     * @param old row in the map, null if none
+     * @return if the report existed
+     */
+    private boolean remove(final String id, final Row old) {
+        final Row cur = current(id, old);
+        if (cur == null) {
+            return false;
+        }
+
+        order.remove(cur.seq);
+        final SnapshotFile.Section b = base;
+        if ((b != null) && (cur.seq <= b.size())) {
+            deleted.add(id);
+        }
+        index(id, cur, null);
+        count.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * gets a base report as a row, unless it changed since the base was
+     * loaded
+     * @param b base
+     * @param ordinal ordinal in the base
+     * @return row, null if the report changed or was deleted
+     */
+    private Row baseCandidate(final SnapshotFile.Section b,
+                              final int ordinal) {
+        final String id = b.key(ordinal);
+        if (rows.containsKey(id) || deleted.contains(id)) {
+            return null;
+        }
+        return new Row(ordinal + 1L, b.values(ordinal));
+    }
+
+    /**
+     * gets a copy of the current version of a base report
+     * @param b base
+     * @param ordinal ordinal in the base
+     * @return report, null if it was deleted
+     */
+    private Map<String, String> baseRow(final SnapshotFile.Section b,
+                                        final int ordinal) {
+        final String id = b.key(ordinal);
+        final Row r = rows.get(id);
+        if (r != null) {
+            return new HashMap<>(r.values);
+        }
+        if (deleted.contains(id)) {
+            return null;
+        }
+        return b.values(ordinal);
+    }
+
+    /**
+     * adds a row to the matches if it matches the query
+     * @param r row, may be null
+     * @param query query
+     * @param matches matches by report id
+     */
+    private static void match(final Row r,
+                              final ReportQuery query,
+                              final Map<String, Row> matches) {
+        if ((r != null) && query.matches(r.values)) {
+            matches.put(r.values.get(ID), r);
+        }
+    }
+
+    /**
+     * appends a change to the log, if persisted. Called from within the
+     * compute of the row.
+     * @param pending receives the future of the append
+     * @param id report id
+     * @param values full report, null if deleted
+     */
+    private void log(final List<CompletableFuture<Void>> pending,
+                     final String id,
+                     final Map<String, String> values) {
+        final LogStore log = store;
+        if (log == null) {
+            pending.add(null);
+        } else {
+            pending.add(log.append(name, id, values));
+        }
+    }
+
+    /**
+     * waits for logged changes to be durable
+     * @param pending futures of the appends
+     * @throws IOException if a change could not be persisted
+     */
+    private static void await(final List<CompletableFuture<Void>> pending)
+            throws IOException {
+        for (final CompletableFuture<Void> f : pending) {
+            LogStore.await(f);
+        }
+    }
+
+    /**
+     * hands a copy of a report to a consumer, if it still exists
+     * @param id report id
+     * @param consumer consumer
+     */
+    private void accept(final String id,
+                        final Consumer<Map<String, String>> consumer) {
+        final Row r = rows.get(id);
+        if (r != null) {
+            consumer.accept(new HashMap<>(r.values));
+        }
+    }
+
+    /**
+     * moves a report between index entries. New entries are added before
+     * old ones are removed so a concurrent lookup never misses the row.
+     * Called from within the compute of the row. A base report is only
+     * in the index of the base, which stops answering for it once it is
+     * in the map, so when it first changes every value of the new row is
+     * added, not just the values that changed.
+     * @param id report id
+     * @param old previous row in the map, null if inserted or the report
+     *            was read from the base
+     * @param now new row, null if deleted
+     */
+    private void index(final String id, final Row old, final Row now) {
+        for (final Map.Entry<String, Map<String, Set<String>>> e
+                : indexes.entrySet()) {
+            final String column = e.getKey();
+            final Map<String, Set<String>> index = e.getValue();
+            String before = "";
+            if (old != null) {
+                before = blankIfNull(old.values.get(column));
+            }
+            String after = "";
+            if (now != null) {
+                after = blankIfNull(now.values.get(column));
+            }
+            if (before.equals(after)) {
+                continue;
+            }
+
+            if (!after.isEmpty()) {
+                index.compute(after, (v, ids) -> {
+                    Set<String> set = ids;
+                    if (set == null) {
+                        set = ConcurrentHashMap.newKeySet();
+                    }
+                    set.add(id);
+                    return set;
+                });
+            }
+            if (!before.isEmpty()) {
+                index.computeIfPresent(before, (v, ids) -> {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        return null;
+                    }
+                    return ids;
+                });
+            }
+        }
+    }
+
+    /**
+     * replaces null with a blank value
+     * @param val value
+     * @return value, blank if null
+     */
+    private static String blankIfNull(final String val) {
+        if (val == null) {
+            return "";
+        }
+        return val;
+    }
+
+    /**
+     * immutable report row
+     */
+    private static final class Row {
+        /**
+         * insertion sequence
+         */
+        private final long seq;
+
+        /**
+         * column values
+         */
+        private final Map<String, String> values;
+
+        /**
+         * creates a row
+         * @param seq insertion sequence
+         * @param values column values, not copied
+         */
+        private Row(final long seq, final Map<String, String> values) {
+            this.seq = seq;
+            this.values = Collections.unmodifiableMap(values);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package frontpage.backend.rest;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author willstuckey
+ * <p>Circuit breaker for one api entry point.</p>
+ *
+ * The breaker opens after a number of consecutive failed requests,
+ * failing every request immediately while open instead of letting
+ * them queue behind a server that is down. Once the open period has
+ * passed a single trial request is let through; its success closes
+ * the breaker and its failure opens it again.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class CircuitBreaker {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+    }
+
+    /**
+     * breaker states
+     */
+    public enum State {
+        /**
+         * requests flow
+         */
+        CLOSED,
+
+        /**
+         * requests fail fast
+         */
+        OPEN,
+
+        /**
+         * one trial request is in flight
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * name of the guarded entry point
+     */
+    private final String name;
+
+    /**
+     * consecutive failures that open the breaker
+     */
+    private final int threshold;
+
+    /**
+     * time the breaker stays open, in milliseconds
+     */
+    private final long openMillis;
+
+    /**
+     * current state
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * consecutive failures
+     */
+    private int failures;
+
+    /**
+     * time the breaker opened, in milliseconds
+     */
+    private long openedAt;
+
+    /**
+     * requests failed fast
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * creates a breaker
+     * @param name name of the guarded entry point
+     * @param threshold consecutive failures that open the breaker
+     * @param openMillis time the breaker stays open, in milliseconds
+     */
+    CircuitBreaker(final String name,
+                   final int threshold,
+                   final long openMillis) {
+        this.name = name;
+        this.threshold = Math.max(1, threshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * asks to make a request, moving an expired open breaker to half
+     * open
+     * @return if the request may be made
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        if ((state == State.OPEN)
+                && (System.currentTimeMillis() - openedAt >= openMillis)) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * returns if requests are currently failing fast
+     * @return if open
+     */
+    public synchronized boolean isOpen() {
+        return (state == State.OPEN)
+                && (System.currentTimeMillis() - openedAt < openMillis);
+    }
+
+    /**
+     * records a successful request
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.info("circuit closed for " + name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * records a failed request
+     */
+    public synchronized void onFailure() {
+        failures++;
+        if ((state == State.HALF_OPEN)
+                || ((state == State.CLOSED) && (failures >= threshold))) {
+            LOGGER.warn("circuit opened for " + name + " after "
+                    + failures + " failures");
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * records a request abandoned before its outcome was known. A trial
+     * request abandoned while half open lets the next request try
+     * again.
+     */
+    synchronized void onAbandoned() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis() - openMillis;
+        }
+    }
+
+    /**
+     * gets the current state
+     * @return state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * gets the number of requests failed fast
+     * @return requests
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * toString
+     * @return string
+     */
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker[" + name + ", " + state
+                + ", failures=" + failures + "]";
+    }
+}
@@ -0,0 +1,547 @@
+package frontpage.backend.rest;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * @author willstuckey
+ * <p>Column oriented store for the dynamic entries of a response.</p>
+ *
+ * A listing returned as one HashMap per entry repeats every key and
+ * every low cardinality value (type, condition, user) in each row.
+ * Here column names are stored once and each column keeps its values
+ * in a single array. Columns start dictionary encoded, storing an int
+ * code per row into a table of distinct values, and fall back to a
+ * plain value array once they prove to be high cardinality. Rows are
+ * still available as read only Map views for callers written against
+ * the array of maps.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ColumnarReport {
+    /**
+     * number of distinct values after which a column is stored plainly
+     */
+    private static final int DICTIONARY_LIMIT = 256;
+
+    /**
+     * initial row capacity of a column
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * report the entries were read from
+     */
+    private final RESTReport report;
+
+    /**
+     * column names
+     */
+    private final String[] columns;
+
+    /**
+     * column positions by name
+     */
+    private final Map<String, Integer> columnIndex;
+
+    /**
+     * column values
+     */
+    private final Column[] data;
+
+    /**
+     * number of entries
+     */
+    private final int rows;
+
+    /**
+     * creates a columnar report
+     * @param report report the entries were read from
+     * @param columns column names
+     * @param data column values
+     * @param rows number of entries
+     */
+    private ColumnarReport(final RESTReport report,
+                           final String[] columns,
+                           final Column[] data,
+                           final int rows) {
+        this.report = report;
+        this.columns = columns;
+        this.data = data;
+        this.rows = rows;
+        this.columnIndex = new HashMap<>(columns.length * 2);
+        for (int i = 0; i < columns.length; i++) {
+            columnIndex.put(columns[i], i);
+        }
+    }
+
+    /**
+     * creates a columnar report from the dynamic entries of a report
+     * @param report report
+     * @return columnar report
+     */
+    public static ColumnarReport from(final RESTReport report) {
+        final Builder builder = builder();
+        final Map<String, String>[] values = report.getResponseValues();
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] != null) {
+                builder.accept(values[i]);
+            }
+        }
+        return builder.build(report);
+    }
+
+    /**
+     * creates a builder. Builders are row consumers, so they can be
+     * handed to RESTHandler.apiRequest to collect a listing as it
+     * streams in.
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * gets the report the entries were read from, for status checks and
+     * response metadata
+     * @return report
+     */
+    public RESTReport getReport() {
+        return report;
+    }
+
+    /**
+     * gets the response metadata
+     * @return metadata
+     */
+    public Map<String, String> getMetadata() {
+        return report.getSingleResponseMap();
+    }
+
+    /**
+     * gets the number of entries
+     * @return entries
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * gets the column names
+     * @return column names
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * returns if a column is dictionary encoded
+     * @param column column name
+     * @return if the column is dictionary encoded, false if absent
+     */
+    public boolean isDictionaryEncoded(final String column) {
+        final Integer c = columnIndex.get(column);
+        return (c != null) && (data[c].codes != null);
+    }
+
+    /**
+     * gets a value
+     * @param row entry
+     * @param column column name
+     * @return value, null if the entry has no such key
+     */
+    public String get(final int row, final String column) {
+        if ((row < 0) || (row >= rows)) {
+            throw new IndexOutOfBoundsException("row " + row);
+        }
+
+        final Integer c = columnIndex.get(column);
+        if (c == null) {
+            return null;
+        }
+        return data[c].get(row);
+    }
+
+    /**
+     * gets a read only map view of an entry
+     * @param row entry
+     * @return entry
+     */
+    public Map<String, String> getRow(final int row) {
+        if ((row < 0) || (row >= rows)) {
+            throw new IndexOutOfBoundsException("row " + row);
+        }
+        return new RowView(row);
+    }
+
+    /**
+     * gets a read only list of entry views
+     * @return entries
+     */
+    public List<Map<String, String>> asList() {
+        return new AbstractList<Map<String, String>>() {
+            @Override
+            public Map<String, String> get(final int index) {
+                return getRow(index);
+            }
+
+            @Override
+            public int size() {
+                return rows;
+            }
+        };
+    }
+
+    /**
+     * materializes the report in the layout of
+     * RESTReport.getResponseValues, metadata first
+     * @return array of maps
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String>[] toMapArray() {
+        final Map<String, String>[] ret =
+                (Map<String, String>[]) new HashMap[rows + 1];
+        ret[0] = new HashMap<>(getMetadata());
+        for (int i = 0; i < rows; i++) {
+            ret[i + 1] = new HashMap<>(getRow(i));
+        }
+        return ret;
+    }
+
+    /**
+     * toString
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return "ColumnarReport[rows=" + rows
+                + ", columns=" + Arrays.toString(columns) + "]";
+    }
+
+    /**
+     * values of one column
+     */
+    private static final class Column {
+        /**
+         * dictionary codes, -1 where absent, null if stored plainly
+         */
+        private int[] codes;
+
+        /**
+         * distinct values, null if stored plainly
+         */
+        private List<String> dictionary;
+
+        /**
+         * dictionary positions by value, only kept while building
+         */
+        private Map<String, Integer> lookup;
+
+        /**
+         * plain values, null where absent, null if dictionary encoded
+         */
+        private String[] values;
+
+        /**
+         * number of rows written
+         */
+        private int size;
+
+        /**
+         * creates an empty dictionary encoded column
+         */
+        private Column() {
+            codes = new int[INITIAL_CAPACITY];
+            dictionary = new ArrayList<>();
+            lookup = new HashMap<>();
+        }
+
+        /**
+         * gets a value
+         * @param row row
+         * @return value, null if absent
+         */
+        private String get(final int row) {
+            if (codes == null) {
+                return values[row];
+            }
+
+            final int code = codes[row];
+            if (code < 0) {
+                return null;
+            }
+            return dictionary.get(code);
+        }
+
+        /**
+         * writes a value, marking skipped rows absent
+         * @param row row
+         * @param value value, null for absent
+         */
+        private void set(final int row, final String value) {
+            pad(row);
+            ensureCapacity(row + 1);
+            if (codes == null) {
+                values[row] = value;
+            } else if (value == null) {
+                codes[row] = -1;
+            } else {
+                Integer code = lookup.get(value);
+                if (code == null) {
+                    if (dictionary.size() >= DICTIONARY_LIMIT) {
+                        toPlain();
+                        values[row] = value;
+                        size = row + 1;
+                        return;
+                    }
+                    code = dictionary.size();
+                    dictionary.add(value);
+                    lookup.put(value, code);
+                }
+                codes[row] = code;
+            }
+            size = row + 1;
+        }
+
+        /**
+         * marks rows up to a row absent
+         * @param row first row not padded
+         */
+        private void pad(final int row) {
+            if (size >= row) {
+                return;
+            }
+
+            ensureCapacity(row);
+            if (codes != null) {
+                Arrays.fill(codes, size, row, -1);
+            }
+            size = row;
+        }
+
+        /**
+         * grows the backing array
+         * @param capacity minimum capacity
+         */
+        private void ensureCapacity(final int capacity) {
+            if (codes != null) {
+                if (codes.length < capacity) {
+                    codes = Arrays.copyOf(codes,
+                            Math.max(capacity, codes.length * 2));
+                }
+            } else if (values.length < capacity) {
+                values = Arrays.copyOf(values,
+                        Math.max(capacity, values.length * 2));
+            }
+        }
+
+        /**
+         * converts the column to plain storage
+         */
+        private void toPlain() {
+            values = new String[codes.length];
+            for (int i = 0; i < size; i++) {
+                values[i] = get(i);
+            }
+            codes = null;
+            dictionary = null;
+            lookup = null;
+        }
+
+        /**
+         * trims the column to its final row count and drops build state
+         * @param rows row count
+         */
+        private void finish(final int rows) {
+            pad(rows);
+            if (codes != null) {
+                codes = Arrays.copyOf(codes, rows);
+                dictionary = new ArrayList<>(dictionary);
+                lookup = null;
+            } else {
+                values = Arrays.copyOf(values, rows);
+            }
+        }
+    }
+
+    /**
+     * collects entries into columns
+     */
+    public static final class Builder
+            implements Consumer<Map<String, String>> {
+        /**
+         * column names in order of appearance
+         */
+        private final List<String> names = new ArrayList<>();
+
+        /**
+         * columns in order of appearance
+         */
+        private final List<Column> cols = new ArrayList<>();
+
+        /**
+         * column positions by name
+         */
+        private final Map<String, Integer> index = new HashMap<>();
+
+        /**
+         * number of entries collected
+         */
+        private int count;
+
+        /**
+         * creates a builder
+         */
+        private Builder() { }
+
+        /**
+         * adds an entry
+         * @param row entry
+         */
+        @Override
+        public void accept(final Map<String, String> row) {
+            for (final Map.Entry<String, String> e : row.entrySet()) {
+                Integer c = index.get(e.getKey());
+                if (c == null) {
+                    c = cols.size();
+                    index.put(e.getKey(), c);
+                    names.add(e.getKey());
+                    cols.add(new Column());
+                }
+                cols.get(c).set(count, e.getValue());
+            }
+            count++;
+        }
+
+        /**
+         * builds the report
+         * @param report report the entries were read from
+         * @return columnar report
+         */
+        public ColumnarReport build(final RESTReport report) {
+            final Column[] data = cols.toArray(new Column[cols.size()]);
+            for (final Column c : data) {
+                c.finish(count);
+            }
+            return new ColumnarReport(report,
+                    names.toArray(new String[names.size()]),
+                    data,
+                    count);
+        }
+    }
+
+    /**
+     * read only map view of one entry
+     */
+    private final class RowView extends AbstractMap<String, String> {
+        /**
+         * entry
+         */
+        private final int row;
+
+        /**
+         * creates a view
+         * @param row entry
+         */
+        private RowView(final int row) {
+            this.row = row;
+        }
+
+        @Override
+        public String get(final Object key) {
+            final Integer c = columnIndex.get(key);
+            if (c == null) {
+                return null;
+            }
+            return data[c].get(row);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new EntryIterator(row);
+                }
+
+                @Override
+                public int size() {
+                    int n = 0;
+                    for (final Column c : data) {
+                        if (c.get(row) != null) {
+                            n++;
+                        }
+                    }
+                    return n;
+                }
+            };
+        }
+    }
+
+    /**
+     * iterates the present values of one entry
+     */
+    private final class EntryIterator
+            implements Iterator<Map.Entry<String, String>> {
+        /**
+         * entry
+         */
+        private final int row;
+
+        /**
+         * next column to visit
+         */
+        private int next;
+
+        /**
+         * creates an iterator
+         * @param row entry
+         */
+        private EntryIterator(final int row) {
+            this.row = row;
+            advance();
+        }
+
+        /**
+         * skips columns absent from the entry
+         */
+        private void advance() {
+            while ((next < data.length) && (data[next].get(row) == null)) {
+                next++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < data.length;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            final Map.Entry<String, String> e =
+                    new AbstractMap.SimpleImmutableEntry<>(columns[next],
+                            data[next].get(row));
+            next++;
+            advance();
+            return e;
+        }
+    }
+}
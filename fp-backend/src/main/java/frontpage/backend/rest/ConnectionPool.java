@@ -0,0 +1,425 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.GlobalProperties;
+import org.apache.log4j.Logger;
+
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author willstuckey
+ * <p>Keep-alive connection pool for the remote server.</p>
+ *
+ * The JDK keeps idle HTTP/1.1 connections in a per-destination cache,
+ * but only reuses one if the response body was fully consumed, the
+ * connection was not disconnected, and the same SSL socket factory
+ * instance is used for every request. This class owns that factory,
+ * bounds the number of concurrent connections per host, drains
+ * responses on release so the socket goes back to the cache, and
+ * keeps hit/miss counters. TLS sessions are cached by the shared
+ * SSL context so reconnects resume rather than redo the handshake.
+ *
+ * The keep-alive cache itself is left at the JDK defaults, which keep
+ * idle connections and up to five per destination. Its system
+ * properties are read once, by whichever connection comes first, and
+ * apply to every HTTP user in the process, so the pool does not set
+ * them; the permits alone bound the connections in use.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ConnectionPool {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * size of the buffer used to drain unread response bodies
+     */
+    private static final int DRAIN_BUFFER_SIZE = 1024;
+
+    /**
+     * default number of connections kept per host
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    /**
+     * default number of cached TLS sessions
+     */
+    private static final int DEFAULT_SESSION_CACHE_SIZE = 64;
+
+    /**
+     * default lifetime of cached TLS sessions in seconds
+     */
+    private static final int DEFAULT_SESSION_TIMEOUT = 4 * 60 * 60;
+
+    /**
+     * singleton instance
+     */
+    private static final ConnectionPool INSTANCE;
+
+    static {
+        LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+        INSTANCE = new ConnectionPool(GlobalProperties.getInt(
+                "remote-max-connections", DEFAULT_MAX_CONNECTIONS));
+    }
+
+    /**
+     * maximum number of connections per host
+     */
+    private final int maxConnections;
+
+    /**
+     * per host connection permits
+     */
+    private final Map<String, Semaphore> hostPermits;
+
+    /**
+     * shared socket factory, must be the same instance for every
+     * connection or the keep-alive cache will not match entries
+     */
+    private final SSLSocketFactory socketFactory;
+
+    /**
+     * connections handed out
+     */
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * physical sockets created
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * completed TLS handshakes
+     */
+    private final LongAdder handshakes = new LongAdder();
+
+    /**
+     * TLS handshakes that resumed a cached session
+     */
+    private final LongAdder resumedSessions = new LongAdder();
+
+    /**
+     * creates a connection pool
+     * @param maxConnections maximum connections per host
+     */
+    private ConnectionPool(final int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+        this.hostPermits = new ConcurrentHashMap<>();
+
+        SSLSocketFactory base;
+        try {
+            final SSLContext ctx = SSLContext.getDefault();
+            final SSLSessionContext sessions =
+                    ctx.getClientSessionContext();
+            sessions.setSessionCacheSize(GlobalProperties.getInt(
+                    "tls-session-cache-size", DEFAULT_SESSION_CACHE_SIZE));
+            sessions.setSessionTimeout(GlobalProperties.getInt(
+                    "tls-session-timeout", DEFAULT_SESSION_TIMEOUT));
+            base = ctx.getSocketFactory();
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.error("no default ssl context, "
+                    + "falling back to default socket factory", e);
+            base = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        socketFactory = new CountingSocketFactory(base);
+    }
+
+    /**
+     * gets the connection pool
+     * @return pool
+     */
+    public static ConnectionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * opens a connection to a url, blocking until the host has a free
+     * connection slot
+     * @param url url
+     * @param wait maximum time to wait for a slot in milliseconds,
+     *             normally what is left of the request's deadline
+     * @return connection, must be handed back through release
+     * @throws ExhaustedException if no slot became available in time
+     * @throws IOException if the connection could not be opened
+     */
+    public HttpsURLConnection open(final URL url, final long wait)
+            throws IOException {
+        final Semaphore permits = permitsFor(url);
+        try {
+            if (!permits.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                throw new ExhaustedException(url.getHost(), wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for connection", e);
+        }
+
+        try {
+            final HttpsURLConnection con =
+                    (HttpsURLConnection) url.openConnection();
+            con.setSSLSocketFactory(socketFactory);
+            requests.increment();
+            return con;
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * returns a connection to the pool. Any unread error body is
+     * drained so the underlying socket can be reused.
+     * @param con connection, may be null
+     */
+    public void release(final HttpsURLConnection con) {
+        if (con == null) {
+            return;
+        }
+
+        try {
+            drain(con.getErrorStream());
+        } finally {
+            permitsFor(con.getURL()).release();
+        }
+    }
+
+    /**
+     * closes a connection instead of returning it to the keep-alive
+     * cache, for responses abandoned part way through the body. The
+     * slot it held is freed.
+     * @param con connection, may be null
+     */
+    public void discard(final HttpsURLConnection con) {
+        if (con == null) {
+            return;
+        }
+
+        try {
+            con.disconnect();
+        } finally {
+            permitsFor(con.getURL()).release();
+        }
+    }
+
+    /**
+     * reads and closes a stream so the connection backing it can be
+     * returned to the keep-alive cache
+     * @param in stream, may be null
+     */
+    static void drain(final InputStream in) {
+        if (in == null) {
+            return;
+        }
+
+        final byte[] buf = new byte[DRAIN_BUFFER_SIZE];
+        try {
+            int n = in.read(buf);
+            while (n != -1) {
+                n = in.read(buf);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("failed to drain response stream", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOGGER.debug("failed to close response stream", e);
+            }
+        }
+    }
+
+    /**
+     * gets the permits for a url's host
+     * @param url url
+     * @return permits
+     */
+    private Semaphore permitsFor(final URL url) {
+        return hostPermits.computeIfAbsent(url.getHost().toLowerCase(),
+                h -> new Semaphore(maxConnections, true));
+    }
+
+    /**
+     * gets the maximum number of connections per host
+     * @return connection limit
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * gets the number of requests served by an existing connection
+     * @return pool hits
+     */
+    public long getHits() {
+        return Math.max(0, requests.sum() - misses.sum());
+    }
+
+    /**
+     * gets the number of requests that required a new connection
+     * @return pool misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * gets the number of completed TLS handshakes
+     * @return handshakes
+     */
+    public long getHandshakes() {
+        return handshakes.sum();
+    }
+
+    /**
+     * gets the number of TLS handshakes that resumed a cached session
+     * @return resumed handshakes
+     */
+    public long getResumedSessions() {
+        return resumedSessions.sum();
+    }
+
+    /**
+     * toString
+     * @return pool statistics
+     */
+    @Override
+    public String toString() {
+        return "ConnectionPool[hits=" + getHits()
+                + ", misses=" + getMisses()
+                + ", handshakes=" + getHandshakes()
+                + ", resumed=" + getResumedSessions() + "]";
+    }
+
+    /**
+     * thrown when a request queued for a connection slot longer than it
+     * could wait. Nothing was sent, unlike a failed connect.
+     */
+    public static final class ExhaustedException extends IOException {
+        /**
+         * serial version
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * creates an exception
+         * @param host host whose slots were all taken
+         * @param wait time waited in milliseconds
+         */
+        private ExhaustedException(final String host, final long wait) {
+            super("no connection to " + host + " free within " + wait
+                    + "ms");
+        }
+    }
+
+    /**
+     * socket factory that counts new physical connections and
+     * watches their handshakes for session resumption
+     */
+    private final class CountingSocketFactory extends SSLSocketFactory {
+        /**
+         * wrapped factory
+         */
+        private final SSLSocketFactory delegate;
+
+        /**
+         * creates a counting factory
+         * @param delegate wrapped factory
+         */
+        private CountingSocketFactory(final SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * records a newly created socket
+         * @param s socket
+         * @return socket
+         */
+        private Socket track(final Socket s) {
+            misses.increment();
+            if (s instanceof SSLSocket) {
+                final long created = System.currentTimeMillis();
+                final HandshakeCompletedListener l = e -> {
+                    handshakes.increment();
+                    if (e.getSession().getCreationTime() < created) {
+                        resumedSessions.increment();
+                    }
+                };
+                ((SSLSocket) s).addHandshakeCompletedListener(l);
+            }
+            LOGGER.debug("opened new physical connection, " + INSTANCE);
+            return s;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return track(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final Socket s,
+                                   final String host,
+                                   final int port,
+                                   final boolean autoClose)
+                throws IOException {
+            return track(delegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port)
+                throws IOException {
+            return track(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host,
+                                   final int port,
+                                   final InetAddress localHost,
+                                   final int localPort)
+                throws IOException {
+            return track(delegate.createSocket(host, port,
+                    localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port)
+                throws IOException {
+            return track(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address,
+                                   final int port,
+                                   final InetAddress localAddress,
+                                   final int localPort)
+                throws IOException {
+            return track(delegate.createSocket(address, port,
+                    localAddress, localPort));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.CancellationToken;
+import frontpage.bind.GlobalProperties;
+import org.apache.log4j.Logger;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author willstuckey
+ * <p>Warms the connection to the remote server at startup.</p>
+ *
+ * The first api request otherwise pays DNS resolution, the TCP connect
+ * and a full TLS handshake, usually on the FX thread during login. The
+ * warm-up resolves the server's host, which the JVM then caches, and
+ * sends a HEAD request over a pooled connection. The handshake stores
+ * a session in the shared TLS session cache and the connection is
+ * handed back to the keep-alive cache, so the first real request
+ * either reuses the socket or resumes the session. It runs on its own
+ * daemon thread, never blocks the caller, and is skipped when the
+ * rest-warmup property is false or the transport is not HTTPS.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UtilityClass"})
+public final class ConnectionWarmer {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * creates warm-up threads
+     */
+    private static final RESTExecutor.DaemonThreadFactory THREADS;
+
+    static {
+        LOGGER = Logger.getLogger(ConnectionWarmer.class.getName());
+        THREADS = new RESTExecutor.DaemonThreadFactory("rest-warmup");
+    }
+
+    /**
+     * utility constructor
+     */
+    private ConnectionWarmer() {
+
+    }
+
+    /**
+     * starts warming the connection to the remote server in the
+     * background
+     * @return token cancelling the warm-up, NONE if it was skipped
+     */
+    public static CancellationToken start() {
+        if (!isEnabled()) {
+            LOGGER.debug("connection warm-up skipped");
+            return CancellationToken.NONE;
+        }
+
+        final CancellationToken token = new CancellationToken("warm-up");
+        final Thread t = THREADS.newThread(() -> {
+            try {
+                warm(serverUrl(), token);
+            } catch (CancellationException e) {
+                LOGGER.debug("connection warm-up cancelled");
+            } catch (IOException | RuntimeException e) {
+                LOGGER.info("connection warm-up failed: " + e.getMessage());
+            }
+        });
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+        return token;
+    }
+
+    /**
+     * returns if warm-up applies to the current configuration
+     * @return if enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(GlobalProperties.getProperties()
+                .getProperty("rest-warmup", "true"))
+                && (RESTHandler.getTransport() instanceof HttpsTransport);
+    }
+
+    /**
+     * resolves a server and opens, handshakes and hands back one
+     * connection to it
+     * @param url server url
+     * @param token cancels the warm-up, aborting the connection
+     * @throws IOException if the server could not be reached
+     * @throws CancellationException if the token was cancelled
+     */
+    static void warm(final URL url, final CancellationToken token)
+            throws IOException {
+        final long start = System.nanoTime();
+        token.throwIfCancelled();
+        final InetAddress[] addresses = InetAddress.getAllByName(
+                url.getHost());
+        final long resolved = System.nanoTime();
+
+        token.throwIfCancelled();
+        final ConnectionPool pool = ConnectionPool.getInstance();
+        final HttpsURLConnection con =
+                pool.open(url, RESTHandler.CONNECTION_TIMEOUT);
+        final AtomicBoolean done = new AtomicBoolean();
+        final CancellationToken.Registration registration =
+                token.onCancel(() -> {
+                    if (done.compareAndSet(false, true)) {
+                        pool.discard(con);
+                    }
+                });
+        try {
+            con.setRequestMethod("HEAD");
+            con.setConnectTimeout(RESTHandler.CONNECTION_TIMEOUT);
+            con.setReadTimeout(RESTHandler.DEFAULT_DEADLINE);
+            final int code = con.getResponseCode();
+            if (code < HTTPCodes.BAD_REQUEST) {
+                ConnectionPool.drain(con.getInputStream());
+            }
+        } catch (IOException e) {
+            token.throwIfCancelled();
+            throw e;
+        } finally {
+            registration.close();
+            if (done.compareAndSet(false, true)) {
+                pool.release(con);
+            }
+        }
+
+        LOGGER.info("warmed " + url.getHost() + " (" + addresses.length
+                + " addresses) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + "ms, resolved in "
+                + TimeUnit.NANOSECONDS.toMillis(resolved - start)
+                + "ms, " + pool);
+    }
+
+    /**
+     * gets the url of the remote server
+     * @return url
+     * @throws MalformedURLException if the remote-server property is
+     *                               not a url
+     */
+    private static URL serverUrl() throws MalformedURLException {
+        return new URL(GlobalProperties.getProperties()
+                .getProperty("remote-server") + "/");
+    }
+}
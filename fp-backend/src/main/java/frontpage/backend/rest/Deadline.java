@@ -0,0 +1,172 @@
+package frontpage.backend.rest;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author willstuckey
+ * <p>End to end time budget of a request.</p>
+ *
+ * A deadline bound on a thread covers every api request made under it,
+ * including retries and hedges, which only run while budget remains.
+ * Requests made without one get the default of their entry point. The
+ * budget left when a request is sent sets its connect and read
+ * timeouts and is passed to the server in the X-Deadline-Ms header, so
+ * the server can drop work that can no longer finish in time.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class Deadline {
+    /**
+     * header carrying the milliseconds left of the budget
+     */
+    public static final String HEADER = "X-Deadline-Ms";
+
+    /**
+     * deadline that never expires, current when none is bound
+     */
+    public static final Deadline NONE = new Deadline(0, false);
+
+    /**
+     * current deadline by thread
+     */
+    private static final ThreadLocal<Deadline> CURRENT =
+            ThreadLocal.withInitial(() -> NONE);
+
+    /**
+     * expiry, on the System.nanoTime clock
+     */
+    private final long expiresAt;
+
+    /**
+     * if the deadline expires at all
+     */
+    private final boolean bounded;
+
+    /**
+     * creates a deadline
+     * @param expiresAt expiry, on the System.nanoTime clock
+     * @param bounded if the deadline expires at all
+     */
+    private Deadline(final long expiresAt, final boolean bounded) {
+        this.expiresAt = expiresAt;
+        this.bounded = bounded;
+    }
+
+    /**
+     * creates a deadline a number of milliseconds from now
+     * @param millis budget in milliseconds
+     * @return deadline
+     */
+    public static Deadline after(final long millis) {
+        return new Deadline(System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)), true);
+    }
+
+    /**
+     * returns if the deadline expires at all
+     * @return if bounded
+     */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * returns if the deadline has passed
+     * @return if expired
+     */
+    public boolean isExpired() {
+        return bounded && (expiresAt - System.nanoTime() <= 0);
+    }
+
+    /**
+     * gets the time left
+     * @return milliseconds, 0 if expired, Long.MAX_VALUE if unbounded
+     */
+    public long remainingMillis() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(
+                expiresAt - System.nanoTime()));
+    }
+
+    /**
+     * gets the earlier of two deadlines
+     * @param other deadline
+     * @return earlier deadline
+     */
+    public Deadline min(final Deadline other) {
+        if (!other.bounded) {
+            return this;
+        }
+
+        if (!bounded || (other.expiresAt - expiresAt < 0)) {
+            return other;
+        }
+        return this;
+    }
+
+    /**
+     * gets the deadline current on this thread
+     * @return deadline, NONE if none is bound
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * makes a deadline current on this thread
+     * @param deadline deadline, null for NONE
+     * @return deadline previously current
+     */
+    public static Deadline bind(final Deadline deadline) {
+        final Deadline previous = CURRENT.get();
+        if (deadline == null) {
+            CURRENT.set(NONE);
+        } else {
+            CURRENT.set(deadline);
+        }
+        return previous;
+    }
+
+    /**
+     * wraps a task to run under the deadline current on this thread
+     * @param task task
+     * @param <T> result type
+     * @return wrapped task
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        return wrap(current(), task);
+    }
+
+    /**
+     * wraps a task to run under a deadline
+     * @param deadline deadline
+     * @param task task
+     * @param <T> result type
+     * @return wrapped task
+     */
+    public static <T> Callable<T> wrap(final Deadline deadline,
+                                       final Callable<T> task) {
+        return () -> {
+            final Deadline previous = bind(deadline);
+            try {
+                return task.call();
+            } finally {
+                bind(previous);
+            }
+        };
+    }
+
+    /**
+     * toString
+     * @return string
+     */
+    @Override
+    public String toString() {
+        if (!bounded) {
+            return "Deadline[none]";
+        }
+        return "Deadline[" + remainingMillis() + "ms left]";
+    }
+}
@@ -0,0 +1,209 @@
+package frontpage.backend.rest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author willstuckey
+ * <p>Call counts, response codes, payload sizes and latencies of one
+ * api entry point.</p>
+ *
+ * Every counter is a LongAdder or an atomic array, so recording from
+ * many request threads never takes a lock. Obtained from RESTMetrics.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class EndpointMetrics implements EndpointMetricsMXBean {
+    /**
+     * nanoseconds per microsecond
+     */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /**
+     * median
+     */
+    private static final double P50 = 50;
+
+    /**
+     * 90th percentile
+     */
+    private static final double P90 = 90;
+
+    /**
+     * 99th percentile
+     */
+    private static final double P99 = 99;
+
+    /**
+     * entry point
+     */
+    private final String entryPoint;
+
+    /**
+     * requests made
+     */
+    private final LongAdder calls = new LongAdder();
+
+    /**
+     * requests failed before a response was read
+     */
+    private final LongAdder internalErrors = new LongAdder();
+
+    /**
+     * requests answered with an http error code
+     */
+    private final LongAdder httpErrors = new LongAdder();
+
+    /**
+     * responses by http code
+     */
+    private final ConcurrentMap<Integer, LongAdder> codes =
+            new ConcurrentHashMap<>();
+
+    /**
+     * query bytes sent
+     */
+    private final LongAdder bytesOut = new LongAdder();
+
+    /**
+     * response body bytes read
+     */
+    private final LongAdder bytesIn = new LongAdder();
+
+    /**
+     * request latencies
+     */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * creates metrics for an entry point
+     * @param entryPoint entry point
+     */
+    EndpointMetrics(final String entryPoint) {
+        this.entryPoint = entryPoint;
+    }
+
+    /**
+     * records a completed request
+     * @param report report of the request
+     * @param nanos duration of the request
+     */
+    void record(final RESTReport report, final long nanos) {
+        calls.increment();
+        latencies.record(nanos / NANOS_PER_MICRO);
+        if (report.wasInternalError()) {
+            internalErrors.increment();
+            return;
+        }
+
+        final int code = report.getHttpResponseCode();
+        codes.computeIfAbsent(code, k -> new LongAdder()).increment();
+        if (HTTPCodes.isError(code)) {
+            httpErrors.increment();
+        }
+    }
+
+    /**
+     * records payload sizes
+     * @param out query bytes sent
+     * @param in response body bytes read
+     */
+    void recordBytes(final long out, final long in) {
+        bytesOut.add(out);
+        bytesIn.add(in);
+    }
+
+    @Override
+    public String getEntryPoint() {
+        return entryPoint;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return internalErrors.sum() + httpErrors.sum();
+    }
+
+    @Override
+    public long getInternalErrors() {
+        return internalErrors.sum();
+    }
+
+    @Override
+    public Map<Integer, Long> getResponseCodes() {
+        final Map<Integer, Long> ret = new TreeMap<>();
+        for (final Map.Entry<Integer, LongAdder> e : codes.entrySet()) {
+            ret.put(e.getKey(), e.getValue().sum());
+        }
+        return ret;
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latencies.percentile(P50);
+    }
+
+    @Override
+    public long getP90Micros() {
+        return latencies.percentile(P90);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latencies.percentile(P99);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latencies.getMax();
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return latencies.getMean();
+    }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        internalErrors.reset();
+        httpErrors.reset();
+        codes.clear();
+        bytesOut.reset();
+        bytesIn.reset();
+        latencies.reset();
+    }
+
+    /**
+     * toString
+     * @return one line summary
+     */
+    @Override
+    public String toString() {
+        return entryPoint + ": calls=" + getCalls()
+                + " errors=" + getErrors()
+                + " codes=" + getResponseCodes()
+                + " p50=" + getP50Micros() + "us"
+                + " p90=" + getP90Micros() + "us"
+                + " p99=" + getP99Micros() + "us"
+                + " max=" + getMaxMicros() + "us"
+                + " out=" + getBytesOut() + "B"
+                + " in=" + getBytesIn() + "B";
+    }
+}
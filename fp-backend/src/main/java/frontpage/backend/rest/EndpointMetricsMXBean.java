@@ -0,0 +1,91 @@
+package frontpage.backend.rest;
+
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Management interface of the metrics of one api entry point.</p>
+ *
+ * Latencies are in microseconds and cover the whole request, from
+ * building the query to parsing the response.
+ */
+public interface EndpointMetricsMXBean {
+    /**
+     * gets the entry point
+     * @return entry point
+     */
+    String getEntryPoint();
+
+    /**
+     * gets the number of requests made
+     * @return requests
+     */
+    long getCalls();
+
+    /**
+     * gets the number of requests that failed with an internal error
+     * or an http error code
+     * @return failed requests
+     */
+    long getErrors();
+
+    /**
+     * gets the number of requests that failed before a response was
+     * read
+     * @return internal errors
+     */
+    long getInternalErrors();
+
+    /**
+     * gets the number of responses by http code
+     * @return responses by code
+     */
+    Map<Integer, Long> getResponseCodes();
+
+    /**
+     * gets the number of query bytes sent
+     * @return bytes sent
+     */
+    long getBytesOut();
+
+    /**
+     * gets the number of response body bytes read
+     * @return bytes read
+     */
+    long getBytesIn();
+
+    /**
+     * gets the median latency
+     * @return latency
+     */
+    long getP50Micros();
+
+    /**
+     * gets the 90th percentile latency
+     * @return latency
+     */
+    long getP90Micros();
+
+    /**
+     * gets the 99th percentile latency
+     * @return latency
+     */
+    long getP99Micros();
+
+    /**
+     * gets the largest latency
+     * @return latency
+     */
+    long getMaxMicros();
+
+    /**
+     * gets the mean latency
+     * @return latency
+     */
+    long getMeanMicros();
+
+    /**
+     * clears the metrics
+     */
+    void reset();
+}
@@ -88,6 +88,11 @@ public final class HTTPCodes {
      */
     public static final int METHOD_NOT_ALLOWED = 405;
 
+    /**
+     * Http Response Code FAILED DEPENDENCY (424)
+     */
+    public static final int FAILED_DEPENDENCY = 424;
+
     // 500s
 
     /**
@@ -95,6 +100,11 @@ public final class HTTPCodes {
      */
     public static final int INTERNAL_SERVER_ERROR = 500;
 
+    /**
+     * Http Response Code GATEWAY TIMEOUT (504)
+     */
+    public static final int GATEWAY_TIMEOUT = 504;
+
     /**
      * checks if an http response code is an error
      * @param httpCode response code
@@ -0,0 +1,228 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.GlobalProperties;
+import org.apache.log4j.Logger;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author willstuckey
+ * <p>Transport over pooled HTTPS connections to the remote server.</p>
+ *
+ * The server address is pulled from the remote-server global property.
+ * Connections are taken from ConnectionPool and handed back when the
+ * response is closed, so sockets return to the keep-alive cache. Only
+ * an aborted response disconnects its connection. Connect and read
+ * timeouts come from the budget in the request's deadline header, and
+ * the header is rewritten to what is left of that budget after waiting
+ * for a connection.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class HttpsTransport implements Transport {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = Logger.getLogger(HttpsTransport.class.getName());
+    }
+
+    /**
+     * sends a request over a pooled connection
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param headers request headers
+     * @param query form encoded attributes
+     * @return response, which the caller must close
+     * @throws IOException if the request could not be made
+     */
+    @Override
+    public Response send(final RESTHandler.RestAction action,
+                         final String apiEntryPoint,
+                         final Map<String, String> headers,
+                         final String query)
+            throws IOException {
+        final String urlStr = GlobalProperties.getProperties()
+                .get("remote-server") + "/" + apiEntryPoint;
+        final URL url;
+        try {
+            url = new URL(urlStr);
+        } catch (MalformedURLException e) {
+            LOGGER.error("malformed url for api entry: " + urlStr);
+            throw e;
+        }
+
+        final ConnectionPool pool = ConnectionPool.getInstance();
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Connection Type: " + action.toString());
+        }
+        // queueing for a slot may take the whole budget, connecting and
+        // reading get what is left of it
+        final long start = System.nanoTime();
+        final int budget = budgetOf(headers);
+        final HttpsURLConnection con = pool.open(url, budget);
+        final int remaining = remainingOf(start, budget);
+        final int connectTimeout =
+                Math.min(RESTHandler.CONNECTION_TIMEOUT, remaining);
+        try {
+            con.setRequestMethod(action.toString());
+            con.setRequestProperty("Content-length",
+                    String.valueOf(query.length()));
+            con.setRequestProperty("Content-Type",
+                    "application/x-www-form-urlencoded");
+            con.setRequestProperty("User-Agent",
+                    "Mozilla/4.0 (compatible; MSIE 5.0;Windows98;DigExt)");
+            for (final Map.Entry<String, String> h : headers.entrySet()) {
+                con.setRequestProperty(h.getKey(), h.getValue());
+            }
+            con.setRequestProperty(Deadline.HEADER,
+                    Long.toString(remainingOf(start, budget)));
+            con.setConnectTimeout(connectTimeout);
+            con.setReadTimeout(remaining);
+            con.setDoOutput(true);
+            con.setDoInput(true);
+
+            DataOutputStream conOutput =
+                    new DataOutputStream(con.getOutputStream());
+            conOutput.writeBytes(query);
+            conOutput.close();
+
+            return new HttpsResponse(con, con.getResponseCode(),
+                    con.getResponseMessage());
+        } catch (IOException | RuntimeException e) {
+            pool.release(con);
+            throw e;
+        }
+    }
+
+    /**
+     * gets what is left of a budget
+     * @param start System.nanoTime when the budget was read
+     * @param budget budget in milliseconds
+     * @return milliseconds, at least 1 so no timeout is infinite
+     */
+    private static int remainingOf(final long start, final int budget) {
+        return (int) Math.max(1, budget
+                - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * gets the budget of a request from its deadline header
+     * @param headers request headers
+     * @return milliseconds, at least 1 so no timeout is infinite
+     */
+    private static int budgetOf(final Map<String, String> headers) {
+        final String val = headers.get(Deadline.HEADER);
+        if (val == null) {
+            return RESTHandler.DEFAULT_DEADLINE;
+        }
+
+        try {
+            return (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                    Long.parseLong(val)));
+        } catch (NumberFormatException e) {
+            return RESTHandler.DEFAULT_DEADLINE;
+        }
+    }
+
+    /**
+     * toString
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return "HttpsTransport[" + ConnectionPool.getInstance() + "]";
+    }
+
+    /**
+     * response read from a pooled connection
+     */
+    private static final class HttpsResponse implements Response {
+        /**
+         * connection
+         */
+        private final HttpsURLConnection con;
+
+        /**
+         * response code
+         */
+        private final int code;
+
+        /**
+         * response message
+         */
+        private final String message;
+
+        /**
+         * if the connection was handed back or discarded
+         */
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        /**
+         * creates a response
+         * @param con connection
+         * @param code response code
+         * @param message response message
+         */
+        private HttpsResponse(final HttpsURLConnection con,
+                              final int code,
+                              final String message) {
+            this.con = con;
+            this.code = code;
+            this.message = message;
+        }
+
+        @Override
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String getContentType() {
+            return con.getContentType();
+        }
+
+        @Override
+        public long getContentLength() {
+            return con.getContentLengthLong();
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return con.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return con.getInputStream();
+        }
+
+        @Override
+        public void close() {
+            if (done.compareAndSet(false, true)) {
+                ConnectionPool.getInstance().release(con);
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (done.compareAndSet(false, true)) {
+                ConnectionPool.getInstance().discard(con);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package frontpage.backend.rest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author willstuckey
+ * <p>Lock free histogram of latencies in microseconds.</p>
+ *
+ * Buckets are log linear: every power of two is split into eight equal
+ * buckets, so a percentile is never off by more than an eighth of its
+ * value while the whole range fits in a few hundred counters. Recording
+ * is a single atomic increment and never blocks; percentiles are read
+ * from a snapshot that may miss values recorded during the read.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+final class LatencyHistogram {
+    /**
+     * bits of a value used to pick a bucket within its power of two
+     */
+    private static final int SUB_BITS = 3;
+
+    /**
+     * buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * largest power of two of a recordable value
+     */
+    private static final int MAX_EXPONENT = Long.SIZE - 2;
+
+    /**
+     * number of buckets
+     */
+    private static final int BUCKETS =
+            (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    /**
+     * percent
+     */
+    private static final double PERCENT = 100.0;
+
+    /**
+     * counts by bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * values recorded
+     */
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * sum of values recorded
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * largest value recorded
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * records a value
+     * @param micros latency in microseconds
+     */
+    void record(final long micros) {
+        final long v = Math.max(0, micros);
+        counts.incrementAndGet(bucket(v));
+        total.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * gets a percentile of the recorded values
+     * @param percentile percentile, from 0 to 100
+     * @return upper bound of the bucket holding the percentile, 0 if
+     *         nothing was recorded
+     */
+    long percentile(final double percentile) {
+        final long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+
+        if (n == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1,
+                (long) Math.ceil(percentile / PERCENT * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * gets the number of values recorded
+     * @return count
+     */
+    long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * gets the mean of the recorded values
+     * @return mean in microseconds, 0 if nothing was recorded
+     */
+    long getMean() {
+        final long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+        return sum.sum() / n;
+    }
+
+    /**
+     * gets the largest value recorded
+     * @return maximum in microseconds
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * clears the histogram. Values recorded during the reset may be
+     * partly kept.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * gets the bucket of a value
+     * @param v non negative value
+     * @return bucket index
+     */
+    static int bucket(final long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+
+        final int exp = Math.min(MAX_EXPONENT,
+                Long.SIZE - 1 - Long.numberOfLeadingZeros(v));
+        final int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * gets the largest value held by a bucket
+     * @param bucket bucket index
+     * @return upper bound
+     */
+    static long upperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        final int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = bucket % SUB_BUCKETS;
+        final long width = 1L << (exp - SUB_BITS);
+        return ((SUB_BUCKETS + sub) * width) + width - 1;
+    }
+}
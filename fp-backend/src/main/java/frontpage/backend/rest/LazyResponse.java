@@ -0,0 +1,271 @@
+package frontpage.backend.rest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Offset index over a buffered response body.</p>
+ *
+ * Construction makes one pass over the body recording where each
+ * metadata line and each dynamic entry starts and ends, without
+ * creating any strings. Metadata is decoded the first time any of it
+ * is asked for, entries are decoded one at a time as they are
+ * requested, and every decoded map is cached so repeated access and
+ * later mutation by callers see the same instance.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+final class LazyResponse {
+    /**
+     * initial capacity of the offset arrays, in lines
+     */
+    private static final int INITIAL_LINES = 16;
+
+    /**
+     * raw body
+     */
+    private final String body;
+
+    /**
+     * start and end offsets of metadata lines, in pairs
+     */
+    private final int[] headerBounds;
+
+    /**
+     * start and end offsets of entry lines, in pairs
+     */
+    private final int[] rowBounds;
+
+    /**
+     * announced number of entries
+     */
+    private final int count;
+
+    /**
+     * decoded metadata, null until first access
+     */
+    private Map<String, String> header;
+
+    /**
+     * decoded entries, null where not yet decoded
+     */
+    private final Map<String, String>[] rows;
+
+    /**
+     * fully materialized response, null until requested
+     */
+    private Map<String, String>[] values;
+
+    /**
+     * indexes a body. Line handling matches RESTPayloadParser: CRLF
+     * separates lines, trailing empty lines are dropped, and the
+     * payload type is taken from the first line naming it.
+     * @param body raw body
+     */
+    @SuppressWarnings("unchecked")
+    LazyResponse(final String body) {
+        this.body = body;
+        final int len = body.length();
+
+        int[] lines = new int[INITIAL_LINES * 2];
+        int n = 0;
+        int start = 0;
+        int lastNonEmpty = 0;
+        int nl = body.indexOf("\r\n");
+        while (start <= len) {
+            final int end;
+            if (nl < 0) {
+                end = len;
+            } else {
+                end = nl;
+            }
+
+            if (n == lines.length) {
+                lines = Arrays.copyOf(lines, n * 2);
+            }
+            lines[n++] = start;
+            lines[n++] = end;
+            if (end > start) {
+                lastNonEmpty = n;
+            }
+
+            if (nl < 0) {
+                break;
+            }
+            start = nl + 2;
+            nl = body.indexOf("\r\n", start);
+        }
+
+        if (len == 0) {
+            lastNonEmpty = n;
+        }
+        n = lastNonEmpty;
+
+        // the marker cannot span a CRLF, so its first occurrence lies
+        // within the first line naming it
+        int announced = 0;
+        final int at = body.indexOf(RESTPayloadParser.VARIABLE_PAYLOAD);
+        for (int i = 0; (at >= 0) && (i < n); i += 2) {
+            if ((at >= lines[i]) && (at < lines[i + 1])) {
+                announced = RESTPayloadParser.parseCount(body,
+                        lines[i], lines[i + 1]);
+                break;
+            }
+        }
+        this.count = announced;
+
+        final int[] hdr = new int[n];
+        final int[] ent = new int[n];
+        int h = 0;
+        int e = 0;
+        boolean inDynDataSec = false;
+        for (int i = 0; i < n; i += 2) {
+            final int s = lines[i];
+            final int t = lines[i + 1];
+            if ((count > 0) && RESTPayloadParser.equalsIgnoreCase(body, s, t,
+                    RESTPayloadParser.BEGIN_DYN_DATA)) {
+                inDynDataSec = true;
+            } else if ((count > 0) && RESTPayloadParser.equalsIgnoreCase(
+                    body, s, t, RESTPayloadParser.END_DYN_DATA)) {
+                inDynDataSec = false;
+            } else if (inDynDataSec) {
+                ent[e++] = s;
+                ent[e++] = t;
+            } else {
+                hdr[h++] = s;
+                hdr[h++] = t;
+            }
+        }
+        this.headerBounds = Arrays.copyOf(hdr, h);
+        this.rowBounds = Arrays.copyOf(ent, e);
+        this.rows = (Map<String, String>[]) new HashMap[e / 2];
+    }
+
+    /**
+     * gets the announced number of entries
+     * @return announced entries
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * gets the number of entries in the body
+     * @return entries
+     */
+    int size() {
+        return rows.length;
+    }
+
+    /**
+     * gets the metadata, decoding it on first access
+     * @return metadata
+     */
+    synchronized Map<String, String> header() {
+        if (header == null) {
+            final Decoder d = new Decoder();
+            final RESTPayloadParser p = new RESTPayloadParser(d);
+            for (int i = 0; i < headerBounds.length; i += 2) {
+                p.header(body, headerBounds[i], headerBounds[i + 1]);
+            }
+            header = d.map;
+        }
+        return header;
+    }
+
+    /**
+     * gets an entry, decoding it on first access
+     * @param index entry position
+     * @return entry
+     */
+    synchronized Map<String, String> row(final int index) {
+        if (rows[index] == null) {
+            rows[index] = decode(index);
+        }
+        return rows[index];
+    }
+
+    /**
+     * decodes an entry without caching it
+     * @param index entry position
+     * @return new map holding the entry
+     */
+    Map<String, String> decode(final int index) {
+        final Decoder d = new Decoder();
+        new RESTPayloadParser(d).row(body,
+                rowBounds[index * 2], rowBounds[index * 2 + 1]);
+        return d.map;
+    }
+
+    /**
+     * finds a value, searching the metadata and then each entry in
+     * order, decoding only as far as needed
+     * @param key key
+     * @return value, null if absent
+     */
+    String find(final String key) {
+        final String value = header().get(key);
+        if (value != null) {
+            return value;
+        }
+
+        for (int i = 0; i < rows.length; i++) {
+            final String result = row(i).get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * gets the response in the layout of RESTReport.getResponseValues,
+     * decoding every entry
+     * @return parsed response
+     */
+    @SuppressWarnings("unchecked")
+    synchronized Map<String, String>[] values() {
+        if (values == null) {
+            final Map<String, String>[] ret = (Map<String, String>[])
+                    new HashMap[Math.max(count + 1, rows.length + 1)];
+            ret[0] = header();
+            for (int i = 0; i < rows.length; i++) {
+                ret[i + 1] = row(i);
+            }
+            values = ret;
+        }
+        return values;
+    }
+
+    /**
+     * decodes a single metadata block or entry into a map
+     */
+    private static final class Decoder implements RESTPayloadParser.Sink {
+        /**
+         * decoded pairs
+         */
+        private final Map<String, String> map = new HashMap<>();
+
+        @Override
+        public void announce(final int entries) { }
+
+        @Override
+        public void header(final String key, final String value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public void beginRow(final String index) {
+            map.put("index", index);
+        }
+
+        @Override
+        public void field(final String key, final String value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public void endRow() { }
+    }
+}
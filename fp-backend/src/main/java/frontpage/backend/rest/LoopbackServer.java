@@ -0,0 +1,1217 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.report.ReportQuery;
+import frontpage.bind.trace.Tracing;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @author willstuckey
+ * <p>In memory stand in for the php api.</p>
+ *
+ * Answers create_account.php, authenticate.php, user.php, profile.php
+ * and report.php with the same parameters, status codes and line
+ * protocol as the scripts in server-backend, keeping users, profiles
+ * and reports in memory. Sessions expire after the server's timeout of
+ * four hours. Reads share a lock, writes are exclusive.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "OverlyComplexClass"})
+final class LoopbackServer {
+    /**
+     * session lifetime in milliseconds
+     */
+    private static final long SESSION_TIMEOUT = 4 * 60 * 60 * 1000L;
+
+    /**
+     * size of salts and session ids in bytes
+     */
+    private static final int SECRET_BYTES = 64;
+
+    /**
+     * largest number of operations accepted in one BATCH request
+     */
+    private static final int MAX_BATCH_OPS = 64;
+
+    /**
+     * largest number of reports in one page of a listing
+     */
+    private static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * radix of hex strings
+     */
+    private static final int HEX = 16;
+
+    /**
+     * bits in a hex digit
+     */
+    private static final int NIBBLE = 4;
+
+    /**
+     * mask of a hex digit
+     */
+    private static final int NIBBLE_MASK = 0xF;
+
+    /**
+     * well formed trace header
+     */
+    private static final Pattern TRACE_ID =
+            Pattern.compile("[0-9a-f]{16}-[0-9a-f]{16}");
+
+    /**
+     * line separator of the protocol
+     */
+    private static final String CRLF = "\r\n";
+
+    /**
+     * columns of source reports, in the order report.php prints them
+     */
+    private static final String[] SOURCE_COLUMNS = {"id", "reportdt",
+        "location", "type", "cond", "name", "description"};
+
+    /**
+     * columns of purity reports that may be updated
+     */
+    private static final String[] PURITY_COLUMNS = {"userid", "sourcerptid",
+        "reportdt", "location", "cond", "virusppm", "contaminantppm"};
+
+    /**
+     * profile columns
+     */
+    private static final String[] PROFILE_COLUMNS = {"address", "city",
+        "state", "zip", "title"};
+
+    /**
+     * users by email
+     */
+    private final Map<String, Map<String, String>> users = new HashMap<>();
+
+    /**
+     * users by id
+     */
+    private final Map<String, Map<String, String>> usersById =
+            new HashMap<>();
+
+    /**
+     * profiles by user id
+     */
+    private final Map<String, Map<String, String>> profiles =
+            new HashMap<>();
+
+    /**
+     * source reports by report id, in insertion order
+     */
+    private final Map<String, Map<String, String>> sourceReports =
+            new LinkedHashMap<>();
+
+    /**
+     * purity reports by report id, in insertion order
+     */
+    private final Map<String, Map<String, String>> purityReports =
+            new LinkedHashMap<>();
+
+    /**
+     * guards every table
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * source of salts and session ids
+     */
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * source of unique ids
+     */
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * reply to a request
+     */
+    static final class Reply {
+        /**
+         * http response code
+         */
+        private final int code;
+
+        /**
+         * body
+         */
+        private final String body;
+
+        /**
+         * response headers
+         */
+        private final Map<String, String> headers = new HashMap<>();
+
+        /**
+         * creates a reply
+         * @param code http response code
+         * @param body body
+         */
+        private Reply(final int code, final String body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        /**
+         * gets the http response code
+         * @return response code
+         */
+        int getCode() {
+            return code;
+        }
+
+        /**
+         * gets the body
+         * @return body
+         */
+        String getBody() {
+            return body;
+        }
+
+        /**
+         * gets the response headers
+         * @return headers
+         */
+        Map<String, String> getHeaders() {
+            return headers;
+        }
+    }
+
+    /**
+     * outcome of one report operation
+     */
+    private static final class Result {
+        /**
+         * http response code for single requests
+         */
+        private final int code;
+
+        /**
+         * metadata in print order
+         */
+        private final Map<String, String> fields = new LinkedHashMap<>();
+
+        /**
+         * dynamic entries, null if none
+         */
+        private List<Map<String, String>> rows;
+
+        /**
+         * creates a result
+         * @param code http response code
+         * @param status status
+         * @param message message
+         */
+        private Result(final int code,
+                       final String status,
+                       final String message) {
+            this.code = code;
+            fields.put("status", status);
+            fields.put("message", message);
+        }
+    }
+
+    /**
+     * answers a request
+     * @param script name of the script, such as report.php
+     * @param headers request headers
+     * @param post posted attributes
+     * @return reply
+     */
+    Reply handle(final String script,
+                 final Map<String, String> headers,
+                 final Map<String, String> post) {
+        // refuse requests that arrive out of budget, as
+        // util/deadline.php does
+        final Reply reply;
+        if (outOfBudget(headers.get(Deadline.HEADER))) {
+            reply = status(HTTPCodes.GATEWAY_TIMEOUT);
+        } else {
+            reply = route(script, post);
+        }
+
+        // echo well formed trace ids, as util/trace.php does
+        final String trace = headers.get(Tracing.HEADER);
+        if ((trace != null) && TRACE_ID.matcher(trace).matches()) {
+            reply.headers.put(Tracing.HEADER, trace);
+        }
+        return reply;
+    }
+
+    /**
+     * returns if a deadline header leaves no budget
+     * @param header header value, may be null
+     * @return if out of budget
+     */
+    private static boolean outOfBudget(final String header) {
+        if ((header == null) || !header.matches("[0-9]+")) {
+            return false;
+        }
+
+        try {
+            return Long.parseLong(header) <= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * answers a request by script
+     * @param script name of the script
+     * @param post posted attributes
+     * @return reply
+     */
+    private Reply route(final String script,
+                        final Map<String, String> post) {
+        switch (script) {
+            case "create_account.php":
+                return createAccount(post);
+            case "authenticate.php":
+                return authenticate(post);
+            case "user.php":
+                return user(post);
+            case "profile.php":
+                return profile(post);
+            case "report.php":
+                return report(post);
+            default:
+                return status(HTTPCodes.NOT_FOUND);
+        }
+    }
+
+    /**
+     * creates an account
+     * @param post posted attributes
+     * @return reply
+     */
+    private Reply createAccount(final Map<String, String> post) {
+        if (!isset(post, "username", "password", "email", "firstname",
+                "lastname", "type")) {
+            return new Reply(HTTPCodes.BAD_REQUEST,
+                    "existence validation failedr" + CRLF);
+        }
+
+        final String email = post.get("email");
+        String type = post.get("type");
+        if (type.isEmpty()) {
+            type = "USER";
+        }
+
+        if (empty(post, "username", "password", "email", "firstname",
+                "lastname")) {
+            return new Reply(HTTPCodes.BAD_REQUEST,
+                    "a parameter was empty" + CRLF);
+        }
+
+        final int at = email.indexOf('@');
+        if ((at < 1) || (email.indexOf('.', at) < at + 2)
+                || email.endsWith(".")) {
+            return ok("status=failed" + CRLF
+                    + "message=invalid email" + CRLF);
+        }
+
+        final Lock w = lock.writeLock();
+        w.lock();
+        try {
+            if (users.containsKey(email)) {
+                return ok("status=failed" + CRLF
+                        + "message=existing user found" + CRLF);
+            }
+
+            final byte[] salt = secret();
+            final Map<String, String> row = new HashMap<>();
+            row.put("id", uniqid());
+            row.put("type", type);
+            row.put("username", post.get("username"));
+            row.put("email", email);
+            row.put("salt", hex(salt));
+            row.put("pwhash", hex(hash(salt, post.get("password"))));
+            row.put("sessionid", "-1");
+            row.put("sessiontimestamp", "-1");
+            row.put("pwattempts", "-1");
+            row.put("firstname", post.get("firstname"));
+            row.put("lastname", post.get("lastname"));
+            users.put(email, row);
+            usersById.put(row.get("id"), row);
+            profiles.put(row.get("id"), new HashMap<>());
+        } finally {
+            w.unlock();
+        }
+        return ok("status=success" + CRLF
+                + "message=account created successfully");
+    }
+
+    /**
+     * opens a session for a password or an unexpired session id
+     * @param post posted attributes
+     * @return reply
+     */
+    private Reply authenticate(final Map<String, String> post) {
+        if (!isset(post, "email", "password")) {
+            return new Reply(HTTPCodes.BAD_REQUEST,
+                    "credentials existence check failed" + CRLF);
+        }
+
+        if (empty(post, "email", "password")) {
+            return new Reply(HTTPCodes.BAD_REQUEST,
+                    "one or more crednetials are empty" + CRLF);
+        }
+
+        final Lock w = lock.writeLock();
+        w.lock();
+        try {
+            final Map<String, String> row = users.get(post.get("email"));
+            if ((row == null) || !matches(row, post.get("password"))) {
+                return credentialsNotFound();
+            }
+
+            final String sessionid = hex(secret());
+            row.put("sessionid", sessionid);
+            row.put("sessiontimestamp",
+                    Long.toString(System.currentTimeMillis()));
+            row.put("pwattempts", "0");
+            return ok("status=success" + CRLF
+                    + "message=authentication successful" + CRLF
+                    + "sessionid=" + sessionid + CRLF);
+        } finally {
+            w.unlock();
+        }
+    }
+
+    /**
+     * reads one column of the user row
+     * @param post posted attributes
+     * @return reply
+     */
+    private Reply user(final Map<String, String> post) {
+        if (!isset(post, "email", "tok", "property")
+                || empty(post, "email", "tok", "property")) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        final Lock r = lock.readLock();
+        r.lock();
+        try {
+            final Reply denied = checkAuth(post);
+            if (denied != null) {
+                return denied;
+            }
+
+            final String property = post.get("property");
+            return ok("status=success" + CRLF
+                    + "message=retrieved value" + CRLF
+                    + property + "=" + value(users.get(post.get("email")),
+                    property) + CRLF);
+        } finally {
+            r.unlock();
+        }
+    }
+
+    /**
+     * reads or writes the profile of a user
+     * @param post posted attributes
+     * @return reply
+     */
+    private Reply profile(final Map<String, String> post) {
+        if (!isset(post, "email", "tok", "action")
+                || empty(post, "email", "tok", "action")) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        final String action = post.get("action");
+        if (!("GET".equals(action) || "PUT".equals(action))) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        final boolean write = "PUT".equals(action);
+        final Lock l;
+        if (write) {
+            l = lock.writeLock();
+        } else {
+            l = lock.readLock();
+        }
+
+        l.lock();
+        try {
+            final Reply denied = checkAuth(post);
+            if (denied != null) {
+                return denied;
+            }
+
+            final String id = users.get(post.get("email")).get("id");
+            final Map<String, String> row = profiles.get(id);
+            final StringBuilder sb = new StringBuilder();
+            if (!write) {
+                sb.append("status=success").append(CRLF)
+                        .append("message=fetched profile").append(CRLF);
+                for (final String column : PROFILE_COLUMNS) {
+                    sb.append(column).append('=').append(value(row, column))
+                            .append(CRLF);
+                }
+                return ok(sb.toString());
+            }
+
+            if (!isset(post, PROFILE_COLUMNS)) {
+                return status(HTTPCodes.BAD_REQUEST);
+            }
+
+            for (final String column : PROFILE_COLUMNS) {
+                if (!post.get(column).isEmpty()) {
+                    row.put(column, post.get(column));
+                }
+            }
+            sb.append("id=").append(id).append(CRLF)
+                    .append("address=").append(value(row, "address"))
+                    .append(CRLF)
+                    .append("status=success").append(CRLF)
+                    .append("message=profile updated").append(CRLF);
+            return ok(sb.toString());
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * answers report.php
+     * @param post posted attributes
+     * @return reply
+     */
+    private Reply report(final Map<String, String> post) {
+        if ("BATCH".equals(post.get("action"))) {
+            return batch(post);
+        }
+
+        if (!isset(post, "reporttype", "action")
+                || empty(post, "reporttype", "action")) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        final String reporttype = post.get("reporttype");
+        final String action = post.get("action");
+        if (!("source".equals(reporttype) || "purity".equals(reporttype))
+                || !("GET".equals(action) || "ADD".equals(action)
+                || "UPDATE".equals(action) || "DELETE".equals(action))) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        final boolean write = !"GET".equals(action);
+        if (write && (!isset(post, "email", "tok")
+                || empty(post, "email", "tok"))) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        String reportid = post.get("reportid");
+        if (reportid == null) {
+            reportid = "";
+        }
+
+        if (!write && reportid.isEmpty()) {
+            // search indexing
+            return ok("");
+        }
+
+        if (!"ADD".equals(action) && reportid.isEmpty()) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        final Lock l;
+        if (write) {
+            l = lock.writeLock();
+        } else {
+            l = lock.readLock();
+        }
+
+        l.lock();
+        try {
+            if (write) {
+                final Reply denied = checkAuth(post);
+                if (denied != null) {
+                    return denied;
+                }
+            }
+
+            final Result result = run(reporttype, action, reportid, post,
+                    post.get("email"));
+            if (result.code != HTTPCodes.OK) {
+                return status(result.code);
+            }
+
+            final StringBuilder sb = new StringBuilder();
+            for (final Map.Entry<String, String> e
+                    : result.fields.entrySet()) {
+                sb.append(e.getKey()).append('=').append(e.getValue())
+                        .append(CRLF);
+            }
+
+            if (result.rows != null) {
+                sb.append(RESTPayloadParser.VARIABLE_PAYLOAD)
+                        .append('=').append(result.rows.size()).append(CRLF)
+                        .append(RESTPayloadParser.BEGIN_DYN_DATA)
+                        .append(CRLF);
+                int resultnum = 1;
+                for (final Map<String, String> row : result.rows) {
+                    sb.append(resultnum++).append(':');
+                    encodeRow(sb, row);
+                    sb.append(CRLF);
+                }
+                sb.append(RESTPayloadParser.END_DYN_DATA).append(CRLF);
+            }
+            return ok(sb.toString());
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * answers a BATCH request, as runBatch in report.php
+     * @param post posted attributes
+     * @return reply
+     */
+    private Reply batch(final Map<String, String> post) {
+        final int ops;
+        try {
+            ops = Integer.parseInt(post.get("ops"));
+        } catch (NumberFormatException e) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        if ((ops < 1) || (ops > MAX_BATCH_OPS)) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        final List<Map<String, String>> params = new ArrayList<>(ops);
+        boolean writes = false;
+        for (int i = 0; i < ops; i++) {
+            params.add(new HashMap<>());
+        }
+
+        for (final Map.Entry<String, String> e : post.entrySet()) {
+            final String key = e.getKey();
+            final int sep = key.indexOf('_');
+            if (!key.startsWith("op") || (sep < 0)) {
+                continue;
+            }
+
+            final int i;
+            try {
+                i = Integer.parseInt(key.substring(2, sep));
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+
+            if ((i >= 0) && (i < ops)) {
+                params.get(i).put(key.substring(sep + 1), e.getValue());
+            }
+        }
+
+        for (final Map<String, String> p : params) {
+            final String action = p.get("action");
+            if ((action == null) || action.isEmpty()) {
+                return status(HTTPCodes.BAD_REQUEST);
+            }
+            writes |= !"GET".equals(action);
+        }
+
+        if (writes && (!isset(post, "email", "tok")
+                || empty(post, "email", "tok"))) {
+            return status(HTTPCodes.BAD_REQUEST);
+        }
+
+        final Lock l;
+        if (writes) {
+            l = lock.writeLock();
+        } else {
+            l = lock.readLock();
+        }
+
+        l.lock();
+        try {
+            if (writes) {
+                final Reply denied = checkAuth(post);
+                if (denied != null) {
+                    return denied;
+                }
+            }
+
+            final List<Result> results = new ArrayList<>(ops);
+            for (int i = 0; i < ops; i++) {
+                results.add(batchOp(params.get(i), results,
+                        post.get("email")));
+            }
+
+            final StringBuilder sb = new StringBuilder();
+            sb.append("status=success").append(CRLF)
+                    .append("message=batch processed").append(CRLF)
+                    .append(RESTPayloadParser.VARIABLE_PAYLOAD).append('=')
+                    .append(ops)
+                    .append(CRLF)
+                    .append(RESTPayloadParser.BEGIN_DYN_DATA).append(CRLF);
+            for (int i = 0; i < ops; i++) {
+                final Map<String, String> row = new LinkedHashMap<>();
+                row.put("code", Integer.toString(results.get(i).code));
+                row.putAll(results.get(i).fields);
+                sb.append(i).append(':');
+                encodeRow(sb, row);
+                sb.append(CRLF);
+            }
+            sb.append(RESTPayloadParser.END_DYN_DATA).append(CRLF);
+            return ok(sb.toString());
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * runs one operation of a batch
+     * @param params parameters of the operation
+     * @param earlier results of the operations before it
+     * @param email authenticated email
+     * @return result
+     */
+    private Result batchOp(final Map<String, String> params,
+                           final List<Result> earlier,
+                           final String email) {
+        String reportid = params.get("reportid");
+        if (reportid == null) {
+            reportid = "";
+        }
+
+        if (reportid.startsWith("@")) {
+            final int ref;
+            try {
+                ref = Integer.parseInt(reportid.substring(1));
+            } catch (NumberFormatException e) {
+                return failed(HTTPCodes.BAD_REQUEST,
+                        "invalid reference " + reportid);
+            }
+
+            if ((ref < 0) || (ref >= earlier.size())) {
+                return failed(HTTPCodes.BAD_REQUEST,
+                        "invalid reference " + reportid);
+            }
+
+            reportid = earlier.get(ref).fields.get("reportid");
+            if (reportid == null) {
+                return failed(HTTPCodes.FAILED_DEPENDENCY,
+                        "referenced operation failed");
+            }
+        }
+
+        final String action = params.get("action");
+        if ("GET".equals(action) && "ALL".equals(reportid)) {
+            return failed(HTTPCodes.BAD_REQUEST,
+                    "listings cannot be batched");
+        }
+
+        String reporttype = params.get("reporttype");
+        if (reporttype == null) {
+            reporttype = "";
+        }
+
+        final Result result = run(reporttype, action, reportid, params,
+                email);
+        if (result.rows != null) {
+            if (result.rows.isEmpty()) {
+                return failed(HTTPCodes.NOT_FOUND, "report not found");
+            }
+            result.fields.putAll(result.rows.get(0));
+            result.rows = null;
+        }
+        return result;
+    }
+
+    /**
+     * runs one report operation, with the lock held
+     * @param reporttype source or purity
+     * @param action GET, ADD, UPDATE or DELETE
+     * @param reportid report id, may be empty for ADD
+     * @param params submitted properties
+     * @param email authenticated email
+     * @return result
+     */
+    private Result run(final String reporttype,
+                       final String action,
+                       final String reportid,
+                       final Map<String, String> params,
+                       final String email) {
+        final boolean source = "source".equals(reporttype);
+        if (!source && !"purity".equals(reporttype)) {
+            return failed(HTTPCodes.BAD_REQUEST, "unknown report type");
+        }
+
+        final Map<String, Map<String, String>> table;
+        if (source) {
+            table = sourceReports;
+        } else {
+            table = purityReports;
+        }
+
+        if ("ADD".equals(action)) {
+            return add(source, table, email);
+        }
+
+        if (reportid.isEmpty()) {
+            return failed(HTTPCodes.BAD_REQUEST, "missing report id");
+        }
+
+        if ("GET".equals(action)) {
+            return get(source, table, reportid, params);
+        } else if ("UPDATE".equals(action)) {
+            return update(source, table, reportid, params);
+        } else if ("DELETE".equals(action)) {
+            table.remove(reportid);
+            final Result ret = new Result(HTTPCodes.OK, "success",
+                    reporttype + " report deleted");
+            ret.fields.put("reportid", reportid);
+            return ret;
+        }
+        return failed(HTTPCodes.BAD_REQUEST, "unknown action");
+    }
+
+    /**
+     * creates a void report
+     * @param source if the report is a source report
+     * @param table report table
+     * @param email authenticated email
+     * @return result
+     */
+    private Result add(final boolean source,
+                       final Map<String, Map<String, String>> table,
+                       final String email) {
+        final Map<String, String> user = users.get(email);
+        final String reportid = uniqid();
+        final Map<String, String> row = new HashMap<>();
+        row.put("reportid", reportid);
+        final Result ret;
+        if (source) {
+            row.put("id", user.get("id"));
+            ret = new Result(HTTPCodes.OK, "success",
+                    "void source report created");
+            ret.fields.put("submitter", user.get("username"));
+        } else {
+            row.put("userid", user.get("id"));
+            ret = new Result(HTTPCodes.OK, "success",
+                    "void purity report created");
+            ret.fields.put("username", user.get("username"));
+        }
+        table.put(reportid, row);
+        ret.fields.put("reportid", reportid);
+        return ret;
+    }
+
+    /**
+     * reads one report, or the listing for ALL. The listing is paged
+     * once a page size or cursor is given, as report.php does. A page
+     * holds the reports matching the query with ids after the cursor, in
+     * id order, or before it, newest first, when the order is desc, and
+     * names the cursor of the next page, empty after the last page.
+     * @param source if the reports are source reports
+     * @param table report table
+     * @param reportid report id
+     * @param params submitted properties
+     * @return result
+     */
+    private Result get(final boolean source,
+                       final Map<String, Map<String, String>> table,
+                       final String reportid,
+                       final Map<String, String> params) {
+        final List<Map<String, String>> rows = new ArrayList<>();
+        String next = null;
+        if ("ALL".equals(reportid)) {
+            int pageSize = Integer.MAX_VALUE;
+            if (params.containsKey("pagesize")
+                    || params.containsKey("cursor")) {
+                pageSize = MAX_PAGE_SIZE;
+            }
+            if (params.containsKey("pagesize")) {
+                try {
+                    pageSize = Math.min(Integer.parseInt(
+                            params.get("pagesize")), MAX_PAGE_SIZE);
+                } catch (NumberFormatException e) {
+                    pageSize = 0;
+                }
+                if (pageSize < 1) {
+                    return failed(HTTPCodes.BAD_REQUEST, "invalid page size");
+                }
+            }
+
+            final ReportQuery query;
+            try {
+                query = query(source, params);
+            } catch (BackendRequestException e) {
+                return failed(HTTPCodes.BAD_REQUEST, e.getMessage());
+            }
+
+            final String order = params.getOrDefault("order", "asc");
+            if (!"asc".equals(order) && !"desc".equals(order)) {
+                return failed(HTTPCodes.BAD_REQUEST, "invalid order");
+            }
+
+            final String cursor = params.getOrDefault("cursor", "");
+            Predicate<String> seek = id -> id.compareTo(cursor) > 0;
+            Comparator<String> sort = Comparator.naturalOrder();
+            if ("desc".equals(order)) {
+                seek = id -> cursor.isEmpty() || (id.compareTo(cursor) < 0);
+                sort = Comparator.reverseOrder();
+            }
+            final List<String> ids = table.keySet().stream()
+                    .filter(seek)
+                    .filter(id -> query.matches(printable(source,
+                            table.get(id))))
+                    .sorted(sort)
+                    .limit(pageSize + 1L)
+                    .collect(Collectors.toList());
+            next = "";
+            if (ids.size() > pageSize) {
+                ids.remove(pageSize);
+                next = ids.get(pageSize - 1);
+            }
+            for (final String id : ids) {
+                rows.add(printable(source, table.get(id)));
+            }
+        } else if (table.containsKey(reportid)) {
+            rows.add(printable(source, table.get(reportid)));
+        }
+
+        final Result ret = new Result(HTTPCodes.OK, "success",
+                "fetched report");
+        if (next != null) {
+            ret.fields.put("cursor", next);
+        }
+        ret.rows = rows;
+        return ret;
+    }
+
+    /**
+     * reads the query of a listing from its q_ and qop_ parameters
+     * @param source if the reports are source reports
+     * @param params submitted properties
+     * @return query
+     * @throws BackendRequestException if the query is invalid
+     */
+    private static ReportQuery query(final boolean source,
+                                     final Map<String, String> params)
+            throws BackendRequestException {
+        final Map<String, String> properties = new HashMap<>();
+        final Map<String, String> constraints = new HashMap<>();
+        for (final Map.Entry<String, String> e : params.entrySet()) {
+            if (e.getKey().startsWith("q_")) {
+                properties.put(e.getKey().substring("q_".length()),
+                        e.getValue());
+            } else if (e.getKey().startsWith("qop_")) {
+                constraints.put(e.getKey().substring("qop_".length()),
+                        e.getValue());
+            }
+        }
+        String reporttype = ReportQuery.PURITY;
+        if (source) {
+            reporttype = ReportQuery.SOURCE;
+        }
+        return ReportQuery.parse(reporttype, properties, constraints);
+    }
+
+    /**
+     * lays a report out as report.php prints it
+     * @param source if the report is a source report
+     * @param row stored report
+     * @return printable report
+     */
+    private Map<String, String> printable(final boolean source,
+                                          final Map<String, String> row) {
+        final Map<String, String> ret = new LinkedHashMap<>();
+        if (source) {
+            ret.put("username", value(usersById.get(row.get("id")),
+                    "username"));
+            ret.put("id", value(row, "id"));
+            ret.put("reportid", value(row, "reportid"));
+            for (final String column : SOURCE_COLUMNS) {
+                if (!"id".equals(column)) {
+                    ret.put(column, value(row, column));
+                }
+            }
+        } else {
+            ret.put("username", value(usersById.get(row.get("userid")),
+                    "username"));
+            ret.put("userid", value(row, "userid"));
+            ret.put("sourceid", value(row, "sourcerptid"));
+            ret.put("reportid", value(row, "reportid"));
+            for (final String column : PURITY_COLUMNS) {
+                if (!"userid".equals(column)
+                        && !"sourcerptid".equals(column)) {
+                    ret.put(column, value(row, column));
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * overwrites the columns given in params
+     * @param source if the report is a source report
+     * @param table report table
+     * @param reportid report id
+     * @param params submitted properties
+     * @return result
+     */
+    private Result update(final boolean source,
+                          final Map<String, Map<String, String>> table,
+                          final String reportid,
+                          final Map<String, String> params) {
+        final String[] columns;
+        final Map<String, String> values = new HashMap<>(params);
+        if (source) {
+            columns = SOURCE_COLUMNS;
+        } else {
+            columns = PURITY_COLUMNS;
+            if (empty(values, "sourcerptid") && !empty(values, "sourceid")) {
+                values.put("sourcerptid", values.get("sourceid"));
+            }
+        }
+
+        final Map<String, String> row = table.get(reportid);
+        if (row != null) {
+            for (final String column : columns) {
+                final String v = values.get(column);
+                if ((v != null) && !v.isEmpty()) {
+                    row.put(column, v);
+                }
+            }
+        }
+
+        if (source) {
+            return new Result(HTTPCodes.OK, "success",
+                    "source report updated");
+        }
+        return new Result(HTTPCodes.OK, "success", "purity report updated");
+    }
+
+    /**
+     * checks credentials, as isAuthenticated in authentication_check.php
+     * @param post posted attributes
+     * @return null if authenticated, otherwise the reply to send
+     */
+    private Reply checkAuth(final Map<String, String> post) {
+        final Map<String, String> row = users.get(post.get("email"));
+        if (row == null) {
+            return credentialsNotFound();
+        }
+
+        if (!matches(row, post.get("tok"))) {
+            return status(HTTPCodes.UNAUTHORIZED);
+        }
+        return null;
+    }
+
+    /**
+     * returns if a secret is the user's password or unexpired session
+     * @param row user row
+     * @param secret password or session id
+     * @return if it matches
+     */
+    private static boolean matches(final Map<String, String> row,
+                                   final String secret) {
+        final byte[] salt = unhex(row.get("salt"));
+        if (MessageDigest.isEqual(unhex(row.get("pwhash")),
+                hash(salt, secret))) {
+            return true;
+        }
+
+        final long ts = Long.parseLong(row.get("sessiontimestamp"));
+        return (ts >= 0)
+                && (System.currentTimeMillis() - ts < SESSION_TIMEOUT)
+                && row.get("sessionid").equals(secret);
+    }
+
+    /**
+     * reply sent for unknown emails
+     * @return reply
+     */
+    private static Reply credentialsNotFound() {
+        return ok("status=failed" + CRLF
+                + "message=matching credentials not found" + CRLF
+                + "sessionid=null" + CRLF);
+    }
+
+    /**
+     * builds a failed result
+     * @param code http response code for single requests
+     * @param message message
+     * @return result
+     */
+    private static Result failed(final int code, final String message) {
+        return new Result(code, "failed", message);
+    }
+
+    /**
+     * encodes a dynamic entry
+     * @param sb destination
+     * @param row entry
+     */
+    private static void encodeRow(final StringBuilder sb,
+                                  final Map<String, String> row) {
+        boolean first = true;
+        for (final Map.Entry<String, String> e : row.entrySet()) {
+            if (!first) {
+                sb.append('|');
+            }
+            first = false;
+            sb.append(e.getKey()).append('=').append(e.getValue());
+        }
+    }
+
+    /**
+     * builds a successful reply
+     * @param body body
+     * @return reply
+     */
+    private static Reply ok(final String body) {
+        return new Reply(HTTPCodes.OK, body);
+    }
+
+    /**
+     * builds a reply with no body
+     * @param code http response code
+     * @return reply
+     */
+    private static Reply status(final int code) {
+        return new Reply(code, "");
+    }
+
+    /**
+     * returns if every key is present, as php isset
+     * @param post posted attributes
+     * @param keys keys
+     * @return if present
+     */
+    private static boolean isset(final Map<String, String> post,
+                                 final String... keys) {
+        for (final String key : keys) {
+            if (post.get(key) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns if any key is absent or empty, as php empty
+     * @param post posted attributes
+     * @param keys keys
+     * @return if any is empty
+     */
+    private static boolean empty(final Map<String, String> post,
+                                 final String... keys) {
+        for (final String key : keys) {
+            final String v = post.get(key);
+            if ((v == null) || v.isEmpty() || "0".equals(v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * reads a column, printing null as php does
+     * @param row row, may be null
+     * @param column column
+     * @return value, empty if absent
+     */
+    private static String value(final Map<String, String> row,
+                                final String column) {
+        if (row == null) {
+            return "";
+        }
+
+        final String v = row.get(column);
+        if (v == null) {
+            return "";
+        }
+        return v;
+    }
+
+    /**
+     * creates an id in the style of php uniqid with more entropy. The
+     * counter is zero padded so ids sort in the order they were created,
+     * as the listing pages on them.
+     * @return id
+     */
+    private String uniqid() {
+        return String.format("%s.%08d",
+                Long.toHexString(System.currentTimeMillis()),
+                ids.incrementAndGet());
+    }
+
+    /**
+     * creates random bytes for salts and session ids
+     * @return bytes
+     */
+    private byte[] secret() {
+        final byte[] ret = new byte[SECRET_BYTES];
+        random.nextBytes(ret);
+        return ret;
+    }
+
+    /**
+     * hashes a salted secret with SHA-512
+     * @param salt salt
+     * @param secret secret
+     * @return hash
+     */
+    private static byte[] hash(final byte[] salt, final String secret) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-512");
+            md.update(salt);
+            md.update(secret.getBytes(StandardCharsets.UTF_8));
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * encodes bytes as lowercase hex
+     * @param bytes bytes
+     * @return hex
+     */
+    private static String hex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            sb.append(Character.forDigit((b >> NIBBLE) & NIBBLE_MASK, HEX))
+                    .append(Character.forDigit(b & NIBBLE_MASK, HEX));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * decodes lowercase hex
+     * @param hex hex
+     * @return bytes
+     */
+    private static byte[] unhex(final String hex) {
+        final byte[] ret = new byte[hex.length() / 2];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = (byte) Integer.parseInt(
+                    hex.substring(i * 2, i * 2 + 2), HEX);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,203 @@
+package frontpage.backend.rest;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author willstuckey
+ * <p>Transport that answers requests in process.</p>
+ *
+ * Requests are decoded and handed to a LoopbackServer, which keeps its
+ * data in memory and replies as the php scripts would. Selected with
+ * rest-transport=loopback or RESTHandler.setTransport, so the client
+ * can be run and exercised without a server or network.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class LoopbackTransport implements Transport {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = Logger.getLogger(LoopbackTransport.class.getName());
+    }
+
+    /**
+     * content type of every reply
+     */
+    private static final String CONTENT_TYPE = "text/html; charset=UTF-8";
+
+    /**
+     * server answering requests
+     */
+    private final LoopbackServer server;
+
+    /**
+     * requests served
+     */
+    private final LongAdder served = new LongAdder();
+
+    /**
+     * creates a transport backed by an empty server
+     */
+    public LoopbackTransport() {
+        this(new LoopbackServer());
+    }
+
+    /**
+     * creates a transport backed by a server
+     * @param server server
+     */
+    LoopbackTransport(final LoopbackServer server) {
+        this.server = server;
+    }
+
+    /**
+     * answers a request
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param headers request headers
+     * @param query form encoded attributes
+     * @return response
+     * @throws IOException if the query cannot be decoded
+     */
+    @Override
+    public Response send(final RESTHandler.RestAction action,
+                         final String apiEntryPoint,
+                         final Map<String, String> headers,
+                         final String query)
+            throws IOException {
+        final String script =
+                apiEntryPoint.substring(apiEntryPoint.lastIndexOf('/') + 1);
+        final LoopbackServer.Reply reply =
+                server.handle(script, headers, decode(query));
+        served.increment();
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace(action + " " + script + ": " + reply.getCode());
+        }
+        return new LoopbackResponse(reply.getCode(), reply.getHeaders(),
+                reply.getBody().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * decodes a form encoded query
+     * @param query query
+     * @return attributes
+     * @throws UnsupportedEncodingException never, UTF-8 is required
+     */
+    private static Map<String, String> decode(final String query)
+            throws UnsupportedEncodingException {
+        final Map<String, String> ret = new HashMap<>();
+        if ((query == null) || query.isEmpty()) {
+            return ret;
+        }
+
+        for (final String pair : query.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq < 0) {
+                ret.put(URLDecoder.decode(pair, "UTF-8"), "");
+            } else {
+                ret.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * gets the number of requests served
+     * @return requests
+     */
+    public long getServed() {
+        return served.sum();
+    }
+
+    /**
+     * toString
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return "LoopbackTransport[served=" + served.sum() + "]";
+    }
+
+    /**
+     * reply held in memory
+     */
+    private static final class LoopbackResponse implements Response {
+        /**
+         * response code
+         */
+        private final int code;
+
+        /**
+         * response headers
+         */
+        private final Map<String, String> headers;
+
+        /**
+         * body
+         */
+        private final byte[] body;
+
+        /**
+         * creates a response
+         * @param code response code
+         * @param headers response headers
+         * @param body body
+         */
+        private LoopbackResponse(final int code,
+                                 final Map<String, String> headers,
+                                 final byte[] body) {
+            this.code = code;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public String getMessage() {
+            if (code == HTTPCodes.OK) {
+                return "OK";
+            }
+            return "HTTP " + code;
+        }
+
+        @Override
+        public String getContentType() {
+            return CONTENT_TYPE;
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -0,0 +1,317 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.GlobalProperties;
+import frontpage.bind.trace.Tracing;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author willstuckey
+ * <p>Bounded I/O executor for asynchronous backend requests.</p>
+ *
+ * Work is run on a fixed number of daemon threads, at least two so
+ * RequestScheduler can keep one from background work, fed by a bounded
+ * queue; submissions past the queue capacity fail fast with a
+ * RejectedExecutionException rather than piling up behind a slow
+ * server. Every task can carry a timeout, and cancelling or timing out
+ * the returned future interrupts the worker running it. Tasks run under
+ * the trace span current when they were submitted.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UtilityClass"})
+public final class RESTExecutor {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * default number of I/O threads
+     */
+    private static final int DEFAULT_THREADS = 4;
+
+    /**
+     * fewest I/O threads, one of which background work never takes
+     */
+    private static final int MIN_THREADS = 2;
+
+    /**
+     * default queue capacity
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * default per task timeout in milliseconds
+     */
+    private static final int DEFAULT_TIMEOUT = 10 * 1000;
+
+    /**
+     * worker pool
+     */
+    private static final ThreadPoolExecutor IO_POOL;
+
+    /**
+     * timer used to expire tasks
+     */
+    private static final ScheduledExecutorService TIMER;
+
+    /**
+     * tasks submitted
+     */
+    private static final LongAdder SUBMITTED = new LongAdder();
+
+    /**
+     * tasks completed normally or exceptionally
+     */
+    private static final LongAdder COMPLETED = new LongAdder();
+
+    /**
+     * tasks rejected because the queue was full
+     */
+    private static final LongAdder REJECTED = new LongAdder();
+
+    /**
+     * tasks that exceeded their timeout
+     */
+    private static final LongAdder TIMED_OUT = new LongAdder();
+
+    /**
+     * tasks cancelled by the caller
+     */
+    private static final LongAdder CANCELLED = new LongAdder();
+
+    /**
+     * deepest queue observed
+     */
+    private static final LongAccumulator MAX_QUEUE_DEPTH =
+            new LongAccumulator(Math::max, 0);
+
+    static {
+        LOGGER = Logger.getLogger(RESTExecutor.class.getName());
+        final int configured = GlobalProperties.getInt(
+                "rest-io-threads", DEFAULT_THREADS);
+        if (configured < MIN_THREADS) {
+            LOGGER.warn("rest-io-threads=" + configured + " cannot keep"
+                    + " a worker from background requests, using "
+                    + MIN_THREADS);
+        }
+        final int threads = Math.max(MIN_THREADS, configured);
+        final int capacity = Math.max(1, GlobalProperties.getInt(
+                "rest-io-queue", DEFAULT_QUEUE_CAPACITY));
+        IO_POOL = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                new DaemonThreadFactory("rest-io"),
+                new ThreadPoolExecutor.AbortPolicy());
+        final ScheduledThreadPoolExecutor timer =
+                new ScheduledThreadPoolExecutor(1,
+                        new DaemonThreadFactory("rest-timer"));
+        timer.setRemoveOnCancelPolicy(true);
+        TIMER = timer;
+    }
+
+    /**
+     * submits a task with the default timeout
+     * @param task task
+     * @param <T> result type
+     * @return future completed with the result of the task
+     */
+    public static <T> CompletableFuture<T> submit(final Callable<T> task) {
+        return submit(task, GlobalProperties.getInt(
+                "rest-async-timeout", DEFAULT_TIMEOUT));
+    }
+
+    /**
+     * submits a task. The returned future completes exceptionally with
+     * a TimeoutException if the task does not finish in time, or with
+     * a RejectedExecutionException if the queue is full. Cancelling the
+     * future interrupts the task.
+     * @param task task
+     * @param timeout timeout in milliseconds, zero or less for none
+     * @param <T> result type
+     * @return future completed with the result of the task
+     */
+    public static <T> CompletableFuture<T> submit(final Callable<T> task,
+                                                  final long timeout) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Callable<T> traced = Tracing.wrap(task);
+        final Future<?> work;
+        try {
+            work = IO_POOL.submit(() -> {
+                try {
+                    result.complete(traced.call());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+            SUBMITTED.increment();
+            MAX_QUEUE_DEPTH.accumulate(IO_POOL.getQueue().size());
+        } catch (RejectedExecutionException e) {
+            REJECTED.increment();
+            LOGGER.warn("I/O queue full, rejecting request ("
+                    + getQueueDepth() + " queued)");
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        final ScheduledFuture<?> timer;
+        if (timeout > 0) {
+            timer = TIMER.schedule(() -> {
+                if (result.completeExceptionally(new TimeoutException(
+                        "request exceeded " + timeout + "ms"))) {
+                    TIMED_OUT.increment();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+
+        result.whenComplete((r, t) -> {
+            COMPLETED.increment();
+            if (timer != null) {
+                timer.cancel(false);
+            }
+
+            if (result.isCancelled()) {
+                CANCELLED.increment();
+            }
+
+            if (t != null) {
+                work.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * gets the number of I/O threads
+     * @return threads
+     */
+    public static int getThreads() {
+        return IO_POOL.getMaximumPoolSize();
+    }
+
+    /**
+     * gets the number of tasks waiting for a worker
+     * @return queue depth
+     */
+    public static int getQueueDepth() {
+        return IO_POOL.getQueue().size();
+    }
+
+    /**
+     * gets the deepest queue observed
+     * @return maximum queue depth
+     */
+    public static long getMaxQueueDepth() {
+        return MAX_QUEUE_DEPTH.get();
+    }
+
+    /**
+     * gets the number of workers currently running a task
+     * @return active workers
+     */
+    public static int getActiveCount() {
+        return IO_POOL.getActiveCount();
+    }
+
+    /**
+     * gets the number of accepted tasks
+     * @return submitted tasks
+     */
+    public static long getSubmitted() {
+        return SUBMITTED.sum();
+    }
+
+    /**
+     * gets the number of finished tasks
+     * @return completed tasks
+     */
+    public static long getCompleted() {
+        return COMPLETED.sum();
+    }
+
+    /**
+     * gets the number of rejected tasks
+     * @return rejected tasks
+     */
+    public static long getRejected() {
+        return REJECTED.sum();
+    }
+
+    /**
+     * gets the number of timed out tasks
+     * @return timed out tasks
+     */
+    public static long getTimedOut() {
+        return TIMED_OUT.sum();
+    }
+
+    /**
+     * gets the number of cancelled tasks
+     * @return cancelled tasks
+     */
+    public static long getCancelled() {
+        return CANCELLED.sum();
+    }
+
+    /**
+     * gets the shared timer, used for delayed work such as retries and
+     * batch windows
+     * @return timer
+     */
+    public static ScheduledExecutorService getTimer() {
+        return TIMER;
+    }
+
+    /**
+     * utility constructor
+     */
+    private RESTExecutor() { }
+
+    /**
+     * creates named daemon threads so pending I/O never keeps the
+     * application alive
+     */
+    static final class DaemonThreadFactory implements ThreadFactory {
+        /**
+         * thread name prefix
+         */
+        private final String prefix;
+
+        /**
+         * thread counter
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * creates a thread factory
+         * @param prefix thread name prefix
+         */
+        DaemonThreadFactory(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r,
+                    prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
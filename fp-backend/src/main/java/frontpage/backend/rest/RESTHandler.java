@@ -1,18 +1,34 @@
 package frontpage.backend.rest;
 
+import frontpage.bind.CancellationToken;
 import frontpage.bind.GlobalProperties;
-import org.apache.log4j.Level;
+import frontpage.bind.Logging;
+import frontpage.bind.jfr.ApiRequestEvent;
+import frontpage.bind.jfr.FlightEvents;
+import frontpage.bind.trace.Span;
+import frontpage.bind.trace.Tracing;
 import org.apache.log4j.Logger;
 
-import javax.net.ssl.HttpsURLConnection;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /**
  * @author willstuckey
@@ -57,16 +73,16 @@ public final class RESTHandler {
             "staging/water/api/report.php";
 
     /**
-     * time after which we give up trying to connect to the
-     * server
+     * longest time spent trying to connect to the server, whatever
+     * the budget of the request
      */
-    private static final int CONNECTION_TIMEOUT = 2 * 1000;
+    static final int CONNECTION_TIMEOUT = 2 * 1000;
 
     /**
-     * time after which we give up waiting for the server
-     * to reply
+     * budget of a request when neither the caller nor the rest-deadline
+     * properties set one
      */
-    private static final int READ_TIMEOUT = 5 * 1000;
+    static final int DEFAULT_DEADLINE = 7 * 1000;
 
     /**
      * default encoding for URL
@@ -84,6 +100,26 @@ public final class RESTHandler {
      */
     private static final Logger LOGGER;
 
+    /**
+     * shared reads in flight, keyed by action, entry point and
+     * attributes
+     */
+    private static final SingleFlight<List<Object>, RESTReport> READS =
+            new SingleFlight<>();
+
+    /**
+     * runs shared reads. Callers wait on their reads, often from the I/O
+     * executor, so the reads need threads of their own.
+     */
+    private static final ExecutorService SHARED_READS =
+            Executors.newCachedThreadPool(
+                    new RESTExecutor.DaemonThreadFactory("rest-shared"));
+
+    /**
+     * transport requests are sent over
+     */
+    private static volatile Transport activeTransport;
+
     /**
      * REST actions, standard HTTP request codes
      */
@@ -101,7 +137,13 @@ public final class RESTHandler {
 
     static {
         LOGGER = Logger.getLogger(RESTHandler.class.getName());
-        LOGGER.setLevel(Level.ALL);
+        Logging.configure(LOGGER);
+        if ("loopback".equals(GlobalProperties.getProperties()
+                .getProperty("rest-transport"))) {
+            activeTransport = new LoopbackTransport();
+        } else {
+            activeTransport = new HttpsTransport();
+        }
     }
 
     /**
@@ -119,6 +161,176 @@ public final class RESTHandler {
     public static RESTReport apiRequest(final RestAction action,
                                      final String apiEntryPoint,
                                      final Map<String, String> attribMap) {
+        return apiRequest(action, apiEntryPoint, attribMap, null);
+    }
+
+    /**
+     * makes an api request, handing each variable payload entry to a
+     * consumer as the response is read. Entries are not retained, the
+     * returned report holds only the response metadata. The consumer
+     * runs on the calling thread while the connection is open.
+     * Cancelling the token current on the calling thread aborts the
+     * request: its connection is closed rather than pooled, no further
+     * entries are delivered and a CancellationException is thrown.
+     * @see RESTHandler#apiRequest(RestAction, String, Map)
+     *
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @param rows receives each entry, null to retain entries in the
+     *             report
+     * @return RESTReport detailing types and points of failure, as well
+     *         as received metadata.
+     */
+    public static RESTReport apiRequest(
+            final RestAction action,
+            final String apiEntryPoint,
+            final Map<String, String> attribMap,
+            final Consumer<Map<String, String>> rows) {
+        try (Span span = Tracing.span(spanName(apiEntryPoint, attribMap))) {
+            final CancellationToken cancel = CancellationToken.current();
+            if (cancel.isCancelled()) {
+                span.setStatus("cancelled");
+                cancel.throwIfCancelled();
+            }
+
+            final Deadline deadline = deadlineFor(apiEntryPoint, attribMap);
+            if (deadline.isExpired()) {
+                LOGGER.warn("deadline exceeded before request to "
+                        + apiEntryPoint);
+                span.setStatus("deadline exceeded");
+                return new RESTReport(true, "deadline exceeded for "
+                        + apiEntryPoint);
+            }
+
+            if (!RequestPolicy.getBreaker(apiEntryPoint).allowRequest()) {
+                LOGGER.warn("circuit open, failing request to "
+                        + apiEntryPoint);
+                span.setStatus("circuit open");
+                return new RESTReport(true, "circuit open for "
+                        + apiEntryPoint);
+            }
+
+            final long start = System.nanoTime();
+            final RESTReport report;
+            try {
+                report = send(action, apiEntryPoint, attribMap, rows, span,
+                        cancel, deadline);
+            } catch (CancellationException e) {
+                LOGGER.debug("request to " + apiEntryPoint + " cancelled");
+                span.setStatus("cancelled");
+                RequestPolicy.getBreaker(apiEntryPoint).onAbandoned();
+                throw e;
+            }
+            final long nanos = System.nanoTime() - start;
+            RequestPolicy.record(apiEntryPoint, report, nanos);
+            RESTMetrics.record(apiEntryPoint, report, nanos);
+            return report;
+        }
+    }
+
+    /**
+     * names the span of a request after its script and action
+     * attribute
+     * @param apiEntryPoint entry point
+     * @param attribMap map of attributes
+     * @return span name
+     */
+    private static String spanName(final String apiEntryPoint,
+                                   final Map<String, String> attribMap) {
+        final String script = scriptOf(apiEntryPoint);
+        final String op = attribMap.get("action");
+        if (op == null) {
+            return script;
+        }
+        return script + " " + op;
+    }
+
+    /**
+     * gets the script name of an entry point
+     * @param apiEntryPoint entry point
+     * @return script name
+     */
+    private static String scriptOf(final String apiEntryPoint) {
+        return apiEntryPoint.substring(apiEntryPoint.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * gets the deadline a request is made under: the one current on the
+     * calling thread, or else the default budget of the request from
+     * now
+     * @see RESTHandler#getDefaultBudget(String, Map)
+     *
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @return deadline
+     */
+    public static Deadline deadlineFor(final String apiEntryPoint,
+                                       final Map<String, String> attribMap) {
+        final Deadline current = Deadline.current();
+        if (current.isBounded()) {
+            return current;
+        }
+        return Deadline.after(getDefaultBudget(apiEntryPoint, attribMap));
+    }
+
+    /**
+     * gets the default budget of a request. The most specific of
+     * rest-deadline.&lt;script&gt;.&lt;action&gt;,
+     * rest-deadline.&lt;script&gt; and rest-deadline applies, where the
+     * action of a listing (reportid=ALL) is LIST.
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @return budget in milliseconds
+     */
+    public static int getDefaultBudget(final String apiEntryPoint,
+                                       final Map<String, String> attribMap) {
+        final String key = "rest-deadline";
+        final String script = key + "." + scriptOf(apiEntryPoint);
+        final int budget = GlobalProperties.getInt(script,
+                GlobalProperties.getInt(key, DEFAULT_DEADLINE));
+
+        String op = attribMap.get("action");
+        if ("ALL".equals(attribMap.get("reportid"))) {
+            op = "LIST";
+        }
+
+        if (op == null) {
+            return budget;
+        }
+        return GlobalProperties.getInt(script + "." + op, budget);
+    }
+
+    /**
+     * makes one api request
+     * @see RESTHandler#apiRequest(RestAction, String, Map, Consumer)
+     *
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @param rows receives each entry, null to retain entries
+     * @param span span of the request
+     * @param cancel token that aborts the request
+     * @param deadline deadline of the request
+     * @return RESTReport of the request
+     * @throws CancellationException if the token is cancelled before
+     *                               the response is read
+     */
+    private static RESTReport send(
+            final RestAction action,
+            final String apiEntryPoint,
+            final Map<String, String> attribMap,
+            final Consumer<Map<String, String>> rows,
+            final Span span,
+            final CancellationToken cancel,
+            final Deadline deadline) {
+        final boolean trace = LOGGER.isTraceEnabled();
+        ApiRequestEvent event = null;
+        if (FlightEvents.ENABLED) {
+            event = new ApiRequestEvent();
+            event.begin();
+        }
+
         LOGGER.debug("API Request Invoked");
         LOGGER.trace("Building API Request");
         String query = "";
@@ -127,8 +339,10 @@ public final class RESTHandler {
             if (key != null) {
                 final String val = attribMap.get(key);
                 if (val != null) {
-                    LOGGER.trace("API Request appending valid <K,V>: <"
-                            + key + "," + val + ">.");
+                    if (trace) {
+                        LOGGER.trace("API Request appending valid <K,V>: <"
+                                + key + "," + val + ">.");
+                    }
                     if (!firstAttrib) {
                         query += "&";
                     } else {
@@ -142,82 +356,478 @@ public final class RESTHandler {
                     } catch (UnsupportedEncodingException e) {
                         LOGGER.error("default encoding was invalid, "
                                 + "error in hardcoded default");
+                        commit(event, action, apiEntryPoint, -1, 0, 0);
+                        span.setStatus("internal error");
                         return new RESTReport(true, e.getMessage());
                     }
                 }
             }
         }
-        //noinspection ConstantConditions
-        LOGGER.trace("query built: " + ((DEBUG_REST) ? query : ""));
+        if (trace) {
+            //noinspection ConstantConditions
+            LOGGER.trace("query built: " + ((DEBUG_REST) ? query : ""));
+        }
 
-        String urlStr = null;
-        final URL url;
-        try {
-            urlStr = GlobalProperties.getProperties().get("remote-server")
-                    + "/"
-                    + apiEntryPoint;
-            url = new URL(urlStr);
-        } catch (MalformedURLException e) {
-            LOGGER.error("malformed url for api entry: " + urlStr);
-            return new RESTReport(true, e.getMessage());
+        // rows of a cancelled request are dropped rather than delivered
+        Consumer<Map<String, String>> sink = rows;
+        if (rows != null) {
+            sink = m -> {
+                cancel.throwIfCancelled();
+                rows.accept(m);
+            };
         }
 
-        try {
-            LOGGER.trace("Connection Type: " + action.toString());
-            HttpsURLConnection con =
-                    (HttpsURLConnection) url.openConnection();
-            con.setRequestMethod(action.toString());
-            con.setRequestProperty("Content-length",
-                    String.valueOf(query.length()));
-            con.setRequestProperty("Content-Type",
-                    "application/x-www-form-urlencoded");
-            con.setRequestProperty("User-Agent",
-                    "Mozilla/4.0 (compatible; MSIE 5.0;Windows98;DigExt)");
-            con.setConnectTimeout(CONNECTION_TIMEOUT);
-            con.setReadTimeout(READ_TIMEOUT);
-            con.setDoOutput(true);
-            con.setDoInput(true);
-
-            DataOutputStream conOutput =
-                    new DataOutputStream(con.getOutputStream());
-            conOutput.writeBytes(query);
-            conOutput.close();
-
-            String responsePayload = "";
-            if (!HTTPCodes.isError(con.getResponseCode())) {
-                DataInputStream conInput =
-                        new DataInputStream(con.getInputStream());
-                for (int c = conInput.read(); c != -1; c = conInput.read()) {
-                    responsePayload += (char) c;
+        // the transport rewrites the budget to what is left of it once
+        // it holds a connection
+        final Map<String, String> headers = new HashMap<>();
+        headers.put(Tracing.HEADER, span.getHeader());
+        headers.put(Deadline.HEADER,
+                Long.toString(deadline.remainingMillis()));
+
+        final Transport transport = activeTransport;
+        CountingInputStream counted = null;
+        int status = -1;
+        try (Transport.Response response = transport.send(action,
+                apiEntryPoint, headers, query)) {
+            final CancellationToken.Registration abort =
+                    cancel.onCancel(response::abort);
+            try {
+                final int code = response.getCode();
+                status = code;
+                if (span.getHeader().equals(
+                        response.getHeader(Tracing.HEADER))) {
+                    span.setStatus(Integer.toString(code));
+                } else {
+                    span.setStatus(code + " untraced");
                 }
-                conInput.close();
-            }
+                final RESTReport report;
+                if (HTTPCodes.isError(code)) {
+                    report = new RESTReport(code, response.getMessage(), "");
+                } else {
+                    counted = new CountingInputStream(response.getBody(),
+                            cancel, deadline);
+                    final ResponseBody body = ResponseBody.read(
+                            counted,
+                            response.getContentType(),
+                            response.getContentLength());
+                    if (trace && body.isBuffered()) {
+                        LOGGER.trace("Return Data: \r\n\r\n" + body.getText());
+                    }
 
-            LOGGER.trace("Return Data: \r\n\r\n" + responsePayload);
+                    if (body.isBuffered() && (rows == null)) {
+                        report = RESTReport.lazy(code,
+                                response.getMessage(),
+                                body.getText());
+                    } else if (body.isBuffered()) {
+                        report = new RESTReport(code,
+                                response.getMessage(),
+                                body.getText(),
+                                sink);
+                    } else {
+                        LOGGER.trace("Return Data: streamed");
+                        try (Reader in = body.getReader()) {
+                            report = new RESTReport(code,
+                                    response.getMessage(),
+                                    in,
+                                    sink);
+                        }
+                    }
+                }
 
-            RESTReport report = new RESTReport(con.getResponseCode(),
-                    con.getResponseMessage(),
-                    responsePayload);
-            LOGGER.trace("Response Code:"
-                    + report.getHttpResponseCode());
-            LOGGER.trace("Response Message: "
-                    + report.getHttpResponseMessage());
-            LOGGER.trace(report);
+                if (trace) {
+                    LOGGER.trace("Response Code:"
+                            + report.getHttpResponseCode());
+                    LOGGER.trace("Response Message: "
+                            + report.getHttpResponseMessage());
+                    LOGGER.trace(report);
+                    LOGGER.trace(transport);
+                }
 
-            if (!report.success()) {
-                LOGGER.error("API request rejected");
-                LOGGER.error(report);
-            }
+                if (!report.success()) {
+                    LOGGER.error("API request rejected");
+                    LOGGER.error(report);
+                }
 
-            return report;
+                return report;
+            } finally {
+                abort.close();
+            }
         } catch (IOException e) {
+            if (cancel.isCancelled()) {
+                final CancellationException ce = new CancellationException(
+                        "request to " + apiEntryPoint + " cancelled");
+                ce.initCause(e);
+                throw ce;
+            }
+
+            if (e instanceof ConnectionPool.ExhaustedException) {
+                LOGGER.warn("no connection free for request to "
+                        + apiEntryPoint + ": " + e.getMessage());
+                span.setStatus("connection pool exhausted");
+                return new RESTReport(true, "connection pool exhausted for "
+                        + apiEntryPoint);
+            }
+
+            if (deadline.isExpired()) {
+                LOGGER.warn("deadline exceeded during request to "
+                        + apiEntryPoint);
+                span.setStatus("deadline exceeded");
+                return new RESTReport(true, "deadline exceeded for "
+                        + apiEntryPoint);
+            }
+
             LOGGER.error("failed to open connection" + e.getCause(), e);
+            span.setStatus("internal error");
             return new RESTReport(true, e.getMessage());
+        } finally {
+            long in = 0;
+            if (counted != null) {
+                in = counted.getCount();
+            }
+            RESTMetrics.recordBytes(apiEntryPoint, query.length(), in);
+            commit(event, action, apiEntryPoint, status, query.length(), in);
+        }
+    }
+
+    /**
+     * ends and commits a request event
+     * @param event event, null if events are disabled
+     * @param action request action
+     * @param apiEntryPoint entry point
+     * @param status http response code, -1 if no response was read
+     * @param out query bytes sent
+     * @param in response body bytes read
+     */
+    private static void commit(final ApiRequestEvent event,
+                               final RestAction action,
+                               final String apiEntryPoint,
+                               final int status,
+                               final long out,
+                               final long in) {
+        if (event == null) {
+            return;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.setEntryPoint(apiEntryPoint);
+            event.setAction(action.toString());
+            event.setStatus(status);
+            event.setBytesOut(out);
+            event.setBytesIn(in);
+            event.commit();
         }
     }
 
+    /**
+     * makes an idempotent api request, sharing one request between
+     * concurrent callers with the same action, entry point and
+     * attributes, and retrying or hedging it under RequestPolicy. The
+     * returned report may be held by other callers, so its maps must
+     * not be modified; use RESTReport.copyEntry to take entries.
+     *
+     * The shared request serves every caller that joins it, so it runs
+     * under no caller's cancellation token and with the default budget
+     * of the entry point. Each caller waits for it under its own token
+     * and deadline: cancelling one caller only ends that caller's wait.
+     * The read is traced under the span of the caller that started it.
+     * @see RESTHandler#apiRequest(RestAction, String, Map)
+     *
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @return RESTReport of the request, possibly shared
+     * @throws CancellationException if the token current on the calling
+     *                               thread is cancelled while waiting
+     */
+    public static RESTReport apiRequestShared(
+            final RestAction action,
+            final String apiEntryPoint,
+            final Map<String, String> attribMap) {
+        final Map<String, String> attribs = new HashMap<>(attribMap);
+        final CancellationToken cancel = CancellationToken.current();
+        final Deadline deadline = deadlineFor(apiEntryPoint, attribs);
+        final Span parent = Tracing.current();
+        cancel.throwIfCancelled();
+
+        final CompletableFuture<RESTReport> read = READS.share(
+                Arrays.asList(action, apiEntryPoint, attribs), () -> {
+                    // retries and hedges share the budget of the read
+                    final CancellationToken previousToken =
+                            CancellationToken.bind(CancellationToken.NONE);
+                    final Deadline previous = Deadline.bind(Deadline.after(
+                            getDefaultBudget(apiEntryPoint, attribs)));
+                    try (Span span = Tracing.span(parent,
+                            "shared " + spanName(apiEntryPoint, attribs))) {
+                        return RequestPolicy.read(apiEntryPoint,
+                                () -> apiRequest(action, apiEntryPoint,
+                                        attribs));
+                    } finally {
+                        Deadline.bind(previous);
+                        CancellationToken.bind(previousToken);
+                    }
+                }, SHARED_READS);
+        return await(read, apiEntryPoint, cancel, deadline);
+    }
+
+    /**
+     * waits for a shared read under a caller's token and deadline
+     * @param read the caller's future of the read
+     * @param apiEntryPoint entry point on public facing directory
+     * @param cancel token of the caller
+     * @param deadline deadline of the caller
+     * @return RESTReport of the read, or a deadline failure
+     * @throws CancellationException if the token is cancelled
+     */
+    private static RESTReport await(final CompletableFuture<RESTReport> read,
+                                    final String apiEntryPoint,
+                                    final CancellationToken cancel,
+                                    final Deadline deadline) {
+        final CancellationToken.Registration registration =
+                cancel.onCancel(() -> read.cancel(false));
+        try {
+            if (deadline.isBounded()) {
+                return read.get(deadline.remainingMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+            return read.get();
+        } catch (TimeoutException e) {
+            LOGGER.warn("deadline exceeded waiting for shared read of "
+                    + apiEntryPoint);
+            return new RESTReport(true, "deadline exceeded for "
+                    + apiEntryPoint);
+        } catch (CancellationException e) {
+            cancel.throwIfCancelled();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final CancellationException ce = new CancellationException(
+                    "interrupted waiting for " + apiEntryPoint);
+            ce.initCause(e);
+            throw ce;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        } finally {
+            registration.close();
+        }
+    }
+
+    /**
+     * gets the shared reads, for their counters of requests made and
+     * requests collapsed into one already in flight
+     * @return shared reads
+     */
+    public static SingleFlight<?, RESTReport> getSharedReads() {
+        return READS;
+    }
+
+    /**
+     * makes an api request, collecting the variable payload into columns
+     * as the response is read
+     * @see RESTHandler#apiRequest(RestAction, String, Map, Consumer)
+     * @see ColumnarReport
+     *
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @return columnar entries, the report of the request is available
+     *         through getReport
+     */
+    public static ColumnarReport apiRequestColumnar(
+            final RestAction action,
+            final String apiEntryPoint,
+            final Map<String, String> attribMap) {
+        final ColumnarReport.Builder rows = ColumnarReport.builder();
+        return rows.build(apiRequest(action, apiEntryPoint, attribMap, rows));
+    }
+
+    /**
+     * makes an api request on the I/O executor with the default budget
+     * of the request as its timeout. The attribute map is copied before
+     * the call returns, so callers may reuse it.
+     * @see RESTHandler#apiRequest(RestAction, String, Map)
+     *
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @return future completed with the RESTReport of the request
+     */
+    public static CompletableFuture<RESTReport> apiRequestAsync(
+            final RestAction action,
+            final String apiEntryPoint,
+            final Map<String, String> attribMap) {
+        return apiRequestAsync(action, apiEntryPoint, attribMap,
+                getDefaultBudget(apiEntryPoint, attribMap));
+    }
+
+    /**
+     * makes an interactive api request with a timeout, which is also
+     * the deadline of the request. The returned future completes
+     * exceptionally with a TimeoutException once the timeout elapses,
+     * and may be cancelled by the caller.
+     * @see RESTHandler#apiRequest(RestAction, String, Map)
+     *
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @param timeout timeout in milliseconds
+     * @return future completed with the RESTReport of the request
+     */
+    public static CompletableFuture<RESTReport> apiRequestAsync(
+            final RestAction action,
+            final String apiEntryPoint,
+            final Map<String, String> attribMap,
+            final long timeout) {
+        return apiRequestAsync(RequestScheduler.Priority.INTERACTIVE, action,
+                apiEntryPoint, attribMap, timeout);
+    }
+
+    /**
+     * makes an api request through the request scheduler. Background
+     * requests are queued behind a rate limit so they never hold up
+     * interactive ones.
+     * @see RESTHandler#apiRequestAsync(RestAction, String, Map, long)
+     * @see RequestScheduler
+     *
+     * @param priority traffic class
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param attribMap map of attributes
+     * @param timeout timeout in milliseconds
+     * @return future completed with the RESTReport of the request
+     */
+    public static CompletableFuture<RESTReport> apiRequestAsync(
+            final RequestScheduler.Priority priority,
+            final RestAction action,
+            final String apiEntryPoint,
+            final Map<String, String> attribMap,
+            final long timeout) {
+        final Map<String, String> attribs = new HashMap<>(attribMap);
+        // the budget starts with the task, as the scheduler's timeout
+        // does, not while it waits in the queue
+        return RequestScheduler.submit(priority,
+                () -> Deadline.wrap(Deadline.after(timeout),
+                        () -> apiRequest(action, apiEntryPoint, attribs))
+                        .call(),
+                timeout);
+    }
+
+    /**
+     * gets the transport requests are sent over
+     * @return transport
+     */
+    public static Transport getTransport() {
+        return activeTransport;
+    }
+
+    /**
+     * replaces the transport requests are sent over. The initial
+     * transport is HTTPS, or loopback if the rest-transport property
+     * is set to loopback.
+     * @param transport transport
+     */
+    public static void setTransport(final Transport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport");
+        }
+        activeTransport = transport;
+    }
+
     /**
      * utility constructor
      */
     private RESTHandler() { }
+
+    /**
+     * stream that counts the bytes read through it and fails reads
+     * once its request is cancelled or its deadline has passed. The read
+     * timeout only bounds each read, so a body trickling in would
+     * otherwise outlive the deadline.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        /**
+         * token that aborts reading
+         */
+        private final CancellationToken cancel;
+
+        /**
+         * deadline of the request
+         */
+        private final Deadline deadline;
+
+        /**
+         * bytes read
+         */
+        private long count;
+
+        /**
+         * wraps a stream
+         * @param in stream
+         * @param cancel token that aborts reading
+         * @param deadline deadline of the request
+         */
+        private CountingInputStream(final InputStream in,
+                                    final CancellationToken cancel,
+                                    final Deadline deadline) {
+            super(in);
+            this.cancel = cancel;
+            this.deadline = deadline;
+        }
+
+        /**
+         * fails the read if the request was cancelled or its deadline
+         * has passed
+         * @throws InterruptedIOException if cancelled or expired
+         */
+        private void check() throws InterruptedIOException {
+            if (cancel.isCancelled()) {
+                throw new InterruptedIOException("request cancelled");
+            }
+            if (deadline.isExpired()) {
+                throw new InterruptedIOException("deadline exceeded");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            check();
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            check();
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        /**
+         * gets the number of bytes read
+         * @return bytes
+         */
+        private long getCount() {
+            return count;
+        }
+    }
 }
@@ -0,0 +1,271 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.GlobalProperties;
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * @author willstuckey
+ * <p>Request metrics of every api entry point.</p>
+ *
+ * RESTHandler records each request here. The metrics are registered
+ * with the platform MBean server under frontpage.backend.rest, one
+ * bean per entry point and one for the client as a whole, and can be
+ * rendered as text with dump. Set rest-metrics-jmx to 0 to keep them
+ * out of JMX.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UtilityClass"})
+public final class RESTMetrics {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * JMX domain
+     */
+    private static final String DOMAIN = "frontpage.backend.rest";
+
+    /**
+     * metrics by entry point
+     */
+    private static final ConcurrentNavigableMap<String, EndpointMetrics>
+            ENDPOINTS = new ConcurrentSkipListMap<>();
+
+    /**
+     * if beans are registered with JMX
+     */
+    private static final boolean JMX;
+
+    static {
+        LOGGER = Logger.getLogger(RESTMetrics.class.getName());
+        JMX = GlobalProperties.getInt("rest-metrics-jmx", 1) != 0;
+        if (JMX) {
+            register(DOMAIN + ":type=Client", new Bean());
+        }
+    }
+
+    /**
+     * gets the metrics of an entry point, creating them on first use
+     * @param apiEntryPoint entry point
+     * @return metrics
+     */
+    public static EndpointMetrics get(final String apiEntryPoint) {
+        final EndpointMetrics existing = ENDPOINTS.get(apiEntryPoint);
+        if (existing != null) {
+            return existing;
+        }
+
+        final EndpointMetrics created = new EndpointMetrics(apiEntryPoint);
+        final EndpointMetrics raced =
+                ENDPOINTS.putIfAbsent(apiEntryPoint, created);
+        if (raced != null) {
+            return raced;
+        }
+
+        if (JMX) {
+            register(DOMAIN + ":type=Endpoint,name="
+                    + ObjectName.quote(apiEntryPoint), created);
+        }
+        return created;
+    }
+
+    /**
+     * records a completed request
+     * @param apiEntryPoint entry point
+     * @param report report of the request
+     * @param nanos duration of the request
+     */
+    static void record(final String apiEntryPoint,
+                       final RESTReport report,
+                       final long nanos) {
+        get(apiEntryPoint).record(report, nanos);
+    }
+
+    /**
+     * records payload sizes of a request
+     * @param apiEntryPoint entry point
+     * @param out query bytes sent
+     * @param in response body bytes read
+     */
+    static void recordBytes(final String apiEntryPoint,
+                            final long out,
+                            final long in) {
+        get(apiEntryPoint).recordBytes(out, in);
+    }
+
+    /**
+     * renders every metric as text, one entry point per line followed
+     * by the client wide counters
+     * @return metrics
+     */
+    public static String dump() {
+        final StringBuilder sb = new StringBuilder();
+        for (final EndpointMetrics m : ENDPOINTS.values()) {
+            sb.append(m).append(System.lineSeparator());
+        }
+
+        final SingleFlight<?, RESTReport> reads =
+                RESTHandler.getSharedReads();
+        sb.append("shared reads: leaders=").append(reads.getLeaders())
+                .append(" collapsed=").append(reads.getCollapsed())
+                .append(System.lineSeparator());
+        sb.append("policy: retries=").append(RequestPolicy.getRetries())
+                .append(" hedges=").append(RequestPolicy.getHedges())
+                .append(" hedgeWins=").append(RequestPolicy.getHedgeWins())
+                .append(" breakerRejections=")
+                .append(RequestPolicy.getBreakerRejections())
+                .append(System.lineSeparator());
+        sb.append("executor: queued=").append(RESTExecutor.getQueueDepth())
+                .append(" rejected=").append(RESTExecutor.getRejected())
+                .append(" timedOut=").append(RESTExecutor.getTimedOut())
+                .append(System.lineSeparator());
+        sb.append(RequestScheduler.dump());
+        sb.append("transport: ").append(RESTHandler.getTransport())
+                .append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    /**
+     * logs the metrics at info level
+     */
+    public static void log() {
+        LOGGER.info("request metrics:" + System.lineSeparator() + dump());
+    }
+
+    /**
+     * clears the metrics of every entry point and the scheduler
+     */
+    public static void reset() {
+        for (final EndpointMetrics m : ENDPOINTS.values()) {
+            m.reset();
+        }
+        RequestScheduler.reset();
+    }
+
+    /**
+     * registers a bean with the platform MBean server
+     * @param name object name
+     * @param bean bean
+     */
+    private static void register(final String name, final Object bean) {
+        try {
+            final MBeanServer server =
+                    ManagementFactory.getPlatformMBeanServer();
+            final ObjectName on = new ObjectName(name);
+            if (!server.isRegistered(on)) {
+                server.registerMBean(bean, on);
+            }
+        } catch (JMException | SecurityException e) {
+            LOGGER.warn("could not register " + name + " with JMX", e);
+        }
+    }
+
+    /**
+     * utility constructor
+     */
+    private RESTMetrics() { }
+
+    /**
+     * client wide bean
+     */
+    private static final class Bean implements RESTMetricsMXBean {
+        @Override
+        public String[] getEntryPoints() {
+            return ENDPOINTS.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        public long getSharedReadLeaders() {
+            return RESTHandler.getSharedReads().getLeaders();
+        }
+
+        @Override
+        public long getSharedReadsCollapsed() {
+            return RESTHandler.getSharedReads().getCollapsed();
+        }
+
+        @Override
+        public long getRetries() {
+            return RequestPolicy.getRetries();
+        }
+
+        @Override
+        public long getHedges() {
+            return RequestPolicy.getHedges();
+        }
+
+        @Override
+        public long getHedgeWins() {
+            return RequestPolicy.getHedgeWins();
+        }
+
+        @Override
+        public long getBreakerRejections() {
+            return RequestPolicy.getBreakerRejections();
+        }
+
+        @Override
+        public long getPoolHits() {
+            return ConnectionPool.getInstance().getHits();
+        }
+
+        @Override
+        public long getPoolMisses() {
+            return ConnectionPool.getInstance().getMisses();
+        }
+
+        @Override
+        public long getHandshakes() {
+            return ConnectionPool.getInstance().getHandshakes();
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return RESTExecutor.getQueueDepth();
+        }
+
+        @Override
+        public long getQueueRejections() {
+            return RESTExecutor.getRejected();
+        }
+
+        @Override
+        public int getBackgroundQueueDepth() {
+            return RequestScheduler.getBackgroundQueueDepth();
+        }
+
+        @Override
+        public long getBackgroundThrottled() {
+            return RequestScheduler.getThrottled();
+        }
+
+        @Override
+        public long getInteractiveWaitP99Micros() {
+            return RequestScheduler.getWaitP99Micros(
+                    RequestScheduler.Priority.INTERACTIVE);
+        }
+
+        @Override
+        public long getBackgroundWaitP99Micros() {
+            return RequestScheduler.getWaitP99Micros(
+                    RequestScheduler.Priority.BACKGROUND);
+        }
+
+        @Override
+        public String dump() {
+            return RESTMetrics.dump();
+        }
+
+        @Override
+        public void reset() {
+            RESTMetrics.reset();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package frontpage.backend.rest;
+
+/**
+ * @author willstuckey
+ * <p>Management interface of the client wide request metrics.</p>
+ *
+ * Per entry point metrics are registered separately, as
+ * EndpointMetricsMXBean instances.
+ */
+public interface RESTMetricsMXBean {
+    /**
+     * gets the entry points with metrics
+     * @return entry points
+     */
+    String[] getEntryPoints();
+
+    /**
+     * gets the number of reads that ran their request
+     * @return leading reads
+     */
+    long getSharedReadLeaders();
+
+    /**
+     * gets the number of reads that joined a request in flight
+     * @return collapsed reads
+     */
+    long getSharedReadsCollapsed();
+
+    /**
+     * gets the number of reads retried
+     * @return retries
+     */
+    long getRetries();
+
+    /**
+     * gets the number of hedged reads started
+     * @return hedges
+     */
+    long getHedges();
+
+    /**
+     * gets the number of hedged reads that answered first
+     * @return hedges won
+     */
+    long getHedgeWins();
+
+    /**
+     * gets the number of requests failed fast by open breakers
+     * @return rejected requests
+     */
+    long getBreakerRejections();
+
+    /**
+     * gets the number of requests served by a pooled connection
+     * @return pool hits
+     */
+    long getPoolHits();
+
+    /**
+     * gets the number of requests that opened a connection
+     * @return pool misses
+     */
+    long getPoolMisses();
+
+    /**
+     * gets the number of TLS handshakes
+     * @return handshakes
+     */
+    long getHandshakes();
+
+    /**
+     * gets the number of tasks waiting for an I/O thread
+     * @return queued tasks
+     */
+    int getQueueDepth();
+
+    /**
+     * gets the number of tasks refused by the full I/O queue
+     * @return rejected tasks
+     */
+    long getQueueRejections();
+
+    /**
+     * gets the number of background requests waiting for release
+     * @return queued requests
+     */
+    int getBackgroundQueueDepth();
+
+    /**
+     * gets the number of times background requests were held back by
+     * the rate limit
+     * @return throttled releases
+     */
+    long getBackgroundThrottled();
+
+    /**
+     * gets the 99th percentile time interactive requests waited to run
+     * @return wait in microseconds
+     */
+    long getInteractiveWaitP99Micros();
+
+    /**
+     * gets the 99th percentile time background requests waited to run
+     * @return wait in microseconds
+     */
+    long getBackgroundWaitP99Micros();
+
+    /**
+     * renders every metric as text
+     * @return metrics
+     */
+    String dump();
+
+    /**
+     * clears the metrics of every entry point and the scheduler
+     */
+    void reset();
+}
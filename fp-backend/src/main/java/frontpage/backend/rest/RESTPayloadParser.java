@@ -0,0 +1,550 @@
+package frontpage.backend.rest;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author willstuckey
+ * <p>Single pass parser for the api line protocol.</p>
+ *
+ * A response is a block of CRLF terminated key=value header lines. If
+ * the header announces a variable payload, the rows between the begin
+ * and end markers take the form index:key=value|key=value. The parser
+ * walks the stream a character at a time, buffering only the current
+ * line, and reports what it finds to a sink without splitting lines
+ * into intermediate arrays.
+ *
+ * The grammar deliberately mirrors the String.split based parser it
+ * replaces: empty trailing lines and fields are dropped, '=' characters
+ * inside values are discarded, and lines preceding the payload
+ * announcement are held back until the payload type is known.
+ */
+@SuppressWarnings({"WeakerAccess", "OverlyComplexMethod"})
+final class RESTPayloadParser {
+    /**
+     * receives the parsed structure of a response
+     */
+    interface Sink {
+        /**
+         * called once the number of dynamic entries is known, before
+         * any entry is reported
+         * @param count announced number of entries, zero if the response
+         *              has no variable payload
+         */
+        void announce(int count);
+
+        /**
+         * called for each metadata pair
+         * @param key key
+         * @param value value
+         */
+        void header(String key, String value);
+
+        /**
+         * called at the start of a dynamic entry
+         * @param index entry index
+         */
+        void beginRow(String index);
+
+        /**
+         * called for each pair of a dynamic entry
+         * @param key key
+         * @param value value
+         */
+        void field(String key, String value);
+
+        /**
+         * called at the end of a dynamic entry
+         */
+        void endRow();
+    }
+
+    /**
+     * start of the dynamic data section
+     */
+    static final String BEGIN_DYN_DATA = "--- BEGIN ---";
+
+    /**
+     * end of the dynamic data section
+     */
+    static final String END_DYN_DATA = "--- END ---";
+
+    /**
+     * header key announcing the number of dynamic entries
+     */
+    static final String VARIABLE_PAYLOAD = "variablepayload";
+
+    /**
+     * size of the read buffer
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * initial size of the row key cache
+     */
+    private static final int KEY_CACHE_SIZE = 16;
+
+    /**
+     * sink
+     */
+    private final Sink sink;
+
+    /**
+     * current line
+     */
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * scratch space for values containing discarded '=' characters
+     */
+    private final StringBuilder value = new StringBuilder();
+
+    /**
+     * lines read before the payload announcement
+     */
+    private final List<String> heldLines = new ArrayList<>();
+
+    /**
+     * keys of the previous row by field position, rows share keys so
+     * they are reused rather than copied out of the line again
+     */
+    private String[] keyCache = new String[KEY_CACHE_SIZE];
+
+    /**
+     * announced entry count, negative until announced
+     */
+    private int count = -1;
+
+    /**
+     * if the parser is between the begin and end markers
+     */
+    private boolean inDynDataSec;
+
+    /**
+     * empty lines seen but not yet reported
+     */
+    private int pendingEmpty;
+
+    /**
+     * if any character was read
+     */
+    private boolean sawInput;
+
+    /**
+     * creates a parser
+     * @param sink sink
+     */
+    RESTPayloadParser(final Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * parses a response
+     * @param in response stream
+     * @throws IOException if the stream cannot be read
+     */
+    void parse(final Reader in) throws IOException {
+        final char[] buf = new char[BUFFER_SIZE];
+        boolean cr = false;
+        int n = in.read(buf);
+        while (n != -1) {
+            if (n > 0) {
+                sawInput = true;
+            }
+
+            for (int i = 0; i < n; i++) {
+                final char c = buf[i];
+                if (cr) {
+                    cr = false;
+                    if (c == '\n') {
+                        endLine();
+                        continue;
+                    }
+                    line.append('\r');
+                }
+
+                if (c == '\r') {
+                    cr = true;
+                } else {
+                    line.append(c);
+                }
+            }
+            n = in.read(buf);
+        }
+
+        if (cr) {
+            line.append('\r');
+        }
+        finish();
+    }
+
+    /**
+     * parses a response held in memory
+     * @param in response body
+     */
+    void parse(final CharSequence in) {
+        final int len = in.length();
+        sawInput = len > 0;
+        int start = 0;
+        for (int i = 0; i < len - 1; i++) {
+            if ((in.charAt(i) == '\r') && (in.charAt(i + 1) == '\n')) {
+                line.append(in, start, i);
+                endLine();
+                start = i + 2;
+                i++;
+            }
+        }
+        line.append(in, start, len);
+        finish();
+    }
+
+    /**
+     * handles a CRLF. Empty lines are deferred so trailing ones can be
+     * dropped.
+     */
+    private void endLine() {
+        if (line.length() == 0) {
+            pendingEmpty++;
+        } else {
+            flushPending();
+            onLine(line);
+        }
+        line.setLength(0);
+    }
+
+    /**
+     * handles the end of the stream
+     */
+    private void finish() {
+        if (line.length() > 0) {
+            flushPending();
+            onLine(line);
+        } else if (!sawInput) {
+            onLine("");
+        }
+        line.setLength(0);
+
+        if (count < 0) {
+            count = 0;
+            sink.announce(0);
+            for (final String held : heldLines) {
+                dispatch(held, false);
+            }
+            heldLines.clear();
+        }
+    }
+
+    /**
+     * reports deferred empty lines
+     */
+    private void flushPending() {
+        while (pendingEmpty > 0) {
+            pendingEmpty--;
+            onLine("");
+        }
+    }
+
+    /**
+     * handles a complete line
+     * @param l line
+     */
+    private void onLine(final CharSequence l) {
+        if (count < 0) {
+            if (indexOf(l, VARIABLE_PAYLOAD) < 0) {
+                heldLines.add(l.toString());
+                return;
+            }
+
+            count = parseCount(l, 0, l.length());
+            sink.announce(count);
+            for (final String held : heldLines) {
+                dispatch(held, count > 0);
+            }
+            heldLines.clear();
+        }
+        dispatch(l, count > 0);
+    }
+
+    /**
+     * routes a line to the header, marker, or row handler
+     * @param l line
+     * @param dyn if the response has a variable payload
+     */
+    private void dispatch(final CharSequence l, final boolean dyn) {
+        final int len = l.length();
+        if (dyn && equalsIgnoreCase(l, 0, len, BEGIN_DYN_DATA)) {
+            inDynDataSec = true;
+        } else if (dyn && equalsIgnoreCase(l, 0, len, END_DYN_DATA)) {
+            inDynDataSec = false;
+        } else if (inDynDataSec) {
+            row(l, 0, len);
+        } else {
+            header(l, 0, len);
+        }
+    }
+
+    /**
+     * parses a key=value metadata line
+     * @param l text containing the line
+     * @param from start of the line
+     * @param len end of the line
+     */
+    void header(final CharSequence l, final int from, final int len) {
+        pair(l, from, len, -1);
+    }
+
+    /**
+     * parses an index:key=value|key=value row
+     * @param l text containing the line
+     * @param from start of the line
+     * @param len end of the line
+     */
+    void row(final CharSequence l, final int from, final int len) {
+        int colon = -1;
+        for (int i = from; i < len; i++) {
+            if (l.charAt(i) == ':') {
+                colon = i;
+                break;
+            }
+        }
+
+        if (colon < 0) {
+            sink.beginRow(l.subSequence(from, len).toString());
+            sink.endRow();
+            return;
+        }
+
+        sink.beginRow(l.subSequence(from, colon).toString());
+        final int start = colon + 1;
+        if (start == len) {
+            pair(l, start, len, 0);
+        } else {
+            int end = len;
+            while ((end > start) && (l.charAt(end - 1) == '|')) {
+                end--;
+            }
+
+            int fieldStart = start;
+            int field = 0;
+            for (int i = start; i <= end; i++) {
+                if ((i == end) || (l.charAt(i) == '|')) {
+                    if (end > start) {
+                        pair(l, fieldStart, i, field++);
+                    }
+                    fieldStart = i + 1;
+                }
+            }
+        }
+        sink.endRow();
+    }
+
+    /**
+     * parses a key=value pair. The key runs to the first '=', the value
+     * is everything after it with any further '=' removed. A pair made
+     * only of '=' is ignored.
+     * @param l line
+     * @param start start of the pair
+     * @param end end of the pair
+     * @param field field position within a row, negative for headers
+     */
+    private void pair(final CharSequence l,
+                      final int start,
+                      final int end,
+                      final int field) {
+        int eq = end;
+        for (int i = start; i < end; i++) {
+            if (l.charAt(i) == '=') {
+                eq = i;
+                break;
+            }
+        }
+
+        if ((eq == start) && (start < end)) {
+            boolean allEq = true;
+            for (int i = start; i < end; i++) {
+                if (l.charAt(i) != '=') {
+                    allEq = false;
+                    break;
+                }
+            }
+
+            if (allEq) {
+                return;
+            }
+        }
+
+        final String key = key(l, start, eq, field);
+        final String val;
+        if (eq >= end - 1) {
+            val = "";
+        } else {
+            int nextEq = -1;
+            for (int i = eq + 1; i < end; i++) {
+                if (l.charAt(i) == '=') {
+                    nextEq = i;
+                    break;
+                }
+            }
+
+            if (nextEq < 0) {
+                val = l.subSequence(eq + 1, end).toString();
+            } else {
+                value.setLength(0);
+                for (int i = eq + 1; i < end; i++) {
+                    final char c = l.charAt(i);
+                    if (c != '=') {
+                        value.append(c);
+                    }
+                }
+                val = value.toString();
+            }
+        }
+
+        if (field < 0) {
+            sink.header(key, val);
+        } else {
+            sink.field(key, val);
+        }
+    }
+
+    /**
+     * gets a key, reusing the key of the same field in the previous row
+     * if it matches
+     * @param l line
+     * @param start start of the key
+     * @param end end of the key
+     * @param field field position within a row, negative for headers
+     * @return key
+     */
+    private String key(final CharSequence l,
+                       final int start,
+                       final int end,
+                       final int field) {
+        if (field < 0) {
+            return l.subSequence(start, end).toString();
+        }
+
+        if (field >= keyCache.length) {
+            final String[] grown = new String[keyCache.length * 2];
+            System.arraycopy(keyCache, 0, grown, 0, keyCache.length);
+            keyCache = grown;
+        }
+
+        final String cached = keyCache[field];
+        if ((cached != null) && regionEquals(l, start, end, cached)) {
+            return cached;
+        }
+
+        final String key = l.subSequence(start, end).toString();
+        keyCache[field] = key;
+        return key;
+    }
+
+    /**
+     * parses the number of dynamic entries from the announcement line,
+     * taken from between the first and second '='
+     * @param l text containing the line
+     * @param from start of the line
+     * @param len end of the line
+     * @return number of entries, zero if malformed
+     */
+    static int parseCount(final CharSequence l,
+                          final int from,
+                          final int len) {
+        int start = -1;
+        int end = len;
+        for (int i = from; i < len; i++) {
+            if (l.charAt(i) == '=') {
+                if (start < 0) {
+                    start = i + 1;
+                } else {
+                    end = i;
+                    break;
+                }
+            }
+        }
+
+        if ((start < 0) || (start >= end)) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(l.subSequence(start, end)
+                    .toString().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * finds a string in a character sequence
+     * @param l sequence
+     * @param s string
+     * @return index of the string, -1 if absent
+     */
+    private static int indexOf(final CharSequence l, final String s) {
+        final int last = l.length() - s.length();
+        for (int i = 0; i <= last; i++) {
+            if (regionEquals(l, i, i + s.length(), s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * compares a region of a sequence to a string
+     * @param l sequence
+     * @param start start of the region
+     * @param end end of the region
+     * @param s string
+     * @return if the region equals the string
+     */
+    private static boolean regionEquals(final CharSequence l,
+                                        final int start,
+                                        final int end,
+                                        final String s) {
+        if ((end - start) != s.length()) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (l.charAt(i) != s.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * compares a region of a sequence to a string ignoring case, as
+     * String.equalsIgnoreCase does
+     * @param l sequence
+     * @param from start of the region
+     * @param to end of the region
+     * @param s string
+     * @return if the region equals the string ignoring case
+     */
+    static boolean equalsIgnoreCase(final CharSequence l,
+                                    final int from,
+                                    final int to,
+                                    final String s) {
+        if ((to - from) != s.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < s.length(); i++) {
+            final char a = l.charAt(from + i);
+            final char b = s.charAt(i);
+            if ((a != b)
+                    && (Character.toUpperCase(a) != Character.toUpperCase(b))
+                    && (Character.toLowerCase(a)
+                            != Character.toLowerCase(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
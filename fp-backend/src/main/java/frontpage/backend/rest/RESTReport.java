@@ -1,7 +1,15 @@
 package frontpage.backend.rest;
 
+import frontpage.bind.jfr.FlightEvents;
+import frontpage.bind.jfr.ReportParseEvent;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @author willstuckey
@@ -44,10 +52,15 @@ public class RESTReport {
     private final String httpResponseBody;
 
     /**
-     * map of response KV pairs
+     * map of response KV pairs, null if decoded lazily
      */
     private final Map<String, String>[] responseValues;
 
+    /**
+     * offset index decoded on demand, null if decoded eagerly
+     */
+    private final LazyResponse lazy;
+
     /**
      * creates a rest report from the response of a request
      * @see frontpage.backend.rest.HTTPCodes
@@ -59,11 +72,134 @@ public class RESTReport {
     protected RESTReport(final int httpResponseCode,
                          final String httpResponseMessage,
                          final String httpResponseBody) {
+        this(httpResponseCode, httpResponseMessage, httpResponseBody,
+                parse(httpResponseBody, null));
+    }
+
+    /**
+     * creates a rest report from a streamed response. The body is parsed
+     * as it is read and is not retained.
+     * @see frontpage.backend.rest.HTTPCodes
+     *
+     * @param httpResponseCode response code of request
+     * @param httpResponseMessage header message
+     * @param httpResponseBody response stream
+     * @throws IOException if the stream cannot be read
+     */
+    protected RESTReport(final int httpResponseCode,
+                         final String httpResponseMessage,
+                         final Reader httpResponseBody)
+            throws IOException {
+        this(httpResponseCode, httpResponseMessage, null,
+                parse(httpResponseBody, null));
+    }
+
+    /**
+     * creates a rest report from the response of a request, handing each
+     * dynamic entry to a consumer as it is parsed rather than retaining
+     * it. Only the response metadata is kept.
+     * @see frontpage.backend.rest.HTTPCodes
+     *
+     * @param httpResponseCode response code of request
+     * @param httpResponseMessage header message
+     * @param httpResponseBody raw response
+     * @param rows receives each dynamic entry, null to retain them
+     */
+    protected RESTReport(final int httpResponseCode,
+                         final String httpResponseMessage,
+                         final String httpResponseBody,
+                         final Consumer<Map<String, String>> rows) {
+        this(httpResponseCode, httpResponseMessage, httpResponseBody,
+                parse(httpResponseBody, rows));
+    }
+
+    /**
+     * creates a rest report from a streamed response, handing each
+     * dynamic entry to a consumer as it is read rather than retaining
+     * it. Only the response metadata is kept.
+     * @see frontpage.backend.rest.HTTPCodes
+     *
+     * @param httpResponseCode response code of request
+     * @param httpResponseMessage header message
+     * @param httpResponseBody response stream
+     * @param rows receives each dynamic entry, null to retain them
+     * @throws IOException if the stream cannot be read
+     */
+    protected RESTReport(final int httpResponseCode,
+                         final String httpResponseMessage,
+                         final Reader httpResponseBody,
+                         final Consumer<Map<String, String>> rows)
+            throws IOException {
+        this(httpResponseCode, httpResponseMessage, null,
+                parse(httpResponseBody, rows));
+    }
+
+    /**
+     * creates a rest report from a response parsed into a sink
+     * @param httpResponseCode response code of request
+     * @param httpResponseMessage header message
+     * @param httpResponseBody raw payload, null if streamed
+     * @param sink parsed response
+     */
+    private RESTReport(final int httpResponseCode,
+                       final String httpResponseMessage,
+                       final String httpResponseBody,
+                       final MapSink sink) {
         this(false,
                 null,
                 httpResponseCode,
                 httpResponseMessage,
-                httpResponseBody);
+                httpResponseBody,
+                sink.toArray(),
+                sink.count > 0);
+    }
+
+    /**
+     * creates a rest report that indexes the body without decoding it.
+     * Values are decoded and cached as they are requested, so status
+     * checks on large responses only decode the metadata.
+     * @param httpResponseCode response code of request
+     * @param httpResponseMessage header message
+     * @param httpResponseBody raw response
+     * @param lazy offset index of the body
+     */
+    private RESTReport(final int httpResponseCode,
+                       final String httpResponseMessage,
+                       final String httpResponseBody,
+                       final LazyResponse lazy) {
+        this.internalError = false;
+        this.internalErrorMessage = null;
+        this.httpResponseCode = httpResponseCode;
+        this.httpResponseMessage = httpResponseMessage;
+        this.httpResponseBody = httpResponseBody;
+        this.responseValues = null;
+        this.lazy = lazy;
+        this.dynamicData = lazy.getCount() > 0;
+    }
+
+    /**
+     * creates a lazily decoded rest report from the response of a
+     * request. Behaves as the eager report for the same body.
+     * @see frontpage.backend.rest.HTTPCodes
+     *
+     * @param httpResponseCode response code of request
+     * @param httpResponseMessage header message
+     * @param httpResponseBody raw response
+     * @return report
+     */
+    static RESTReport lazy(final int httpResponseCode,
+                           final String httpResponseMessage,
+                           final String httpResponseBody) {
+        ReportParseEvent event = null;
+        if (FlightEvents.ENABLED) {
+            event = new ReportParseEvent();
+            event.begin();
+        }
+
+        final LazyResponse index = new LazyResponse(httpResponseBody);
+        commit(event, "lazy", index.size(), httpResponseBody.length());
+        return new RESTReport(httpResponseCode, httpResponseMessage,
+                httpResponseBody, index);
     }
 
     /**
@@ -74,7 +210,8 @@ public class RESTReport {
     @SuppressWarnings("SameParameterValue")
     protected RESTReport(final boolean internalError,
                          final String internalErrorMessage) {
-        this(internalError, internalErrorMessage, -1, null, null);
+        this(internalError, internalErrorMessage, -1, null, null,
+                new MapSink(null).toArray(), false);
     }
 
     /**
@@ -85,34 +222,25 @@ public class RESTReport {
      * @param internalErrorMessage internal error message
      * @param httpResponseCode response code
      * @param httpResponseMessage http response header message
-     * @param httpResponseBody raw payload
+     * @param httpResponseBody raw payload, null if streamed
+     * @param responseValues parsed payload
+     * @param dynamicData if the payload had dynamic length data
      */
-    @SuppressWarnings("unchecked")
     private RESTReport(final boolean internalError,
                        final String internalErrorMessage,
                        final int httpResponseCode,
                        final String httpResponseMessage,
-                       final String httpResponseBody) {
+                       final String httpResponseBody,
+                       final Map<String, String>[] responseValues,
+                       final boolean dynamicData) {
         this.internalError = internalError;
         this.internalErrorMessage = internalErrorMessage;
         this.httpResponseCode  = httpResponseCode;
         this.httpResponseMessage = httpResponseMessage;
         this.httpResponseBody = httpResponseBody;
-        int count = 0;
-        if (httpResponseBody.contains("variablepayload")) {
-            for (String s : httpResponseBody.split("\r\n")) {
-                if (s.contains("variablepayload")) {
-                    String[] kv = s.split("=");
-                    count = Integer.parseInt(kv[1]);
-                    break;
-                }
-            }
-        }
-        dynamicData = count > 0;
-        responseValues = (Map<String, String>[]) new HashMap[count + 1];
-        RESTReport.addKVPairsToMaps(responseValues,
-                this.httpResponseBody,
-                dynamicData);
+        this.responseValues = responseValues;
+        this.lazy = null;
+        this.dynamicData = dynamicData;
     }
 
     /**
@@ -121,6 +249,10 @@ public class RESTReport {
      * @return value
      */
     public String getResponseValue(final String key) {
+        if (lazy != null) {
+            return lazy.find(key);
+        }
+
         for (Map<String, String> map : responseValues) {
             if (map != null) {
                 String result = map.get(key);
@@ -133,6 +265,24 @@ public class RESTReport {
         return null;
     }
 
+    /**
+     * gets the cursor of the page following a paged listing, sent by the
+     * server as the cursor header value
+     * @return opaque cursor, null if this was the last page or the
+     *         response is not paged
+     */
+    public String getCursor() {
+        if (wasInternalError() || rejected()) {
+            return null;
+        }
+
+        final String cursor = getSingleResponseMap().get("cursor");
+        if ((cursor == null) || cursor.isEmpty()) {
+            return null;
+        }
+        return cursor;
+    }
+
     /**
      * returns if the request was completely successful
      * @return success
@@ -141,8 +291,8 @@ public class RESTReport {
     public boolean success() {
         return !wasInternalError()
                 && !rejected()
-                && (responseValues[0].get("status") != null)
-                && responseValues[0].get("status").contains("success");
+                && (getSingleResponseMap().get("status") != null)
+                && getSingleResponseMap().get("status").contains("success");
     }
 
     /**
@@ -191,7 +341,7 @@ public class RESTReport {
 
     /**
      * gets the raw response payload/body
-     * @return body
+     * @return body, null if the response was streamed
      */
     public String getHttpResponseBody() {
         return httpResponseBody;
@@ -203,6 +353,9 @@ public class RESTReport {
      * @return parsed response
      */
     public Map<String, String>[] getResponseValues() {
+        if (lazy != null) {
+            return lazy.values();
+        }
         return responseValues;
     }
 
@@ -211,9 +364,66 @@ public class RESTReport {
      * @return parsed response
      */
     public Map<String, String> getSingleResponseMap() {
+        if (lazy != null) {
+            return lazy.header();
+        }
         return responseValues[0];
     }
 
+    /**
+     * gets the number of dynamic entries received, which may be fewer
+     * than announced
+     * @return entries
+     */
+    public int getEntryCount() {
+        if (lazy != null) {
+            return lazy.size();
+        }
+
+        int n = 0;
+        for (int i = 1; i < responseValues.length; i++) {
+            if (responseValues[i] != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * gets a dynamic entry. Lazily decoded reports decode only the
+     * requested entry.
+     * @param index entry position, from zero
+     * @return entry
+     */
+    public Map<String, String> getEntry(final int index) {
+        if ((index < 0) || (index >= getEntryCount())) {
+            throw new IndexOutOfBoundsException("entry " + index);
+        }
+
+        if (lazy != null) {
+            return lazy.row(index);
+        }
+        return responseValues[index + 1];
+    }
+
+    /**
+     * gets a private copy of a dynamic entry, for reports shared
+     * between callers. Lazily decoded reports decode the entry afresh
+     * rather than caching it.
+     * @param index entry position, from zero
+     * @return modifiable copy of the entry
+     */
+    public Map<String, String> copyEntry(final int index) {
+        if ((index < 0) || (index >= getEntryCount())) {
+            throw new IndexOutOfBoundsException("entry " + index);
+        }
+
+        if (lazy != null) {
+            return lazy.decode(index);
+        }
+        return new HashMap<>(responseValues[index + 1]);
+    }
+
     /**
      * toString
      * @return string
@@ -228,91 +438,94 @@ public class RESTReport {
         ret += "HTTP Response Code: " + httpResponseCode + "\r\n";
         ret += "HTTP Response: " + httpResponseMessage + "\r\n";
         ret += "API Keys Returned:\r\n";
-        for (final Map<String, String> map : responseValues) {
-            ret += "[";
-            for (final String key : map.keySet()) {
-                ret += key;
-                ret += ",";
-            }
-            ret += "]\r\n";
+        ret += "[";
+        for (final String key : getSingleResponseMap().keySet()) {
+            ret += key;
+            ret += ",";
         }
-        if (ret.charAt(ret.length() - 1) == ',') {
-            ret = ret.substring(0, ret.length() - 1);
+        ret += "]\r\n";
+        if (dynamicData) {
+            ret += "Dynamic Entries: " + getEntryCount() + "\r\n";
         }
 
         return ret;
     }
 
     /**
-     * parses response data and loads KVs into an array of maps
-     * @param maps array of maps to load
-     * @param raw raw data
-     * @param dyn if the data has dynamic length
-     */
-    private static void addKVPairsToMaps(final Map<String, String>[] maps,
-                                         final String raw,
-                                         final boolean dyn) {
-        if (!dyn) {
-            maps[0] = new HashMap<>();
-            addKVPairsToMap(maps[0], raw, false);
-        } else {
-            maps[0] = new HashMap<>();
-            int mapIndex = 1;
-            boolean inDynDataSec = false;
-            for (final String line : raw.split("\r\n")) {
-                if (line.equalsIgnoreCase("--- BEGIN ---")) {
-                    inDynDataSec = true;
-                } else if (line.equalsIgnoreCase("--- END ---")) {
-                    inDynDataSec = false;
-                } else if (inDynDataSec) {
-                    maps[mapIndex] = new HashMap<>();
-                    addKVPairsToMap(maps[mapIndex++], line, true);
-                } else {
-                    final String[] kvPair = line.split("=");
-                    if (kvPair.length >= 2) {
-                        String value = "";
-                        for (int i = 1; i < kvPair.length; i++) {
-                            value += kvPair[i];
-                        }
-                        maps[0].put(kvPair[0], value);
-                    } else if (kvPair.length == 1) {
-                        maps[0].put(kvPair[0], "");
-                    }
-                }
-            }
+     * parses response data. The first map holds the response metadata,
+     * the remaining maps hold the dynamic entries between the begin and
+     * end markers if the header announced a variable payload.
+     * @param raw raw data, may be null
+     * @param rows receives each dynamic entry, null to retain them
+     * @return parsed response
+     */
+    private static MapSink parse(final String raw,
+                                 final Consumer<Map<String, String>> rows) {
+        ReportParseEvent event = null;
+        if (FlightEvents.ENABLED) {
+            event = new ReportParseEvent();
+            event.begin();
         }
+
+        final MapSink sink = new MapSink(rows);
+        long characters = 0;
+        if (raw != null) {
+            new RESTPayloadParser(sink).parse((CharSequence) raw);
+            characters = raw.length();
+        }
+        commit(event, "buffered", sink.read, characters);
+        return sink;
     }
 
     /**
-     * loads raw data into a map
-     * @param map map
-     * @param raw raw data
-     * @param dyn if the data is part of a dynamic entry
+     * parses response data in a single pass as it is read
+     * @see RESTReport#parse(String, Consumer)
+     *
+     * @param raw response stream
+     * @param rows receives each dynamic entry, null to retain them
+     * @return parsed response
+     * @throws IOException if the stream cannot be read
      */
-    private static void addKVPairsToMap(final Map<String, String> map,
-                                        final String raw,
-                                        final boolean dyn) {
-        if ((map == null) || (raw == null)) {
+    private static MapSink parse(final Reader raw,
+                                 final Consumer<Map<String, String>> rows)
+            throws IOException {
+        ReportParseEvent event = null;
+        if (FlightEvents.ENABLED) {
+            event = new ReportParseEvent();
+            event.begin();
+        }
+
+        // a stream cut short still records the entries read before it
+        final MapSink sink = new MapSink(rows);
+        try {
+            new RESTPayloadParser(sink).parse(raw);
+        } finally {
+            commit(event, "streamed", sink.read, -1);
+        }
+        return sink;
+    }
+
+    /**
+     * ends and commits a parse event
+     * @param event event, null if events are disabled
+     * @param mode buffered, streamed or lazy
+     * @param rows dynamic entries read
+     * @param characters body length, -1 if streamed
+     */
+    private static void commit(final ReportParseEvent event,
+                               final String mode,
+                               final int rows,
+                               final long characters) {
+        if (event == null) {
             return;
         }
 
-        if (!dyn) {
-            for (final String line : raw.split("\r\n")) {
-                final String[] kvPair = line.split("=");
-                if (kvPair.length >= 2) {
-                    String value = "";
-                    for (int i = 1; i < kvPair.length; i++) {
-                        value += kvPair[i];
-                    }
-                    map.put(kvPair[0], value);
-                } else if (kvPair.length == 1) {
-                    map.put(kvPair[0], "");
-                }
-            }
-        } else {
-            String[] indDataPair = raw.split(":", 2);
-            map.put("index", indDataPair[0]);
-            addKVPairsToMap(map, indDataPair[1].replace("|", "\r\n"), false);
+        event.end();
+        if (event.shouldCommit()) {
+            event.setMode(mode);
+            event.setRows(rows);
+            event.setCharacters(characters);
+            event.commit();
         }
     }
 
@@ -323,4 +536,97 @@ public class RESTReport {
     public boolean isDynamicData() {
         return dynamicData;
     }
+
+    /**
+     * collects parsed responses into maps, one for the metadata and one
+     * per dynamic entry, or hands dynamic entries to a consumer
+     */
+    private static final class MapSink implements RESTPayloadParser.Sink {
+        /**
+         * parsed maps, the first being the metadata map
+         */
+        private final List<Map<String, String>> maps = new ArrayList<>();
+
+        /**
+         * receives dynamic entries, null if they are retained
+         */
+        private final Consumer<Map<String, String>> rows;
+
+        /**
+         * current dynamic entry
+         */
+        private Map<String, String> row;
+
+        /**
+         * announced number of entries
+         */
+        private int count;
+
+        /**
+         * number of entries read
+         */
+        private int read;
+
+        /**
+         * creates a map sink
+         * @param rows receives dynamic entries, null to retain them
+         */
+        private MapSink(final Consumer<Map<String, String>> rows) {
+            this.rows = rows;
+            maps.add(new HashMap<>());
+        }
+
+        /**
+         * sizes parsed maps into the response array. Retained responses
+         * hold one slot per announced entry even if fewer entries were
+         * received.
+         * @return parsed response
+         */
+        @SuppressWarnings("unchecked")
+        private Map<String, String>[] toArray() {
+            int size = maps.size();
+            if (rows == null) {
+                size = Math.max(count + 1, size);
+            }
+
+            final Map<String, String>[] ret = (Map<String, String>[])
+                    new HashMap[size];
+            for (int i = 0; i < maps.size(); i++) {
+                ret[i] = maps.get(i);
+            }
+            return ret;
+        }
+
+        @Override
+        public void announce(final int entries) {
+            this.count = entries;
+        }
+
+        @Override
+        public void header(final String key, final String value) {
+            maps.get(0).put(key, value);
+        }
+
+        @Override
+        public void beginRow(final String index) {
+            row = new HashMap<>();
+            row.put("index", index);
+        }
+
+        @Override
+        public void field(final String key, final String value) {
+            row.put(key, value);
+        }
+
+        @Override
+        public void endRow() {
+            read++;
+            if (rows == null) {
+                maps.add(row);
+            } else {
+                rows.accept(row);
+            }
+            row = null;
+        }
+    }
 }
@@ -0,0 +1,447 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.CancellationToken;
+import frontpage.bind.GlobalProperties;
+import frontpage.bind.trace.Tracing;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * @author willstuckey
+ * <p>Failure handling for api requests.</p>
+ *
+ * Every entry point has a circuit breaker, fed by every request made
+ * through RESTHandler. Idempotent reads are additionally retried with
+ * jittered exponential backoff when they fail with an I/O error or a
+ * server error, and may be hedged: once a read has taken longer than a
+ * configured percentile of recent latencies for its entry point, a
+ * second copy is started and whichever answers first is used.
+ *
+ * Properties:
+ * rest-retries, retries per read (2);
+ * rest-backoff, base backoff in milliseconds (100);
+ * rest-backoff-max, backoff cap in milliseconds (2000);
+ * rest-hedge-percentile, latency percentile after which reads are
+ * hedged, zero for no hedging (0);
+ * rest-breaker-failures, consecutive failures that open a breaker (5);
+ * rest-breaker-open, time a breaker stays open in milliseconds (10000).
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UtilityClass"})
+public final class RequestPolicy {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * default number of retries
+     */
+    private static final int DEFAULT_RETRIES = 2;
+
+    /**
+     * default base backoff in milliseconds
+     */
+    private static final int DEFAULT_BACKOFF = 100;
+
+    /**
+     * default backoff cap in milliseconds
+     */
+    private static final int DEFAULT_BACKOFF_MAX = 2 * 1000;
+
+    /**
+     * default consecutive failures that open a breaker
+     */
+    private static final int DEFAULT_BREAKER_FAILURES = 5;
+
+    /**
+     * default time a breaker stays open in milliseconds
+     */
+    private static final int DEFAULT_BREAKER_OPEN = 10 * 1000;
+
+    /**
+     * latencies kept per entry point
+     */
+    private static final int LATENCY_SAMPLES = 256;
+
+    /**
+     * latencies required before reads are hedged
+     */
+    private static final int MIN_HEDGE_SAMPLES = 32;
+
+    /**
+     * most threads running hedged reads
+     */
+    private static final int HEDGE_THREADS = 8;
+
+    /**
+     * lowest http code counted as a server failure
+     */
+    private static final int SERVER_ERROR = 500;
+
+    /**
+     * largest shift applied to the base backoff
+     */
+    private static final int MAX_SHIFT = 30;
+
+    /**
+     * percent
+     */
+    private static final int PERCENT = 100;
+
+    /**
+     * nanoseconds per millisecond
+     */
+    private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+    /**
+     * breakers by entry point
+     */
+    private static final ConcurrentMap<String, CircuitBreaker> BREAKERS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * recent latencies by entry point
+     */
+    private static final ConcurrentMap<String, Latencies> LATENCIES =
+            new ConcurrentHashMap<>();
+
+    /**
+     * threads running hedged reads, kept apart from the I/O executor
+     * so reads issued from it cannot starve it
+     */
+    private static final ThreadPoolExecutor HEDGE_POOL;
+
+    /**
+     * reads retried
+     */
+    private static final LongAdder RETRIES = new LongAdder();
+
+    /**
+     * hedged copies started
+     */
+    private static final LongAdder HEDGES = new LongAdder();
+
+    /**
+     * hedged copies that answered first
+     */
+    private static final LongAdder HEDGE_WINS = new LongAdder();
+
+    static {
+        LOGGER = Logger.getLogger(RequestPolicy.class.getName());
+        HEDGE_POOL = new ThreadPoolExecutor(0, HEDGE_THREADS,
+                1, TimeUnit.MINUTES,
+                new SynchronousQueue<>(),
+                new RESTExecutor.DaemonThreadFactory("rest-hedge"));
+    }
+
+    /**
+     * gets the breaker of an entry point
+     * @param apiEntryPoint entry point
+     * @return breaker
+     */
+    public static CircuitBreaker getBreaker(final String apiEntryPoint) {
+        return BREAKERS.computeIfAbsent(apiEntryPoint,
+                k -> new CircuitBreaker(k,
+                        GlobalProperties.getInt("rest-breaker-failures",
+                                DEFAULT_BREAKER_FAILURES),
+                        GlobalProperties.getInt("rest-breaker-open",
+                                DEFAULT_BREAKER_OPEN)));
+    }
+
+    /**
+     * records the outcome of a request made through RESTHandler
+     * @param apiEntryPoint entry point
+     * @param report report of the request
+     * @param nanos duration of the request
+     */
+    static void record(final String apiEntryPoint,
+                       final RESTReport report,
+                       final long nanos) {
+        if (failed(report)) {
+            getBreaker(apiEntryPoint).onFailure();
+        } else {
+            getBreaker(apiEntryPoint).onSuccess();
+            latencies(apiEntryPoint).add(nanos);
+        }
+    }
+
+    /**
+     * makes an idempotent read, retrying and hedging it as configured.
+     * A read whose token is cancelled is not retried, nor is one whose
+     * deadline would pass before the backoff ends.
+     * @param apiEntryPoint entry point
+     * @param attempt makes one attempt at the read
+     * @return report of the last attempt
+     * @throws CancellationException if the token current on the calling
+     *                               thread is cancelled
+     */
+    static RESTReport read(final String apiEntryPoint,
+                           final Supplier<RESTReport> attempt) {
+        final int retries = GlobalProperties.getInt("rest-retries",
+                DEFAULT_RETRIES);
+        final long base = GlobalProperties.getInt("rest-backoff",
+                DEFAULT_BACKOFF);
+        final long cap = GlobalProperties.getInt("rest-backoff-max",
+                DEFAULT_BACKOFF_MAX);
+
+        final CancellationToken cancel = CancellationToken.current();
+        final Deadline deadline = Deadline.current();
+        RESTReport report = hedged(apiEntryPoint, attempt);
+        cancel.throwIfCancelled();
+        for (int i = 0; (i < retries) && failed(report)
+                && !getBreaker(apiEntryPoint).isOpen(); i++) {
+            // full jitter keeps clients that failed together from
+            // retrying together
+            final long ceiling = Math.min(cap, base << Math.min(i, MAX_SHIFT));
+            final long backoff =
+                    ThreadLocalRandom.current().nextLong(ceiling + 1);
+            if (backoff >= deadline.remainingMillis()) {
+                LOGGER.debug("no budget left to retry " + apiEntryPoint);
+                break;
+            }
+            LOGGER.debug("retrying " + apiEntryPoint + " in " + backoff
+                    + "ms");
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return report;
+            }
+
+            RETRIES.increment();
+            report = hedged(apiEntryPoint, attempt);
+            cancel.throwIfCancelled();
+        }
+        return report;
+    }
+
+    /**
+     * makes one attempt at a read, starting a second copy if the first
+     * runs past the hedging percentile
+     * @param apiEntryPoint entry point
+     * @param attempt makes one attempt at the read
+     * @return report of the first copy to answer
+     */
+    private static RESTReport hedged(final String apiEntryPoint,
+                                     final Supplier<RESTReport> attempt) {
+        final int percentile = GlobalProperties.getInt(
+                "rest-hedge-percentile", 0);
+        if ((percentile <= 0) || (percentile >= PERCENT)) {
+            return attempt.get();
+        }
+
+        final long delay = latencies(apiEntryPoint).percentile(percentile);
+        if (delay < 0) {
+            return attempt.get();
+        }
+
+        final CompletableFuture<RESTReport> primary = start(attempt);
+        if (primary == null) {
+            return attempt.get();
+        }
+
+        try {
+            return primary.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.trace("hedging " + apiEntryPoint);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primary.cancel(true);
+            return new RESTReport(true, "interrupted");
+        } catch (ExecutionException e) {
+            return new RESTReport(true, String.valueOf(e.getCause()));
+        }
+
+        final CompletableFuture<RESTReport> backup = start(attempt);
+        if (backup == null) {
+            return primary.join();
+        }
+        HEDGES.increment();
+
+        // the first copy to succeed wins; if both fail the primary's
+        // failure is reported
+        final CompletableFuture<RESTReport> first = new CompletableFuture<>();
+        primary.thenAccept(r -> {
+            if (!failed(r) || backup.isDone()) {
+                first.complete(r);
+            }
+        });
+        backup.thenAccept(r -> {
+            if (!failed(r)) {
+                if (first.complete(r)) {
+                    HEDGE_WINS.increment();
+                }
+            } else if (primary.isDone()) {
+                first.complete(primary.join());
+            }
+        });
+
+        try {
+            return first.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RESTReport(true, "interrupted");
+        } catch (ExecutionException e) {
+            return new RESTReport(true, String.valueOf(e.getCause()));
+        } finally {
+            primary.cancel(true);
+            backup.cancel(true);
+        }
+    }
+
+    /**
+     * starts a copy of a read on the hedging threads. The copy always
+     * completes normally, failures are reported as internal errors.
+     * @param attempt makes one attempt at the read
+     * @return future of the copy, null if no thread was free
+     */
+    private static CompletableFuture<RESTReport> start(
+            final Supplier<RESTReport> attempt) {
+        final Callable<RESTReport> traced = Tracing.wrap(
+                CancellationToken.wrap(Deadline.wrap(attempt::get)));
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return traced.call();
+                } catch (Exception e) {
+                    return new RESTReport(true, String.valueOf(e));
+                }
+            }, HEDGE_POOL);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * returns if a request failed in a way worth retrying
+     * @param report report
+     * @return if the request failed
+     */
+    private static boolean failed(final RESTReport report) {
+        return report.wasInternalError()
+                || (report.getHttpResponseCode() >= SERVER_ERROR);
+    }
+
+    /**
+     * gets the latencies of an entry point
+     * @param apiEntryPoint entry point
+     * @return latencies
+     */
+    private static Latencies latencies(final String apiEntryPoint) {
+        return LATENCIES.computeIfAbsent(apiEntryPoint,
+                k -> new Latencies());
+    }
+
+    /**
+     * gets a percentile of the recent latencies of an entry point
+     * @param apiEntryPoint entry point
+     * @param percentile percentile, from 1 to 99
+     * @return latency in milliseconds, -1 if too few were recorded
+     */
+    public static long getLatency(final String apiEntryPoint,
+                                  final int percentile) {
+        final long nanos = latencies(apiEntryPoint).percentile(percentile);
+        if (nanos < 0) {
+            return -1;
+        }
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * gets the number of reads retried
+     * @return retries
+     */
+    public static long getRetries() {
+        return RETRIES.sum();
+    }
+
+    /**
+     * gets the number of hedged copies started
+     * @return hedges
+     */
+    public static long getHedges() {
+        return HEDGES.sum();
+    }
+
+    /**
+     * gets the number of hedged copies that answered first
+     * @return hedges won
+     */
+    public static long getHedgeWins() {
+        return HEDGE_WINS.sum();
+    }
+
+    /**
+     * gets the number of requests failed fast by any breaker
+     * @return rejected requests
+     */
+    public static long getBreakerRejections() {
+        long ret = 0;
+        for (final CircuitBreaker cb : BREAKERS.values()) {
+            ret += cb.getRejected();
+        }
+        return ret;
+    }
+
+    /**
+     * utility constructor
+     */
+    private RequestPolicy() { }
+
+    /**
+     * ring of recent latencies
+     */
+    private static final class Latencies {
+        /**
+         * latencies in nanoseconds
+         */
+        private final long[] samples = new long[LATENCY_SAMPLES];
+
+        /**
+         * latencies recorded
+         */
+        private long count;
+
+        /**
+         * records a latency
+         * @param nanos latency in nanoseconds
+         */
+        private synchronized void add(final long nanos) {
+            samples[(int) (count % samples.length)] = nanos;
+            count++;
+        }
+
+        /**
+         * gets a percentile of the recorded latencies
+         * @param percentile percentile
+         * @return latency in nanoseconds, -1 if too few were recorded
+         */
+        private long percentile(final int percentile) {
+            final long[] sorted;
+            synchronized (this) {
+                if (count < MIN_HEDGE_SAMPLES) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(samples,
+                        (int) Math.min(count, samples.length));
+            }
+            Arrays.sort(sorted);
+            return sorted[(sorted.length - 1) * percentile / PERCENT];
+        }
+    }
+}
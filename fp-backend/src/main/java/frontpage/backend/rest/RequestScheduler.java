@@ -0,0 +1,533 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.CancellationToken;
+import frontpage.bind.GlobalProperties;
+import frontpage.bind.trace.Tracing;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author willstuckey
+ * <p>Schedules asynchronous api traffic by priority.</p>
+ *
+ * Interactive requests, the ones a user is waiting on, go straight to
+ * the I/O executor. Background requests such as listings wait in a
+ * bounded queue of rest-background-queue entries and are released at
+ * no more than rest-background-rate per second (bursts of
+ * rest-background-burst), with at most rest-background-concurrency of
+ * them on the executor at once. That leaves at least one worker, and
+ * most of the server, to interactive requests however much background
+ * work is pending. The time each request waited before running is
+ * recorded per priority.
+ *
+ * Tasks run under the cancellation token current when they were
+ * submitted, and cancelling it cancels their futures, so work started
+ * for a view is dropped once the user navigates away.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UtilityClass"})
+public final class RequestScheduler {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * traffic classes
+     */
+    public enum Priority {
+        /**
+         * a user is waiting on the request
+         */
+        INTERACTIVE,
+
+        /**
+         * listings, prefetch and other bulk work
+         */
+        BACKGROUND
+    }
+
+    /**
+     * default background requests per second
+     */
+    private static final int DEFAULT_RATE = 4;
+
+    /**
+     * default background burst
+     */
+    private static final int DEFAULT_BURST = 8;
+
+    /**
+     * default background queue capacity
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * default per task timeout in milliseconds
+     */
+    private static final int DEFAULT_TIMEOUT = 10 * 1000;
+
+    /**
+     * nanoseconds per microsecond
+     */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /**
+     * percentile reported as p50
+     */
+    private static final double P50 = 50;
+
+    /**
+     * percentile reported as p99
+     */
+    private static final double P99 = 99;
+
+    /**
+     * guards the background queue and running count
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * background requests not yet released
+     */
+    private static final Queue<Pending<?>> BACKGROUND = new ArrayDeque<>();
+
+    /**
+     * rate limit of background requests
+     */
+    private static final TokenBucket BUCKET;
+
+    /**
+     * background queue capacity
+     */
+    private static final int QUEUE_CAPACITY;
+
+    /**
+     * most background requests on the executor at once
+     */
+    private static final int MAX_RUNNING;
+
+    /**
+     * queue wait by priority, in microseconds
+     */
+    private static final LatencyHistogram[] WAITS;
+
+    /**
+     * requests started by priority
+     */
+    private static final LongAdder[] STARTED;
+
+    /**
+     * background requests refused by the full queue
+     */
+    private static final LongAdder REJECTED = new LongAdder();
+
+    /**
+     * times background requests were held back by the rate limit
+     */
+    private static final LongAdder THROTTLED = new LongAdder();
+
+    /**
+     * background requests on the executor
+     */
+    private static int running;
+
+    /**
+     * if a drain is scheduled for when a token is available
+     */
+    private static boolean drainScheduled;
+
+    static {
+        LOGGER = Logger.getLogger(RequestScheduler.class.getName());
+        BUCKET = new TokenBucket(GlobalProperties.getInt(
+                "rest-background-rate", DEFAULT_RATE),
+                GlobalProperties.getInt(
+                        "rest-background-burst", DEFAULT_BURST));
+        QUEUE_CAPACITY = Math.max(1, GlobalProperties.getInt(
+                "rest-background-queue", DEFAULT_QUEUE_CAPACITY));
+        // RESTExecutor runs at least two threads, so one is always left
+        // to interactive requests
+        final int spare = RESTExecutor.getThreads() - 1;
+        final int concurrency = GlobalProperties.getInt(
+                "rest-background-concurrency", spare);
+        if (concurrency > spare) {
+            LOGGER.warn("rest-background-concurrency=" + concurrency
+                    + " would take every I/O thread, using " + spare);
+        }
+        MAX_RUNNING = Math.max(1, Math.min(concurrency, spare));
+        final int classes = Priority.values().length;
+        WAITS = new LatencyHistogram[classes];
+        STARTED = new LongAdder[classes];
+        for (int i = 0; i < classes; i++) {
+            WAITS[i] = new LatencyHistogram();
+            STARTED[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * submits a task with the default timeout
+     * @param priority traffic class
+     * @param task task
+     * @param <T> result type
+     * @return future completed with the result of the task
+     */
+    public static <T> CompletableFuture<T> submit(final Priority priority,
+                                                  final Callable<T> task) {
+        return submit(priority, CancellationToken.current(), task);
+    }
+
+    /**
+     * submits a task with the default timeout
+     * @param priority traffic class
+     * @param token token that cancels the task
+     * @param task task
+     * @param <T> result type
+     * @return future completed with the result of the task
+     */
+    public static <T> CompletableFuture<T> submit(
+            final Priority priority,
+            final CancellationToken token,
+            final Callable<T> task) {
+        return submit(priority, token, task, GlobalProperties.getInt(
+                "rest-async-timeout", DEFAULT_TIMEOUT));
+    }
+
+    /**
+     * submits a task under the current cancellation token
+     * @see RequestScheduler#submit(Priority, CancellationToken,
+     *      Callable, long)
+     *
+     * @param priority traffic class
+     * @param task task
+     * @param timeout timeout in milliseconds, zero or less for none
+     * @param <T> result type
+     * @return future completed with the result of the task
+     */
+    public static <T> CompletableFuture<T> submit(final Priority priority,
+                                                  final Callable<T> task,
+                                                  final long timeout) {
+        return submit(priority, CancellationToken.current(), task, timeout);
+    }
+
+    /**
+     * submits a task. Interactive tasks go to the I/O executor at once;
+     * background tasks are queued and released under the rate limit.
+     * The timeout starts once a task reaches the executor. Cancelling
+     * the future, or the token, removes a queued task or interrupts a
+     * running one. A background task submitted while the queue is full
+     * fails with a RejectedExecutionException.
+     * @see RESTExecutor#submit(Callable, long)
+     *
+     * @param priority traffic class
+     * @param token token that cancels the task
+     * @param task task
+     * @param timeout timeout in milliseconds, zero or less for none
+     * @param <T> result type
+     * @return future completed with the result of the task
+     */
+    public static <T> CompletableFuture<T> submit(
+            final Priority priority,
+            final CancellationToken token,
+            final Callable<T> task,
+            final long timeout) {
+        final long queued = System.nanoTime();
+        final Callable<T> bound = CancellationToken.wrap(token,
+                timed(priority, queued, task));
+        if (priority == Priority.INTERACTIVE) {
+            return cancelledBy(token, RESTExecutor.submit(bound, timeout));
+        }
+
+        final Pending<T> p = new Pending<>(Tracing.wrap(bound), timeout);
+        cancelledBy(token, p.result);
+        synchronized (LOCK) {
+            if (BACKGROUND.size() >= QUEUE_CAPACITY) {
+                REJECTED.increment();
+                LOGGER.warn("background queue full, rejecting request ("
+                        + BACKGROUND.size() + " queued)");
+                p.result.completeExceptionally(
+                        new RejectedExecutionException(
+                                "background queue full"));
+                return p.result;
+            }
+            BACKGROUND.add(p);
+        }
+        drain();
+        return p.result;
+    }
+
+    /**
+     * cancels a future when a token is cancelled
+     * @param token token
+     * @param future future
+     * @param <T> result type
+     * @return the future
+     */
+    private static <T> CompletableFuture<T> cancelledBy(
+            final CancellationToken token,
+            final CompletableFuture<T> future) {
+        final CancellationToken.Registration r =
+                token.onCancel(() -> future.cancel(true));
+        future.whenComplete((v, t) -> r.close());
+        return future;
+    }
+
+    /**
+     * releases queued background tasks while tokens and workers allow,
+     * scheduling another drain for when the next token is due
+     */
+    private static void drain() {
+        while (true) {
+            final Pending<?> next;
+            synchronized (LOCK) {
+                while (!BACKGROUND.isEmpty()
+                        && BACKGROUND.peek().result.isDone()) {
+                    BACKGROUND.poll();
+                }
+
+                if (BACKGROUND.isEmpty() || (running >= MAX_RUNNING)) {
+                    return;
+                }
+
+                if (!BUCKET.tryAcquire()) {
+                    THROTTLED.increment();
+                    if (!drainScheduled) {
+                        drainScheduled = true;
+                        RESTExecutor.getTimer().schedule(
+                                RequestScheduler::scheduledDrain,
+                                BUCKET.nanosUntilAvailable(),
+                                TimeUnit.NANOSECONDS);
+                    }
+                    return;
+                }
+
+                next = BACKGROUND.poll();
+                running++;
+            }
+            dispatch(next);
+        }
+    }
+
+    /**
+     * drains once a token is due
+     */
+    private static void scheduledDrain() {
+        synchronized (LOCK) {
+            drainScheduled = false;
+        }
+        drain();
+    }
+
+    /**
+     * hands a background task to the executor
+     * @param p task
+     * @param <T> result type
+     */
+    private static <T> void dispatch(final Pending<T> p) {
+        final CompletableFuture<T> work =
+                RESTExecutor.submit(p.task, p.timeout);
+        p.result.whenComplete((r, t) -> {
+            if (p.result.isCancelled()) {
+                work.cancel(true);
+            }
+        });
+        work.whenComplete((r, t) -> {
+            synchronized (LOCK) {
+                running--;
+            }
+
+            if (t != null) {
+                p.result.completeExceptionally(t);
+            } else {
+                p.result.complete(r);
+            }
+            drain();
+        });
+    }
+
+    /**
+     * wraps a task to record how long it waited to run
+     * @param priority traffic class
+     * @param queued submission time in nanoseconds
+     * @param task task
+     * @param <T> result type
+     * @return wrapped task
+     */
+    private static <T> Callable<T> timed(final Priority priority,
+                                         final long queued,
+                                         final Callable<T> task) {
+        return () -> {
+            WAITS[priority.ordinal()].record(
+                    (System.nanoTime() - queued) / NANOS_PER_MICRO);
+            STARTED[priority.ordinal()].increment();
+            return task.call();
+        };
+    }
+
+    /**
+     * gets the number of background tasks waiting for release
+     * @return queued tasks
+     */
+    public static int getBackgroundQueueDepth() {
+        synchronized (LOCK) {
+            return BACKGROUND.size();
+        }
+    }
+
+    /**
+     * gets the number of background tasks on the executor
+     * @return running tasks
+     */
+    public static int getBackgroundRunning() {
+        synchronized (LOCK) {
+            return running;
+        }
+    }
+
+    /**
+     * gets the number of background tasks refused by the full queue
+     * @return rejected tasks
+     */
+    public static long getBackgroundRejected() {
+        return REJECTED.sum();
+    }
+
+    /**
+     * gets the number of times background tasks were held back by the
+     * rate limit
+     * @return throttled releases
+     */
+    public static long getThrottled() {
+        return THROTTLED.sum();
+    }
+
+    /**
+     * gets the number of tasks of a class that started
+     * @param priority traffic class
+     * @return started tasks
+     */
+    public static long getStarted(final Priority priority) {
+        return STARTED[priority.ordinal()].sum();
+    }
+
+    /**
+     * gets the median queue wait of a class
+     * @param priority traffic class
+     * @return wait in microseconds
+     */
+    public static long getWaitP50Micros(final Priority priority) {
+        return WAITS[priority.ordinal()].percentile(P50);
+    }
+
+    /**
+     * gets the 99th percentile queue wait of a class
+     * @param priority traffic class
+     * @return wait in microseconds
+     */
+    public static long getWaitP99Micros(final Priority priority) {
+        return WAITS[priority.ordinal()].percentile(P99);
+    }
+
+    /**
+     * gets the longest queue wait of a class
+     * @param priority traffic class
+     * @return wait in microseconds
+     */
+    public static long getWaitMaxMicros(final Priority priority) {
+        return WAITS[priority.ordinal()].getMax();
+    }
+
+    /**
+     * gets the mean queue wait of a class
+     * @param priority traffic class
+     * @return wait in microseconds
+     */
+    public static long getWaitMeanMicros(final Priority priority) {
+        return WAITS[priority.ordinal()].getMean();
+    }
+
+    /**
+     * gets the background rate limit
+     * @return token bucket
+     */
+    public static TokenBucket getBucket() {
+        return BUCKET;
+    }
+
+    /**
+     * clears the wait metrics and counters
+     */
+    public static void reset() {
+        for (final Priority p : Priority.values()) {
+            WAITS[p.ordinal()].reset();
+            STARTED[p.ordinal()].reset();
+        }
+        REJECTED.reset();
+        THROTTLED.reset();
+    }
+
+    /**
+     * renders the scheduler metrics, one line per class
+     * @return metrics
+     */
+    public static String dump() {
+        final StringBuilder sb = new StringBuilder();
+        for (final Priority p : Priority.values()) {
+            sb.append("scheduler ").append(p.name().toLowerCase())
+                    .append(": started=").append(getStarted(p))
+                    .append(" waitP50=").append(getWaitP50Micros(p))
+                    .append("us waitP99=").append(getWaitP99Micros(p))
+                    .append("us waitMax=").append(getWaitMaxMicros(p))
+                    .append("us").append(System.lineSeparator());
+        }
+        sb.append("scheduler background: queued=")
+                .append(getBackgroundQueueDepth())
+                .append(" running=").append(getBackgroundRunning())
+                .append(" throttled=").append(getThrottled())
+                .append(" rejected=").append(getBackgroundRejected())
+                .append(" ").append(BUCKET)
+                .append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    /**
+     * utility constructor
+     */
+    private RequestScheduler() { }
+
+    /**
+     * background task waiting for release
+     * @param <T> result type
+     */
+    private static final class Pending<T> {
+        /**
+         * task, already timed and bound to its trace
+         */
+        private final Callable<T> task;
+
+        /**
+         * timeout in milliseconds
+         */
+        private final long timeout;
+
+        /**
+         * future handed to the caller
+         */
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        /**
+         * creates a pending task
+         * @param task task
+         * @param timeout timeout in milliseconds
+         */
+        private Pending(final Callable<T> task, final long timeout) {
+            this.task = task;
+            this.timeout = timeout;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package frontpage.backend.rest;
+
+import frontpage.bind.GlobalProperties;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * @author willstuckey
+ * <p>Response body of an api request.</p>
+ *
+ * Bodies are read in bulk through pooled buffers and decoded with the
+ * charset advertised by the server. Bodies smaller than the streaming
+ * threshold are decoded to a String in linear time. Larger bodies are
+ * handed out as a Reader over the bytes read so far followed by the
+ * rest of the connection stream, so the parser consumes them as they
+ * arrive and memory stays flat regardless of payload size.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+final class ResponseBody {
+    /**
+     * size of pooled read buffers
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * number of buffers kept in the pool
+     */
+    private static final int POOL_SIZE = 16;
+
+    /**
+     * default size above which bodies are streamed
+     */
+    private static final int DEFAULT_STREAM_THRESHOLD = 256 * 1024;
+
+    /**
+     * content type parameter naming the charset
+     */
+    private static final String CHARSET_PARAM = "charset=";
+
+    /**
+     * default charset of the API
+     */
+    private static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * pool of read buffers
+     */
+    private static final BlockingQueue<byte[]> BUFFERS =
+            new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * decoded body, null if streamed
+     */
+    private final String text;
+
+    /**
+     * streaming body, null if buffered
+     */
+    private final Reader reader;
+
+    /**
+     * creates a response body
+     * @param text decoded body
+     * @param reader streaming body
+     */
+    private ResponseBody(final String text, final Reader reader) {
+        this.text = text;
+        this.reader = reader;
+    }
+
+    /**
+     * reads a response body
+     * @param in body stream, consumed and closed by the body
+     * @param contentType content type header, may be null
+     * @param contentLength content length header, negative if unknown
+     * @return response body
+     * @throws IOException if the stream cannot be read
+     */
+    static ResponseBody read(final InputStream in,
+                             final String contentType,
+                             final long contentLength)
+            throws IOException {
+        final Charset cs = charsetOf(contentType);
+        final int threshold = GlobalProperties.getInt(
+                "rest-stream-threshold", DEFAULT_STREAM_THRESHOLD);
+        int hint = BUFFER_SIZE;
+        if ((contentLength > 0) && (contentLength <= threshold)) {
+            hint = (int) contentLength;
+        }
+
+        final ExposedByteArrayOutputStream acc =
+                new ExposedByteArrayOutputStream(hint);
+        final byte[] buf = acquire();
+        try {
+            int n = in.read(buf);
+            while (n != -1) {
+                acc.write(buf, 0, n);
+                if (acc.size() > threshold) {
+                    final InputStream rest = new SequenceInputStream(
+                            acc.toInputStream(), in);
+                    return new ResponseBody(null, new BufferedReader(
+                            new InputStreamReader(rest, cs), BUFFER_SIZE));
+                }
+                n = in.read(buf);
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        } finally {
+            release(buf);
+        }
+
+        in.close();
+        return new ResponseBody(acc.decode(cs), null);
+    }
+
+    /**
+     * returns if the body was decoded to a String
+     * @return if the body is buffered
+     */
+    boolean isBuffered() {
+        return reader == null;
+    }
+
+    /**
+     * gets the decoded body
+     * @return body, null if streamed
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * gets the streaming body. The caller must close it.
+     * @return reader, null if buffered
+     */
+    Reader getReader() {
+        return reader;
+    }
+
+    /**
+     * gets the charset from a content type header
+     * @param contentType content type, may be null
+     * @return charset, UTF-8 if absent or unsupported
+     */
+    static Charset charsetOf(final String contentType) {
+        if (contentType == null) {
+            return DEFAULT_CHARSET;
+        }
+
+        for (final String param : contentType.split(";")) {
+            final String p = param.trim();
+            if (p.regionMatches(true, 0, CHARSET_PARAM, 0,
+                    CHARSET_PARAM.length())) {
+                final String name = p.substring(CHARSET_PARAM.length())
+                        .replace("\"", "").trim();
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException e) {
+                    return DEFAULT_CHARSET;
+                }
+            }
+        }
+
+        return DEFAULT_CHARSET;
+    }
+
+    /**
+     * takes a buffer from the pool
+     * @return buffer
+     */
+    private static byte[] acquire() {
+        final byte[] buf = BUFFERS.poll();
+        if (buf == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        return buf;
+    }
+
+    /**
+     * returns a buffer to the pool
+     * @param buf buffer
+     */
+    private static void release(final byte[] buf) {
+        //noinspection ResultOfMethodCallIgnored
+        BUFFERS.offer(buf);
+    }
+
+    /**
+     * byte array stream that can be decoded or re-read without copying
+     * its backing array
+     */
+    private static final class ExposedByteArrayOutputStream
+            extends ByteArrayOutputStream {
+        /**
+         * creates a stream
+         * @param size initial capacity
+         */
+        private ExposedByteArrayOutputStream(final int size) {
+            super(size);
+        }
+
+        /**
+         * decodes the contents
+         * @param cs charset
+         * @return decoded contents
+         */
+        private String decode(final Charset cs) {
+            return new String(buf, 0, count, cs);
+        }
+
+        /**
+         * gets a stream over the contents
+         * @return stream
+         */
+        private InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package frontpage.backend.rest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @author willstuckey
+ * <p>Collapses concurrent identical calls into one.</p>
+ *
+ * The first caller for a key runs the work; callers arriving with the
+ * same key while it is in flight wait for it and receive the same
+ * result, or the same exception. Nothing is cached: once the work
+ * completes the next caller for the key starts a new flight. Results
+ * are shared, so callers must treat them as read only.
+ * @param <K> key type
+ * @param <V> result type
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SingleFlight<K, V> {
+    /**
+     * flights in progress
+     */
+    private final ConcurrentMap<K, CompletableFuture<V>> flights =
+            new ConcurrentHashMap<>();
+
+    /**
+     * calls that ran their work
+     */
+    private final LongAdder leaders = new LongAdder();
+
+    /**
+     * calls that joined a flight in progress
+     */
+    private final LongAdder collapsed = new LongAdder();
+
+    /**
+     * runs work, or joins the flight in progress for the same key
+     * @param key key identifying identical calls
+     * @param work work
+     * @return result of the work
+     */
+    public V execute(final K key, final Supplier<V> work) {
+        final CompletableFuture<V> mine = new CompletableFuture<>();
+        final CompletableFuture<V> flight = flights.putIfAbsent(key, mine);
+        if (flight != null) {
+            collapsed.increment();
+            try {
+                return flight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        leaders.increment();
+        try {
+            final V result = work.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, mine);
+        }
+    }
+
+    /**
+     * starts work on an executor, or joins the flight in progress for
+     * the same key. The flight belongs to none of its callers: each gets
+     * a future of its own, and cancelling or abandoning it leaves the
+     * flight and the other callers alone.
+     * @param key key identifying identical calls
+     * @param work work
+     * @param executor runs the work of a new flight
+     * @return future of the result of the work
+     */
+    public CompletableFuture<V> share(final K key,
+                                      final Supplier<V> work,
+                                      final Executor executor) {
+        final CompletableFuture<V> mine = new CompletableFuture<>();
+        final CompletableFuture<V> flight = flights.putIfAbsent(key, mine);
+        if (flight != null) {
+            collapsed.increment();
+            return flight.thenApply(Function.identity());
+        }
+
+        leaders.increment();
+        try {
+            executor.execute(() -> {
+                try {
+                    mine.complete(work.get());
+                } catch (RuntimeException | Error e) {
+                    mine.completeExceptionally(e);
+                } finally {
+                    flights.remove(key, mine);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            flights.remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine.thenApply(Function.identity());
+    }
+
+    /**
+     * gets the number of calls that ran their work
+     * @return calls
+     */
+    public long getLeaders() {
+        return leaders.sum();
+    }
+
+    /**
+     * gets the number of calls that shared another call's result
+     * @return calls
+     */
+    public long getCollapsed() {
+        return collapsed.sum();
+    }
+
+    /**
+     * gets the number of flights in progress
+     * @return flights
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+}
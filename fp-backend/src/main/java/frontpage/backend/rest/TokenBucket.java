@@ -0,0 +1,131 @@
+package frontpage.backend.rest;
+
+/**
+ * @author willstuckey
+ * <p>Token bucket rate limiter.</p>
+ *
+ * Tokens are added continuously at a fixed rate up to the size of the
+ * bucket, and each request takes one. A full bucket lets a burst of
+ * that many requests through at once; after that requests are held to
+ * the rate. A bucket with a rate of zero or less never limits.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class TokenBucket {
+    /**
+     * nanoseconds per second
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * tokens added per nanosecond
+     */
+    private final double ratePerNano;
+
+    /**
+     * most tokens held
+     */
+    private final double capacity;
+
+    /**
+     * tokens held
+     */
+    private double tokens;
+
+    /**
+     * time of the last refill, in nanoseconds
+     */
+    private long refilledAt;
+
+    /**
+     * creates a full bucket
+     * @param perSecond tokens added per second, zero or less for no
+     *                  limit
+     * @param burst most tokens held
+     */
+    TokenBucket(final double perSecond, final int burst) {
+        this.ratePerNano = perSecond / NANOS_PER_SECOND;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * takes a token if one is available
+     * @return if a token was taken
+     */
+    public synchronized boolean tryAcquire() {
+        if (!isLimited()) {
+            return true;
+        }
+
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * gets the time until a token is available
+     * @return nanoseconds, 0 if a token is available now
+     */
+    public synchronized long nanosUntilAvailable() {
+        if (!isLimited()) {
+            return 0;
+        }
+
+        refill();
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / ratePerNano);
+    }
+
+    /**
+     * gets the tokens currently held
+     * @return tokens, rounded down
+     */
+    public synchronized int getTokens() {
+        refill();
+        return (int) tokens;
+    }
+
+    /**
+     * gets the refill rate
+     * @return tokens per second
+     */
+    public double getRate() {
+        return ratePerNano * NANOS_PER_SECOND;
+    }
+
+    /**
+     * returns if the bucket limits requests
+     * @return if limited
+     */
+    public boolean isLimited() {
+        return ratePerNano > 0;
+    }
+
+    /**
+     * adds the tokens earned since the last refill
+     */
+    private void refill() {
+        final long now = System.nanoTime();
+        if (isLimited()) {
+            tokens = Math.min(capacity,
+                    tokens + ((now - refilledAt) * ratePerNano));
+        }
+        refilledAt = now;
+    }
+
+    /**
+     * toString
+     * @return string
+     */
+    @Override
+    public synchronized String toString() {
+        return "TokenBucket[rate=" + getRate() + "/s, burst="
+                + (int) capacity + ", tokens=" + getTokens() + "]";
+    }
+}
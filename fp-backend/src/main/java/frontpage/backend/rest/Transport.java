@@ -0,0 +1,87 @@
+package frontpage.backend.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Carries api requests to the server.</p>
+ *
+ * RESTHandler builds the form encoded query and parses the response;
+ * a transport only moves the bytes. The default transport talks HTTPS
+ * to the remote server, LoopbackTransport answers in process.
+ */
+public interface Transport {
+    /**
+     * sends a request
+     * @param action request action
+     * @param apiEntryPoint entry point on public facing directory
+     * @param headers request headers
+     * @param query form encoded attributes
+     * @return response, which the caller must close
+     * @throws IOException if the request could not be made
+     */
+    Response send(final RESTHandler.RestAction action,
+                  final String apiEntryPoint,
+                  final Map<String, String> headers,
+                  final String query)
+            throws IOException;
+
+    /**
+     * response to a request
+     */
+    interface Response extends Closeable {
+        /**
+         * gets the http response code
+         * @return response code
+         */
+        int getCode();
+
+        /**
+         * gets the http response message
+         * @return response message
+         */
+        String getMessage();
+
+        /**
+         * gets the content type header
+         * @return content type, null if absent
+         */
+        String getContentType();
+
+        /**
+         * gets the content length header
+         * @return content length, negative if unknown
+         */
+        long getContentLength();
+
+        /**
+         * gets a response header
+         * @param name header name
+         * @return value, null if absent
+         */
+        String getHeader(final String name);
+
+        /**
+         * gets the body. Only valid for non error codes.
+         * @return body stream
+         * @throws IOException if the body cannot be read
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * closes the response without handing its connection back for
+         * reuse. May be called from another thread to end a read
+         * blocked on the body; closing afterwards does nothing.
+         */
+        default void abort() {
+            try {
+                close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+}
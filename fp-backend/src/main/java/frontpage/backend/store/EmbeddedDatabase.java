@@ -0,0 +1,455 @@
+package frontpage.backend.store;
+
+import frontpage.bind.GlobalProperties;
+import org.apache.log4j.Logger;
+
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author willstuckey
+ * <p>Embedded SQL database running in process.</p>
+ *
+ * The database named by the embedded-db JDBC url holds the users,
+ * profiles and reports of the embedded backend, in the tables the
+ * server uses. A fixed pool of connections is opened up front; work
+ * checks one out, so a connection is only ever used by one thread,
+ * and each connection caches its prepared statements, so a statement
+ * is parsed and planned once per connection rather than per call.
+ * Reports are keyed by an insertion sequence, which keeps most recent
+ * listings an index scan, with unique indexes on report id and email
+ * and indexes on the columns reports are searched by.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class EmbeddedDatabase implements AutoCloseable {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * default number of pooled connections
+     */
+    private static final int DEFAULT_POOL = 4;
+
+    /**
+     * default number of cached statements per connection
+     */
+    private static final int DEFAULT_STATEMENTS = 32;
+
+    /**
+     * default number of rows per insert batch
+     */
+    private static final int DEFAULT_BATCH = 500;
+
+    /**
+     * seconds to wait for a pooled connection
+     */
+    private static final int CHECKOUT_TIMEOUT = 30;
+
+    /**
+     * statements creating the schema
+     */
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS users ("
+            + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+            + "email VARCHAR(255) NOT NULL, "
+            + "username VARCHAR(255), "
+            + "type VARCHAR(32), "
+            + "salt VARCHAR(64), "
+            + "hash VARCHAR(128), "
+            + "tok VARCHAR(64))",
+        "CREATE UNIQUE INDEX IF NOT EXISTS users_email ON users (email)",
+        "CREATE TABLE IF NOT EXISTS profiles ("
+            + "userid BIGINT PRIMARY KEY REFERENCES users (id), "
+            + "address VARCHAR(255), "
+            + "city VARCHAR(255), "
+            + "state VARCHAR(255), "
+            + "zip VARCHAR(32), "
+            + "title VARCHAR(255))",
+        "CREATE TABLE IF NOT EXISTS sourcereports ("
+            + "seq BIGINT AUTO_INCREMENT PRIMARY KEY, "
+            + "reportid VARCHAR(64) NOT NULL, "
+            + "id VARCHAR(255), "
+            + "reportdt VARCHAR(64), "
+            + "location VARCHAR(255), "
+            + "type VARCHAR(32), "
+            + "cond VARCHAR(32), "
+            + "name VARCHAR(255), "
+            + "description VARCHAR(4096))",
+        "CREATE UNIQUE INDEX IF NOT EXISTS sourcereports_reportid "
+            + "ON sourcereports (reportid)",
+        "CREATE INDEX IF NOT EXISTS sourcereports_id "
+            + "ON sourcereports (id)",
+        "CREATE INDEX IF NOT EXISTS sourcereports_type "
+            + "ON sourcereports (type)",
+        "CREATE INDEX IF NOT EXISTS sourcereports_cond "
+            + "ON sourcereports (cond)",
+        "CREATE INDEX IF NOT EXISTS sourcereports_reportdt "
+            + "ON sourcereports (reportdt)",
+        "CREATE TABLE IF NOT EXISTS purityreports ("
+            + "seq BIGINT AUTO_INCREMENT PRIMARY KEY, "
+            + "reportid VARCHAR(64) NOT NULL, "
+            + "userid VARCHAR(255), "
+            + "sourcerptid VARCHAR(64), "
+            + "reportdt VARCHAR(64), "
+            + "location VARCHAR(255), "
+            + "cond VARCHAR(32), "
+            + "virusppm VARCHAR(32), "
+            + "contaminantppm VARCHAR(32))",
+        "CREATE UNIQUE INDEX IF NOT EXISTS purityreports_reportid "
+            + "ON purityreports (reportid)",
+        "CREATE INDEX IF NOT EXISTS purityreports_userid "
+            + "ON purityreports (userid)",
+        "CREATE INDEX IF NOT EXISTS purityreports_sourcerptid "
+            + "ON purityreports (sourcerptid)",
+        "CREATE INDEX IF NOT EXISTS purityreports_cond "
+            + "ON purityreports (cond)",
+        "CREATE INDEX IF NOT EXISTS purityreports_reportdt "
+            + "ON purityreports (reportdt)",
+    };
+
+    /**
+     * shared database, opened on first use
+     */
+    private static EmbeddedDatabase instance;
+
+    static {
+        LOGGER = Logger.getLogger(EmbeddedDatabase.class.getName());
+    }
+
+    /**
+     * JDBC url
+     */
+    private final String url;
+
+    /**
+     * idle connections
+     */
+    private final BlockingQueue<PooledConnection> idle;
+
+    /**
+     * every connection
+     */
+    private final List<PooledConnection> all;
+
+    /**
+     * number of cached statements per connection
+     */
+    private final int statements;
+
+    /**
+     * number of rows per insert batch
+     */
+    private final int batchSize;
+
+    /**
+     * if closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * opens a database, creating the schema if missing
+     * @param url JDBC url
+     * @param pool number of pooled connections
+     * @param statements number of cached statements per connection
+     * @param batchSize number of rows per insert batch
+     * @throws SQLException if the database could not be opened
+     */
+    public EmbeddedDatabase(final String url,
+                            final int pool,
+                            final int statements,
+                            final int batchSize) throws SQLException {
+        this.url = url;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, pool));
+        this.all = new ArrayList<>(Math.max(1, pool));
+        this.statements = Math.max(1, statements);
+        this.batchSize = Math.max(1, batchSize);
+        try {
+            for (int i = 0; i < Math.max(1, pool); i++) {
+                final PooledConnection c = new PooledConnection(
+                        DriverManager.getConnection(url));
+                all.add(c);
+                idle.add(c);
+            }
+            createSchema();
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+        LOGGER.info("opened embedded database " + url + " with "
+                + all.size() + " connections");
+    }
+
+    /**
+     * gets the shared database, opening it from the embedded-db,
+     * embedded-db-pool, embedded-db-statements and embedded-db-batch
+     * properties on first use. The database is closed on shutdown.
+     * @return database
+     * @throws SQLException if the database could not be opened
+     */
+    public static synchronized EmbeddedDatabase getInstance()
+            throws SQLException {
+        if ((instance == null) || instance.closed) {
+            final String url = GlobalProperties.getProperties().getProperty(
+                    "embedded-db", "jdbc:h2:" + Paths.get(
+                            System.getProperty("user.home"), ".frontpage",
+                            "embedded").toString());
+            final EmbeddedDatabase db = new EmbeddedDatabase(url,
+                    GlobalProperties.getInt("embedded-db-pool",
+                            DEFAULT_POOL),
+                    GlobalProperties.getInt("embedded-db-statements",
+                            DEFAULT_STATEMENTS),
+                    GlobalProperties.getInt("embedded-db-batch",
+                            DEFAULT_BATCH));
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(db::close, "embedded-db-close"));
+            instance = db;
+        }
+        return instance;
+    }
+
+    /**
+     * runs work on a pooled connection in auto commit
+     * @param work work
+     * @param <T> result type
+     * @return result of the work
+     * @throws SQLException if the work failed or no connection was free
+     */
+    public <T> T execute(final Work<T> work) throws SQLException {
+        final PooledConnection c = checkout();
+        try {
+            return work.run(c);
+        } finally {
+            idle.offer(c);
+        }
+    }
+
+    /**
+     * runs work on a pooled connection in one transaction, committed if
+     * the work returns and rolled back if it throws
+     * @param work work
+     * @param <T> result type
+     * @return result of the work
+     * @throws SQLException if the work failed or no connection was free
+     */
+    public <T> T transaction(final Work<T> work) throws SQLException {
+        final PooledConnection c = checkout();
+        try {
+            c.connection.setAutoCommit(false);
+            try {
+                final T ret = work.run(c);
+                c.connection.commit();
+                return ret;
+            } catch (SQLException | RuntimeException e) {
+                c.connection.rollback();
+                throw e;
+            } finally {
+                c.connection.setAutoCommit(true);
+            }
+        } finally {
+            idle.offer(c);
+        }
+    }
+
+    /**
+     * inserts rows in batches in one transaction
+     * @param sql insert statement
+     * @param rows parameters of each row, in statement order
+     * @return number of rows inserted
+     * @throws SQLException if an insert failed, no row is then inserted
+     */
+    public int insertBatch(final String sql, final List<Object[]> rows)
+            throws SQLException {
+        return transaction(c -> {
+            final PreparedStatement stmt = c.prepare(sql);
+            int pending = 0;
+            for (final Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    stmt.setObject(i + 1, row[i]);
+                }
+                stmt.addBatch();
+                pending++;
+                if (pending == batchSize) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+            return rows.size();
+        });
+    }
+
+    /**
+     * gets the JDBC url
+     * @return url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * closes every connection. Work in progress fails.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (final PooledConnection c : all) {
+            c.close();
+        }
+    }
+
+    /**
+     * creates the tables and indexes that are missing
+     * @throws SQLException if the schema could not be created
+     */
+    private void createSchema() throws SQLException {
+        execute(c -> {
+            try (Statement stmt = c.connection.createStatement()) {
+                for (final String sql : SCHEMA) {
+                    stmt.addBatch(sql);
+                }
+                stmt.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * checks out an idle connection, waiting for one if all are in use
+     * @return connection
+     * @throws SQLException if closed or none became free in time
+     */
+    private PooledConnection checkout() throws SQLException {
+        if (closed) {
+            throw new SQLException("embedded database closed");
+        }
+
+        final PooledConnection c;
+        try {
+            c = idle.poll(CHECKOUT_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted waiting for a connection", e);
+        }
+        if (c == null) {
+            throw new SQLException("no connection free after "
+                    + CHECKOUT_TIMEOUT + "s");
+        }
+        return c;
+    }
+
+    /**
+     * work run on a pooled connection
+     * @param <T> result type
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        /**
+         * runs the work
+         * @param c connection, only used by this thread until it returns
+         * @return result
+         * @throws SQLException if a statement failed
+         */
+        T run(PooledConnection c) throws SQLException;
+    }
+
+    /**
+     * pooled connection with a cache of prepared statements
+     */
+    public final class PooledConnection {
+        /**
+         * connection
+         */
+        private final Connection connection;
+
+        /**
+         * prepared statements by sql, least recently used first
+         */
+        private final Map<String, PreparedStatement> cache;
+
+        /**
+         * wraps a connection
+         * @param connection connection
+         */
+        private PooledConnection(final Connection connection) {
+            this.connection = connection;
+            this.cache = new LinkedHashMap<String, PreparedStatement>(
+                    statements, 1, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, PreparedStatement> e) {
+                    if (size() <= statements) {
+                        return false;
+                    }
+                    closeQuietly(e.getValue());
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * gets the prepared statement for sql, preparing it on first use,
+         * and binds its parameters
+         * @param sql sql
+         * @param params parameters in statement order, the rest are unset
+         * @return statement, not to be closed
+         * @throws SQLException if the sql could not be prepared
+         */
+        public PreparedStatement prepare(final String sql,
+                                         final Object... params)
+                throws SQLException {
+            PreparedStatement stmt = cache.get(sql);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(sql);
+                cache.put(sql, stmt);
+            } else {
+                stmt.clearParameters();
+                stmt.clearBatch();
+            }
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            return stmt;
+        }
+
+        /**
+         * closes the cached statements and the connection
+         */
+        private void close() {
+            for (final PreparedStatement stmt : cache.values()) {
+                closeQuietly(stmt);
+            }
+            cache.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOGGER.warn("could not close connection to " + url, e);
+            }
+        }
+
+        /**
+         * closes a statement, ignoring failure
+         * @param stmt statement
+         */
+        private void closeQuietly(final PreparedStatement stmt) {
+            //noinspection EmptyCatchBlock
+            try {
+                stmt.close();
+            } catch (SQLException e) { }
+        }
+    }
+}
@@ -0,0 +1,903 @@
+package frontpage.backend.store;
+
+import frontpage.bind.GlobalProperties;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * @author willstuckey
+ * <p>Append-only log persisting the local backend.</p>
+ *
+ * Every mutation of a registered table is appended as a record holding
+ * the full new value of one key, or its deletion, so replaying a
+ * record twice does no harm. Records are framed by their length and a
+ * CRC32 of the payload; replay stops at the first torn or corrupt
+ * record and truncates the tail left by a crash. A single writer
+ * thread drains every record queued while the previous batch was
+ * being forced, so concurrent writers share one fsync (group commit).
+ * Once the log has grown by as many records as it held live after the
+ * last compaction, the writer writes the tables to a memory-mapped
+ * snapshot file named after the next generation, moves it in place
+ * atomically and starts the log over under that generation. The
+ * snapshot mapped at open is never replaced while it is mapped, which
+ * Windows refuses; older snapshots are deleted once nothing maps them.
+ * A failed compaction is retried after twice as many records each
+ * time, so a full disk does not cost a snapshot on every batch. On
+ * open the newest snapshot is mapped, not read, and only the log
+ * written since it is replayed.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class LogStore implements AutoCloseable {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * file magic, "FPLG"
+     */
+    private static final int MAGIC = 0x46504C47;
+
+    /**
+     * file format version
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * file format version without a generation in the header
+     */
+    private static final int VERSION_1 = 1;
+
+    /**
+     * bytes of the file header
+     */
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * bytes of the version 1 file header
+     */
+    private static final int VERSION_1_HEADER_BYTES = 8;
+
+    /**
+     * bytes framing each record, length and checksum
+     */
+    private static final int FRAME_BYTES = 8;
+
+    /**
+     * largest record accepted on replay
+     */
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * default number of records appended between compactions
+     */
+    private static final int DEFAULT_COMPACT_RECORDS = 10000;
+
+    /**
+     * most doublings of the records appended before a failed compaction
+     * is retried
+     */
+    private static final int MAX_COMPACT_BACKOFF = 6;
+
+    static {
+        LOGGER = Logger.getLogger(LogStore.class.getName());
+    }
+
+    /**
+     * log file
+     */
+    private final Path path;
+
+    /**
+     * if batches are forced to disk before writers are released
+     */
+    private final boolean sync;
+
+    /**
+     * least number of records appended between compactions
+     */
+    private final int compactRecords;
+
+    /**
+     * tables by name, in registration order
+     */
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    /**
+     * records waiting for the writer, guarded by itself
+     */
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+
+    /**
+     * open log file, only used by the writer once open
+     */
+    private FileChannel channel;
+
+    /**
+     * writer thread
+     */
+    private Thread writer;
+
+    /**
+     * if the store was opened, guarded by queue
+     */
+    private boolean opened;
+
+    /**
+     * if the store was closed, guarded by queue
+     */
+    private boolean closed;
+
+    /**
+     * generation of the log, bumped by each compaction
+     */
+    private long generation;
+
+    /**
+     * snapshot the tables were loaded from, null if none
+     */
+    private SnapshotFile snapshot;
+
+    /**
+     * file of the mapped snapshot, null if none
+     */
+    private Path snapshotFile;
+
+    /**
+     * records appended since the last compaction
+     */
+    private long sinceCompaction;
+
+    /**
+     * records written by the last compaction, or replayed on open
+     */
+    private long live;
+
+    /**
+     * records written
+     */
+    private volatile long records;
+
+    /**
+     * batches written, each with a single fsync
+     */
+    private volatile long batches;
+
+    /**
+     * compactions
+     */
+    private volatile long compactions;
+
+    /**
+     * compactions failed in a row, only written by the writer
+     */
+    private volatile int failedCompactions;
+
+    /**
+     * creates a log store. Tables must be registered before it is
+     * opened.
+     * @param path log file
+     */
+    public LogStore(final Path path) {
+        this.path = path;
+        this.sync = Boolean.parseBoolean(GlobalProperties.getProperties()
+                .getProperty("local-store-sync", "true"));
+        this.compactRecords = GlobalProperties.getInt(
+                "local-store-compact-records", DEFAULT_COMPACT_RECORDS);
+    }
+
+    /**
+     * registers a table. Tables are replayed, and snapshotted, in the
+     * order they were registered.
+     * @param name table name
+     * @param table table
+     */
+    public void register(final String name, final Table table) {
+        synchronized (queue) {
+            if (opened) {
+                throw new IllegalStateException("store already opened");
+            }
+            tables.put(name, table);
+        }
+    }
+
+    /**
+     * loads the snapshot into the registered tables, replays the log
+     * written since and starts the writer
+     * @throws IOException if the log could not be read or created
+     */
+    public void open() throws IOException {
+        synchronized (queue) {
+            if (opened) {
+                throw new IllegalStateException("store already opened");
+            }
+            opened = true;
+        }
+
+        final Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.deleteIfExists(compactPath());
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            load();
+            if (channel.size() == 0) {
+                writeHeader(channel, generation);
+            } else {
+                replay();
+            }
+            channel.position(channel.size());
+        } catch (IOException | RuntimeException e) {
+            synchronized (queue) {
+                closed = true;
+            }
+            channel.close();
+            throw e;
+        }
+
+        writer = new Thread(this::run, "log-store");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * queues the new value of a key. Writers that must see the record
+     * durable before going on wait for the returned future, outside of
+     * any lock they hold, so their records share a batch.
+     * @param table table name
+     * @param key key
+     * @param values full new value, null if the key was deleted
+     * @return future completed once the record is written
+     */
+    public CompletableFuture<Void> append(final String table,
+                                          final String key,
+                                          final Map<String, String> values) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final byte[] frame;
+        try {
+            frame = frame(encode(table, key, values));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        synchronized (queue) {
+            if (!opened || closed) {
+                future.completeExceptionally(
+                        new IOException("log store is not open"));
+                return future;
+            }
+            queue.add(new Pending(frame, future));
+            queue.notifyAll();
+        }
+        return future;
+    }
+
+    /**
+     * waits for an appended record to be written
+     * @param future future returned by append, may be null
+     * @throws IOException if the record could not be written
+     */
+    public static void await(final CompletableFuture<Void> future)
+            throws IOException {
+        if (future == null) {
+            return;
+        }
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for log");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * writes the records queued, waits for the writer to stop and closes
+     * the log
+     */
+    @Override
+    public void close() {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.notifyAll();
+        }
+
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("could not close " + path, e);
+        }
+    }
+
+    /**
+     * writer loop, writes each batch queued with a single fsync
+     */
+    private void run() {
+        while (true) {
+            final List<Pending> batch;
+            synchronized (queue) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(queue);
+                queue.clear();
+            }
+
+            write(batch);
+            final long due = Math.max(compactRecords, live)
+                    << Math.min(failedCompactions, MAX_COMPACT_BACKOFF);
+            if (sinceCompaction >= due) {
+                try {
+                    compact();
+                    failedCompactions = 0;
+                } catch (IOException | RuntimeException e) {
+                    failedCompactions++;
+                    LOGGER.error("could not compact " + path + ", "
+                            + failedCompactions + " times in a row", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * writes a batch and releases its writers
+     * @param batch records
+     */
+    private void write(final List<Pending> batch) {
+        final ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i).frame);
+        }
+
+        long start = -1;
+        try {
+            start = channel.position();
+            long left = 0;
+            for (final ByteBuffer b : buffers) {
+                left += b.remaining();
+            }
+            while (left > 0) {
+                left -= channel.write(buffers);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            LOGGER.error("could not write " + batch.size() + " records to "
+                    + path, e);
+            rollBack(start);
+            for (final Pending p : batch) {
+                p.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        records += batch.size();
+        batches++;
+        sinceCompaction += batch.size();
+        for (final Pending p : batch) {
+            p.future.complete(null);
+        }
+    }
+
+    /**
+     * truncates a partly written batch so records written after it are
+     * not hidden behind a torn one on replay
+     * @param position log size before the batch, -1 if unknown
+     */
+    private void rollBack(final long position) {
+        if (position < 0) {
+            return;
+        }
+
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException e) {
+            LOGGER.error("could not roll back " + path, e);
+        }
+    }
+
+    /**
+     * writes a snapshot of every table and starts the log over. Only
+     * called by the writer, so no record is written while the snapshot
+     * is taken; records queued meanwhile go to the new log. A crash
+     * before the log is started over leaves a log of an older generation
+     * than the snapshot, which is then skipped on open. The snapshot goes
+     * to a file of its own, so the mapped one is never replaced.
+     * @throws IOException if the snapshot could not be written, the old
+     *                     log is then kept
+     */
+    private void compact() throws IOException {
+        final long start = System.nanoTime();
+        final Path tmp = compactPath();
+        final long next = generation + 1;
+        final long count;
+        try {
+            count = SnapshotFile.write(tmp, next, tables);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        final Path file = snapshotPath(next);
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        reset(next);
+        live = count;
+        sinceCompaction = 0;
+        compactions++;
+        LOGGER.info("compacted " + path + " to " + live + " records in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + "ms");
+        deleteSnapshots(file);
+    }
+
+    /**
+     * deletes every snapshot but the newest and the mapped one. A
+     * snapshot that cannot be deleted, such as one a closed store in
+     * this process still maps on Windows, is left for a later open.
+     * @param newest newest snapshot
+     * @throws IOException if the snapshots could not be listed
+     */
+    private void deleteSnapshots(final Path newest) throws IOException {
+        for (final Path p : listSnapshots().values()) {
+            if (p.equals(newest) || p.equals(snapshotFile)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException e) {
+                LOGGER.warn("could not delete old snapshot " + p, e);
+            }
+        }
+    }
+
+    /**
+     * lists the snapshot files by generation. A snapshot written before
+     * files were named after their generation sorts before the rest.
+     * @return snapshot files, oldest first
+     * @throws IOException if the directory could not be listed
+     */
+    private TreeMap<Long, Path> listSnapshots() throws IOException {
+        final TreeMap<Long, Path> found = new TreeMap<>();
+        final Path legacy = snapshotPath();
+        if (Files.exists(legacy)) {
+            found.put(-1L, legacy);
+        }
+
+        final String prefix = legacy.getFileName() + ".";
+        final Path dir = path.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (final Path p : ds) {
+                final String name = p.getFileName().toString();
+                if (!name.startsWith(prefix)) {
+                    continue;
+                }
+                try {
+                    found.put(Long.parseLong(
+                            name.substring(prefix.length())), p);
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("ignoring " + p + ", not a snapshot");
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * empties the log and starts it over under a generation
+     * @param next generation
+     * @throws IOException if the log could not be written
+     */
+    private void reset(final long next) throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        writeHeader(channel, next);
+        channel.force(true);
+        generation = next;
+    }
+
+    /**
+     * maps the snapshot, if there is one, and loads its sections into the
+     * registered tables
+     * @throws IOException if the snapshot could not be mapped
+     */
+    private void load() throws IOException {
+        final TreeMap<Long, Path> found = listSnapshots();
+        if (found.isEmpty()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final Path file = found.lastEntry().getValue();
+        snapshot = SnapshotFile.open(file);
+        snapshotFile = file;
+        for (final Map.Entry<String, Table> e : tables.entrySet()) {
+            final SnapshotFile.Section section =
+                    snapshot.getSection(e.getKey());
+            if (section != null) {
+                e.getValue().load(section);
+            }
+        }
+        generation = snapshot.getGeneration();
+        live = snapshot.getRecords();
+        LOGGER.info("mapped " + live + " records from " + file + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + "ms");
+        deleteSnapshots(file);
+    }
+
+    /**
+     * reads every intact record into the tables and cuts off the rest
+     * @throws IOException if the log could not be read
+     */
+    private void replay() throws IOException {
+        final long size = channel.size();
+        long count = 0;
+        channel.position(0);
+        final InputStream in = new BufferedInputStream(
+                Channels.newInputStream(channel));
+        final DataInputStream dis = new DataInputStream(in);
+        if ((size < VERSION_1_HEADER_BYTES) || (dis.readInt() != MAGIC)) {
+            throw new IOException(path + " is not a log store");
+        }
+        final int version = dis.readInt();
+        long valid;
+        long logGeneration;
+        if (version == VERSION) {
+            valid = HEADER_BYTES;
+            logGeneration = dis.readLong();
+        } else if (version == VERSION_1) {
+            valid = VERSION_1_HEADER_BYTES;
+            logGeneration = 0;
+        } else {
+            throw new IOException(path + " has unknown version " + version);
+        }
+
+        if (logGeneration < generation) {
+            LOGGER.info("skipping " + path + ", the snapshot is newer");
+            reset(generation);
+            return;
+        }
+        generation = logGeneration;
+
+        final CRC32 crc = new CRC32();
+        while (valid < size) {
+            final byte[] payload;
+            try {
+                final int length = dis.readInt();
+                final int sum = dis.readInt();
+                if ((length < 0) || (length > MAX_RECORD_BYTES)) {
+                    break;
+                }
+                payload = new byte[length];
+                dis.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != sum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+
+            apply(payload);
+            valid += FRAME_BYTES + payload.length;
+            count++;
+        }
+
+        if (valid < size) {
+            LOGGER.warn("dropping " + (size - valid) + " torn bytes at the "
+                    + "end of " + path);
+            channel.truncate(valid);
+        }
+        live += count;
+        LOGGER.info("replayed " + count + " records from " + path);
+    }
+
+    /**
+     * applies a replayed record to its table
+     * @param payload record payload
+     * @throws IOException if the payload is malformed
+     */
+    private void apply(final byte[] payload) throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(payload));
+        final String table = in.readUTF();
+        final String key = in.readUTF();
+        Map<String, String> values = null;
+        final int n = in.readInt();
+        if (n >= 0) {
+            values = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                values.put(in.readUTF(), in.readUTF());
+            }
+        }
+
+        final Table t = tables.get(table);
+        if (t == null) {
+            LOGGER.warn("skipping record of unknown table " + table);
+            return;
+        }
+        t.apply(key, values);
+    }
+
+    /**
+     * encodes a record. Null values are left out.
+     * @param table table name
+     * @param key key
+     * @param values full new value, null if deleted
+     * @return payload
+     * @throws IOException if a string is too long to encode
+     */
+    private static byte[] encode(final String table,
+                                 final String key,
+                                 final Map<String, String> values)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(table);
+        out.writeUTF(key);
+        if (values == null) {
+            out.writeInt(-1);
+        } else {
+            final Map<String, String> present = new HashMap<>(values);
+            present.values().removeIf(v -> v == null);
+            out.writeInt(present.size());
+            for (final Map.Entry<String, String> e : present.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * frames a payload with its length and checksum
+     * @param payload payload
+     * @return frame
+     */
+    private static byte[] frame(final byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        final ByteBuffer b = ByteBuffer.allocate(FRAME_BYTES
+                + payload.length);
+        b.putInt(payload.length);
+        b.putInt((int) crc.getValue());
+        b.put(payload);
+        return b.array();
+    }
+
+    /**
+     * writes the file header at the current position
+     * @param out file
+     * @param generation generation of the log
+     * @throws IOException if the header could not be written
+     */
+    private static void writeHeader(final FileChannel out,
+                                    final long generation)
+            throws IOException {
+        final ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES);
+        b.putInt(MAGIC);
+        b.putInt(VERSION);
+        b.putLong(generation);
+        b.flip();
+        while (b.hasRemaining()) {
+            out.write(b);
+        }
+    }
+
+    /**
+     * gets the file a compaction is written to before it is swapped in
+     * @return path
+     */
+    private Path compactPath() {
+        return path.resolveSibling(path.getFileName() + ".compact");
+    }
+
+    /**
+     * gets the snapshot file written before snapshots were named after
+     * their generation
+     * @return path
+     */
+    private Path snapshotPath() {
+        return path.resolveSibling(path.getFileName() + ".snap");
+    }
+
+    /**
+     * gets the snapshot file of a generation
+     * @param next generation
+     * @return path
+     */
+    private Path snapshotPath(final long next) {
+        return path.resolveSibling(path.getFileName() + ".snap." + next);
+    }
+
+    /**
+     * gets the log file
+     * @return path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * gets the number of records written since the store was opened
+     * @return records
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * gets the number of batches written, each forced with one fsync
+     * @return batches
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * gets the generation of the log
+     * @return generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * gets the number of compactions since the store was opened
+     * @return compactions
+     */
+    public long getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * gets the number of compactions failed since the last one that did
+     * not
+     * @return failed compactions
+     */
+    public int getFailedCompactions() {
+        return failedCompactions;
+    }
+
+    /**
+     * toString
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return "LogStore[" + path + ", records=" + records
+                + ", batches=" + batches
+                + ", compactions=" + compactions + "]";
+    }
+
+    /**
+     * state persisted by a log store
+     */
+    public interface Table {
+        /**
+         * applies a replayed record
+         * @param key key
+         * @param values full value, null if the key was deleted
+         */
+        void apply(String key, Map<String, String> values);
+
+        /**
+         * hands the full value of every key to a consumer, in the order
+         * they should be replayed
+         * @param out consumer of key and value
+         */
+        void snapshot(BiConsumer<String, Map<String, String>> out);
+
+        /**
+         * gets the columns to index in snapshots
+         * @return columns
+         */
+        default Collection<String> indexed() {
+            return Collections.emptyList();
+        }
+
+        /**
+         * loads a mapped snapshot section. By default every record is
+         * decoded and applied, tables too large for that read the
+         * section lazily.
+         * @param section section, valid while the store is open
+         */
+        default void load(final SnapshotFile.Section section) {
+            section.forEach(this::apply);
+        }
+    }
+
+    /**
+     * record waiting for the writer
+     */
+    private static final class Pending {
+        /**
+         * framed record
+         */
+        private final byte[] frame;
+
+        /**
+         * completed once written
+         */
+        private final CompletableFuture<Void> future;
+
+        /**
+         * creates a pending record
+         * @param frame framed record
+         * @param future completed once written
+         */
+        private Pending(final byte[] frame,
+                        final CompletableFuture<Void> future) {
+            this.frame = frame;
+            this.future = future;
+        }
+    }
+}
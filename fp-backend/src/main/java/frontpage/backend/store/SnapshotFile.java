@@ -0,0 +1,668 @@
+package frontpage.backend.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * @author willstuckey
+ * <p>Memory-mapped snapshot of the tables of a log store.</p>
+ *
+ * A snapshot holds one section per table. A section keeps its records
+ * in insertion order, an index of them sorted by key and, for each
+ * indexed column, the sorted values with the records holding each.
+ * The file is mapped rather than read, so opening it costs the same
+ * whatever its size: a record is only decoded when it is looked up or
+ * listed. Strings are stored as UTF-8, keys compared as unsigned bytes.
+ * The generation of the log the snapshot was taken at is kept in the
+ * header, so a log older than the snapshot is not replayed over it.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SnapshotFile {
+    /**
+     * file magic, "FPSN"
+     */
+    private static final int MAGIC = 0x4650534E;
+
+    /**
+     * file format version
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * offset of the directory offset in the header
+     */
+    private static final int DIRECTORY_POSITION = 16;
+
+    /**
+     * bytes of the header: magic, version, generation and directory
+     */
+    private static final int HEADER_BYTES = 24;
+
+    /**
+     * bytes of an int
+     */
+    private static final int INT_BYTES = 4;
+
+    /**
+     * bytes of a long
+     */
+    private static final int LONG_BYTES = 8;
+
+    /**
+     * initial number of record offsets held by a section writer
+     */
+    private static final int INITIAL_RECORDS = 64;
+
+    /**
+     * mapped file
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * generation of the log the snapshot was taken at
+     */
+    private final long generation;
+
+    /**
+     * sections by table name
+     */
+    private final Map<String, Section> sections;
+
+    /**
+     * creates a snapshot over a mapped file
+     * @param buffer mapped file
+     * @throws IOException if the file is not a snapshot
+     */
+    private SnapshotFile(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if ((buffer.capacity() < HEADER_BYTES)
+                || (buffer.getInt(0) != MAGIC)) {
+            throw new IOException("not a snapshot");
+        }
+        final int version = buffer.getInt(INT_BYTES);
+        if (version != VERSION) {
+            throw new IOException("unknown snapshot version " + version);
+        }
+        generation = buffer.getLong(2 * INT_BYTES);
+
+        final Map<String, Section> map = new LinkedHashMap<>();
+        long pos = buffer.getLong(DIRECTORY_POSITION);
+        final int count = buffer.getInt(toInt(pos));
+        pos += INT_BYTES;
+        for (int i = 0; i < count; i++) {
+            final String name = string(pos);
+            pos += INT_BYTES + length(pos);
+            map.put(name, new Section(buffer.getLong(toInt(pos))));
+            pos += LONG_BYTES;
+        }
+        sections = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * maps a snapshot file
+     * @param path file
+     * @return snapshot
+     * @throws IOException if the file could not be mapped or is not a
+     *                     snapshot
+     */
+    public static SnapshotFile open(final Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map");
+            }
+            final MappedByteBuffer map =
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            try {
+                return new SnapshotFile(map);
+            } catch (IOException | RuntimeException e) {
+                throw new IOException(path + " is not a valid snapshot", e);
+            }
+        }
+    }
+
+    /**
+     * writes a snapshot of tables. The file is forced to disk before
+     * this returns.
+     * @param path file, replaced if it exists
+     * @param generation generation of the log the snapshot is taken at
+     * @param tables tables by name
+     * @return number of records written
+     * @throws IOException if the snapshot could not be written
+     */
+    public static long write(final Path path,
+                             final long generation,
+                             final Map<String, LogStore.Table> tables)
+            throws IOException {
+        long total = 0;
+        try (FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            final CountingOutputStream counter = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(ch)));
+            final DataOutputStream out = new DataOutputStream(counter);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeLong(0);
+
+            final Map<String, Long> offsets = new LinkedHashMap<>();
+            for (final Map.Entry<String, LogStore.Table> e
+                    : tables.entrySet()) {
+                final SectionWriter w = new SectionWriter(
+                        e.getValue().indexed());
+                final IOException[] failure = new IOException[1];
+                e.getValue().snapshot((key, values) -> {
+                    if (failure[0] != null) {
+                        return;
+                    }
+                    try {
+                        w.record(out, counter.count, key, values);
+                    } catch (IOException ex) {
+                        failure[0] = ex;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                offsets.put(e.getKey(), w.finish(out, counter));
+                total += w.keys.size();
+            }
+
+            final long directory = counter.count;
+            out.writeInt(offsets.size());
+            for (final Map.Entry<String, Long> e : offsets.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeLong(e.getValue());
+            }
+            out.flush();
+
+            final ByteBuffer b = ByteBuffer.allocate(LONG_BYTES);
+            b.putLong(directory);
+            b.flip();
+            while (b.hasRemaining()) {
+                ch.write(b, DIRECTORY_POSITION + b.position());
+            }
+            ch.force(true);
+        }
+        return total;
+    }
+
+    /**
+     * gets the generation of the log the snapshot was taken at
+     * @return generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * gets the section of a table
+     * @param table table name
+     * @return section, null if the table is not in the snapshot
+     */
+    public Section getSection(final String table) {
+        return sections.get(table);
+    }
+
+    /**
+     * gets the total number of records
+     * @return records
+     */
+    public long getRecords() {
+        long n = 0;
+        for (final Section s : sections.values()) {
+            n += s.size();
+        }
+        return n;
+    }
+
+    /**
+     * reads the length of a string
+     * @param pos offset of the string
+     * @return length in bytes
+     */
+    private int length(final long pos) {
+        return buffer.getInt(toInt(pos));
+    }
+
+    /**
+     * decodes a string
+     * @param pos offset of the string
+     * @return string
+     */
+    private String string(final long pos) {
+        final byte[] bytes = new byte[length(pos)];
+        final ByteBuffer b = buffer.duplicate();
+        b.position(toInt(pos + INT_BYTES));
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * compares a stored string to encoded bytes, as unsigned bytes
+     * @param pos offset of the stored string
+     * @param bytes encoded string
+     * @return comparison of the stored string to the bytes
+     */
+    private int compare(final long pos, final byte[] bytes) {
+        final int len = length(pos);
+        final int start = toInt(pos + INT_BYTES);
+        final int n = Math.min(len, bytes.length);
+        for (int i = 0; i < n; i++) {
+            final int c = Byte.toUnsignedInt(buffer.get(start + i))
+                    - Byte.toUnsignedInt(bytes[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - bytes.length;
+    }
+
+    /**
+     * narrows a file offset, the whole file is in one mapping
+     * @param pos offset
+     * @return offset
+     */
+    private static int toInt(final long pos) {
+        return (int) pos;
+    }
+
+    /**
+     * writes a string as its UTF-8 length and bytes
+     * @param out stream
+     * @param s string
+     * @throws IOException if the string could not be written
+     */
+    private static void writeString(final DataOutputStream out,
+                                    final String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * compares encoded strings as unsigned bytes
+     * @param a string
+     * @param b string
+     * @return comparison
+     */
+    private static int compareBytes(final byte[] a, final byte[] b) {
+        final int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            final int c = Byte.toUnsignedInt(a[i]) - Byte.toUnsignedInt(b[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * records of one table. Ordinals number the records in insertion
+     * order from 0.
+     */
+    public final class Section {
+        /**
+         * number of records
+         */
+        private final int count;
+
+        /**
+         * offset of the record offsets, by ordinal
+         */
+        private final long records;
+
+        /**
+         * offset of the ordinals sorted by key
+         */
+        private final long byKey;
+
+        /**
+         * offsets of the value tables by indexed column
+         */
+        private final Map<String, Long> indexes;
+
+        /**
+         * reads a section descriptor
+         * @param pos offset of the descriptor
+         */
+        private Section(final long pos) {
+            long p = pos;
+            count = buffer.getInt(toInt(p));
+            p += INT_BYTES;
+            records = buffer.getLong(toInt(p));
+            p += LONG_BYTES;
+            byKey = buffer.getLong(toInt(p));
+            p += LONG_BYTES;
+            final int n = buffer.getInt(toInt(p));
+            p += INT_BYTES;
+            final Map<String, Long> map = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                final String column = string(p);
+                p += INT_BYTES + length(p);
+                map.put(column, buffer.getLong(toInt(p)));
+                p += LONG_BYTES;
+            }
+            indexes = Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * gets the number of records
+         * @return size
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * gets the offset of a record
+         * @param ordinal ordinal
+         * @return offset
+         */
+        private long record(final int ordinal) {
+            return buffer.getLong(toInt(records
+                    + ((long) ordinal * LONG_BYTES)));
+        }
+
+        /**
+         * decodes the key of a record
+         * @param ordinal ordinal
+         * @return key
+         */
+        public String key(final int ordinal) {
+            return string(record(ordinal));
+        }
+
+        /**
+         * decodes the values of a record
+         * @param ordinal ordinal
+         * @return values
+         */
+        public Map<String, String> values(final int ordinal) {
+            long p = record(ordinal);
+            p += INT_BYTES + length(p);
+            final int n = buffer.getInt(toInt(p));
+            p += INT_BYTES;
+            final Map<String, String> ret = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                final String k = string(p);
+                p += INT_BYTES + length(p);
+                final String v = string(p);
+                p += INT_BYTES + length(p);
+                ret.put(k, v);
+            }
+            return ret;
+        }
+
+        /**
+         * finds a record by key
+         * @param key key
+         * @return ordinal, -1 if there is none
+         */
+        public int find(final String key) {
+            final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            int lo = 0;
+            int hi = count - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final int ordinal = buffer.getInt(toInt(byKey
+                        + ((long) mid * INT_BYTES)));
+                final int c = compare(record(ordinal), bytes);
+                if (c < 0) {
+                    lo = mid + 1;
+                } else if (c > 0) {
+                    hi = mid - 1;
+                } else {
+                    return ordinal;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * returns if a column is indexed
+         * @param column column
+         * @return if indexed
+         */
+        public boolean isIndexed(final String column) {
+            return indexes.containsKey(column);
+        }
+
+        /**
+         * finds the records with a value in an indexed column
+         * @param column indexed column
+         * @param value value
+         * @return ordinals in insertion order, empty if none match
+         */
+        public int[] lookup(final String column, final String value) {
+            final Long table = indexes.get(column);
+            if (table == null) {
+                throw new IllegalArgumentException(column
+                        + " is not indexed");
+            }
+
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            final int n = buffer.getInt(toInt(table));
+            final long entries = table + INT_BYTES;
+            int lo = 0;
+            int hi = n - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final long entry = buffer.getLong(toInt(entries
+                        + ((long) mid * LONG_BYTES)));
+                final int c = compare(entry, bytes);
+                if (c < 0) {
+                    lo = mid + 1;
+                } else if (c > 0) {
+                    hi = mid - 1;
+                } else {
+                    long p = entry + INT_BYTES + length(entry);
+                    final int[] ret = new int[buffer.getInt(toInt(p))];
+                    p += INT_BYTES;
+                    for (int i = 0; i < ret.length; i++) {
+                        ret[i] = buffer.getInt(toInt(p
+                                + ((long) i * INT_BYTES)));
+                    }
+                    return ret;
+                }
+            }
+            return new int[0];
+        }
+
+        /**
+         * decodes every record in insertion order
+         * @param out consumer of key and values
+         */
+        public void forEach(final BiConsumer<String, Map<String, String>> out) {
+            for (int i = 0; i < count; i++) {
+                out.accept(key(i), values(i));
+            }
+        }
+    }
+
+    /**
+     * builds one section while its records are streamed out
+     */
+    private static final class SectionWriter {
+        /**
+         * encoded keys by ordinal
+         */
+        private final List<byte[]> keys = new ArrayList<>();
+
+        /**
+         * record offsets by ordinal
+         */
+        private long[] offsets = new long[INITIAL_RECORDS];
+
+        /**
+         * ordinals by value, by indexed column
+         */
+        private final Map<String, TreeMap<String, List<Integer>>> values =
+                new LinkedHashMap<>();
+
+        /**
+         * creates a section writer
+         * @param indexed indexed columns
+         */
+        private SectionWriter(final Collection<String> indexed) {
+            for (final String column : indexed) {
+                values.put(column, new TreeMap<>(
+                        (a, b) -> compareBytes(
+                                a.getBytes(StandardCharsets.UTF_8),
+                                b.getBytes(StandardCharsets.UTF_8))));
+            }
+        }
+
+        /**
+         * writes a record
+         * @param out stream
+         * @param pos current offset
+         * @param key key
+         * @param record values, null values are left out
+         * @throws IOException if the record could not be written
+         */
+        private void record(final DataOutputStream out,
+                            final long pos,
+                            final String key,
+                            final Map<String, String> record)
+                throws IOException {
+            final int ordinal = keys.size();
+            if (ordinal == offsets.length) {
+                offsets = Arrays.copyOf(offsets, ordinal * 2);
+            }
+            offsets[ordinal] = pos;
+            keys.add(key.getBytes(StandardCharsets.UTF_8));
+
+            final Map<String, String> present = new HashMap<>(record);
+            present.values().removeIf(v -> v == null);
+            writeString(out, key);
+            out.writeInt(present.size());
+            for (final Map.Entry<String, String> e : present.entrySet()) {
+                writeString(out, e.getKey());
+                writeString(out, e.getValue());
+            }
+
+            for (final Map.Entry<String, TreeMap<String, List<Integer>>> e
+                    : values.entrySet()) {
+                final String v = present.get(e.getKey());
+                if ((v != null) && !v.isEmpty()) {
+                    e.getValue().computeIfAbsent(v, x -> new ArrayList<>())
+                            .add(ordinal);
+                }
+            }
+        }
+
+        /**
+         * writes the indexes and descriptor of the section
+         * @param out stream
+         * @param counter position of the stream
+         * @return offset of the descriptor
+         * @throws IOException if the section could not be written
+         */
+        private long finish(final DataOutputStream out,
+                            final CountingOutputStream counter)
+                throws IOException {
+            final int count = keys.size();
+            final long records = counter.count;
+            for (int i = 0; i < count; i++) {
+                out.writeLong(offsets[i]);
+            }
+
+            final Integer[] sorted = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, (a, b) -> compareBytes(keys.get(a),
+                    keys.get(b)));
+            final long byKey = counter.count;
+            for (final Integer ordinal : sorted) {
+                out.writeInt(ordinal);
+            }
+
+            final Map<String, Long> tables = new LinkedHashMap<>();
+            for (final Map.Entry<String, TreeMap<String, List<Integer>>> e
+                    : values.entrySet()) {
+                final List<Long> entries = new ArrayList<>();
+                for (final Map.Entry<String, List<Integer>> v
+                        : e.getValue().entrySet()) {
+                    entries.add(counter.count);
+                    writeString(out, v.getKey());
+                    out.writeInt(v.getValue().size());
+                    for (final Integer ordinal : v.getValue()) {
+                        out.writeInt(ordinal);
+                    }
+                }
+                tables.put(e.getKey(), counter.count);
+                out.writeInt(entries.size());
+                for (final Long entry : entries) {
+                    out.writeLong(entry);
+                }
+            }
+
+            final long descriptor = counter.count;
+            out.writeInt(count);
+            out.writeLong(records);
+            out.writeLong(byKey);
+            out.writeInt(tables.size());
+            for (final Map.Entry<String, Long> e : tables.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeLong(e.getValue());
+            }
+            return descriptor;
+        }
+    }
+
+    /**
+     * output stream keeping the number of bytes written as a long
+     */
+    private static final class CountingOutputStream
+            extends FilterOutputStream {
+        /**
+         * bytes written
+         */
+        private long count;
+
+        /**
+         * creates a counting stream
+         * @param out wrapped stream
+         */
+        private CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package frontpage.backend.user;
+
+import frontpage.backend.store.EmbeddedDatabase;
+import frontpage.bind.errorhandling.AuthenticationException;
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.errorhandling.InvalidDataException;
+import frontpage.bind.user.UserManager;
+import frontpage.model.user.UserClass;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * @author willstuckey
+ * <p>Implementation of backend User Manager on the embedded database.</p>
+ *
+ * Passwords are stored as a salted SHA-512 hash, as the server stores
+ * them. Authenticating hands out the token of the user, which the
+ * other embedded managers check against the users table.
+ */
+@SuppressWarnings({"FeatureEnvy", "ChainedMethodCall",
+        "MethodWithTooManyParameters"})
+public final class EmbeddedUserManager implements UserManager {
+    /**
+     * bytes of password salt
+     */
+    private static final int SALT_BYTES = 16;
+
+    /**
+     * bits per hex digit
+     */
+    private static final int HEX_BITS = 4;
+
+    /**
+     * mask of a hex digit
+     */
+    private static final int HEX_MASK = 0xF;
+
+    /**
+     * salt source
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * database
+     */
+    private final EmbeddedDatabase db;
+
+    /**
+     * creates a user manager on the shared embedded database
+     * @throws SQLException if the database could not be opened
+     */
+    public EmbeddedUserManager() throws SQLException {
+        this(EmbeddedDatabase.getInstance());
+    }
+
+    /**
+     * creates a user manager on a database
+     * @param db database
+     */
+    public EmbeddedUserManager(final EmbeddedDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * attempts to authenticate a user
+     * @param email email
+     * @param pw password
+     * @return token of the user
+     * @throws AuthenticationException if the password does not match
+     * @throws BackendRequestException if the database failed
+     */
+    @Override
+    public String authenticateUser(final String email, final String pw)
+            throws BackendRequestException {
+        if ((email == null) || (pw == null)) {
+            throw new AuthenticationException("auth not provided");
+        }
+
+        final String tok;
+        try {
+            tok = db.execute(c -> {
+                final PreparedStatement stmt = c.prepare(
+                        "SELECT salt, hash, tok FROM users WHERE email = ?",
+                        email.toLowerCase());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next() || !MessageDigest.isEqual(
+                            hash(rs.getString("salt"), pw).getBytes(
+                                    StandardCharsets.US_ASCII),
+                            rs.getString("hash").getBytes(
+                                    StandardCharsets.US_ASCII))) {
+                        return null;
+                    }
+                    return rs.getString("tok");
+                }
+            });
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not authenticate", e);
+        }
+
+        if (tok == null) {
+            throw new AuthenticationException(
+                    "the username and password didn't match any users");
+        }
+        return tok;
+    }
+
+    /**
+     * gets the user type
+     * @param email email
+     * @param tok auth token
+     * @return type
+     * @throws AuthenticationException failure to authenticate
+     * @throws InvalidDataException null params
+     * @throws BackendRequestException if the database failed
+     */
+    @Override
+    public String getUserType(final String email,
+                              final String tok)
+            throws BackendRequestException {
+        if ((email == null) || (tok == null)) {
+            throw new InvalidDataException("auth not provided");
+        }
+
+        final String type;
+        try {
+            type = db.execute(c -> {
+                final PreparedStatement stmt = c.prepare(
+                        "SELECT type FROM users WHERE email = ? AND tok = ?",
+                        email.toLowerCase(), tok);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getString(1);
+                    }
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            throw new BackendRequestException("could not get user type", e);
+        }
+
+        if (type == null) {
+            throw new AuthenticationException("invalid credentials");
+        }
+        return type;
+    }
+
+    /**
+     * creates a user with a blank profile
+     * @param un username
+     * @param pw password
+     * @param email email
+     * @param firstname firstname
+     * @param lastname lastname
+     * @param type type
+     * @throws InvalidDataException user already registered or invalid
+     *                              type
+     * @throws BackendRequestException if the database failed
+     */
+    @Override
+    public void createUser(final String un,
+                           final String pw,
+                           final String email,
+                           final String firstname,
+                           final String lastname,
+                           final String type)
+            throws BackendRequestException {
+        if ((email == null) || (pw == null)) {
+            throw new InvalidDataException("auth not provided");
+        }
+
+        final UserClass userClass;
+        try {
+            userClass = UserClass.valueOf(type);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new InvalidDataException("invalid user type " + type, e);
+        }
+
+        final byte[] bytes = new byte[SALT_BYTES];
+        RANDOM.nextBytes(bytes);
+        final String salt = hex(bytes);
+        final boolean created;
+        try {
+            created = db.transaction(c -> {
+                final PreparedStatement stmt = c.prepare(
+                        "SELECT id FROM users WHERE email = ?",
+                        email.toLowerCase());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return false;
+                    }
+                }
+
+                c.prepare("INSERT INTO users "
+                        + "(email, username, type, salt, hash, tok) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)", email.toLowerCase(),
+                        un, userClass.name(), salt, hash(salt, pw),
+                        UUID.randomUUID().toString()).executeUpdate();
+                c.prepare("INSERT INTO profiles (userid) "
+                        + "SELECT id FROM users WHERE email = ?",
+                        email.toLowerCase()).executeUpdate();
+                return true;
+            });
+        } catch (SQLException e) {
+            throw new InvalidDataException("could not save user", e);
+        }
+
+        if (!created) {
+            throw new InvalidDataException("user already taken");
+        }
+    }
+
+    /**
+     * checks a token on a connection of the embedded database
+     * @param c connection
+     * @param email email
+     * @param tok auth token
+     * @return if the token belongs to the user
+     * @throws SQLException if the database failed
+     */
+    public static boolean isAuthenticated(
+            final EmbeddedDatabase.PooledConnection c,
+            final String email,
+            final String tok) throws SQLException {
+        if ((email == null) || (tok == null)) {
+            return false;
+        }
+
+        final PreparedStatement stmt = c.prepare(
+                "SELECT 1 FROM users WHERE email = ? AND tok = ?",
+                email.toLowerCase(), tok);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * hashes a salted password
+     * @param salt salt
+     * @param pw password
+     * @return hex hash
+     */
+    private static String hash(final String salt, final String pw) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-512").digest(
+                    (salt + pw).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-512 unavailable", e);
+        }
+    }
+
+    /**
+     * encodes bytes as hex
+     * @param bytes bytes
+     * @return lowercase hex
+     */
+    private static String hex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            sb.append(Character.forDigit((b >> HEX_BITS) & HEX_MASK,
+                    HEX_MASK + 1));
+            sb.append(Character.forDigit(b & HEX_MASK, HEX_MASK + 1));
+        }
+        return sb.toString();
+    }
+}
@@ -1,12 +1,18 @@
 package frontpage.backend.user;
 
+import frontpage.backend.store.LogStore;
 import frontpage.bind.errorhandling.InvalidDataException;
 import frontpage.bind.errorhandling.AuthenticationException;
 import frontpage.bind.user.UserManager;
 import frontpage.model.user.User;
 import frontpage.model.user.UserClass;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * @author willstuckey
@@ -20,6 +26,11 @@ public final class LocalUserManager implements UserManager {
      */
     private final ArrayList<User> users;
 
+    /**
+     * log users are saved to, null if kept in memory only
+     */
+    private LogStore store;
+
     /**
      * local constructor
      */
@@ -27,6 +38,37 @@ public final class LocalUserManager implements UserManager {
         users = new ArrayList<>();
     }
 
+    /**
+     * persists users to a log store, which replays them when opened
+     * @param store store, null to keep users in memory only
+     */
+    public void attach(final LogStore store) {
+        this.store = store;
+        if (store == null) {
+            return;
+        }
+
+        store.register("user", new LogStore.Table() {
+            @Override
+            public void apply(final String key,
+                              final Map<String, String> values) {
+                restore(values);
+            }
+
+            @Override
+            public void snapshot(
+                    final BiConsumer<String, Map<String, String>> out) {
+                final ArrayList<User> copy;
+                synchronized (users) {
+                    copy = new ArrayList<>(users);
+                }
+                for (User u : copy) {
+                    out.accept(u.getEmail().toLowerCase(), values(u));
+                }
+            }
+        });
+    }
+
     /**
      * attempts to authenticate a user
      * @param un username
@@ -92,13 +134,27 @@ public final class LocalUserManager implements UserManager {
                            final String lastname,
                            final String type)
             throws InvalidDataException {
-        for (User u : users) {
-            if (u.getEmail().equalsIgnoreCase(email)) {
-                throw new InvalidDataException("user already taken");
+        CompletableFuture<Void> pending = null;
+        synchronized (users) {
+            for (User u : users) {
+                if (u.getEmail().equalsIgnoreCase(email)) {
+                    throw new InvalidDataException("user already taken");
+                }
+            }
+
+            final User u = new User(email, pw, un, UserClass.valueOf(type));
+            users.add(u);
+            if (store != null) {
+                pending = store.append("user", email.toLowerCase(),
+                        values(u));
             }
         }
 
-        users.add(new User(email, pw, un, UserClass.valueOf(type)));
+        try {
+            LogStore.await(pending);
+        } catch (IOException e) {
+            throw new InvalidDataException("could not save user", e);
+        }
     }
 
     /**
@@ -109,4 +165,43 @@ public final class LocalUserManager implements UserManager {
     public ArrayList<User> getUsers() {
         return users;
     }
+
+    /**
+     * puts a user replayed from the log
+     * @param values user record
+     */
+    private void restore(final Map<String, String> values) {
+        final String email = values.get("email");
+        if (email == null) {
+            return;
+        }
+
+        synchronized (users) {
+            for (User u : users) {
+                if (u.getEmail().equalsIgnoreCase(email)) {
+                    u.setUsername(values.get("username"));
+                    u.setTok(values.get("tok"));
+                    u.setUserClass(UserClass.valueOf(values.get("type")));
+                    return;
+                }
+            }
+            users.add(new User(email, values.get("tok"),
+                    values.get("username"),
+                    UserClass.valueOf(values.get("type"))));
+        }
+    }
+
+    /**
+     * gets the record of a user
+     * @param u user
+     * @return user record
+     */
+    private static Map<String, String> values(final User u) {
+        final Map<String, String> values = new HashMap<>();
+        values.put("email", u.getEmail());
+        values.put("username", u.getUsername());
+        values.put("tok", u.getTok());
+        values.put("type", u.getUserClass().toString());
+        return values;
+    }
 }
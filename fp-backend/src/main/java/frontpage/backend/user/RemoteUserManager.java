@@ -3,6 +3,8 @@ package frontpage.backend.user;
 import frontpage.backend.rest.HTTPCodes;
 import frontpage.backend.rest.RESTHandler;
 import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.RequestScheduler;
+import frontpage.backend.rest.RequestScheduler.Priority;
 import frontpage.backend.validator.DefaultEmailValidator;
 import frontpage.backend.validator.DefaultPasswordValidator;
 import frontpage.bind.errorhandling.BackendRequestException;
@@ -14,6 +16,7 @@ import org.apache.log4j.Logger;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author willstuckey
@@ -180,6 +183,80 @@ public class RemoteUserManager implements UserManager {
         delegateExceptionGeneration(rr);
     }
 
+    /**
+     * attempts to authenticate a user on the I/O executor
+     * @see RemoteUserManager#authenticateUser(String, String)
+     *
+     * @param email username
+     * @param tok password
+     * @return future completed with the session token
+     */
+    public final CompletableFuture<String> authenticateUserAsync(
+            final String email,
+            final String tok) {
+        return RequestScheduler.submit(Priority.INTERACTIVE,
+                () -> authenticateUser(email, tok));
+    }
+
+    /**
+     * gets a user property on the I/O executor
+     * @see RemoteUserManager#getUserProperty(UserDataAttrib, String,
+     *      String)
+     *
+     * @param dataAttrib the property
+     * @param email email for auth
+     * @param tok token for auth
+     * @return future completed with the property value
+     */
+    public CompletableFuture<String> getUserPropertyAsync(
+            final UserDataAttrib dataAttrib,
+            final String email,
+            final String tok) {
+        return RequestScheduler.submit(Priority.INTERACTIVE,
+                () -> getUserProperty(dataAttrib, email, tok));
+    }
+
+    /**
+     * gets the user type on the I/O executor
+     * @see RemoteUserManager#getUserType(String, String)
+     *
+     * @param email email for auth
+     * @param tok token for auth
+     * @return future completed with the user type
+     */
+    public final CompletableFuture<String> getUserTypeAsync(
+            final String email,
+            final String tok) {
+        return RequestScheduler.submit(Priority.INTERACTIVE,
+                () -> getUserType(email, tok));
+    }
+
+    /**
+     * creates a user on the I/O executor
+     * @see RemoteUserManager#createUser(String, String, String, String,
+     *      String, String)
+     *
+     * @param un username
+     * @param pw password
+     * @param email email
+     * @param firstname firstname
+     * @param lastname lastname
+     * @param userClass user class
+     * @return future completed once the user is created
+     */
+    public final CompletableFuture<Void> createUserAsync(
+            final String un,
+            final String pw,
+            final String email,
+            final String firstname,
+            final String lastname,
+            final String userClass) {
+        return RequestScheduler.submit(Priority.INTERACTIVE, () -> {
+            createUser(un, pw, email, firstname, lastname, userClass);
+            return null;
+        });
+    }
+
     /**
      * generates exceptions based on the results of a RESTReport
      * NOTE: this is not done in the constructor of the RR because
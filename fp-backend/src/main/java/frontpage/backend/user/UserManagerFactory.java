@@ -1,11 +1,11 @@
 package frontpage.backend.user;
 
+import frontpage.bind.Logging;
 import frontpage.bind.user.UserManager;
 
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 /**
@@ -33,7 +33,7 @@ public final class UserManagerFactory {
 
     static {
         LOGGER = Logger.getLogger(UserManagerFactory.class);
-        LOGGER.setLevel(Level.ALL);
+        Logging.configure(LOGGER);
         USER_AUTHENTICATOR_MAP = new HashMap<>();
         USER_AUTHENTICATOR_MAP.put("remote", RemoteUserManager.class);
         LOGGER.trace("Added map <\"remote\", "
@@ -41,11 +41,14 @@ public final class UserManagerFactory {
         USER_AUTHENTICATOR_MAP.put("local", LocalUserManager.class);
         LOGGER.trace("Added map <\"local\", "
                 + "frontpage.backend.auth.LocalUserManager>");
+        USER_AUTHENTICATOR_MAP.put("embedded", EmbeddedUserManager.class);
+        LOGGER.trace("Added map <\"embedded\", "
+                + "frontpage.backend.user.EmbeddedUserManager>");
     }
 
     /**
      *
-     * @param type authenticator [sql, local]
+     * @param type authenticator [remote, local, embedded]
      * @throws NoSuchUserAuthenticatorException if an invalid
      */
     public static void createInstance(final String type)
@@ -0,0 +1,239 @@
+package frontpage.bind;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * @author willstuckey
+ * <p>Cooperative cancellation of work started for a view.</p>
+ *
+ * Each view shown gets a token, which is cancelled when the user
+ * navigates away. Work started while the token is current on a thread
+ * checks it, or registers a callback to abort blocking I/O, and ends
+ * with a CancellationException instead of delivering results to a
+ * hidden scene. Like the current trace span the current token is kept
+ * per thread, and work handed to another thread is wrapped to carry it.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class CancellationToken {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    static {
+        LOGGER = Logger.getLogger(CancellationToken.class.getName());
+    }
+
+    /**
+     * token that is never cancelled, current when none is bound
+     */
+    public static final CancellationToken NONE =
+            new CancellationToken("none", false);
+
+    /**
+     * current token by thread
+     */
+    private static final ThreadLocal<CancellationToken> CURRENT =
+            ThreadLocal.withInitial(() -> NONE);
+
+    /**
+     * name, for logging
+     */
+    private final String name;
+
+    /**
+     * if cancel has any effect
+     */
+    private final boolean cancellable;
+
+    /**
+     * callbacks run on cancellation, guarded by this
+     */
+    private final List<Runnable> callbacks = new ArrayList<>();
+
+    /**
+     * if cancelled
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * creates a token
+     * @param name name, for logging
+     */
+    public CancellationToken(final String name) {
+        this(name, true);
+    }
+
+    /**
+     * creates a token
+     * @param name name, for logging
+     * @param cancellable if cancel has any effect
+     */
+    private CancellationToken(final String name, final boolean cancellable) {
+        this.name = name;
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * cancels the token and runs the registered callbacks on the calling
+     * thread. Subsequent calls do nothing.
+     */
+    public void cancel() {
+        if (!cancellable) {
+            return;
+        }
+
+        final List<Runnable> run;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            run = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+
+        LOGGER.debug("cancelled " + name + " (" + run.size()
+                + " callbacks)");
+        for (final Runnable r : run) {
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("cancellation callback of " + name + " failed",
+                        e);
+            }
+        }
+    }
+
+    /**
+     * returns if the token was cancelled
+     * @return if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * throws if the token was cancelled
+     * @throws CancellationException if cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException(name + " cancelled");
+        }
+    }
+
+    /**
+     * registers a callback run when the token is cancelled, or at once
+     * if it already is
+     * @param callback callback, must not block
+     * @return registration, closed to remove the callback
+     */
+    public Registration onCancel(final Runnable callback) {
+        if (!cancellable) {
+            return () -> { };
+        }
+
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (this) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+
+        callback.run();
+        return () -> { };
+    }
+
+    /**
+     * gets the name
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * gets the token current on this thread
+     * @return token, NONE if none is bound
+     */
+    public static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * makes a token current on this thread
+     * @param token token, null for NONE
+     * @return token previously current
+     */
+    public static CancellationToken bind(final CancellationToken token) {
+        final CancellationToken previous = CURRENT.get();
+        if (token == null) {
+            CURRENT.set(NONE);
+        } else {
+            CURRENT.set(token);
+        }
+        return previous;
+    }
+
+    /**
+     * wraps a task to run under the token current on this thread
+     * @param task task
+     * @param <T> result type
+     * @return wrapped task
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        return wrap(current(), task);
+    }
+
+    /**
+     * wraps a task to run under a token. The task is not started if the
+     * token was cancelled before it ran.
+     * @param token token
+     * @param task task
+     * @param <T> result type
+     * @return wrapped task
+     */
+    public static <T> Callable<T> wrap(final CancellationToken token,
+                                       final Callable<T> task) {
+        return () -> {
+            final CancellationToken previous = bind(token);
+            try {
+                token.throwIfCancelled();
+                return task.call();
+            } finally {
+                bind(previous);
+            }
+        };
+    }
+
+    /**
+     * toString
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return "CancellationToken[" + name + ", cancelled=" + cancelled
+                + "]";
+    }
+
+    /**
+     * registered cancellation callback
+     */
+    public interface Registration extends AutoCloseable {
+        /**
+         * removes the callback
+         */
+        @Override
+        void close();
+    }
+}
@@ -28,6 +28,19 @@ public final class GlobalProperties {
         LOGGER.warn("TODO: load properties from file");
         PROPERTIES.setProperty("remote-server", "https://willstuckey.com");
         PROPERTIES.setProperty("remote-port", "443");
+        PROPERTIES.setProperty("remote-max-connections", "4");
+        PROPERTIES.setProperty("tls-session-cache-size", "64");
+        PROPERTIES.setProperty("tls-session-timeout", "14400");
+        PROPERTIES.setProperty("rest-warmup", "true");
+        PROPERTIES.setProperty("local-store-sync", "true");
+        PROPERTIES.setProperty("local-store-compact-records", "10000");
+        PROPERTIES.setProperty("embedded-db-pool", "4");
+        PROPERTIES.setProperty("embedded-db-statements", "32");
+        PROPERTIES.setProperty("embedded-db-batch", "500");
+        PROPERTIES.setProperty("report-page-size", "200");
+        PROPERTIES.setProperty("log-level", "INFO");
+        PROPERTIES.setProperty("rest-deadline", "7000");
+        PROPERTIES.setProperty("rest-deadline.report.php.LIST", "30000");
     }
 
     /**
@@ -38,6 +51,27 @@ public final class GlobalProperties {
         return PROPERTIES;
     }
 
+    /**
+     * gets an integer property, falling back to a default value if
+     * the property is missing or malformed
+     * @param key property key
+     * @param def default value
+     * @return property value
+     */
+    public static int getInt(final String key, final int def) {
+        final String val = PROPERTIES.getProperty(key);
+        if (val == null) {
+            return def;
+        }
+
+        try {
+            return Integer.parseInt(val.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("malformed integer property " + key + "=" + val);
+            return def;
+        }
+    }
+
     /**
      * utility constructor
      */
@@ -0,0 +1,94 @@
+package frontpage.bind;
+
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+
+/**
+ * @author willstuckey
+ * <p>Logging configuration driven by the global properties.</p>
+ *
+ * Levels come from log-level, which may be overridden for one logger
+ * with log-level.&lt;logger name&gt;. Console output goes through a
+ * bounded asynchronous appender: request threads only enqueue events,
+ * and when the buffer of log-buffer events is full further events are
+ * discarded and summarized rather than blocking the caller.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UtilityClass"})
+public final class Logging {
+    /**
+     * default level
+     */
+    private static final Level DEFAULT_LEVEL = Level.INFO;
+
+    /**
+     * default number of buffered events
+     */
+    private static final int DEFAULT_BUFFER = 512;
+
+    /**
+     * installed console appender, null until installed
+     */
+    private static AsyncAppender console;
+
+    /**
+     * gets the configured level of a logger
+     * @param name logger name
+     * @return level
+     */
+    public static Level getLevel(final String name) {
+        final Level global = Level.toLevel(GlobalProperties.getProperties()
+                .getProperty("log-level"), DEFAULT_LEVEL);
+        return Level.toLevel(GlobalProperties.getProperties()
+                .getProperty("log-level." + name), global);
+    }
+
+    /**
+     * sets a logger to its configured level
+     * @param logger logger
+     */
+    public static void configure(final Logger logger) {
+        logger.setLevel(getLevel(logger.getName()));
+    }
+
+    /**
+     * sends root logger output to the console through an asynchronous
+     * appender and sets the root level. Subsequent calls do nothing.
+     * @param pattern layout pattern
+     */
+    public static synchronized void installConsole(final String pattern) {
+        if (console != null) {
+            return;
+        }
+
+        final ConsoleAppender target = new ConsoleAppender();
+        target.setLayout(new PatternLayout(pattern));
+        target.setThreshold(Level.ALL);
+        target.activateOptions();
+
+        console = new AsyncAppender();
+        console.setName("async-console");
+        console.setBufferSize(Math.max(1, GlobalProperties.getInt(
+                "log-buffer", DEFAULT_BUFFER)));
+        console.setBlocking(false);
+        console.setLocationInfo(false);
+        console.addAppender(target);
+        console.activateOptions();
+
+        final Logger root = Logger.getRootLogger();
+        root.addAppender(console);
+        configure(root);
+
+        // flush buffered events on exit
+        final AsyncAppender installed = console;
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(installed::close, "log-flush"));
+    }
+
+    /**
+     * utility constructor
+     */
+    private Logging() { }
+}
@@ -0,0 +1,95 @@
+package frontpage.bind.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author willstuckey
+ * <p>Flight recorder event of one api request.</p>
+ *
+ * Spans building the query, the round trip and parsing the response.
+ * Only create when FlightEvents.ENABLED is set.
+ */
+@Name("frontpage.ApiRequest")
+@Label("API Request")
+@Category({"Frontpage", "Backend"})
+@Description("Request made to an api entry point")
+@StackTrace(false)
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ApiRequestEvent extends jdk.jfr.Event {
+    /**
+     * entry point
+     */
+    @Label("Entry Point")
+    private String entryPoint;
+
+    /**
+     * request action
+     */
+    @Label("Action")
+    private String action;
+
+    /**
+     * http response code, -1 if no response was read
+     */
+    @Label("Status")
+    private int status;
+
+    /**
+     * query bytes sent
+     */
+    @Label("Bytes Out")
+    @DataAmount
+    private long bytesOut;
+
+    /**
+     * response body bytes read
+     */
+    @Label("Bytes In")
+    @DataAmount
+    private long bytesIn;
+
+    /**
+     * sets the entry point
+     * @param entryPoint entry point
+     */
+    public void setEntryPoint(final String entryPoint) {
+        this.entryPoint = entryPoint;
+    }
+
+    /**
+     * sets the request action
+     * @param action request action
+     */
+    public void setAction(final String action) {
+        this.action = action;
+    }
+
+    /**
+     * sets the http response code
+     * @param status http response code
+     */
+    public void setStatus(final int status) {
+        this.status = status;
+    }
+
+    /**
+     * sets the query bytes sent
+     * @param bytesOut query bytes sent
+     */
+    public void setBytesOut(final long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+
+    /**
+     * sets the response body bytes read
+     * @param bytesIn response body bytes read
+     */
+    public void setBytesIn(final long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+}
@@ -0,0 +1,39 @@
+package frontpage.bind.jfr;
+
+/**
+ * @author willstuckey
+ * <p>Guards the flight recorder events of the application.</p>
+ *
+ * The events in this package extend jdk.jfr.Event, which is missing
+ * from Java 8 runtimes before update 262. Call sites create an event
+ * only when ENABLED is set, and hold it in a local of its own type, so
+ * the event classes are never loaded on a runtime without JFR. Once
+ * created, an event costs little more than two clock reads unless a
+ * recording has it enabled.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UtilityClass"})
+public final class FlightEvents {
+    /**
+     * if the runtime supports flight recorder events
+     */
+    public static final boolean ENABLED = probe();
+
+    /**
+     * checks for the flight recorder API
+     * @return if it is present
+     */
+    private static boolean probe() {
+        try {
+            Class.forName("jdk.jfr.Event", false,
+                    FlightEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * utility constructor
+     */
+    private FlightEvents() { }
+}
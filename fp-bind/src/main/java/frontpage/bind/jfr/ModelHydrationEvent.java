@@ -0,0 +1,63 @@
+package frontpage.bind.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author willstuckey
+ * <p>Flight recorder event of loading a model from a property map.</p>
+ *
+ * Only create when FlightEvents.ENABLED is set.
+ */
+@Name("frontpage.ModelHydration")
+@Label("Model Hydration")
+@Category({"Frontpage", "Model"})
+@Description("Model loaded from a map of backend properties")
+@StackTrace(false)
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ModelHydrationEvent extends jdk.jfr.Event {
+    /**
+     * model class
+     */
+    @Label("Model")
+    private String model;
+
+    /**
+     * report id
+     */
+    @Label("Report Id")
+    private String reportId;
+
+    /**
+     * properties in the map
+     */
+    @Label("Properties")
+    private int properties;
+
+    /**
+     * sets the model class
+     * @param model model class
+     */
+    public void setModel(final String model) {
+        this.model = model;
+    }
+
+    /**
+     * sets the report id
+     * @param reportId report id
+     */
+    public void setReportId(final String reportId) {
+        this.reportId = reportId;
+    }
+
+    /**
+     * sets the properties in the map
+     * @param properties properties in the map
+     */
+    public void setProperties(final int properties) {
+        this.properties = properties;
+    }
+}
@@ -0,0 +1,63 @@
+package frontpage.bind.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author willstuckey
+ * <p>Flight recorder event of parsing or indexing one response.</p>
+ *
+ * Only create when FlightEvents.ENABLED is set.
+ */
+@Name("frontpage.ReportParse")
+@Label("Report Parse")
+@Category({"Frontpage", "Backend"})
+@Description("Response body parsed into a report")
+@StackTrace(false)
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ReportParseEvent extends jdk.jfr.Event {
+    /**
+     * buffered, streamed or lazy
+     */
+    @Label("Mode")
+    private String mode;
+
+    /**
+     * dynamic entries read
+     */
+    @Label("Rows")
+    private int rows;
+
+    /**
+     * body length in characters, -1 if streamed
+     */
+    @Label("Characters")
+    private long characters;
+
+    /**
+     * sets the buffered
+     * @param mode buffered
+     */
+    public void setMode(final String mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * sets the dynamic entries read
+     * @param rows dynamic entries read
+     */
+    public void setRows(final int rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * sets the body length in characters
+     * @param characters body length in characters
+     */
+    public void setCharacters(final long characters) {
+        this.characters = characters;
+    }
+}
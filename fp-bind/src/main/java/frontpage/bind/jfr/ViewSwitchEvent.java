@@ -0,0 +1,66 @@
+package frontpage.bind.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * @author willstuckey
+ * <p>Flight recorder event of switching the main scene.</p>
+ *
+ * Spans the whole switch; the time spent refreshing the controller is
+ * recorded separately. Only create when FlightEvents.ENABLED is set.
+ */
+@Name("frontpage.ViewSwitch")
+@Label("View Switch")
+@Category({"Frontpage", "View"})
+@Description("Main scene switched to another view")
+@StackTrace(false)
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ViewSwitchEvent extends jdk.jfr.Event {
+    /**
+     * view key
+     */
+    @Label("View")
+    private String view;
+
+    /**
+     * time spent in Updatable.update
+     */
+    @Label("Update Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    private long updateDuration;
+
+    /**
+     * if the view was shown
+     */
+    @Label("Shown")
+    private boolean shown;
+
+    /**
+     * sets the view key
+     * @param view view key
+     */
+    public void setView(final String view) {
+        this.view = view;
+    }
+
+    /**
+     * sets the time spent in Updatable.update
+     * @param updateDuration time spent in Updatable.update
+     */
+    public void setUpdateDuration(final long updateDuration) {
+        this.updateDuration = updateDuration;
+    }
+
+    /**
+     * sets the if the view was shown
+     * @param shown if the view was shown
+     */
+    public void setShown(final boolean shown) {
+        this.shown = shown;
+    }
+}
@@ -3,6 +3,7 @@ package frontpage.bind.report;
 import frontpage.bind.errorhandling.BackendRequestException;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @author willstuckey
@@ -46,6 +47,18 @@ public interface PurityReportManager {
     Map<String, String> getPurityReport(final String id)
             throws BackendRequestException;
 
+    /**
+     * adds a blank purity report and reads it back, in one exchange where
+     * the backend supports batching
+     * @param email email for auth
+     * @param tok token for auth
+     * @return report properties
+     * @throws BackendRequestException if things go wrong
+     */
+    Map<String, String> createPurityReport(final String email,
+                                           final String tok)
+            throws BackendRequestException;
+
     /**
      * gets most recent purity reports
      * @param num report history length
@@ -56,11 +69,41 @@ public interface PurityReportManager {
     Map<String, String>[] getPurityReports(final int num)
             throws BackendRequestException;
 
+    /**
+     * hands most recent purity reports to a consumer one at a time,
+     * so the full listing never has to be held as maps at once.
+     * The consumer may be called before a failure is reported.
+     * @param num report history length
+     * @param consumer receives one map describing each result
+     * @throws BackendRequestException if things go wrong
+     */
+    @SuppressWarnings({"SameParameterValue", "UnusedParameters"})
+    void getPurityReports(final int num,
+                          final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException;
+
+    /**
+     * hands one page of a listing of purity reports to a consumer. Pages
+     * follow a stable order that is not necessarily insertion order, so
+     * a listing read page by page sees every report present throughout.
+     * @param pageSize largest number of reports in the page, the backend
+     *                 may send fewer
+     * @param cursor cursor returned with the previous page, null for the
+     *               first page
+     * @param consumer receives one map describing each result
+     * @return opaque cursor of the next page, null after the last page
+     * @throws BackendRequestException if anything goes wrong
+     */
+    String getPurityReportPage(final int pageSize,
+                               final String cursor,
+                               final Consumer<Map<String, String>> consumer)
+            throws BackendRequestException;
+
     /**
      * gets purity reports based on a set of search constraints
-     * applied to properties
-     * @param properties properties to search for
-     * @param searchConstraints constraints for properties
+     * applied to properties, as described by {@link ReportQuery}
+     * @param properties values to search for by field
+     * @param searchConstraints operators by field, equality where absent
      * @return array containing one map describing each result
      * @throws BackendRequestException if things go wrong
      */
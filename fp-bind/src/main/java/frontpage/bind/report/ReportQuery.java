@@ -0,0 +1,525 @@
+package frontpage.bind.report;
+
+import frontpage.bind.errorhandling.BackendRequestException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author willstuckey
+ * <p>Search over reports, as taken by the search overloads of the report
+ * managers.</p>
+ *
+ * A query is over one type of report and only takes the fields reports
+ * of that type have, along with username. It holds at most one clause
+ * per field, and a report matches when it satisfies every clause. The
+ * overloads take a query as two maps: properties maps each field to its
+ * value and searchConstraints maps it to its operator, equality when
+ * absent.
+ * <ul>
+ *     <li>EQ: the field equals the value. A blank value matches reports
+ *     without the field.</li>
+ *     <li>CONTAINS: the field contains every comma separated term of the
+ *     value, ignoring case. Only location, and name on source
+ *     reports.</li>
+ *     <li>RANGE: the value is "lower,upper" and the field lies in
+ *     [lower, upper). Either bound may be left blank for none. Only
+ *     reportdt, compared as text, and the ppm fields of purity reports,
+ *     compared as numbers.</li>
+ * </ul>
+ * Purity reports name the source report they were taken at sourceid, as
+ * every report manager returns them. A clause on sourcerptid, the name
+ * the server stores it under, is taken as a clause on sourceid.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ReportQuery {
+    /**
+     * operator of a clause
+     */
+    public enum Operator {
+        /**
+         * equality
+         */
+        EQ,
+        /**
+         * case insensitive substrings
+         */
+        CONTAINS,
+        /**
+         * half open range
+         */
+        RANGE
+    }
+
+    /**
+     * query over source reports
+     */
+    public static final String SOURCE = "source";
+
+    /**
+     * query over purity reports
+     */
+    public static final String PURITY = "purity";
+
+    /**
+     * separator of terms and of range bounds
+     */
+    private static final String SEPARATOR = ",";
+
+    /**
+     * fields of source reports
+     */
+    private static final Set<String> SOURCE_FIELDS = fields("username",
+            "id", "reportid", "reportdt", "location", "type", "cond",
+            "name", "description");
+
+    /**
+     * fields of source reports that may be searched for substrings
+     */
+    private static final Set<String> SOURCE_TEXT_FIELDS = fields(
+            "location", "name");
+
+    /**
+     * fields of source reports that may be searched by range
+     */
+    private static final Set<String> SOURCE_RANGE_FIELDS = fields(
+            "reportdt");
+
+    /**
+     * fields of purity reports
+     */
+    private static final Set<String> PURITY_FIELDS = fields("username",
+            "userid", "sourceid", "reportid", "reportdt", "location",
+            "cond", "virusppm", "contaminantppm");
+
+    /**
+     * fields of purity reports that may be searched for substrings
+     */
+    private static final Set<String> PURITY_TEXT_FIELDS = fields(
+            "location");
+
+    /**
+     * fields of purity reports that may be searched by range
+     */
+    private static final Set<String> PURITY_RANGE_FIELDS = fields(
+            "reportdt", "virusppm", "contaminantppm");
+
+    /**
+     * range fields compared as numbers
+     */
+    private static final Set<String> NUMERIC_FIELDS = fields(
+            "virusppm", "contaminantppm");
+
+    /**
+     * name the server stores the source report of a purity report under
+     */
+    private static final String SOURCE_RPT_ID = "sourcerptid";
+
+    /**
+     * type of report searched
+     */
+    private final String reporttype;
+
+    /**
+     * fields of the type of report
+     */
+    private final Set<String> allFields;
+
+    /**
+     * fields that may be searched for substrings
+     */
+    private final Set<String> textFields;
+
+    /**
+     * fields that may be searched by range
+     */
+    private final Set<String> rangeFields;
+
+    /**
+     * clauses by field
+     */
+    private final Map<String, Clause> clauses = new LinkedHashMap<>();
+
+    /**
+     * creates an empty query, which matches every report
+     * @param reporttype SOURCE or PURITY
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public ReportQuery(final String reporttype) {
+        if (SOURCE.equals(reporttype)) {
+            allFields = SOURCE_FIELDS;
+            textFields = SOURCE_TEXT_FIELDS;
+            rangeFields = SOURCE_RANGE_FIELDS;
+        } else if (PURITY.equals(reporttype)) {
+            allFields = PURITY_FIELDS;
+            textFields = PURITY_TEXT_FIELDS;
+            rangeFields = PURITY_RANGE_FIELDS;
+        } else {
+            throw new IllegalArgumentException("unknown report type "
+                    + reporttype);
+        }
+        this.reporttype = reporttype;
+    }
+
+    /**
+     * gets the type of report searched
+     * @return SOURCE or PURITY
+     */
+    public String getReportType() {
+        return reporttype;
+    }
+
+    /**
+     * requires a field to equal a value
+     * @param field field
+     * @param value value, blank for reports without the field
+     * @return this query
+     * @throws IllegalArgumentException if reports of the type do not
+     *                                  have the field
+     */
+    public ReportQuery equal(final String field, final String value) {
+        final String f = field(field);
+        clauses.put(f, new Clause(f, Operator.EQ,
+                Collections.singletonList(blankIfNull(value))));
+        return this;
+    }
+
+    /**
+     * requires a field to contain every term, ignoring case. Blank terms
+     * are dropped.
+     * @param field location, or name on source reports
+     * @param terms substrings
+     * @return this query
+     * @throws IllegalArgumentException if the field is not searchable
+     *                                  for substrings or a term holds a
+     *                                  comma
+     */
+    public ReportQuery contains(final String field, final String... terms) {
+        final String f = field(field);
+        if (!textFields.contains(f)) {
+            throw new IllegalArgumentException(
+                    "no substring search on " + field);
+        }
+
+        final List<String> values = new ArrayList<>();
+        for (final String term : terms) {
+            if (blankIfNull(term).contains(SEPARATOR)) {
+                throw new IllegalArgumentException("term holds a comma");
+            }
+            final String t = blankIfNull(term).trim().toLowerCase(Locale.ROOT);
+            if (!t.isEmpty()) {
+                values.add(t);
+            }
+        }
+        clauses.put(f, new Clause(f, Operator.CONTAINS, values));
+        return this;
+    }
+
+    /**
+     * requires a field to lie in [lower, upper)
+     * @param field reportdt, or virusppm or contaminantppm on purity
+     *              reports
+     * @param lower inclusive lower bound, null for none
+     * @param upper exclusive upper bound, null for none
+     * @return this query
+     * @throws IllegalArgumentException if the field is not searchable by
+     *                                  range or a bound is invalid
+     */
+    public ReportQuery range(final String field,
+                             final String lower,
+                             final String upper) {
+        final String f = field(field);
+        if (!rangeFields.contains(f)) {
+            throw new IllegalArgumentException("no range search on " + field);
+        }
+
+        final String lo = blankIfNull(lower).trim();
+        final String hi = blankIfNull(upper).trim();
+        if (lo.contains(SEPARATOR) || hi.contains(SEPARATOR)) {
+            throw new IllegalArgumentException("bound holds a comma");
+        }
+        if (NUMERIC_FIELDS.contains(f)) {
+            number(lo);
+            number(hi);
+        }
+        clauses.put(f, new Clause(f, Operator.RANGE, Arrays.asList(lo, hi)));
+        return this;
+    }
+
+    /**
+     * gets the clauses, in the order they were added
+     * @return clauses
+     */
+    public Collection<Clause> getClauses() {
+        return Collections.unmodifiableCollection(clauses.values());
+    }
+
+    /**
+     * gets the values of the clauses, as taken by the search overloads
+     * @return values by field
+     */
+    public Map<String, String> getProperties() {
+        final Map<String, String> ret = new LinkedHashMap<>();
+        for (final Clause c : clauses.values()) {
+            ret.put(c.field, String.join(SEPARATOR, c.values));
+        }
+        return ret;
+    }
+
+    /**
+     * gets the operators of the clauses, as taken by the search overloads
+     * @return operator names by field
+     */
+    public Map<String, String> getSearchConstraints() {
+        final Map<String, String> ret = new LinkedHashMap<>();
+        for (final Clause c : clauses.values()) {
+            ret.put(c.field, c.operator.name());
+        }
+        return ret;
+    }
+
+    /**
+     * returns if a report satisfies every clause
+     * @param report report data
+     * @return if matched
+     */
+    public boolean matches(final Map<String, String> report) {
+        for (final Clause c : clauses.values()) {
+            if (!c.matches(report.get(c.field))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * reads a query from the arguments of the search overloads
+     * @param reporttype SOURCE or PURITY
+     * @param properties values by field
+     * @param searchConstraints operators by field, may be null
+     * @return query
+     * @throws BackendRequestException if a field or operator is unknown
+     *                                  or an operator does not apply to
+     *                                  its field
+     */
+    public static ReportQuery parse(final String reporttype,
+                                    final Map<String, String> properties,
+                                    final Map<String, String>
+                                            searchConstraints)
+            throws BackendRequestException {
+        Map<String, String> constraints = searchConstraints;
+        if (constraints == null) {
+            constraints = new HashMap<>();
+        }
+
+        final ReportQuery ret = new ReportQuery(reporttype);
+        for (final Map.Entry<String, String> e : properties.entrySet()) {
+            final String value = blankIfNull(e.getValue());
+            final Operator op;
+            try {
+                op = Operator.valueOf(blankIfNull(constraints.getOrDefault(
+                        e.getKey(), Operator.EQ.name()))
+                        .toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new BackendRequestException("unknown constraint on "
+                        + e.getKey(), ex);
+            }
+
+            try {
+                if (op == Operator.CONTAINS) {
+                    ret.contains(e.getKey(), value.split(SEPARATOR));
+                } else if (op == Operator.RANGE) {
+                    final String[] bounds = value.split(SEPARATOR, -1);
+                    if (bounds.length != 2) {
+                        throw new IllegalArgumentException(
+                                "range is not lower,upper");
+                    }
+                    ret.range(e.getKey(), bounds[0], bounds[1]);
+                } else {
+                    ret.equal(e.getKey(), value);
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new BackendRequestException(ex.getMessage(), ex);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * resolves a field of the type of report, taking sourcerptid as
+     * sourceid on purity reports
+     * @param field field
+     * @return field
+     * @throws IllegalArgumentException if reports of the type do not have
+     *                                  the field
+     */
+    private String field(final String field) {
+        String ret = field;
+        if (PURITY.equals(reporttype) && SOURCE_RPT_ID.equals(field)) {
+            ret = "sourceid";
+        }
+        if (!allFields.contains(ret)) {
+            throw new IllegalArgumentException("unknown field " + field
+                    + " on " + reporttype + " reports");
+        }
+        return ret;
+    }
+
+    /**
+     * creates an unmodifiable set of fields
+     * @param fields fields
+     * @return set
+     */
+    private static Set<String> fields(final String... fields) {
+        return Collections.unmodifiableSet(new HashSet<>(
+                Arrays.asList(fields)));
+    }
+
+    /**
+     * parses a numeric bound
+     * @param val bound, blank for none
+     * @return bound, null for none
+     * @throws IllegalArgumentException if the bound is not a number
+     */
+    private static Double number(final String val) {
+        if (val.isEmpty()) {
+            return null;
+        }
+        try {
+            return Double.valueOf(val);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + val, e);
+        }
+    }
+
+    /**
+     * replaces null with a blank value
+     * @param val value
+     * @return value, blank if null
+     */
+    private static String blankIfNull(final String val) {
+        if (val == null) {
+            return "";
+        }
+        return val;
+    }
+
+    /**
+     * condition on one field
+     */
+    public static final class Clause {
+        /**
+         * field
+         */
+        private final String field;
+
+        /**
+         * operator
+         */
+        private final Operator operator;
+
+        /**
+         * the value for EQ, the terms for CONTAINS and the lower and
+         * upper bounds for RANGE
+         */
+        private final List<String> values;
+
+        /**
+         * creates a clause
+         * @param field field
+         * @param operator operator
+         * @param values values, not copied
+         */
+        private Clause(final String field,
+                       final Operator operator,
+                       final List<String> values) {
+            this.field = field;
+            this.operator = operator;
+            this.values = Collections.unmodifiableList(values);
+        }
+
+        /**
+         * gets the field
+         * @return field
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * gets the operator
+         * @return operator
+         */
+        public Operator getOperator() {
+            return operator;
+        }
+
+        /**
+         * gets the value for EQ, the lower case terms for CONTAINS, or
+         * the lower and upper bounds for RANGE, blank for none
+         * @return values
+         */
+        public List<String> getValues() {
+            return values;
+        }
+
+        /**
+         * returns if the field is compared as a number
+         * @return if numeric
+         */
+        public boolean isNumeric() {
+            return NUMERIC_FIELDS.contains(field);
+        }
+
+        /**
+         * returns if a value of the field satisfies the clause
+         * @param value value, null if absent
+         * @return if matched
+         */
+        public boolean matches(final String value) {
+            if (operator == Operator.EQ) {
+                return values.get(0).equals(value)
+                        || (values.get(0).isEmpty() && (value == null));
+            }
+
+            if (value == null) {
+                return false;
+            }
+            if (operator == Operator.CONTAINS) {
+                final String v = value.toLowerCase(Locale.ROOT);
+                for (final String term : values) {
+                    if (!v.contains(term)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            if (isNumeric()) {
+                final Double v;
+                try {
+                    v = Double.valueOf(value.trim());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                final Double lo = number(values.get(0));
+                final Double hi = number(values.get(1));
+                return ((lo == null) || (v >= lo))
+                        && ((hi == null) || (v < hi));
+            }
+            return (values.get(0).isEmpty()
+                    || (value.compareTo(values.get(0)) >= 0))
+                    && (values.get(1).isEmpty()
+                    || (value.compareTo(values.get(1)) < 0));
+        }
+    }
+}
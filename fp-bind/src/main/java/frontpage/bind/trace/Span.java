@@ -0,0 +1,195 @@
+package frontpage.bind.trace;
+
+/**
+ * @author willstuckey
+ * <p>One timed hop of a traced action.</p>
+ *
+ * Spans are opened through Tracing and become the current span of the
+ * opening thread until closed. Closing records the span in the trace
+ * buffer and makes the span that was current before it current again.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class Span implements AutoCloseable {
+    /**
+     * nanoseconds per microsecond
+     */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /**
+     * trace id, 16 hex digits
+     */
+    private final String traceId;
+
+    /**
+     * span id, 16 hex digits
+     */
+    private final String spanId;
+
+    /**
+     * parent span id, null for a root span
+     */
+    private final String parentId;
+
+    /**
+     * name
+     */
+    private final String name;
+
+    /**
+     * wall clock start in milliseconds
+     */
+    private final long startMillis;
+
+    /**
+     * monotonic start in nanoseconds
+     */
+    private final long startNanos;
+
+    /**
+     * thread that opened the span
+     */
+    private final String thread;
+
+    /**
+     * span current before this one was opened
+     */
+    private final Span previous;
+
+    /**
+     * duration in nanoseconds, -1 while open
+     */
+    private volatile long durationNanos = -1;
+
+    /**
+     * outcome, null if not set
+     */
+    private volatile String status;
+
+    /**
+     * creates an open span
+     * @param traceId trace id
+     * @param spanId span id
+     * @param parentId parent span id, null for a root span
+     * @param name name
+     * @param previous span current before this one
+     */
+    Span(final String traceId,
+         final String spanId,
+         final String parentId,
+         final String name,
+         final Span previous) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.name = name;
+        this.previous = previous;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.thread = Thread.currentThread().getName();
+    }
+
+    /**
+     * gets the trace id
+     * @return trace id
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * gets the span id
+     * @return span id
+     */
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * gets the parent span id
+     * @return parent span id, null for a root span
+     */
+    public String getParentId() {
+        return parentId;
+    }
+
+    /**
+     * gets the name
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * gets the wall clock start
+     * @return start in milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * gets the duration
+     * @return duration in nanoseconds, -1 while open
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * gets the outcome
+     * @return status, null if not set
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * sets the outcome
+     * @param status status
+     */
+    public void setStatus(final String status) {
+        this.status = status;
+    }
+
+    /**
+     * gets the value sent in the trace header for requests made under
+     * this span
+     * @return trace id and span id
+     */
+    public String getHeader() {
+        return traceId + "-" + spanId;
+    }
+
+    /**
+     * gets the span current before this one was opened
+     * @return previous span, may be null
+     */
+    Span getPrevious() {
+        return previous;
+    }
+
+    /**
+     * closes the span, recording it. Closing twice has no effect.
+     */
+    @Override
+    public void close() {
+        if (durationNanos >= 0) {
+            return;
+        }
+
+        durationNanos = System.nanoTime() - startNanos;
+        Tracing.closed(this);
+    }
+
+    /**
+     * toString
+     * @return tab separated export line
+     */
+    @Override
+    public String toString() {
+        return traceId + "\t" + spanId + "\t" + parentId + "\t" + name
+                + "\t" + startMillis + "\t" + (durationNanos / NANOS_PER_MICRO)
+                + "\t" + thread + "\t" + status;
+    }
+}
@@ -0,0 +1,285 @@
+package frontpage.bind.trace;
+
+import frontpage.bind.GlobalProperties;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author willstuckey
+ * <p>Lightweight request tracing.</p>
+ *
+ * A trace starts at a user action and each hop below it, down to the
+ * api request and the server script, is timed as a span. The current
+ * span is kept per thread, so synchronous calls join the trace without
+ * passing it along; work handed to another thread is wrapped to carry
+ * it. Closed spans go to a ring buffer of the last trace-buffer spans
+ * (4096), which can be exported as tab separated lines, or written to
+ * trace-export on exit.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UtilityClass"})
+public final class Tracing {
+    /**
+     * class logger
+     */
+    private static final Logger LOGGER;
+
+    /**
+     * header carrying the trace and span id of a request
+     */
+    public static final String HEADER = "X-Trace-Id";
+
+    /**
+     * hex digits of an id
+     */
+    private static final int ID_DIGITS = 16;
+
+    /**
+     * default number of spans kept
+     */
+    private static final int DEFAULT_BUFFER = 4096;
+
+    /**
+     * largest number of spans kept
+     */
+    private static final int MAX_BUFFER = 1 << 20;
+
+    /**
+     * column names of the export
+     */
+    private static final String EXPORT_HEADER =
+            "trace\tspan\tparent\tname\tstart_ms\tduration_us\tthread\tstatus";
+
+    /**
+     * current span by thread
+     */
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    /**
+     * closed spans, indexed by sequence modulo capacity
+     */
+    private static final AtomicReferenceArray<Span> BUFFER;
+
+    /**
+     * index mask of the buffer
+     */
+    private static final int MASK;
+
+    /**
+     * spans recorded
+     */
+    private static final AtomicLong RECORDED = new AtomicLong();
+
+    static {
+        LOGGER = Logger.getLogger(Tracing.class.getName());
+        final int want = Math.min(MAX_BUFFER, Math.max(1,
+                GlobalProperties.getInt("trace-buffer", DEFAULT_BUFFER)));
+        final int capacity = Integer.highestOneBit(want - 1) << 1;
+        BUFFER = new AtomicReferenceArray<>(Math.max(1, capacity));
+        MASK = BUFFER.length() - 1;
+    }
+
+    /**
+     * starts a new trace, whatever is current
+     * @param name name of the action
+     * @return root span, now current
+     */
+    public static Span startTrace(final String name) {
+        return open(null, name);
+    }
+
+    /**
+     * opens a span under the current span, or starts a new trace if
+     * there is none
+     * @param name name of the hop
+     * @return span, now current
+     */
+    public static Span span(final String name) {
+        return open(CURRENT.get(), name);
+    }
+
+    /**
+     * opens a span under a given parent, for work continuing a trace
+     * on another thread
+     * @param parent parent span, null to start a new trace
+     * @param name name of the hop
+     * @return span, now current
+     */
+    public static Span span(final Span parent, final String name) {
+        return open(parent, name);
+    }
+
+    /**
+     * gets the current span of this thread
+     * @return span, null if none
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * wraps a task so it runs under the span current at the time of
+     * wrapping
+     * @param task task
+     * @param <T> result type
+     * @return wrapped task, the task itself if no span is current
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        final Span captured = CURRENT.get();
+        if (captured == null) {
+            return task;
+        }
+
+        return () -> {
+            final Span before = CURRENT.get();
+            CURRENT.set(captured);
+            try {
+                return task.call();
+            } finally {
+                restore(before);
+            }
+        };
+    }
+
+    /**
+     * gets the spans still held by the buffer, oldest first
+     * @return spans
+     */
+    public static List<Span> snapshot() {
+        final long end = RECORDED.get();
+        final long begin = Math.max(0, end - BUFFER.length());
+        final List<Span> ret = new ArrayList<>((int) (end - begin));
+        for (long i = begin; i < end; i++) {
+            final Span s = BUFFER.get((int) (i & MASK));
+            if (s != null) {
+                ret.add(s);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * writes the spans still held by the buffer to a file, one tab
+     * separated line per span after a header line
+     * @param file destination, replaced if present
+     * @return number of spans written
+     * @throws IOException if the file cannot be written
+     */
+    public static int export(final Path file) throws IOException {
+        final List<Span> spans = snapshot();
+        try (BufferedWriter out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            out.write(EXPORT_HEADER);
+            out.newLine();
+            for (final Span s : spans) {
+                out.write(s.toString());
+                out.newLine();
+            }
+        }
+        return spans.size();
+    }
+
+    /**
+     * exports the buffer to the file named by trace-export when the
+     * application exits. Does nothing if the property is not set.
+     */
+    public static void installExport() {
+        final String dest = GlobalProperties.getProperties()
+                .getProperty("trace-export");
+        if ((dest == null) || dest.isEmpty()) {
+            return;
+        }
+
+        final Path file = Paths.get(dest);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                export(file);
+            } catch (IOException e) {
+                // shutdown hooks run in no set order, so the log-flush
+                // hook of Logging may already have closed the appender
+                // and this is lost
+                LOGGER.error("could not export traces to " + file, e);
+            }
+        }, "trace-export"));
+    }
+
+    /**
+     * gets the number of spans recorded, including those since
+     * overwritten
+     * @return spans
+     */
+    public static long getRecorded() {
+        return RECORDED.get();
+    }
+
+    /**
+     * opens a span and makes it current
+     * @param parent parent span, null for a new trace
+     * @param name name
+     * @return span
+     */
+    private static Span open(final Span parent, final String name) {
+        final Span s;
+        if (parent == null) {
+            s = new Span(newId(), newId(), null, name, CURRENT.get());
+        } else {
+            s = new Span(parent.getTraceId(), newId(), parent.getSpanId(),
+                    name, CURRENT.get());
+        }
+        CURRENT.set(s);
+        return s;
+    }
+
+    /**
+     * records a closed span and restores the span current before it
+     * @param s span
+     */
+    static void closed(final Span s) {
+        BUFFER.set((int) (RECORDED.getAndIncrement() & MASK), s);
+        if (CURRENT.get() == s) {
+            restore(s.getPrevious());
+        }
+    }
+
+    /**
+     * makes a span current
+     * @param s span, null for none
+     */
+    private static void restore(final Span s) {
+        if (s == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(s);
+        }
+    }
+
+    /**
+     * creates a random id
+     * @return 16 hex digits
+     */
+    private static String newId() {
+        final String hex = Long.toHexString(
+                ThreadLocalRandom.current().nextLong());
+        final StringBuilder sb = new StringBuilder(ID_DIGITS);
+        for (int i = hex.length(); i < ID_DIGITS; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+
+    /**
+     * utility constructor
+     */
+    private Tracing() { }
+}
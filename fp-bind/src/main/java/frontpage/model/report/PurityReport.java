@@ -1,6 +1,8 @@
 package frontpage.model.report;
 
 import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.jfr.FlightEvents;
+import frontpage.bind.jfr.ModelHydrationEvent;
 import frontpage.bind.report.PurityReportManager;
 import frontpage.model.user.User;
 import javafx.beans.property.SimpleStringProperty;
@@ -47,7 +49,8 @@ public class PurityReport {
     }
 
     /**
-     * creates an empty report on the backend
+     * creates an empty report on the backend, populated with the values
+     * the backend assigned to it
      * @param rm report manager
      * @param auth user for auth
      * @return new report
@@ -57,8 +60,9 @@ public class PurityReport {
                                             final User auth)
             throws BackendRequestException {
         final PurityReport ret = new PurityReport();
-        ret.id = rm.addPurityReport(auth.getEmail(), auth.getTok());
         ret.submitter = auth.getUsername();
+        ret.loadFromMap(rm.createPurityReport(auth.getEmail(),
+                auth.getTok()));
         return ret;
     }
 
@@ -78,8 +82,18 @@ public class PurityReport {
      * @param map data map
      */
     private void loadFromMap(final Map<String, String> map) {
+        ModelHydrationEvent event = null;
+        if (FlightEvents.ENABLED) {
+            event = new ModelHydrationEvent();
+            event.begin();
+        }
+
         id = map.get("reportid");
-        sourceRptId = map.get("sourcerptid");
+        // report managers name the bound source report sourceid
+        sourceRptId = map.get("sourceid");
+        if ((sourceRptId == null) || sourceRptId.isEmpty()) {
+            sourceRptId = map.get("sourcerptid");
+        }
         String dt = map.get("reportdt");
         if ((dt != null) && (!dt.isEmpty())) {
             datetime = LocalDateTime.parse(dt.replace(' ', 'T'));
@@ -98,6 +112,16 @@ public class PurityReport {
 
         virusPPM = map.get("virusppm");
         contaminantPPM = map.get("contaminantppm");
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.setModel("PurityReport");
+                event.setReportId(map.get("reportid"));
+                event.setProperties(map.size());
+                event.commit();
+            }
+        }
     }
 
     /**
@@ -1,6 +1,8 @@
 package frontpage.model.report;
 
 import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.jfr.FlightEvents;
+import frontpage.bind.jfr.ModelHydrationEvent;
 import frontpage.bind.report.SourceReportManager;
 import frontpage.model.user.User;
 import javafx.beans.property.SimpleStringProperty;
@@ -48,7 +50,8 @@ public class SourceReport {
     }
 
     /**
-     * creates an empty source report on the backend
+     * creates an empty source report on the backend, populated with
+     * the values the backend assigned to it
      * @param rm report manager
      * @param auth user for authentication
      * @return new report
@@ -58,8 +61,9 @@ public class SourceReport {
                                             final User auth)
             throws BackendRequestException {
         final SourceReport ret = new SourceReport();
-        ret.reportid = rm.addSourceReport(auth.getEmail(), auth.getTok());
         ret.username.setValue(auth.getUsername());
+        ret.loadFromMap(rm.createSourceReport(auth.getEmail(),
+                auth.getTok()));
         return ret;
     }
 
@@ -80,6 +84,12 @@ public class SourceReport {
      * @param map map of properties
      */
     private void loadFromMap(final Map<String, String> map) {
+        ModelHydrationEvent event = null;
+        if (FlightEvents.ENABLED) {
+            event = new ModelHydrationEvent();
+            event.begin();
+        }
+
         reportid = map.get("reportid");
         title = map.get("name");
         String dt = map.get("reportdt");
@@ -109,6 +119,16 @@ public class SourceReport {
                         + cond, e);
             }
         }
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.setModel("SourceReport");
+                event.setReportId(map.get("reportid"));
+                event.setProperties(map.size());
+                event.commit();
+            }
+        }
     }
 
     /**
@@ -1,8 +1,16 @@
 package frontpage;
 
+import frontpage.backend.EmbeddedBackend;
 import frontpage.backend.LocalBackend;
 import frontpage.backend.RemoteBackend;
+import frontpage.backend.rest.ConnectionWarmer;
 import frontpage.bind.Backend;
+import frontpage.bind.CancellationToken;
+import frontpage.bind.Logging;
+import frontpage.bind.jfr.FlightEvents;
+import frontpage.bind.jfr.ViewSwitchEvent;
+import frontpage.bind.trace.Span;
+import frontpage.bind.trace.Tracing;
 import frontpage.controller.CreatePurityReportController;
 import frontpage.controller.CreateSourceReportController;
 import frontpage.controller.LoginScreenController;
@@ -21,10 +29,6 @@ import frontpage.utils.SceneControllerEntry;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
-import org.apache.log4j.ConsoleAppender;
-import org.apache.log4j.Level;
-import org.apache.log4j.Logger;
-import org.apache.log4j.PatternLayout;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -78,21 +82,33 @@ public class FXMain extends Application {
      */
     private static User user;
 
+    /**
+     * cancellation token of the view shown
+     */
+    private static CancellationToken viewToken = CancellationToken.NONE;
+
+    /**
+     * cancellation token of the connection warm-up
+     */
+    private static CancellationToken warmup = CancellationToken.NONE;
+
     /**
      * program entry point
      * @param args arguments
      */
     public static void main(final String[] args) {
-        ConsoleAppender console = new ConsoleAppender();
-        console.setLayout(new PatternLayout(LOG_FORMAT));
-        console.setThreshold(Level.ALL);
-        console.activateOptions();
-        Logger.getRootLogger().addAppender(console);
+        Logging.installConsole(LOG_FORMAT);
+        Tracing.installExport();
 
         if (Arrays.asList(args).contains("--force-local")) {
             backend = new LocalBackend();
+        } else if (Arrays.asList(args).contains("--embedded")) {
+            backend = new EmbeddedBackend();
         } else {
             backend = new RemoteBackend();
+            // overlaps DNS, connect and the TLS handshake with loading
+            // the scenes, so the first request does not pay for them
+            warmup = ConnectionWarmer.start();
 
             try {
                 final String jreVersion = System.getProperty("java.version");
@@ -268,7 +284,16 @@ public class FXMain extends Application {
     }
 
     /**
-     * sets the main scene
+     * FX exit point
+     */
+    @Override
+    public final void stop() {
+        warmup.cancel();
+    }
+
+    /**
+     * sets the main scene. Once the new view is shown the cancellation
+     * token of the previous one is cancelled, aborting its requests.
      * @param view string key for the scene
      * @return update success
      */
@@ -278,21 +303,80 @@ public class FXMain extends Application {
             return false;
         }
 
+        ViewSwitchEvent event = null;
+        if (FlightEvents.ENABLED) {
+            event = new ViewSwitchEvent();
+            event.begin();
+        }
+
         Scene s = VIEW_SCENE_MAP.get(view.toLowerCase()).getScene();
         if (s == null) {
+            commit(event, view, 0, false);
             return false;
         }
 
+        // work started by the update, or later from the view, runs
+        // under a token that is cancelled once the view is left
+        final CancellationToken next = new CancellationToken("view " + view);
+        final CancellationToken previous = CancellationToken.bind(next);
         Object con = VIEW_SCENE_MAP.get(view.toLowerCase()).getController();
+        long updateNanos = 0;
         if (con instanceof Updatable) {
-             if (!((Updatable) con).update()) {
+             final long start = System.nanoTime();
+             final boolean updated;
+             try (Span span = Tracing.span("update " + view)) {
+                 updated = ((Updatable) con).update();
+                 span.setStatus(Boolean.toString(updated));
+             }
+             updateNanos = System.nanoTime() - start;
+             if (!updated) {
+                 next.cancel();
+                 CancellationToken.bind(previous);
+                 commit(event, view, updateNanos, false);
                  return false;
              }
         }
+        viewToken.cancel();
+        viewToken = next;
         stage.setScene(s);
+        commit(event, view, updateNanos, true);
         return true;
     }
 
+    /**
+     * gets the cancellation token of the view shown. Results delivered
+     * after the token is cancelled belong to a hidden view and should be
+     * dropped.
+     * @return token
+     */
+    public static CancellationToken getViewToken() {
+        return viewToken;
+    }
+
+    /**
+     * ends and commits a view switch event
+     * @param event event, null if events are disabled
+     * @param view string key for the scene
+     * @param updateNanos time spent updating the controller
+     * @param shown if the view was shown
+     */
+    private static void commit(final ViewSwitchEvent event,
+                               final String view,
+                               final long updateNanos,
+                               final boolean shown) {
+        if (event == null) {
+            return;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.setView(view);
+            event.setUpdateDuration(updateNanos);
+            event.setShown(shown);
+            event.commit();
+        }
+    }
+
     /**
      * gets the controller of a scene
      * @param view string key for scene
@@ -118,7 +118,6 @@ public final class CreatePurityReportController implements Updatable {
         activeReport = null;
         try {
             activeReport = PurityReport.createReport(pm, FXMain.getUser());
-            activeReport.populateFromBackend(pm);
         } catch (BackendRequestException e) {
             DialogueUtils.showMessage("could not create report template");
             if (activeReport != null) {
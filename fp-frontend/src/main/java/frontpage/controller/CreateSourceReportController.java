@@ -136,7 +136,6 @@ public final class CreateSourceReportController implements Updatable {
         activeReport = null;
         try {
             activeReport = SourceReport.createReport(rm, FXMain.getUser());
-            activeReport.populateFromBackend(rm);
         } catch (BackendRequestException e) {
             DialogueUtils.showMessage("could not create report template");
             if (activeReport != null) {
@@ -3,6 +3,8 @@ package frontpage.controller;
 import frontpage.FXMain;
 import frontpage.bind.errorhandling.BackendRequestException;
 import frontpage.bind.errorhandling.AuthenticationException;
+import frontpage.bind.trace.Span;
+import frontpage.bind.trace.Tracing;
 import frontpage.bind.user.UserManager;
 import frontpage.model.user.User;
 import frontpage.model.user.UserClass;
@@ -89,7 +91,7 @@ public final class LoginScreenController {
     private void handleLoginAction() {
         LOGGER.trace("Invoke -> LogInBtn::handleLoginAction()");
         UserManager ua = FXMain.getBackend().getUserManager();
-        try {
+        try (Span span = Tracing.startTrace("login")) {
             String sessionTok = ua.authenticateUser(unField.getText(),
                     pwdField.getText());
             User u = new User(unField.getText(), sessionTok);
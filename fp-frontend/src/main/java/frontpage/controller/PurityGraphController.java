@@ -3,6 +3,7 @@ package frontpage.controller;
 import frontpage.FXMain;
 import frontpage.bind.errorhandling.BackendRequestException;
 import frontpage.bind.report.PurityReportManager;
+import frontpage.bind.report.ReportQuery;
 import frontpage.model.report.PurityReport;
 import frontpage.utils.DialogueUtils;
 import javafx.collections.FXCollections;
@@ -16,7 +17,6 @@ import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
 import org.apache.log4j.Logger;
 
-import java.util.ArrayList;
 import java.util.Map;
 
 /**
@@ -103,48 +103,22 @@ public final class PurityGraphController implements Updatable {
     public boolean update() {
         lineChart.getData().clear();
         reports.clear();
-
-        PurityReportManager rm = FXMain.getBackend().getPurityReportManager();
-        try {
-            Map<String, String>[] reportsData = rm.getPurityReports(0);
-            for (Map<String, String> reportData : reportsData) {
-                if (reportData.containsKey("index")) {
-                    reports.add(new PurityReport(reportData));
-                }
-            }
-
-            return true;
-        } catch (BackendRequestException e) {
-            DialogueUtils.showMessage("purity graph bre");
-        } catch (Exception e) {
-            DialogueUtils.showMessage("purity graph exception (type: "
-                    + e.getClass()
-                    + ", message: " + e.getMessage()
-                    + ", cause: " + e.getCause());
-        }
-
-        return false;
+        return true;
     }
 
     @FXML
-    @SuppressWarnings({"unchecked", "CollectionDeclaredAsConcreteClass"})
+    @SuppressWarnings("unchecked")
     private void handleDisplayAction() {
         // update()
 
         lineChart.getData().clear();
+        reports.clear();
 
         // get params
 
         final String searchStr = searchField.getText();
         final String searchYear = yearField.getText();
 
-        // format search params
-
-        final String[] searchParams = searchStr.split(",");
-        for (int i = 0; i < searchParams.length; i++) {
-            searchParams[i] = searchParams[i].trim().toLowerCase();
-        }
-
         // get year
 
         final int year;
@@ -159,32 +133,36 @@ public final class PurityGraphController implements Updatable {
             return;
         }
 
-        // add matching reports to display list
+        // fetch reports at every search term in the year
 
-        final ArrayList<PurityReport> reportsToDisplay = new ArrayList<>();
-        for (final PurityReport pr : reports) {
-            boolean containsAll = true;
-            for (final String sp : searchParams) {
-                if (!(pr.getLocation().toLowerCase().contains(sp)
-                        && (pr.getDatetime().getYear() == year))) {
-                    containsAll = false;
-                    break;
-                }
-            }
-
-            if (containsAll) {
-                reportsToDisplay.add(pr);
+        final ReportQuery query = new ReportQuery(ReportQuery.PURITY)
+                .contains("location", searchStr.split(","))
+                .range("reportdt", year + "-01-01", (year + 1) + "-01-01");
+        PurityReportManager rm = FXMain.getBackend().getPurityReportManager();
+        try {
+            for (final Map<String, String> reportData : rm.getPurityReports(
+                    query.getProperties(), query.getSearchConstraints())) {
+                reports.add(new PurityReport(reportData));
             }
+        } catch (BackendRequestException e) {
+            DialogueUtils.showMessage("purity graph bre");
+            return;
+        } catch (Exception e) {
+            DialogueUtils.showMessage("purity graph exception (type: "
+                    + e.getClass()
+                    + ", message: " + e.getMessage()
+                    + ", cause: " + e.getCause());
+            return;
         }
 
-        // add display list to graph
+        // add reports to graph
 
         XYChart.Series<String, Integer> virusPPM = new XYChart.Series<>();
         virusPPM.setName("Virus PPM");
         XYChart.Series<String, Integer> contaminantPPM =
                 new XYChart.Series<>();
         contaminantPPM.setName("Contaminant PPM");
-        for (final PurityReport pr : reportsToDisplay) {
+        for (final PurityReport pr : reports) {
             virusPPM.getData().add(
                     new XYChart.Data<>(pr.getNormalizedDatetime(),
                             Integer.parseInt(pr.getVirusPPM())));
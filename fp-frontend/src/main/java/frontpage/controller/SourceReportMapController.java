@@ -18,19 +18,21 @@ import javafx.scene.Parent;
 import netscape.javascript.JSObject;
 import org.apache.log4j.Logger;
 
-import java.util.Map;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author willstuckey
  * <p>Controller for Source Report View</p>
  */
 @SuppressWarnings({"unused", "FeatureEnvy", "TypeMayBeWeakened",
-        "UseOfObsoleteCollectionType", "UseOfSystemOutOrSystemErr",
+        "UseOfSystemOutOrSystemErr",
         "ChainedMethodCall", "LawOfDemeter", "CyclicClassDependency",
         "OverlyLongMethod"})
 public final class SourceReportMapController
         implements SourceReportMapControllerInterface, Updatable {
+    private static final int PAGE_SIZE = 100;
+
     private static final Logger LOGGER;
     private static Parent root;
     private static SourceReportMapController sourceReportMapController;
@@ -69,6 +71,12 @@ public final class SourceReportMapController
     @SuppressWarnings("FieldCanBeLocal")
     private GoogleMapView view;
     private GoogleMap map;
+    private final List<Marker> markers = new ArrayList<>();
+
+    /**
+     * cursor of the next page of the listing, null after the last page
+     */
+    private String cursor;
 
     /**
      * return button callback
@@ -92,60 +100,38 @@ public final class SourceReportMapController
     }
 
     /**
-     * update before view switch action
+     * handles the button for more reports
+     */
+    @Override
+    public void handleMoreAction() {
+        loadPage();
+    }
+
+    /**
+     * update before view switch action. Only the first page of the
+     * listing is placed on the map, later pages are read on demand.
      * @return success
      */
     @Override
     public boolean update() {
-        return loadReports();
+        for (Marker marker : markers) {
+            map.removeMarker(marker);
+        }
+        markers.clear();
+        cursor = null;
+        return loadPage();
     }
 
-    @SuppressWarnings("CollectionDeclaredAsConcreteClass")
-    private boolean loadReports() {
-        Vector<SourceReport> reports = new Vector<>();
+    /**
+     * reads the next page of the listing onto the map
+     * @return success
+     */
+    private boolean loadPage() {
         SourceReportManager rm = FXMain.getBackend().getSourceReportManager();
         try {
-            Map<String, String>[] reportsData = rm.getSourceReports(0);
-            for (Map<String, String> reportData : reportsData) {
-                if (reportData.containsKey("index")) {
-                    reports.add(new SourceReport(reportData));
-                }
-            }
-
-            for (SourceReport r: reports) {
-                String location = r.getLoc();
-                String[] coords = location.split(",");
-                if (coords.length == 2) {
-                    try {
-                        double lat = Double.parseDouble(coords[0]);
-                        double lng = Double.parseDouble(coords[1]);
-                        System.out.println("found valid location: "
-                                + lat + ","
-                                + lng);
-                        MarkerOptions markerOptions = new MarkerOptions();
-                        LatLong loc = new LatLong(lat, lng);
-                        markerOptions.position(loc)
-                                .visible(Boolean.TRUE)
-                                .title(r.getTitle());
-                        Marker marker = new Marker(markerOptions);
-                        map.addUIEventHandler(marker,
-                                UIEventType.click,
-                                (JSObject obj) -> {
-                                    InfoWindowOptions infoWindowOptions
-                                            = new InfoWindowOptions();
-                                    infoWindowOptions
-                                            .content(r.getDescription());
-                                    InfoWindow window =
-                                            new InfoWindow(infoWindowOptions);
-                                    window.open(map, marker);
-                                });
-                        map.addMarker(marker);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        System.out.println(e.getClass());
-                    }
-                }
-            }
+            cursor = rm.getSourceReportPage(PAGE_SIZE, cursor,
+                    reportData -> addMarker(new SourceReport(reportData)));
+            SourceReportMap.instance().setMoreEnabled(cursor != null);
         } catch (BackendRequestException e) {
             DialogueUtils.showMessage("view report map bre");
             return false;
@@ -159,4 +145,44 @@ public final class SourceReportMapController
 
         return true;
     }
+
+    /**
+     * places a marker for a report on the map, if it has a valid location
+     * @param r report
+     */
+    private void addMarker(final SourceReport r) {
+        String location = r.getLoc();
+        String[] coords = location.split(",");
+        if (coords.length == 2) {
+            try {
+                double lat = Double.parseDouble(coords[0]);
+                double lng = Double.parseDouble(coords[1]);
+                System.out.println("found valid location: "
+                        + lat + ","
+                        + lng);
+                MarkerOptions markerOptions = new MarkerOptions();
+                LatLong loc = new LatLong(lat, lng);
+                markerOptions.position(loc)
+                        .visible(Boolean.TRUE)
+                        .title(r.getTitle());
+                Marker marker = new Marker(markerOptions);
+                map.addUIEventHandler(marker,
+                        UIEventType.click,
+                        (JSObject obj) -> {
+                            InfoWindowOptions infoWindowOptions
+                                    = new InfoWindowOptions();
+                            infoWindowOptions
+                                    .content(r.getDescription());
+                            InfoWindow window =
+                                    new InfoWindow(infoWindowOptions);
+                            window.open(map, marker);
+                        });
+                map.addMarker(marker);
+                markers.add(marker);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.out.println(e.getClass());
+            }
+        }
+    }
 }
@@ -13,6 +13,11 @@ public interface SourceReportMapControllerInterface {
      */
     void handleReturnAction();
 
+    /**
+     * handles when the button for more reports is clicked
+     */
+    void handleMoreAction();
+
     /**
      * callback for when the map needs to be populates
      * @param view map view
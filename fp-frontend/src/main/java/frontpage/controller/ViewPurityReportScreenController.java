@@ -14,7 +14,6 @@ import javafx.scene.control.Button;
 import javafx.scene.control.TableView;
 import org.apache.log4j.Logger;
 import javafx.scene.control.TableColumn;
-import java.util.Map;
 
 
 /**
@@ -27,6 +26,8 @@ public final class ViewPurityReportScreenController implements Updatable {
     private static final String VIEW_URI =
             "/frontpage/view/ViewWaterPurityReports.fxml";
 
+    private static final int PAGE_SIZE = 100;
+
     private static final Logger LOGGER;
     private static Parent root;
     private static ViewPurityReportScreenController viewReportsController;
@@ -79,6 +80,12 @@ public final class ViewPurityReportScreenController implements Updatable {
     @FXML private TableColumn<PurityReport, String> virusPPMCol;
     @FXML private TableColumn<PurityReport, String> contaminantPPMCol;
     @FXML private Button viewReportsReturnBtn;
+    @FXML private Button viewReportsMoreBtn;
+
+    /**
+     * cursor of the next page of the listing, null after the last page
+     */
+    private String cursor;
 
     private ViewPurityReportScreenController() {
 
@@ -106,21 +113,28 @@ public final class ViewPurityReportScreenController implements Updatable {
     }
 
     /**
-     * update call after view switch
+     * update call after view switch. Only the first page of the listing is
+     * read, later pages are read on demand.
      * @return success
      */
     @Override
     public boolean update() {
+        reports.clear();
+        cursor = null;
+        viewReportsTable.setItems(reports);
+        return loadPage();
+    }
+
+    /**
+     * reads the next page of the listing into the table
+     * @return success
+     */
+    private boolean loadPage() {
         PurityReportManager rm = FXMain.getBackend().getPurityReportManager();
         try {
-            Map<String, String>[] reportsData = rm.getPurityReports(0);
-            for (Map<String, String> reportData : reportsData) {
-                if (reportData.containsKey("index")) {
-                    reports.add(new PurityReport(reportData));
-                }
-            }
-
-            viewReportsTable.setItems(reports);
+            cursor = rm.getPurityReportPage(PAGE_SIZE, cursor,
+                    reportData -> reports.add(new PurityReport(reportData)));
+            viewReportsMoreBtn.setDisable(cursor == null);
             return true;
         } catch (BackendRequestException e) {
             DialogueUtils.showMessage("view report bre");
@@ -134,6 +148,11 @@ public final class ViewPurityReportScreenController implements Updatable {
         return false;
     }
 
+    @FXML
+    private void handleMoreAction() {
+        loadPage();
+    }
+
     @FXML
     private void handleReturnAction() {
         reports.clear();
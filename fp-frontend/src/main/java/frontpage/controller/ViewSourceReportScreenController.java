@@ -15,7 +15,6 @@ import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import org.apache.log4j.Logger;
 
-import java.util.Map;
 
 
 /**
@@ -28,6 +27,8 @@ public final class ViewSourceReportScreenController implements Updatable {
     private static final String VIEW_URI =
             "/frontpage/view/ViewWaterSourceReports.fxml";
 
+    private static final int PAGE_SIZE = 100;
+
     private static final Logger LOGGER;
     private static Parent root;
     private static ViewSourceReportScreenController viewReportsController;
@@ -80,6 +81,12 @@ public final class ViewSourceReportScreenController implements Updatable {
     @FXML private TableColumn<SourceReport, String> waterSourceTypeCol;
     @FXML private TableColumn<SourceReport, String> waterConditionCol;
     @FXML private Button viewReportsReturnBtn;
+    @FXML private Button viewReportsMoreBtn;
+
+    /**
+     * cursor of the next page of the listing, null after the last page
+     */
+    private String cursor;
 
     private ViewSourceReportScreenController() {
 
@@ -105,21 +112,28 @@ public final class ViewSourceReportScreenController implements Updatable {
     }
 
     /**
-     * update call from view switch
+     * update call from view switch. Only the first page of the listing is
+     * read, later pages are read on demand.
      * @return success
      */
     @Override
     public boolean update() {
+        reports.clear();
+        cursor = null;
+        viewReportsTable.setItems(reports);
+        return loadPage();
+    }
+
+    /**
+     * reads the next page of the listing into the table
+     * @return success
+     */
+    private boolean loadPage() {
         SourceReportManager rm = FXMain.getBackend().getSourceReportManager();
         try {
-            Map<String, String>[] reportsData = rm.getSourceReports(0);
-            for (Map<String, String> reportData : reportsData) {
-                if (reportData.containsKey("index")) {
-                    reports.add(new SourceReport(reportData));
-                }
-            }
-
-            viewReportsTable.setItems(reports);
+            cursor = rm.getSourceReportPage(PAGE_SIZE, cursor,
+                    reportData -> reports.add(new SourceReport(reportData)));
+            viewReportsMoreBtn.setDisable(cursor == null);
             return true;
         } catch (BackendRequestException e) {
             DialogueUtils.showMessage("view report bre");
@@ -133,6 +147,11 @@ public final class ViewSourceReportScreenController implements Updatable {
         return false;
     }
 
+    @FXML
+    private void handleMoreAction() {
+        loadPage();
+    }
+
     @FXML
     private void handleReturnAction() {
         reports.clear();
@@ -45,6 +45,7 @@ public class SourceReportMap implements MapComponentInitializedListener {
     @SuppressWarnings("FieldCanBeLocal")
     private GoogleMap map;
     private SourceReportMapControllerInterface cb;
+    private Button more;
 
     /**
      * creates an instance of source report map view
@@ -73,7 +74,10 @@ public class SourceReportMap implements MapComponentInitializedListener {
                 Button ret = new Button("return");
                 ret.setStyle("-fx-spacing: 10");
                 ret.setOnAction(event -> cb.handleReturnAction());
-                buttonContainer.getChildren().add(ret);
+                more = new Button("more reports");
+                more.setStyle("-fx-spacing: 10");
+                more.setOnAction(event -> cb.handleMoreAction());
+                buttonContainer.getChildren().addAll(ret, more);
             }
             troot.getChildren().addAll(mapView, buttonContainer);
         }
@@ -89,6 +93,14 @@ public class SourceReportMap implements MapComponentInitializedListener {
         return root;
     }
 
+    /**
+     * enables or disables the button for more reports
+     * @param enabled if more reports can be read
+     */
+    public void setMoreEnabled(final boolean enabled) {
+        more.setDisable(!enabled);
+    }
+
     /**
      * map initialized callback
      */
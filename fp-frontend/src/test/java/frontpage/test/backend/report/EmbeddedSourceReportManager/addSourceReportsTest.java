@@ -0,0 +1,237 @@
+package frontpage.test.backend.report.EmbeddedSourceReportManager;
+
+
+import frontpage.backend.report.EmbeddedSourceReportManager;
+import frontpage.backend.store.EmbeddedDatabase;
+import frontpage.backend.user.EmbeddedUserManager;
+import frontpage.bind.errorhandling.AuthenticationException;
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.report.ReportQuery;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * @author willstuckey
+ * <p>Tests the source report manager on an in-memory embedded
+ * database.</p>
+ */
+public class addSourceReportsTest {
+    /**
+     * email of the test user
+     */
+    private static final String EMAIL = "embedded@test.com";
+
+    /**
+     * password of the test user
+     */
+    private static final String PW = "pass";
+
+    /**
+     * database
+     */
+    private EmbeddedDatabase db;
+
+    /**
+     * token of the test user
+     */
+    private String tok;
+
+    /**
+     * manager under test
+     */
+    private EmbeddedSourceReportManager rm;
+
+    /**
+     * creates a database, a user to submit reports and a manager
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        db = new EmbeddedDatabase("jdbc:h2:mem:" + UUID.randomUUID(), 2, 8,
+                10);
+        EmbeddedUserManager um = new EmbeddedUserManager(db);
+        um.createUser("embedded", PW, EMAIL, "Embedded", "Test", "USER");
+        tok = um.authenticateUser(EMAIL, PW);
+        rm = new EmbeddedSourceReportManager(db);
+    }
+
+    /**
+     * closes the database
+     */
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    /**
+     * tests the password is checked and the token is required
+     * @throws Exception
+     */
+    @Test
+    public void testAuthentication() throws Exception {
+        EmbeddedUserManager um = new EmbeddedUserManager(db);
+        Assert.assertEquals(tok, um.authenticateUser("EMBEDDED@test.com",
+                PW));
+        Assert.assertEquals("USER", um.getUserType(EMAIL, tok));
+        try {
+            um.authenticateUser(EMAIL, "wrong");
+            Assert.fail("wrong password accepted");
+        } catch (AuthenticationException e) {
+            // expected
+        }
+        try {
+            rm.addSourceReport(EMAIL, PW + "x");
+            Assert.fail("wrong token accepted");
+        } catch (BackendRequestException e) {
+            // expected
+        }
+    }
+
+    /**
+     * tests a report is added, updated, found and deleted
+     * @throws Exception
+     */
+    @Test
+    public void testLifecycle() throws Exception {
+        String id = rm.addSourceReport(EMAIL, tok);
+        Map<String, String> props = new HashMap<>();
+        props.put("type", "LAKE");
+        props.put("cond", "POTABLE");
+        props.put("reportid", "changed");
+        Assert.assertTrue(rm.updateSourceReport(EMAIL, tok, id, props));
+
+        props.clear();
+        props.put("type", "");
+        props.put("name", "pond");
+        rm.updateSourceReport(EMAIL, tok, id, props);
+
+        Map<String, String> report = rm.getSourceReport(id);
+        Assert.assertEquals(id, report.get("reportid"));
+        Assert.assertEquals("embedded", report.get("username"));
+        Assert.assertEquals(EMAIL, report.get("id"));
+        Assert.assertEquals("LAKE", report.get("type"));
+        Assert.assertEquals("pond", report.get("name"));
+        Assert.assertEquals("", report.get("description"));
+
+        Map<String, String> query = new HashMap<>();
+        query.put("type", "LAKE");
+        query.put("username", "embedded");
+        Assert.assertEquals(1, rm.getSourceReports(query, null).length);
+        query.put("cond", "WASTE");
+        Assert.assertEquals(0, rm.getSourceReports(query, null).length);
+
+        rm.deleteSourceReport(EMAIL, tok, id);
+        Assert.assertEquals(0, rm.getSourceReports(0).length);
+    }
+
+    /**
+     * tests reports added in batches are listed oldest first and the
+     * most recent are taken from the end
+     * @throws Exception
+     */
+    @Test
+    public void testBatchedInsert() throws Exception {
+        final int count = 25;
+        List<Map<String, String>> reports = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, String> report = new HashMap<>();
+            report.put("name", "report-" + i);
+            report.put("type", "WELL");
+            reports.add(report);
+        }
+        Assert.assertEquals(count, rm.addSourceReports(EMAIL, tok, reports));
+
+        Map<String, String>[] all = rm.getSourceReports(0);
+        Assert.assertEquals(count, all.length);
+        Assert.assertEquals("report-0", all[0].get("name"));
+        Assert.assertEquals(EMAIL, all[0].get("id"));
+
+        Map<String, String>[] last = rm.getSourceReports(2);
+        Assert.assertEquals(2, last.length);
+        Assert.assertEquals("report-" + (count - 2), last[0].get("name"));
+        Assert.assertEquals("report-" + (count - 1), last[1].get("name"));
+    }
+
+    /**
+     * tests pages of the listing cover every report once, in insertion
+     * order, and the last page returns no cursor
+     * @throws Exception
+     */
+    @Test
+    public void testPaging() throws Exception {
+        final int count = 10;
+        final int pageSize = 4;
+        List<Map<String, String>> reports = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, String> report = new HashMap<>();
+            report.put("name", "report-" + i);
+            reports.add(report);
+        }
+        rm.addSourceReports(EMAIL, tok, reports);
+
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            cursor = rm.getSourceReportPage(pageSize, cursor,
+                    m -> names.add(m.get("name")));
+            pages++;
+        } while (cursor != null);
+        Assert.assertEquals(count, names.size());
+        Assert.assertEquals("report-0", names.get(0));
+        Assert.assertEquals("report-" + (count - 1), names.get(count - 1));
+        Assert.assertEquals((count + pageSize - 1) / pageSize, pages);
+    }
+
+    /**
+     * tests queries are filtered by the database, with wildcards in
+     * terms matched literally
+     * @throws Exception
+     */
+    @Test
+    public void testQuery() throws Exception {
+        final String[][] values = {
+            {"100% Spring", "2016-02-01T09:00"},
+            {"100 Springs", "2016-03-01T09:00"},
+            {"spring_creek", "2015-03-01T09:00"},
+            {"springXcreek", "2016-03-01T09:00"},
+        };
+        List<Map<String, String>> reports = new ArrayList<>();
+        for (String[] v : values) {
+            Map<String, String> report = new HashMap<>();
+            report.put("name", v[0]);
+            report.put("reportdt", v[1]);
+            reports.add(report);
+        }
+        rm.addSourceReports(EMAIL, tok, reports);
+
+        ReportQuery query = new ReportQuery(ReportQuery.SOURCE)
+                .contains("name", "0% s");
+        Map<String, String>[] found = rm.getSourceReports(
+                query.getProperties(), query.getSearchConstraints());
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals(values[0][0], found[0].get("name"));
+
+        query = new ReportQuery(ReportQuery.SOURCE)
+                .contains("name", "SPRING_")
+                .range("reportdt", "2015-01-01", "2016-01-01")
+                .equal("username", "embedded");
+        found = rm.getSourceReports(query.getProperties(),
+                query.getSearchConstraints());
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals(values[2][0], found[0].get("name"));
+
+        query = new ReportQuery(ReportQuery.SOURCE)
+                .range("reportdt", "2016-03-01", null);
+        Assert.assertEquals(2, rm.getSourceReports(query.getProperties(),
+                query.getSearchConstraints()).length);
+    }
+}
@@ -0,0 +1,288 @@
+package frontpage.test.backend.report.LocalSourceReportManager;
+
+
+import frontpage.backend.report.LocalSourceReportManager;
+import frontpage.backend.user.LocalUserManager;
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.report.ReportQuery;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author willstuckey
+ * <p>Tests the in-memory source report manager and its indexes.</p>
+ */
+public class getSourceReportsTest {
+    /**
+     * email of the test user
+     */
+    private static final String EMAIL = "local@test.com";
+
+    /**
+     * token of the test user
+     */
+    private static final String TOK = "pass";
+
+    /**
+     * manager under test
+     */
+    private LocalSourceReportManager rm;
+
+    /**
+     * creates a manager and a user to submit reports
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        LocalUserManager lum = new LocalUserManager();
+        lum.createUser("local", TOK, EMAIL, "Local", "Test", "USER");
+        LocalSourceReportManager.setLum(lum);
+        rm = new LocalSourceReportManager();
+    }
+
+    /**
+     * adds a report with a type and condition
+     * @param type water type
+     * @param cond water condition
+     * @return report id
+     * @throws BackendRequestException
+     */
+    private String add(final String type, final String cond)
+            throws BackendRequestException {
+        String id = rm.addSourceReport(EMAIL, TOK);
+        Map<String, String> props = new HashMap<>();
+        props.put("type", type);
+        props.put("cond", cond);
+        Assert.assertTrue(rm.updateSourceReport(EMAIL, TOK, id, props));
+        return id;
+    }
+
+    /**
+     * tests reports are created, updated, listed and deleted
+     * @throws Exception
+     */
+    @Test
+    public void testLifecycle() throws Exception {
+        Map<String, String> created = rm.createSourceReport(EMAIL, TOK);
+        String id = created.get("reportid");
+        Assert.assertEquals("local", created.get("username"));
+        Assert.assertEquals("", created.get("type"));
+
+        Map<String, String> props = new HashMap<>();
+        props.put("type", "WELL");
+        props.put("name", "");
+        Assert.assertTrue(rm.updateSourceReport(EMAIL, TOK, id, props));
+        Assert.assertEquals("WELL", rm.getSourceReport(id).get("type"));
+
+        add("LAKE", "SAFE");
+        add("STREAM", "SAFE");
+        Assert.assertEquals(3, rm.getSourceReports(0).length);
+        Map<String, String>[] recent = rm.getSourceReports(2);
+        Assert.assertEquals(2, recent.length);
+        Assert.assertEquals("LAKE", recent[0].get("type"));
+        Assert.assertEquals("STREAM", recent[1].get("type"));
+
+        rm.deleteSourceReport(EMAIL, TOK, id);
+        Assert.assertEquals(2, rm.getSourceReports(0).length);
+        try {
+            rm.getSourceReport(id);
+            Assert.fail("deleted report was found");
+        } catch (BackendRequestException e) {
+            Assert.assertTrue(e.getMessage().contains(id));
+        }
+    }
+
+    /**
+     * tests writes need valid credentials
+     */
+    @Test
+    public void testRejectsBadCredentials() {
+        try {
+            rm.addSourceReport(EMAIL, "wrong");
+            Assert.fail("report added without credentials");
+        } catch (BackendRequestException e) {
+            Assert.assertEquals(0, rm.getSourceReports(0).length);
+        }
+    }
+
+    /**
+     * tests searches follow updates of indexed properties
+     * @throws Exception
+     */
+    @Test
+    public void testIndexedSearch() throws Exception {
+        String a = add("LAKE", "SAFE");
+        add("LAKE", "TREATABLE");
+        add("WELL", "SAFE");
+
+        Map<String, String> q = new HashMap<>();
+        q.put("type", "LAKE");
+        q.put("cond", "SAFE");
+        Map<String, String>[] found = rm.getSourceReports(q, null);
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals(a, found[0].get("reportid"));
+
+        Map<String, String> props = new HashMap<>();
+        props.put("cond", "POTABLE");
+        rm.updateSourceReport(EMAIL, TOK, a, props);
+        Assert.assertEquals(0, rm.getSourceReports(q, null).length);
+        q.remove("type");
+        Assert.assertEquals(1, rm.getSourceReports(q, null).length);
+
+        Map<String, String> byUser = new HashMap<>();
+        byUser.put("username", "local");
+        Assert.assertEquals(3, rm.getSourceReports(byUser, null).length);
+    }
+
+    /**
+     * tests readers see whole reports while writers update them
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        final int writers = 4;
+        final int reports = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < reports; i++) {
+                        String id = add("LAKE", "SAFE");
+                        Map<String, String> props = new HashMap<>();
+                        props.put("type", "WELL");
+                        props.put("cond", "WASTE");
+                        rm.updateSourceReport(EMAIL, TOK, id, props);
+                    }
+                    return null;
+                }));
+            }
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < reports; i++) {
+                    rm.getSourceReports(0, m -> Assert.assertEquals(
+                            m.get("type").isEmpty(),
+                            m.get("cond").isEmpty()));
+                }
+                return null;
+            }));
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<String, String> q = new HashMap<>();
+        q.put("cond", "WASTE");
+        Assert.assertEquals(writers * reports,
+                rm.getSourceReports(q, null).length);
+        q.put("cond", "SAFE");
+        Assert.assertEquals(0, rm.getSourceReports(q, null).length);
+    }
+
+    /**
+     * tests pages cover every report once, in insertion order, and a
+     * report deleted between pages is skipped without shifting the rest
+     * @throws Exception
+     */
+    @Test
+    public void testPaging() throws Exception {
+        final int count = 7;
+        final int pageSize = 3;
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(add("WELL", "SAFE"));
+        }
+
+        List<String> seen = new ArrayList<>();
+        String cursor = rm.getSourceReportPage(pageSize, null,
+                m -> seen.add(m.get("reportid")));
+        Assert.assertEquals(ids.subList(0, pageSize), seen);
+        Assert.assertNotNull(cursor);
+
+        rm.deleteSourceReport(EMAIL, TOK, ids.get(pageSize));
+        int pages = 1;
+        while (cursor != null) {
+            cursor = rm.getSourceReportPage(pageSize, cursor,
+                    m -> seen.add(m.get("reportid")));
+            pages++;
+        }
+        ids.remove(pageSize);
+        Assert.assertEquals(ids, seen);
+        Assert.assertEquals(2, pages);
+    }
+
+    /**
+     * tests a malformed cursor is refused
+     * @throws Exception
+     */
+    @Test (expected = BackendRequestException.class)
+    public void testBadCursor() throws Exception {
+        rm.getSourceReportPage(1, "not a cursor", m -> { });
+    }
+
+    /**
+     * tests substring and range clauses are applied with equality
+     * @throws Exception
+     */
+    @Test
+    public void testQuery() throws Exception {
+        final String[][] reports = {
+            {"North Lake", "2015-06-01T10:00", "LAKE"},
+            {"north pond", "2016-01-01T00:00", "LAKE"},
+            {"Lake North Shore", "2016-12-31T23:59", "LAKE"},
+            {"North Lake", "2017-01-01T00:00", "LAKE"},
+            {"North Lake", "2016-05-05T12:00", "WELL"},
+        };
+        List<String> ids = new ArrayList<>();
+        for (String[] r : reports) {
+            String id = add(r[2], "SAFE");
+            Map<String, String> props = new HashMap<>();
+            props.put("location", r[0]);
+            props.put("reportdt", r[1]);
+            rm.updateSourceReport(EMAIL, TOK, id, props);
+            ids.add(id);
+        }
+
+        ReportQuery query = new ReportQuery(ReportQuery.SOURCE)
+                .contains("location", "NORTH", " lake")
+                .range("reportdt", "2016-01-01", "2017-01-01")
+                .equal("type", "LAKE");
+        Map<String, String>[] found = rm.getSourceReports(
+                query.getProperties(), query.getSearchConstraints());
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals(ids.get(2), found[0].get("reportid"));
+
+        Map<String, String> props = new HashMap<>();
+        Map<String, String> constraints = new HashMap<>();
+        props.put("location", "north");
+        constraints.put("location", "contains");
+        props.put("reportdt", ",2016-01-01");
+        constraints.put("reportdt", "RANGE");
+        found = rm.getSourceReports(props, constraints);
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals(ids.get(0), found[0].get("reportid"));
+    }
+
+    /**
+     * tests an operator that does not apply to its field is refused
+     * @throws Exception
+     */
+    @Test (expected = BackendRequestException.class)
+    public void testBadQuery() throws Exception {
+        Map<String, String> props = new HashMap<>();
+        Map<String, String> constraints = new HashMap<>();
+        props.put("type", "1,2");
+        constraints.put("type", "RANGE");
+        rm.getSourceReports(props, constraints);
+    }
+}
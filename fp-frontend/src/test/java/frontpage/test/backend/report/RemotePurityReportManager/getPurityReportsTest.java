@@ -0,0 +1,163 @@
+package frontpage.test.backend.report.RemotePurityReportManager;
+
+
+import frontpage.backend.report.RemotePurityReportManager;
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.Transport;
+import frontpage.bind.errorhandling.BackendRequestException;
+import frontpage.bind.report.ReportQuery;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Tests searching purity reports on the loopback server.</p>
+ */
+public class getPurityReportsTest {
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    private RemotePurityReportManager rm;
+
+    /**
+     * installs a fresh loopback transport and adds purity reports taken
+     * at two source reports
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        previous = RESTHandler.getTransport();
+        RESTHandler.setTransport(new LoopbackTransport());
+
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("username", "will");
+        attribs.put("password", "hunter2");
+        attribs.put("email", "will@example.com");
+        attribs.put("firstname", "Will");
+        attribs.put("lastname", "Stuckey");
+        attribs.put("type", "");
+        RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_CREATION_ENTRY_POINT, attribs);
+
+        attribs.clear();
+        attribs.put("email", "will@example.com");
+        attribs.put("password", "hunter2");
+        RESTReport rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_AUTH_ENTRY_POINT, attribs);
+        String tok = rr.getResponseValue("sessionid");
+
+        rm = new RemotePurityReportManager();
+        String[][] reports = {
+                {"North Lake", "2016-02-01T10:00", "12.5", "src-a"},
+                {"north river", "2016-05-01T10:00", "300", "src-a"},
+                {"South Lake", "2016-07-01T10:00", "45", "src-b"},
+                {"North Lake", "2015-07-01T10:00", "20", "src-b"}
+        };
+        for (String[] r : reports) {
+            String id = rm.addPurityReport("will@example.com", tok);
+            Map<String, String> props = new HashMap<>();
+            props.put("location", r[0]);
+            props.put("reportdt", r[1]);
+            props.put("virusppm", r[2]);
+            props.put("contaminantppm", "1");
+            props.put("cond", "SAFE");
+            props.put("sourceid", r[3]);
+            Assert.assertTrue(rm.updatePurityReport("will@example.com", tok,
+                    id, props));
+        }
+    }
+
+    /**
+     * restores the previous transport
+     */
+    @After
+    public void tearDown() {
+        RESTHandler.setTransport(previous);
+    }
+
+    /**
+     * tests a substring, date range and numeric range search run by the
+     * server
+     * @throws Exception
+     */
+    @Test
+    public void testSearch() throws Exception {
+        ReportQuery query = new ReportQuery(ReportQuery.PURITY)
+                .contains("location", "north")
+                .range("reportdt", "2016-01-01", "2017-01-01")
+                .range("virusppm", null, "100");
+        Map<String, String>[] found = rm.getPurityReports(
+                query.getProperties(), query.getSearchConstraints());
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals("North Lake", found[0].get("location"));
+        Assert.assertEquals("12.5", found[0].get("virusppm"));
+    }
+
+    /**
+     * tests that the source report is searched under the name reports
+     * carry it by, and under the name the server stores it by
+     * @throws Exception
+     */
+    @Test
+    public void testSourceReport() throws Exception {
+        ReportQuery query = new ReportQuery(ReportQuery.PURITY)
+                .equal("sourceid", "src-b");
+        Map<String, String>[] found = rm.getPurityReports(
+                query.getProperties(), query.getSearchConstraints());
+        Assert.assertEquals(2, found.length);
+        for (Map<String, String> m : found) {
+            Assert.assertEquals("src-b", m.get("sourceid"));
+        }
+
+        Map<String, String> props = new HashMap<>();
+        props.put("sourcerptid", "src-a");
+        props.put("location", "lake");
+        Map<String, String> constraints = new HashMap<>();
+        constraints.put("location", "CONTAINS");
+        found = rm.getPurityReports(props, constraints);
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals("src-a", found[0].get("sourceid"));
+        Assert.assertEquals("North Lake", found[0].get("location"));
+    }
+
+    /**
+     * tests that every report is found without clauses
+     * @throws Exception
+     */
+    @Test
+    public void testAll() throws Exception {
+        Assert.assertEquals(4,
+                rm.getPurityReports(new HashMap<>(), null).length);
+    }
+
+    /**
+     * tests that purity reports cannot be searched on a name, which they
+     * do not have
+     * @throws Exception
+     */
+    @Test (expected = BackendRequestException.class)
+    public void testNoName() throws Exception {
+        Map<String, String> props = new HashMap<>();
+        props.put("name", "lake");
+        Map<String, String> constraints = new HashMap<>();
+        constraints.put("name", "CONTAINS");
+        rm.getPurityReports(props, constraints);
+    }
+
+    /**
+     * tests that the ppm fields of source reports cannot be searched
+     */
+    @Test (expected = IllegalArgumentException.class)
+    public void testSourceHasNoPpm() {
+        new ReportQuery(ReportQuery.SOURCE).range("virusppm", "1", "2");
+    }
+}
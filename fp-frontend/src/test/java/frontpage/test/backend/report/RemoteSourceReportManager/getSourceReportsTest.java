@@ -0,0 +1,147 @@
+package frontpage.test.backend.report.RemoteSourceReportManager;
+
+
+import frontpage.backend.report.RemoteSourceReportManager;
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.Transport;
+import frontpage.bind.GlobalProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author willstuckey
+ * <p>Tests reading the most recent source reports from the loopback
+ * server.</p>
+ */
+public class getSourceReportsTest {
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    /**
+     * listing requests sent
+     */
+    private final AtomicInteger listings = new AtomicInteger();
+
+    /**
+     * report ids in the order they were added
+     */
+    private final List<String> added = new ArrayList<>();
+
+    private RemoteSourceReportManager rm;
+
+    /**
+     * installs a loopback transport counting listing requests, adds
+     * reports and reads the listing five reports a page
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        previous = RESTHandler.getTransport();
+        final LoopbackTransport loopback = new LoopbackTransport();
+        RESTHandler.setTransport((action, entry, headers, query) -> {
+            if (query.contains("reportid=ALL")) {
+                listings.incrementAndGet();
+            }
+            return loopback.send(action, entry, headers, query);
+        });
+
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("username", "will");
+        attribs.put("password", "hunter2");
+        attribs.put("email", "will@example.com");
+        attribs.put("firstname", "Will");
+        attribs.put("lastname", "Stuckey");
+        attribs.put("type", "");
+        RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_CREATION_ENTRY_POINT, attribs);
+
+        attribs.clear();
+        attribs.put("email", "will@example.com");
+        attribs.put("password", "hunter2");
+        RESTReport rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_AUTH_ENTRY_POINT, attribs);
+        String tok = rr.getResponseValue("sessionid");
+
+        rm = new RemoteSourceReportManager();
+        for (int i = 0; i < 23; i++) {
+            added.add(rm.addSourceReport("will@example.com", tok));
+        }
+        GlobalProperties.getProperties().setProperty("report-page-size", "5");
+        listings.set(0);
+    }
+
+    /**
+     * restores the previous transport and page size
+     */
+    @After
+    public void tearDown() {
+        RESTHandler.setTransport(previous);
+        GlobalProperties.getProperties().remove("report-page-size");
+    }
+
+    /**
+     * tests that a bounded read gets the most recent reports, oldest
+     * first, from only the pages holding them
+     * @throws Exception
+     */
+    @Test
+    public void testMostRecent() throws Exception {
+        List<String> got = new ArrayList<>();
+        rm.getSourceReports(7, m -> got.add(m.get("reportid")));
+        Assert.assertEquals(added.subList(16, 23), got);
+        Assert.assertEquals(2, listings.get());
+    }
+
+    /**
+     * tests that the buffered read is bounded the same way
+     * @throws Exception
+     */
+    @Test
+    public void testMostRecentBuffered() throws Exception {
+        Map<String, String>[] got = rm.getSourceReports(3);
+        Assert.assertEquals(3, got.length);
+        for (int i = 0; i < got.length; i++) {
+            Assert.assertEquals(added.get(20 + i), got[i].get("reportid"));
+        }
+        Assert.assertEquals(1, listings.get());
+    }
+
+    /**
+     * tests that an unbounded read gets every report in id order
+     * @throws Exception
+     */
+    @Test
+    public void testAll() throws Exception {
+        List<String> got = new ArrayList<>();
+        rm.getSourceReports(0, m -> got.add(m.get("reportid")));
+        Assert.assertEquals(added, got);
+        Assert.assertEquals(5, listings.get());
+    }
+
+    /**
+     * tests that pages read in id order follow on from each other
+     * @throws Exception
+     */
+    @Test
+    public void testPages() throws Exception {
+        List<String> got = new ArrayList<>();
+        String cursor = null;
+        do {
+            cursor = rm.getSourceReportPage(10, cursor,
+                    m -> got.add(m.get("reportid")));
+        } while (cursor != null);
+        Assert.assertEquals(added, got);
+    }
+}
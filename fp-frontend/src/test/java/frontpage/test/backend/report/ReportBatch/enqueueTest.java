@@ -0,0 +1,52 @@
+package frontpage.test.backend.report.ReportBatch;
+
+
+import frontpage.backend.report.ReportBatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+/**
+ * @author willstuckey
+ * <p>Tests queueing operations into a report batch.</p>
+ */
+public class enqueueTest {
+    /**
+     * tests that operations are referenced by their position
+     */
+    @Test
+    public void testReferences() {
+        ReportBatch batch = new ReportBatch("a@b.c", "tok");
+        ReportBatch.Operation add = batch.add(ReportBatch.SOURCE);
+        ReportBatch.Operation update = batch.update(ReportBatch.SOURCE,
+                add.reference(), new HashMap<>());
+        ReportBatch.Operation get = batch.get(ReportBatch.SOURCE,
+                add.reference());
+        Assert.assertEquals("@0", add.reference());
+        Assert.assertEquals("@1", update.reference());
+        Assert.assertEquals("@2", get.reference());
+        Assert.assertEquals(3, batch.size());
+        Assert.assertFalse(get.result().isDone());
+    }
+
+    /**
+     * tests that results cannot be read before the batch is sent
+     * @throws Exception
+     */
+    @Test (expected = IllegalStateException.class)
+    public void testUnsentResult() throws Exception {
+        new ReportBatch().get(ReportBatch.PURITY, "id").get();
+    }
+
+    /**
+     * tests that a sent batch accepts no more operations
+     * @throws Exception
+     */
+    @Test (expected = IllegalStateException.class)
+    public void testSentBatchClosed() throws Exception {
+        ReportBatch batch = new ReportBatch();
+        batch.send();
+        batch.get(ReportBatch.SOURCE, "id");
+    }
+}
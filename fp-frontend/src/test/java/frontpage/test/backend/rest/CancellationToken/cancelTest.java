@@ -0,0 +1,161 @@
+package frontpage.test.backend.rest.CancellationToken;
+
+
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.RequestScheduler;
+import frontpage.backend.rest.RequestScheduler.Priority;
+import frontpage.backend.rest.Transport;
+import frontpage.bind.CancellationToken;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author willstuckey
+ * <p>Tests that cancelling a view token aborts its requests.</p>
+ */
+public class cancelTest {
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    /**
+     * installs a fresh loopback transport
+     */
+    @Before
+    public void setUp() {
+        previous = RESTHandler.getTransport();
+        RESTHandler.setTransport(new LoopbackTransport());
+    }
+
+    /**
+     * restores the previous transport and token
+     */
+    @After
+    public void tearDown() {
+        RESTHandler.setTransport(previous);
+        CancellationToken.bind(null);
+    }
+
+    /**
+     * creates an account, logs in and adds source reports
+     * @param n number of reports
+     */
+    private static void addReports(final int n) {
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("username", "will");
+        attribs.put("password", "hunter2");
+        attribs.put("email", "will@example.com");
+        attribs.put("firstname", "Will");
+        attribs.put("lastname", "Stuckey");
+        attribs.put("type", "");
+        RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_CREATION_ENTRY_POINT, attribs);
+
+        attribs.clear();
+        attribs.put("email", "will@example.com");
+        attribs.put("password", "hunter2");
+        RESTReport rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_AUTH_ENTRY_POINT, attribs);
+        String tok = rr.getResponseValue("sessionid");
+
+        for (int i = 0; i < n; i++) {
+            attribs.clear();
+            attribs.put("email", "will@example.com");
+            attribs.put("tok", tok);
+            attribs.put("reporttype", "source");
+            attribs.put("action", "ADD");
+            Assert.assertTrue(RESTHandler.apiRequest(
+                    RESTHandler.RestAction.POST,
+                    RESTHandler.REPORT_ENTRY_POINT, attribs).success());
+        }
+    }
+
+    /**
+     * builds the attributes of a source report listing
+     * @return attributes
+     */
+    private static Map<String, String> listing() {
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("reporttype", "source");
+        attribs.put("action", "GET");
+        attribs.put("reportid", "ALL");
+        return attribs;
+    }
+
+    /**
+     * tests that a request under a cancelled token is never made
+     */
+    @Test (expected = CancellationException.class)
+    public void testCancelledBeforeRequest() {
+        CancellationToken token = new CancellationToken("test");
+        token.cancel();
+        CancellationToken.bind(token);
+        RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.REPORT_ENTRY_POINT, listing());
+    }
+
+    /**
+     * tests that rows are no longer delivered once the token is
+     * cancelled part way through a listing
+     */
+    @Test
+    public void testRowsDropped() {
+        addReports(5);
+        CancellationToken token = new CancellationToken("test");
+        CancellationToken.bind(token);
+        AtomicInteger delivered = new AtomicInteger();
+        try {
+            RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                    RESTHandler.REPORT_ENTRY_POINT, listing(), m -> {
+                        delivered.incrementAndGet();
+                        token.cancel();
+                    });
+            Assert.fail("listing was not cancelled");
+        } catch (CancellationException e) {
+            Assert.assertEquals(1, delivered.get());
+        }
+
+        CancellationToken.bind(null);
+        delivered.set(0);
+        RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.REPORT_ENTRY_POINT, listing(),
+                m -> delivered.incrementAndGet());
+        Assert.assertEquals(5, delivered.get());
+    }
+
+    /**
+     * tests that cancelling a token cancels its scheduled work
+     * @throws Exception
+     */
+    @Test
+    public void testScheduledWorkCancelled() throws Exception {
+        CancellationToken token = new CancellationToken("test");
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Object> running = RequestScheduler.submit(
+                Priority.INTERACTIVE, token, () -> {
+                    started.countDown();
+                    Thread.sleep(10 * 1000);
+                    return null;
+                });
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+        token.cancel();
+        Assert.assertTrue(running.isCancelled());
+
+        CompletableFuture<Object> late = RequestScheduler.submit(
+                Priority.BACKGROUND, token, () -> null);
+        Assert.assertTrue(late.isCompletedExceptionally());
+    }
+}
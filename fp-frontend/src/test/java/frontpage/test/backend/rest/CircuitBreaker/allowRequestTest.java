@@ -0,0 +1,76 @@
+package frontpage.test.backend.rest.CircuitBreaker;
+
+
+import frontpage.backend.rest.CircuitBreaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * @author willstuckey
+ * <p>Tests the circuit breaker state transitions.</p>
+ */
+public class allowRequestTest {
+    /**
+     * time the test breakers stay open
+     */
+    private static final long OPEN_MILLIS = 50;
+
+    /**
+     * creates a breaker
+     * @param threshold consecutive failures that open it
+     * @return breaker
+     * @throws Exception if the breaker could not be created
+     */
+    private static CircuitBreaker breaker(final int threshold)
+            throws Exception {
+        Constructor<CircuitBreaker> c =
+                CircuitBreaker.class.getDeclaredConstructor(String.class,
+                        int.class, long.class);
+        c.setAccessible(true);
+        return c.newInstance("test.php", threshold, OPEN_MILLIS);
+    }
+
+    /**
+     * tests that consecutive failures open the breaker and a success
+     * in between resets the count
+     * @throws Exception
+     */
+    @Test
+    public void testOpens() throws Exception {
+        CircuitBreaker cb = breaker(3);
+        cb.onFailure();
+        cb.onFailure();
+        cb.onSuccess();
+        cb.onFailure();
+        cb.onFailure();
+        Assert.assertTrue(cb.allowRequest());
+        cb.onFailure();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+        Assert.assertFalse(cb.allowRequest());
+        Assert.assertEquals(1, cb.getRejected());
+    }
+
+    /**
+     * tests that one trial is let through after the open period and
+     * that its outcome decides the state
+     * @throws Exception
+     */
+    @Test
+    public void testHalfOpen() throws Exception {
+        CircuitBreaker cb = breaker(1);
+        cb.onFailure();
+        Thread.sleep(OPEN_MILLIS * 2);
+        Assert.assertTrue(cb.allowRequest());
+        Assert.assertFalse(cb.allowRequest());
+        cb.onFailure();
+        Assert.assertTrue(cb.isOpen());
+
+        Thread.sleep(OPEN_MILLIS * 2);
+        Assert.assertTrue(cb.allowRequest());
+        cb.onSuccess();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+        Assert.assertTrue(cb.allowRequest());
+    }
+}
@@ -0,0 +1,92 @@
+package frontpage.test.backend.rest.ColumnarReport;
+
+
+import frontpage.backend.rest.ColumnarReport;
+import frontpage.backend.rest.RESTReport;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Tests that columnar reports hold the same entries as the array
+ * of maps they are built from.</p>
+ */
+public class fromTest {
+    /**
+     * number of rows in the listing, enough to exceed the dictionary
+     * limit for unique columns
+     */
+    private static final int ROWS = 1000;
+
+    /**
+     * creates a report with a listing of source reports
+     * @return report
+     * @throws Exception if the report could not be created
+     */
+    private static RESTReport listing() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("status=success\r\nvariablepayload=").append(ROWS)
+                .append("\r\n--- BEGIN ---\r\n");
+        for (int i = 0; i < ROWS; i++) {
+            sb.append(i).append(":reportid=").append(i)
+                    .append("|type=").append((i % 2 == 0) ? "WELL" : "LAKE");
+            if (i % 3 == 0) {
+                sb.append("|description=row ").append(i);
+            }
+            sb.append("\r\n");
+        }
+        sb.append("--- END ---\r\n");
+
+        Constructor<RESTReport> c = RESTReport.class.getDeclaredConstructor(
+                int.class, String.class, String.class);
+        c.setAccessible(true);
+        return c.newInstance(200, "OK", sb.toString());
+    }
+
+    /**
+     * tests that every entry reads back as it was parsed
+     * @throws Exception
+     */
+    @Test
+    public void testRowsMatch() throws Exception {
+        RESTReport rr = listing();
+        ColumnarReport cr = ColumnarReport.from(rr);
+        Map<String, String>[] values = rr.getResponseValues();
+        Map<String, String>[] copy = cr.toMapArray();
+        Assert.assertEquals(ROWS, cr.size());
+        for (int i = 0; i < ROWS; i++) {
+            Assert.assertEquals(values[i + 1], cr.getRow(i));
+            Assert.assertEquals(values[i + 1], copy[i + 1]);
+        }
+        Assert.assertEquals("success", cr.getMetadata().get("status"));
+    }
+
+    /**
+     * tests that absent keys stay absent
+     * @throws Exception
+     */
+    @Test
+    public void testAbsentKeys() throws Exception {
+        ColumnarReport cr = ColumnarReport.from(listing());
+        Assert.assertTrue(cr.getRow(0).containsKey("description"));
+        Assert.assertFalse(cr.getRow(1).containsKey("description"));
+        Assert.assertNull(cr.get(1, "description"));
+        Assert.assertEquals(3, cr.getRow(1).size());
+    }
+
+    /**
+     * tests that columns are encoded by cardinality
+     * @throws Exception
+     */
+    @Test
+    public void testEncoding() throws Exception {
+        ColumnarReport cr = ColumnarReport.from(listing());
+        Assert.assertTrue(cr.isDictionaryEncoded("type"));
+        Assert.assertFalse(cr.isDictionaryEncoded("reportid"));
+        Assert.assertEquals("LAKE", cr.get(ROWS - 1, "type"));
+        Assert.assertEquals("999", cr.get(ROWS - 1, "reportid"));
+    }
+}
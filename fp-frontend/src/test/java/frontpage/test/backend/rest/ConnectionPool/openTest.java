@@ -0,0 +1,48 @@
+package frontpage.test.backend.rest.ConnectionPool;
+
+
+import frontpage.backend.rest.ConnectionPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author willstuckey
+ * <p>Tests waiting for connection slots. Opening a connection does not
+ * connect it, so no server is needed.</p>
+ */
+public class openTest {
+    /**
+     * tests a request that cannot get a slot fails as exhausted rather
+     * than as a failed connect, and gets a slot once one is released
+     * @throws Exception
+     */
+    @Test
+    public void testExhausted() throws Exception {
+        ConnectionPool pool = ConnectionPool.getInstance();
+        URL url = new URL("https://pool.test.invalid/report.php");
+        List<HttpsURLConnection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < pool.getMaxConnections(); i++) {
+                held.add(pool.open(url, 0));
+            }
+            try {
+                pool.open(url, 50);
+                Assert.fail("opened past the connection limit");
+            } catch (ConnectionPool.ExhaustedException e) {
+                // expected
+            }
+
+            pool.release(held.remove(0));
+            held.add(pool.open(url, 50));
+        } finally {
+            for (HttpsURLConnection con : held) {
+                pool.release(con);
+            }
+        }
+    }
+}
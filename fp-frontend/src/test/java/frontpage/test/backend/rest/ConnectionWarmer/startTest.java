@@ -0,0 +1,89 @@
+package frontpage.test.backend.rest.ConnectionWarmer;
+
+
+import frontpage.backend.rest.ConnectionWarmer;
+import frontpage.backend.rest.HttpsTransport;
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.Transport;
+import frontpage.bind.CancellationToken;
+import frontpage.bind.GlobalProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.concurrent.CancellationException;
+
+/**
+ * @author willstuckey
+ * <p>Tests when the connection warm-up runs.</p>
+ */
+public class startTest {
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    /**
+     * saves the transport
+     */
+    @Before
+    public void setUp() {
+        previous = RESTHandler.getTransport();
+    }
+
+    /**
+     * restores the transport and warm-up property
+     */
+    @After
+    public void tearDown() {
+        RESTHandler.setTransport(previous);
+        GlobalProperties.getProperties().setProperty("rest-warmup", "true");
+    }
+
+    /**
+     * tests warm-up is skipped without an HTTPS transport
+     */
+    @Test
+    public void testSkippedForLoopback() {
+        RESTHandler.setTransport(new LoopbackTransport());
+        Assert.assertFalse(ConnectionWarmer.isEnabled());
+        Assert.assertSame(CancellationToken.NONE, ConnectionWarmer.start());
+    }
+
+    /**
+     * tests warm-up can be turned off
+     */
+    @Test
+    public void testSkippedWhenDisabled() {
+        RESTHandler.setTransport(new HttpsTransport());
+        Assert.assertTrue(ConnectionWarmer.isEnabled());
+        GlobalProperties.getProperties().setProperty("rest-warmup", "false");
+        Assert.assertFalse(ConnectionWarmer.isEnabled());
+        Assert.assertSame(CancellationToken.NONE, ConnectionWarmer.start());
+    }
+
+    /**
+     * tests a cancelled warm-up does no I/O
+     * @throws Exception
+     */
+    @Test
+    public void testCancelledBeforeResolving() throws Exception {
+        Method warm = ConnectionWarmer.class.getDeclaredMethod("warm",
+                URL.class, CancellationToken.class);
+        warm.setAccessible(true);
+        CancellationToken token = new CancellationToken("test");
+        token.cancel();
+        try {
+            warm.invoke(null, new URL("https://unresolvable.invalid/"),
+                    token);
+            Assert.fail("warm-up ran after cancellation");
+        } catch (InvocationTargetException e) {
+            Assert.assertTrue(e.getCause() instanceof CancellationException);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package frontpage.test.backend.rest.Deadline;
+
+
+import frontpage.backend.rest.Deadline;
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.Transport;
+import frontpage.bind.GlobalProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Tests request deadlines and their per endpoint defaults.</p>
+ */
+public class deadlineForTest {
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    /**
+     * transport under test
+     */
+    private LoopbackTransport loopback;
+
+    /**
+     * installs a fresh loopback transport
+     */
+    @Before
+    public void setUp() {
+        previous = RESTHandler.getTransport();
+        loopback = new LoopbackTransport();
+        RESTHandler.setTransport(loopback);
+    }
+
+    /**
+     * restores the previous transport and deadline
+     */
+    @After
+    public void tearDown() {
+        RESTHandler.setTransport(previous);
+        Deadline.bind(null);
+        GlobalProperties.getProperties().remove("rest-deadline.user.php");
+    }
+
+    /**
+     * tests the most specific default budget applies
+     */
+    @Test
+    public void testDefaultBudgets() {
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("action", "GET");
+        attribs.put("reportid", "1");
+        Assert.assertEquals(7000, RESTHandler.getDefaultBudget(
+                RESTHandler.REPORT_ENTRY_POINT, attribs));
+
+        attribs.put("reportid", "ALL");
+        Assert.assertEquals(30000, RESTHandler.getDefaultBudget(
+                RESTHandler.REPORT_ENTRY_POINT, attribs));
+
+        GlobalProperties.getProperties().setProperty(
+                "rest-deadline.user.php", "1234");
+        Assert.assertEquals(1234, RESTHandler.getDefaultBudget(
+                RESTHandler.ACCOUNT_USER_ENTRY_POINT, new HashMap<>()));
+    }
+
+    /**
+     * tests that a bound deadline is used and the earlier of two wins
+     */
+    @Test
+    public void testBound() {
+        Deadline soon = Deadline.after(100);
+        Deadline later = Deadline.after(100 * 1000);
+        Assert.assertSame(soon, soon.min(later));
+        Assert.assertSame(soon, later.min(soon));
+        Assert.assertSame(soon, Deadline.NONE.min(soon));
+
+        Deadline.bind(later);
+        Assert.assertSame(later, RESTHandler.deadlineFor(
+                RESTHandler.REPORT_ENTRY_POINT, new HashMap<>()));
+        Assert.assertTrue(later.remainingMillis() > 100);
+    }
+
+    /**
+     * tests that a request whose deadline passed is never sent
+     */
+    @Test
+    public void testExpiredNotSent() {
+        Deadline.bind(Deadline.after(0));
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("email", "will@example.com");
+        attribs.put("password", "hunter2");
+        RESTReport rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_AUTH_ENTRY_POINT, attribs);
+        Assert.assertTrue(rr.wasInternalError());
+        Assert.assertEquals(0, loopback.getServed());
+    }
+
+    /**
+     * tests that a body arriving a byte at a time, each within the read
+     * timeout, is still cut off once the deadline passes
+     */
+    @Test
+    public void testTricklingBody() {
+        RESTHandler.setTransport((action, entry, headers, query) -> {
+            final Transport.Response r =
+                    loopback.send(action, entry, headers, query);
+            return new Transport.Response() {
+                @Override
+                public int getCode() {
+                    return r.getCode();
+                }
+
+                @Override
+                public String getMessage() {
+                    return r.getMessage();
+                }
+
+                @Override
+                public String getContentType() {
+                    return r.getContentType();
+                }
+
+                @Override
+                public long getContentLength() {
+                    return r.getContentLength();
+                }
+
+                @Override
+                public String getHeader(final String name) {
+                    return r.getHeader(name);
+                }
+
+                @Override
+                public InputStream getBody() throws IOException {
+                    return new FilterInputStream(r.getBody()) {
+                        @Override
+                        public int read(final byte[] b, final int off,
+                                        final int len) throws IOException {
+                            try {
+                                Thread.sleep(50);
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                            return super.read(b, off, Math.min(len, 1));
+                        }
+                    };
+                }
+
+                @Override
+                public void close() throws IOException {
+                    r.close();
+                }
+            };
+        });
+
+        Deadline.bind(Deadline.after(500));
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("username", "will");
+        attribs.put("password", "hunter2");
+        attribs.put("email", "will@example.com");
+        attribs.put("firstname", "Will");
+        attribs.put("lastname", "Stuckey");
+        attribs.put("type", "");
+        RESTReport rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_CREATION_ENTRY_POINT, attribs);
+        Assert.assertTrue(rr.wasInternalError());
+        Assert.assertTrue(rr.getInternalErrorMessage(),
+                rr.getInternalErrorMessage().contains("deadline exceeded"));
+    }
+}
@@ -0,0 +1,155 @@
+package frontpage.test.backend.rest.LoopbackTransport;
+
+
+import frontpage.backend.report.ReportBatch;
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.Transport;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Tests api requests answered by the loopback transport.</p>
+ */
+public class sendTest {
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    /**
+     * installs a fresh loopback transport
+     */
+    @Before
+    public void setUp() {
+        previous = RESTHandler.getTransport();
+        RESTHandler.setTransport(new LoopbackTransport());
+    }
+
+    /**
+     * restores the previous transport
+     */
+    @After
+    public void tearDown() {
+        RESTHandler.setTransport(previous);
+    }
+
+    /**
+     * creates an account and logs in
+     * @return session id
+     */
+    private static String login() {
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("username", "will");
+        attribs.put("password", "hunter2");
+        attribs.put("email", "will@example.com");
+        attribs.put("firstname", "Will");
+        attribs.put("lastname", "Stuckey");
+        attribs.put("type", "");
+        RESTReport rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_CREATION_ENTRY_POINT, attribs);
+        Assert.assertTrue(rr.success());
+
+        rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_CREATION_ENTRY_POINT, attribs);
+        Assert.assertEquals("existing user found",
+                rr.getResponseValue("message"));
+
+        attribs.clear();
+        attribs.put("email", "will@example.com");
+        attribs.put("password", "hunter2");
+        rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_AUTH_ENTRY_POINT, attribs);
+        Assert.assertTrue(rr.success());
+        return rr.getResponseValue("sessionid");
+    }
+
+    /**
+     * tests accounts, sessions and authentication failures
+     */
+    @Test
+    public void testAccounts() {
+        String tok = login();
+        Assert.assertNotNull(tok);
+
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("email", "will@example.com");
+        attribs.put("tok", tok);
+        attribs.put("property", "username");
+        RESTReport rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_USER_ENTRY_POINT, attribs);
+        Assert.assertEquals("will", rr.getResponseValue("username"));
+
+        attribs.put("tok", "bad");
+        rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_USER_ENTRY_POINT, attribs);
+        Assert.assertEquals(401, rr.getHttpResponseCode());
+    }
+
+    /**
+     * tests a batch that creates, fills and reads back a report
+     * @throws Exception
+     */
+    @Test
+    public void testReportBatch() throws Exception {
+        String tok = login();
+        Map<String, String> props = new HashMap<>();
+        props.put("name", "well=deep");
+        props.put("location", "33.7,-84.4");
+
+        ReportBatch.Operation get;
+        try (ReportBatch batch = new ReportBatch("will@example.com", tok)) {
+            ReportBatch.Operation add = batch.add(ReportBatch.SOURCE);
+            batch.update(ReportBatch.SOURCE, add.reference(), props);
+            get = batch.get(ReportBatch.SOURCE, add.reference());
+        }
+
+        Map<String, String> report = get.get();
+        Assert.assertEquals("will", report.get("username"));
+        Assert.assertEquals("33.7,-84.4", report.get("location"));
+        Assert.assertNotNull(report.get("reportid"));
+    }
+
+    /**
+     * tests that a listing is only paged when a page size or cursor is
+     * given, so clients that do not follow cursors still get every report
+     */
+    @Test
+    public void testUnpagedListing() {
+        String tok = login();
+        final int reports = 501;
+        Map<String, String> attribs = new HashMap<>();
+        for (int i = 0; i < reports; i++) {
+            attribs.clear();
+            attribs.put("email", "will@example.com");
+            attribs.put("tok", tok);
+            attribs.put("reporttype", "source");
+            attribs.put("action", "ADD");
+            Assert.assertTrue(RESTHandler.apiRequest(
+                    RESTHandler.RestAction.POST,
+                    RESTHandler.REPORT_ENTRY_POINT, attribs).success());
+        }
+
+        attribs.clear();
+        attribs.put("reporttype", "source");
+        attribs.put("action", "GET");
+        attribs.put("reportid", "ALL");
+        RESTReport rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.REPORT_ENTRY_POINT, attribs);
+        Assert.assertEquals(reports, rr.getEntryCount());
+        Assert.assertNull(rr.getCursor());
+
+        attribs.put("pagesize", "1000");
+        rr = RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                RESTHandler.REPORT_ENTRY_POINT, attribs);
+        Assert.assertEquals(500, rr.getEntryCount());
+        Assert.assertNotNull(rr.getCursor());
+    }
+}
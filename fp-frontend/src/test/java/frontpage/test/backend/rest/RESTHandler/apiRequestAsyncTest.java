@@ -0,0 +1,87 @@
+package frontpage.test.backend.rest.RESTHandler;
+
+
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.RequestScheduler;
+import frontpage.backend.rest.RequestScheduler.Priority;
+import frontpage.backend.rest.Transport;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author willstuckey
+ * <p>Tests the timeout of a scheduled request starts when it runs.</p>
+ */
+public class apiRequestAsyncTest {
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    /**
+     * installs a fresh loopback transport
+     */
+    @Before
+    public void setUp() {
+        previous = RESTHandler.getTransport();
+        RESTHandler.setTransport(new LoopbackTransport());
+    }
+
+    /**
+     * restores the previous transport
+     */
+    @After
+    public void tearDown() {
+        RESTHandler.setTransport(previous);
+    }
+
+    /**
+     * tests that a background request queued for longer than its
+     * timeout still gets the whole budget once it starts
+     * @throws Exception
+     */
+    @Test
+    public void testBudgetStartsWhenRun() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Object>> blockers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            blockers.add(RequestScheduler.submit(Priority.BACKGROUND,
+                    () -> {
+                        release.await();
+                        return null;
+                    }));
+        }
+
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("username", "will");
+        attribs.put("password", "hunter2");
+        attribs.put("email", "will@example.com");
+        attribs.put("firstname", "Will");
+        attribs.put("lastname", "Stuckey");
+        attribs.put("type", "");
+        CompletableFuture<RESTReport> f = RESTHandler.apiRequestAsync(
+                Priority.BACKGROUND, RESTHandler.RestAction.POST,
+                RESTHandler.ACCOUNT_CREATION_ENTRY_POINT, attribs, 1000);
+        Thread.sleep(1500);
+        release.countDown();
+        for (CompletableFuture<Object> b : blockers) {
+            b.get(10, TimeUnit.SECONDS);
+        }
+
+        RESTReport rr = f.get(10, TimeUnit.SECONDS);
+        Assert.assertFalse(rr.wasInternalError());
+        Assert.assertTrue(rr.success());
+    }
+}
@@ -0,0 +1,167 @@
+package frontpage.test.backend.rest.RESTHandler;
+
+
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTReport;
+import frontpage.backend.rest.SingleFlight;
+import frontpage.backend.rest.Transport;
+import frontpage.bind.CancellationToken;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author willstuckey
+ * <p>Tests that callers sharing a read wait under their own tokens.</p>
+ */
+public class apiRequestSharedTest {
+    /**
+     * body of every response
+     */
+    private static final byte[] BODY = "status=success\r\nmessage=ok\r\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * holds responses until released
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    /**
+     * installs a transport that answers once released
+     */
+    @Before
+    public void setUp() {
+        previous = RESTHandler.getTransport();
+        RESTHandler.setTransport((action, entry, headers, query) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Transport.Response() {
+                @Override
+                public int getCode() {
+                    return 200;
+                }
+
+                @Override
+                public String getMessage() {
+                    return "OK";
+                }
+
+                @Override
+                public String getContentType() {
+                    return "text/plain; charset=UTF-8";
+                }
+
+                @Override
+                public long getContentLength() {
+                    return BODY.length;
+                }
+
+                @Override
+                public String getHeader(final String name) {
+                    return headers.get(name);
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(BODY);
+                }
+
+                @Override
+                public void close() { }
+            };
+        });
+    }
+
+    /**
+     * restores the transport and releases any blocked request
+     */
+    @After
+    public void tearDown() {
+        release.countDown();
+        RESTHandler.setTransport(previous);
+    }
+
+    /**
+     * waits until a condition holds
+     * @param condition condition
+     * @throws InterruptedException if interrupted
+     */
+    private static void await(final BooleanSupplier condition)
+            throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * reads under a token
+     * @param token token
+     * @return future of the report
+     */
+    private static CompletableFuture<RESTReport> read(
+            final CancellationToken token) {
+        return CompletableFuture.supplyAsync(() -> {
+            final CancellationToken before = CancellationToken.bind(token);
+            try {
+                Map<String, String> attribs = new HashMap<>();
+                attribs.put("reporttype", "source");
+                attribs.put("action", "GET");
+                attribs.put("reportid", "shared-test");
+                return RESTHandler.apiRequestShared(
+                        RESTHandler.RestAction.POST,
+                        RESTHandler.REPORT_ENTRY_POINT, attribs);
+            } finally {
+                CancellationToken.bind(before);
+            }
+        });
+    }
+
+    /**
+     * tests that cancelling the caller that started a read ends only
+     * its own wait, and a caller that joined the read gets the result
+     * @throws Exception
+     */
+    @Test
+    public void testStarterCancelled() throws Exception {
+        SingleFlight<?, RESTReport> reads = RESTHandler.getSharedReads();
+        final long collapsed = reads.getCollapsed();
+        CancellationToken starter = new CancellationToken("starter");
+        CompletableFuture<RESTReport> first = read(starter);
+        await(() -> reads.getInFlight() == 1);
+        CompletableFuture<RESTReport> second =
+                read(CancellationToken.NONE);
+        await(() -> reads.getCollapsed() == collapsed + 1);
+
+        starter.cancel();
+        try {
+            first.get();
+            Assert.fail("cancelled caller got a result");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof CancellationException);
+        }
+        Assert.assertFalse(second.isDone());
+
+        release.countDown();
+        Assert.assertTrue(second.get().success());
+    }
+}
@@ -0,0 +1,57 @@
+package frontpage.test.backend.rest.RESTMetrics;
+
+
+import frontpage.backend.rest.EndpointMetrics;
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.RESTMetrics;
+import frontpage.backend.rest.Transport;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Tests the metrics recorded for api requests.</p>
+ */
+public class recordTest {
+    /**
+     * tests call, code and byte counts of requests answered by the
+     * loopback transport
+     */
+    @Test
+    public void testRecord() {
+        Transport previous = RESTHandler.getTransport();
+        RESTHandler.setTransport(new LoopbackTransport());
+        try {
+            EndpointMetrics m =
+                    RESTMetrics.get(RESTHandler.ACCOUNT_USER_ENTRY_POINT);
+            m.reset();
+
+            Map<String, String> attribs = new HashMap<>();
+            RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                    RESTHandler.ACCOUNT_USER_ENTRY_POINT, attribs);
+            attribs.put("email", "nobody@example.com");
+            attribs.put("tok", "tok");
+            attribs.put("property", "username");
+            RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                    RESTHandler.ACCOUNT_USER_ENTRY_POINT, attribs);
+
+            Assert.assertEquals(2, m.getCalls());
+            Assert.assertEquals(1, m.getErrors());
+            Assert.assertEquals(Long.valueOf(1),
+                    m.getResponseCodes().get(400));
+            Assert.assertEquals(Long.valueOf(1),
+                    m.getResponseCodes().get(200));
+            Assert.assertTrue(m.getBytesOut() > 0);
+            Assert.assertTrue(m.getBytesIn() > 0);
+            Assert.assertTrue(m.getP50Micros() <= m.getP99Micros());
+            Assert.assertTrue(m.getP99Micros() <= m.getMaxMicros());
+            Assert.assertTrue(RESTMetrics.dump().contains("user.php"));
+        } finally {
+            RESTHandler.setTransport(previous);
+        }
+    }
+}
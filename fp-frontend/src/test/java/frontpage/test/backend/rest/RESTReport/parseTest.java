@@ -0,0 +1,176 @@
+package frontpage.test.backend.rest.RESTReport;
+
+
+import frontpage.backend.rest.RESTReport;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @author willstuckey
+ * <p>Tests that the streaming parser produces the values the split
+ * based parser did.</p>
+ */
+public class parseTest {
+    /**
+     * creates a report from a body held in memory
+     * @param body body
+     * @return report
+     * @throws Exception if the report could not be created
+     */
+    private static RESTReport fromString(final String body) throws Exception {
+        Constructor<RESTReport> c = RESTReport.class.getDeclaredConstructor(
+                int.class, String.class, String.class);
+        c.setAccessible(true);
+        return c.newInstance(200, "OK", body);
+    }
+
+    /**
+     * creates a report from a streamed body
+     * @param body body
+     * @return report
+     * @throws Exception if the report could not be created
+     */
+    private static RESTReport fromReader(final String body) throws Exception {
+        Constructor<RESTReport> c = RESTReport.class.getDeclaredConstructor(
+                int.class, String.class, Reader.class);
+        c.setAccessible(true);
+        return c.newInstance(200, "OK", new StringReader(body));
+    }
+
+    /**
+     * tests a plain key value response
+     * @throws Exception
+     */
+    @Test
+    public void testHeaderOnly() throws Exception {
+        String body = "status=success\r\nmessage=a=b=c\r\ntoken=\r\n\r\n";
+        for (RESTReport r : new RESTReport[] {fromString(body),
+                fromReader(body)}) {
+            Map<String, String>[] values = r.getResponseValues();
+            Assert.assertEquals(1, values.length);
+            Assert.assertFalse(r.isDynamicData());
+            Assert.assertEquals("success", values[0].get("status"));
+            Assert.assertEquals("abc", values[0].get("message"));
+            Assert.assertEquals("", values[0].get("token"));
+            Assert.assertEquals(3, values[0].size());
+        }
+    }
+
+    /**
+     * tests a variable payload response, including a header line
+     * preceding the announcement and a field containing '='
+     * @throws Exception
+     */
+    @Test
+    public void testVariablePayload() throws Exception {
+        String body = "status=success\r\n"
+                + "variablepayload=3\r\n"
+                + "--- BEGIN ---\r\n"
+                + "0:reportid=1|type=WASTE|location=a=b|\r\n"
+                + "1:reportid=2|type=CLEAR\r\n"
+                + "--- END ---\r\n";
+        for (RESTReport r : new RESTReport[] {fromString(body),
+                fromReader(body)}) {
+            Map<String, String>[] values = r.getResponseValues();
+            Assert.assertEquals(4, values.length);
+            Assert.assertTrue(r.isDynamicData());
+            Assert.assertEquals("success", values[0].get("status"));
+            Assert.assertEquals("3", values[0].get("variablepayload"));
+            Assert.assertEquals("0", values[1].get("index"));
+            Assert.assertEquals("1", values[1].get("reportid"));
+            Assert.assertEquals("ab", values[1].get("location"));
+            Assert.assertEquals(4, values[1].size());
+            Assert.assertEquals("CLEAR", values[2].get("type"));
+            Assert.assertNull(values[3]);
+        }
+    }
+
+    /**
+     * tests that streamed entries go to the consumer and are not
+     * retained
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRowConsumer() throws Exception {
+        String body = "status=success\r\n"
+                + "variablepayload=2\r\n"
+                + "--- BEGIN ---\r\n"
+                + "0:reportid=1\r\n"
+                + "1:reportid=2\r\n"
+                + "--- END ---\r\n";
+        Constructor<RESTReport> c = RESTReport.class.getDeclaredConstructor(
+                int.class, String.class, Reader.class, Consumer.class);
+        c.setAccessible(true);
+        List<Map<String, String>> rows = new ArrayList<>();
+        Consumer<Map<String, String>> consumer = rows::add;
+        RESTReport r = c.newInstance(200, "OK", new StringReader(body),
+                consumer);
+        Assert.assertEquals(1, r.getResponseValues().length);
+        Assert.assertTrue(r.isDynamicData());
+        Assert.assertTrue(r.success());
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals("2", rows.get(1).get("reportid"));
+        Assert.assertEquals("1", rows.get(1).get("index"));
+    }
+
+    /**
+     * tests that a lazily decoded report matches the eager one
+     * @throws Exception
+     */
+    @Test
+    public void testLazy() throws Exception {
+        String body = "variablepayload=3\r\n"
+                + "--- BEGIN ---\r\n"
+                + "0:reportid=1|type=WASTE\r\n"
+                + "1:reportid=2|type=CLEAR|message=row\r\n"
+                + "--- END ---\r\n"
+                + "status=success\r\n";
+        Method lazy = RESTReport.class.getDeclaredMethod("lazy",
+                int.class, String.class, String.class);
+        lazy.setAccessible(true);
+        RESTReport r = (RESTReport) lazy.invoke(null, 200, "OK", body);
+        RESTReport eager = fromString(body);
+        Assert.assertTrue(r.success());
+        Assert.assertTrue(r.isDynamicData());
+        Assert.assertEquals(2, r.getEntryCount());
+        Assert.assertEquals("CLEAR", r.getEntry(1).get("type"));
+        Assert.assertEquals("row", r.getResponseValue("message"));
+        Assert.assertSame(r.getEntry(1), r.getResponseValues()[2]);
+        Assert.assertArrayEquals(eager.getResponseValues(),
+                r.getResponseValues());
+    }
+
+    /**
+     * tests that markers are ordinary lines without an announcement
+     * @throws Exception
+     */
+    @Test
+    public void testMarkersWithoutPayload() throws Exception {
+        String body = "--- BEGIN ---\r\n0:a=b\r\n--- END ---";
+        Map<String, String>[] values = fromString(body).getResponseValues();
+        Assert.assertEquals(1, values.length);
+        Assert.assertEquals("", values[0].get("--- BEGIN ---"));
+        Assert.assertEquals("b", values[0].get("0:a"));
+    }
+
+    /**
+     * tests that an empty body yields one empty key
+     * @throws Exception
+     */
+    @Test
+    public void testEmptyBody() throws Exception {
+        Map<String, String>[] values = fromString("").getResponseValues();
+        Assert.assertEquals(1, values.length);
+        Assert.assertEquals("", values[0].get(""));
+    }
+}
@@ -0,0 +1,83 @@
+package frontpage.test.backend.rest.RequestScheduler;
+
+
+import frontpage.backend.rest.RequestScheduler;
+import frontpage.backend.rest.RequestScheduler.Priority;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author willstuckey
+ * <p>Tests that background traffic cannot hold up interactive requests.</p>
+ */
+public class submitTest {
+    /**
+     * tests that an interactive request runs while the background
+     * class is saturated, and that queued background work completes
+     * @throws Exception
+     */
+    @Test
+    public void testInteractiveNotStarved() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Integer>> background = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            final int n = i;
+            background.add(RequestScheduler.submit(Priority.BACKGROUND,
+                    () -> {
+                        release.await();
+                        return n;
+                    }));
+        }
+
+        Assert.assertTrue(RequestScheduler.getBackgroundQueueDepth() > 0);
+        String r = RequestScheduler.submit(Priority.INTERACTIVE,
+                () -> "interactive").get(1, TimeUnit.SECONDS);
+        Assert.assertEquals("interactive", r);
+
+        release.countDown();
+        for (int i = 0; i < background.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(i),
+                    background.get(i).get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(
+                RequestScheduler.getStarted(Priority.BACKGROUND) >= 12);
+        Assert.assertTrue(
+                RequestScheduler.getWaitMaxMicros(Priority.BACKGROUND) > 0);
+    }
+
+    /**
+     * tests that a cancelled background request never runs
+     * @throws Exception
+     */
+    @Test
+    public void testCancelQueued() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Object>> blockers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            blockers.add(RequestScheduler.submit(Priority.BACKGROUND,
+                    () -> {
+                        release.await();
+                        return null;
+                    }));
+        }
+
+        boolean[] ran = new boolean[1];
+        CompletableFuture<Object> f = RequestScheduler.submit(
+                Priority.BACKGROUND, () -> {
+                    ran[0] = true;
+                    return null;
+                });
+        Assert.assertTrue(f.cancel(true));
+        release.countDown();
+        for (CompletableFuture<Object> b : blockers) {
+            b.get(10, TimeUnit.SECONDS);
+        }
+        Assert.assertFalse(ran[0]);
+    }
+}
@@ -0,0 +1,102 @@
+package frontpage.test.backend.rest.SingleFlight;
+
+
+import frontpage.backend.rest.SingleFlight;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author willstuckey
+ * <p>Tests that concurrent identical calls share one execution.</p>
+ */
+public class executeTest {
+    /**
+     * waits until a condition holds
+     * @param condition condition
+     * @throws InterruptedException if interrupted
+     */
+    private static void await(final BooleanSupplier condition)
+            throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * tests that a call arriving during a flight shares its result
+     * @throws Exception
+     */
+    @Test
+    public void testCollapsed() throws Exception {
+        SingleFlight<String, Object> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<Object> first = CompletableFuture.supplyAsync(
+                () -> flight.execute("k", () -> {
+                    runs.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return new Object();
+                }));
+        await(() -> flight.getInFlight() == 1);
+        CompletableFuture<Object> second = CompletableFuture.supplyAsync(
+                () -> flight.execute("k", () -> {
+                    runs.incrementAndGet();
+                    return new Object();
+                }));
+        await(() -> flight.getCollapsed() == 1);
+        release.countDown();
+
+        Assert.assertSame(first.get(), second.get());
+        Assert.assertEquals(1, runs.get());
+        Assert.assertEquals(1, flight.getLeaders());
+        Assert.assertEquals(0, flight.getInFlight());
+    }
+
+    /**
+     * tests that failures are shared and that a finished flight is not
+     * reused
+     * @throws Exception
+     */
+    @Test
+    public void testFailureNotCached() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(
+                () -> flight.execute("k", () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    throw new IllegalArgumentException("down");
+                }));
+        await(() -> flight.getInFlight() == 1);
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(
+                () -> flight.execute("k", () -> "unused"));
+        await(() -> flight.getCollapsed() == 1);
+        release.countDown();
+
+        for (CompletableFuture<String> f : new CompletableFuture[] {first,
+                second}) {
+            try {
+                f.get();
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(
+                        e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+        Assert.assertEquals("up", flight.execute("k", () -> "up"));
+        Assert.assertEquals(2, flight.getLeaders());
+    }
+}
@@ -0,0 +1,63 @@
+package frontpage.test.backend.rest.TokenBucket;
+
+
+import frontpage.backend.rest.TokenBucket;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * @author willstuckey
+ * <p>Tests the token bucket rate limiter.</p>
+ */
+public class tryAcquireTest {
+    /**
+     * creates a bucket
+     * @param perSecond tokens added per second
+     * @param burst most tokens held
+     * @return bucket
+     * @throws Exception if the bucket could not be created
+     */
+    private static TokenBucket bucket(final double perSecond,
+                                      final int burst) throws Exception {
+        Constructor<TokenBucket> c =
+                TokenBucket.class.getDeclaredConstructor(double.class,
+                        int.class);
+        c.setAccessible(true);
+        return c.newInstance(perSecond, burst);
+    }
+
+    /**
+     * tests that a full bucket allows a burst and then refills
+     * @throws Exception
+     */
+    @Test
+    public void testBurstThenRefill() throws Exception {
+        TokenBucket tb = bucket(100, 3);
+        Assert.assertTrue(tb.tryAcquire());
+        Assert.assertTrue(tb.tryAcquire());
+        Assert.assertTrue(tb.tryAcquire());
+        Assert.assertFalse(tb.tryAcquire());
+
+        long wait = tb.nanosUntilAvailable();
+        Assert.assertTrue(wait > 0);
+        Assert.assertTrue(wait <= 10 * 1000 * 1000);
+        Thread.sleep(wait / (1000 * 1000) + 5);
+        Assert.assertTrue(tb.tryAcquire());
+    }
+
+    /**
+     * tests that a bucket without a rate never limits
+     * @throws Exception
+     */
+    @Test
+    public void testUnlimited() throws Exception {
+        TokenBucket tb = bucket(0, 1);
+        Assert.assertFalse(tb.isLimited());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(tb.tryAcquire());
+        }
+        Assert.assertEquals(0, tb.nanosUntilAvailable());
+    }
+}
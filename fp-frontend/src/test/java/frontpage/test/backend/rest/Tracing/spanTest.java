@@ -0,0 +1,133 @@
+package frontpage.test.backend.rest.Tracing;
+
+
+import frontpage.backend.rest.LoopbackTransport;
+import frontpage.backend.rest.RESTHandler;
+import frontpage.backend.rest.Transport;
+import frontpage.bind.trace.Span;
+import frontpage.bind.trace.Tracing;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Tests trace propagation from an action to the loopback server.</p>
+ */
+public class spanTest {
+    /**
+     * transport in place before the test
+     */
+    private Transport previous;
+
+    /**
+     * installs a fresh loopback transport
+     */
+    @Before
+    public void setUp() {
+        previous = RESTHandler.getTransport();
+        RESTHandler.setTransport(new LoopbackTransport());
+    }
+
+    /**
+     * restores the previous transport
+     */
+    @After
+    public void tearDown() {
+        RESTHandler.setTransport(previous);
+    }
+
+    /**
+     * finds the last recorded span with a parent
+     * @param parent parent span
+     * @return span, null if none
+     */
+    private static Span childOf(final Span parent) {
+        Span ret = null;
+        for (Span s : Tracing.snapshot()) {
+            if (parent.getSpanId().equals(s.getParentId())) {
+                ret = s;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * tests that spans nest and restore the current span
+     */
+    @Test
+    public void testNesting() {
+        Assert.assertNull(Tracing.current());
+        try (Span root = Tracing.startTrace("action")) {
+            try (Span child = Tracing.span("child")) {
+                Assert.assertSame(child, Tracing.current());
+                Assert.assertEquals(root.getTraceId(), child.getTraceId());
+                Assert.assertEquals(root.getSpanId(), child.getParentId());
+            }
+            Assert.assertSame(root, Tracing.current());
+        }
+        Assert.assertNull(Tracing.current());
+    }
+
+    /**
+     * tests that an api request joins the trace and is echoed
+     * @throws Exception
+     */
+    @Test
+    public void testRequestTraced() throws Exception {
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("email", "nobody@example.com");
+        attribs.put("password", "wrong");
+        Span root;
+        try (Span s = Tracing.startTrace("login")) {
+            root = s;
+            RESTHandler.apiRequest(RESTHandler.RestAction.POST,
+                    RESTHandler.ACCOUNT_AUTH_ENTRY_POINT, attribs);
+        }
+
+        Span request = childOf(root);
+        Assert.assertNotNull(request);
+        Assert.assertEquals(root.getTraceId(), request.getTraceId());
+        Assert.assertFalse(request.getStatus().contains("untraced"));
+        Assert.assertTrue(request.getDurationNanos() >= 0);
+
+        Path file = Files.createTempFile("trace", ".tsv");
+        try {
+            int n = Tracing.export(file);
+            List<String> lines = Files.readAllLines(file);
+            Assert.assertEquals(n + 1, lines.size());
+            Assert.assertTrue(lines.get(0).startsWith("trace\t"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * tests that a shared read run on another thread joins the trace of
+     * its caller
+     */
+    @Test
+    public void testSharedReadTraced() {
+        Map<String, String> attribs = new HashMap<>();
+        attribs.put("email", "nobody@example.com");
+        attribs.put("password", "wrong");
+        Span root;
+        try (Span s = Tracing.startTrace("shared login")) {
+            root = s;
+            RESTHandler.apiRequestShared(RESTHandler.RestAction.POST,
+                    RESTHandler.ACCOUNT_AUTH_ENTRY_POINT, attribs);
+        }
+
+        Span read = childOf(root);
+        Assert.assertNotNull(read);
+        Assert.assertEquals(root.getTraceId(), read.getTraceId());
+        Assert.assertNotNull(childOf(read));
+    }
+}
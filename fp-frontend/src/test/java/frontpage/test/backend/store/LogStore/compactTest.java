@@ -0,0 +1,111 @@
+package frontpage.test.backend.store.LogStore;
+
+
+import frontpage.backend.store.LogStore;
+import frontpage.backend.user.LocalUserManager;
+import frontpage.bind.GlobalProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @author willstuckey
+ * <p>Tests a failing compaction is retried less and less often.</p>
+ */
+public class compactTest {
+    /**
+     * directory holding the log
+     */
+    private Path dir;
+
+    /**
+     * file compactions are written to
+     */
+    private Path compact;
+
+    /**
+     * users
+     */
+    private LocalUserManager users;
+
+    /**
+     * store
+     */
+    private LogStore store;
+
+    /**
+     * opens a store compacting every 20 records
+     * @throws IOException
+     */
+    @Before
+    public void setUp() throws IOException {
+        GlobalProperties.getProperties().setProperty(
+                "local-store-compact-records", "20");
+        dir = Files.createTempDirectory("logstore");
+        compact = dir.resolve("local.log.compact");
+        users = new LocalUserManager();
+        store = new LogStore(dir.resolve("local.log"));
+        users.attach(store);
+        store.open();
+    }
+
+    /**
+     * closes the store, removes the log directory and restores the
+     * properties
+     * @throws IOException
+     */
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        GlobalProperties.getProperties().setProperty(
+                "local-store-compact-records", "10000");
+        Files.deleteIfExists(compact.resolve("blocker"));
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * adds users until a number of records has been written
+     * @param records records
+     * @throws Exception
+     */
+    private void writeUntil(final long records) throws Exception {
+        while (store.getRecords() < records) {
+            String name = "user" + store.getRecords();
+            users.createUser(name, "pass", name + "@test.com", "Log",
+                    "Store", "USER");
+        }
+    }
+
+    /**
+     * tests a compaction that cannot write its snapshot backs off
+     * instead of being retried after every batch, and that the store
+     * compacts again once it can
+     * @throws Exception
+     */
+    @Test
+    public void testBackoff() throws Exception {
+        Files.createDirectory(compact);
+        Files.createFile(compact.resolve("blocker"));
+        writeUntil(200);
+        Assert.assertEquals(0, store.getCompactions());
+        Assert.assertTrue(store.getFailedCompactions() > 0);
+        Assert.assertTrue(store.getFailedCompactions() <= 4);
+
+        Files.delete(compact.resolve("blocker"));
+        Files.delete(compact);
+        writeUntil(1000);
+        Assert.assertTrue(store.getCompactions() > 0);
+        Assert.assertEquals(0, store.getFailedCompactions());
+    }
+}
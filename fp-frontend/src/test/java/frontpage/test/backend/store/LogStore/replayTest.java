@@ -0,0 +1,245 @@
+package frontpage.test.backend.store.LogStore;
+
+
+import frontpage.backend.profile.LocalProfileManager;
+import frontpage.backend.report.LocalSourceReportManager;
+import frontpage.backend.store.LogStore;
+import frontpage.backend.user.LocalUserManager;
+import frontpage.bind.GlobalProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author willstuckey
+ * <p>Tests the local backend survives a restart through the log.</p>
+ */
+public class replayTest {
+    /**
+     * email of the test user
+     */
+    private static final String EMAIL = "store@test.com";
+
+    /**
+     * token of the test user
+     */
+    private static final String TOK = "pass";
+
+    /**
+     * directory holding the log
+     */
+    private Path dir;
+
+    /**
+     * log file
+     */
+    private Path file;
+
+    /**
+     * creates a log directory
+     * @throws IOException
+     */
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("logstore");
+        file = dir.resolve("local.log");
+    }
+
+    /**
+     * removes the log directory and restores the properties
+     * @throws IOException
+     */
+    @After
+    public void tearDown() throws IOException {
+        GlobalProperties.getProperties().setProperty(
+                "local-store-compact-records", "10000");
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * managers sharing one store, as the local backend wires them
+     */
+    private static final class Local {
+        /**
+         * users
+         */
+        private final LocalUserManager users = new LocalUserManager();
+
+        /**
+         * profiles
+         */
+        private final LocalProfileManager profiles =
+                new LocalProfileManager();
+
+        /**
+         * source reports
+         */
+        private final LocalSourceReportManager sources =
+                new LocalSourceReportManager();
+
+        /**
+         * store
+         */
+        private final LogStore store;
+
+        /**
+         * opens a store and replays it into fresh managers
+         * @param file log file
+         * @throws IOException
+         */
+        private Local(final Path file) throws IOException {
+            LocalProfileManager.setLum(users);
+            LocalSourceReportManager.setLum(users);
+            store = new LogStore(file);
+            users.attach(store);
+            profiles.attach(store);
+            sources.attach(store);
+            store.open();
+        }
+    }
+
+    /**
+     * tests users, profiles and reports are replayed after a restart
+     * @throws Exception
+     */
+    @Test
+    public void testReplay() throws Exception {
+        Local before = new Local(file);
+        before.users.createUser("store", TOK, EMAIL, "Log", "Store", "USER");
+        Map<String, String> profile = new HashMap<>();
+        profile.put("city", "Atlanta");
+        before.profiles.setProfile(EMAIL, TOK, profile);
+        String kept = before.sources.addSourceReport(EMAIL, TOK);
+        String gone = before.sources.addSourceReport(EMAIL, TOK);
+        Map<String, String> props = new HashMap<>();
+        props.put("type", "LAKE");
+        before.sources.updateSourceReport(EMAIL, TOK, kept, props);
+        before.sources.deleteSourceReport(EMAIL, TOK, gone);
+        before.store.close();
+
+        Local after = new Local(file);
+        try {
+            Assert.assertEquals(TOK,
+                    after.users.authenticateUser(EMAIL, TOK));
+            Assert.assertEquals("Atlanta",
+                    after.profiles.getProfile(EMAIL, TOK).get("city"));
+            Assert.assertEquals(1, after.sources.getSourceReports(0).length);
+            Assert.assertEquals("LAKE",
+                    after.sources.getSourceReport(kept).get("type"));
+        } finally {
+            after.store.close();
+        }
+    }
+
+    /**
+     * tests a torn record at the end of the log is dropped on replay
+     * @throws Exception
+     */
+    @Test
+    public void testTornTail() throws Exception {
+        Local before = new Local(file);
+        before.users.createUser("store", TOK, EMAIL, "Log", "Store", "USER");
+        String id = before.sources.addSourceReport(EMAIL, TOK);
+        before.store.close();
+        long intact = Files.size(file);
+
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer torn = ByteBuffer.allocate(12);
+            torn.putInt(100);
+            torn.putInt(0);
+            torn.putInt(0);
+            torn.flip();
+            ch.write(torn);
+        }
+
+        Local after = new Local(file);
+        try {
+            Assert.assertEquals(intact, Files.size(file));
+            Assert.assertNotNull(after.sources.getSourceReport(id));
+            after.sources.addSourceReport(EMAIL, TOK);
+        } finally {
+            after.store.close();
+        }
+
+        Local again = new Local(file);
+        try {
+            Assert.assertEquals(2, again.sources.getSourceReports(0).length);
+        } finally {
+            again.store.close();
+        }
+    }
+
+    /**
+     * tests concurrent writers share fsyncs and the log is compacted
+     * without losing state
+     * @throws Exception
+     */
+    @Test
+    public void testGroupCommitAndCompaction() throws Exception {
+        GlobalProperties.getProperties().setProperty(
+                "local-store-compact-records", "50");
+        final int writers = 4;
+        final int updates = 100;
+        final Local before = new Local(file);
+        before.users.createUser("store", TOK, EMAIL, "Log", "Store", "USER");
+        final String id = before.sources.addSourceReport(EMAIL, TOK);
+
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                final int writer = w;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < updates; i++) {
+                        Map<String, String> props = new HashMap<>();
+                        props.put("name", writer + "-" + i);
+                        before.sources.updateSourceReport(EMAIL, TOK, id,
+                                props);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        String last = before.sources.getSourceReport(id).get("name");
+        before.store.close();
+        Assert.assertTrue(before.store.getCompactions() > 0);
+        Assert.assertTrue(before.store.getBatches()
+                <= before.store.getRecords());
+
+        Local after = new Local(file);
+        try {
+            Assert.assertEquals(last,
+                    after.sources.getSourceReport(id).get("name"));
+        } finally {
+            after.store.close();
+        }
+    }
+}
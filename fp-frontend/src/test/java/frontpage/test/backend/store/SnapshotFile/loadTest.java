@@ -0,0 +1,239 @@
+package frontpage.test.backend.store.SnapshotFile;
+
+
+import frontpage.backend.report.LocalSourceReportManager;
+import frontpage.backend.store.LogStore;
+import frontpage.backend.user.LocalUserManager;
+import frontpage.bind.GlobalProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author willstuckey
+ * <p>Tests reports read lazily from a mapped snapshot.</p>
+ */
+public class loadTest {
+    /**
+     * email of the test user
+     */
+    private static final String EMAIL = "snapshot@test.com";
+
+    /**
+     * token of the test user
+     */
+    private static final String TOK = "pass";
+
+    /**
+     * number of reports written before the restart
+     */
+    private static final int REPORTS = 60;
+
+    /**
+     * directory holding the log
+     */
+    private Path dir;
+
+    /**
+     * log file
+     */
+    private Path file;
+
+    /**
+     * creates a log directory and compacts early
+     * @throws IOException
+     */
+    @Before
+    public void setUp() throws IOException {
+        GlobalProperties.getProperties().setProperty(
+                "local-store-compact-records", "20");
+        dir = Files.createTempDirectory("snapshot");
+        file = dir.resolve("local.log");
+    }
+
+    /**
+     * removes the log directory and restores the properties
+     * @throws IOException
+     */
+    @After
+    public void tearDown() throws IOException {
+        GlobalProperties.getProperties().setProperty(
+                "local-store-compact-records", "10000");
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * opens a store and loads it into fresh managers
+     * @param users user manager
+     * @param sources source report manager
+     * @return store
+     * @throws IOException
+     */
+    private LogStore open(final LocalUserManager users,
+                          final LocalSourceReportManager sources)
+            throws IOException {
+        LocalSourceReportManager.setLum(users);
+        LogStore store = new LogStore(file);
+        users.attach(store);
+        sources.attach(store);
+        store.open();
+        return store;
+    }
+
+    /**
+     * tests reports from the snapshot are found, listed in order and
+     * can be changed, and that the changes survive another restart
+     * @throws Exception
+     */
+    @Test
+    public void testLoad() throws Exception {
+        LocalUserManager users = new LocalUserManager();
+        LocalSourceReportManager sources = new LocalSourceReportManager();
+        LogStore store = open(users, sources);
+        users.createUser("snap", TOK, EMAIL, "Snap", "Shot", "USER");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < REPORTS; i++) {
+            String id = sources.addSourceReport(EMAIL, TOK);
+            Map<String, String> props = new HashMap<>();
+            props.put("name", "report-" + i);
+            if (i % 2 == 0) {
+                props.put("type", "LAKE");
+            } else {
+                props.put("type", "WELL");
+            }
+            sources.updateSourceReport(EMAIL, TOK, id, props);
+            ids.add(id);
+        }
+        store.close();
+        Assert.assertTrue(store.getCompactions() > 0);
+        Assert.assertTrue(Files.exists(
+                dir.resolve("local.log.snap." + store.getGeneration())));
+        int snapshots = 0;
+        try (DirectoryStream<Path> ds =
+                     Files.newDirectoryStream(dir, "local.log.snap*")) {
+            for (Path p : ds) {
+                snapshots++;
+            }
+        }
+        Assert.assertEquals(1, snapshots);
+
+        users = new LocalUserManager();
+        sources = new LocalSourceReportManager();
+        store = open(users, sources);
+        try {
+            Assert.assertTrue(store.getGeneration() > 0);
+            Assert.assertEquals(TOK, users.authenticateUser(EMAIL, TOK));
+            Assert.assertEquals("report-7",
+                    sources.getSourceReport(ids.get(7)).get("name"));
+
+            Map<String, String>[] all = sources.getSourceReports(0);
+            Assert.assertEquals(REPORTS, all.length);
+            for (int i = 0; i < REPORTS; i++) {
+                Assert.assertEquals(ids.get(i), all[i].get("reportid"));
+            }
+            Map<String, String>[] last = sources.getSourceReports(3);
+            Assert.assertEquals(ids.get(REPORTS - 1), last[2].get("reportid"));
+
+            Map<String, String> query = new HashMap<>();
+            query.put("type", "LAKE");
+            Assert.assertEquals(REPORTS / 2,
+                    sources.getSourceReports(query, null).length);
+
+            Map<String, String> props = new HashMap<>();
+            props.put("type", "WELL");
+            sources.updateSourceReport(EMAIL, TOK, ids.get(0), props);
+            sources.deleteSourceReport(EMAIL, TOK, ids.get(2));
+            Assert.assertEquals(REPORTS / 2 - 2,
+                    sources.getSourceReports(query, null).length);
+            Assert.assertEquals(REPORTS - 1,
+                    sources.getSourceReports(0).length);
+        } finally {
+            store.close();
+        }
+
+        users = new LocalUserManager();
+        sources = new LocalSourceReportManager();
+        store = open(users, sources);
+        try {
+            Assert.assertEquals("WELL",
+                    sources.getSourceReport(ids.get(0)).get("type"));
+            Map<String, String>[] all = sources.getSourceReports(0);
+            Assert.assertEquals(REPORTS - 1, all.length);
+            Assert.assertEquals(ids.get(0), all[0].get("reportid"));
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * tests that a report from the snapshot is still found by an indexed
+     * search once a column it is not searched on changes, both as
+     * updated and as replayed from the log after a restart
+     * @throws Exception
+     */
+    @Test
+    public void testIndexedAfterChange() throws Exception {
+        LocalUserManager users = new LocalUserManager();
+        LocalSourceReportManager sources = new LocalSourceReportManager();
+        LogStore store = open(users, sources);
+        users.createUser("snap", TOK, EMAIL, "Snap", "Shot", "USER");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < REPORTS; i++) {
+            String id = sources.addSourceReport(EMAIL, TOK);
+            Map<String, String> props = new HashMap<>();
+            props.put("type", "WELL");
+            if (i == 0) {
+                props.put("type", "BOTTLED");
+            }
+            sources.updateSourceReport(EMAIL, TOK, id, props);
+            ids.add(id);
+        }
+        store.close();
+
+        Map<String, String> query = new HashMap<>();
+        query.put("type", "BOTTLED");
+        users = new LocalUserManager();
+        sources = new LocalSourceReportManager();
+        store = open(users, sources);
+        try {
+            Assert.assertEquals(1,
+                    sources.getSourceReports(query, null).length);
+            Map<String, String> props = new HashMap<>();
+            props.put("location", "33.7,-84.4");
+            sources.updateSourceReport(EMAIL, TOK, ids.get(0), props);
+            Map<String, String>[] found =
+                    sources.getSourceReports(query, null);
+            Assert.assertEquals(1, found.length);
+            Assert.assertEquals("33.7,-84.4", found[0].get("location"));
+        } finally {
+            store.close();
+        }
+
+        users = new LocalUserManager();
+        sources = new LocalSourceReportManager();
+        store = open(users, sources);
+        try {
+            Map<String, String>[] found =
+                    sources.getSourceReports(query, null);
+            Assert.assertEquals(1, found.length);
+            Assert.assertEquals(ids.get(0), found[0].get("reportid"));
+        } finally {
+            store.close();
+        }
+    }
+}
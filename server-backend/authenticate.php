@@ -1,4 +1,6 @@
 <?php
+include 'util/trace.php';
+include 'util/deadline.php';
 include 'creds.php';
 error_reporting(E_ALL);
 
@@ -5,9 +5,21 @@
  * Date: 10/10/16
  * Time: 3:45 PM
  */
+include 'util/trace.php';
+include 'util/deadline.php';
 include 'creds.php';
 include 'authentication_check.php';
 
+/**
+ * largest number of operations accepted in one BATCH request
+ */
+$max_batch_ops = 64;
+
+/**
+ * largest number of reports in one page of a listing
+ */
+$max_page_size = 500;
+
 try {
     $dbcon = new PDO($pdoserverstr, $dbusername, $dbpassword);
     $dbcon->setAttribute(PDO::ATTR_EMULATE_PREPARES, false);
@@ -17,493 +29,577 @@ try {
     exit;
 }
 
-if (!(isset($_POST["reporttype"]) && isset($_POST["action"]))) {
-    http_response_code(400);
-    exit;
-}
-
-$reporttype = $_POST["reporttype"];
-$action = $_POST["action"];
-if (empty($reporttype) || empty($action)) {
-    http_response_code(400);
-    exit;
+/**
+ * builds a failed result
+ * @param $code http status for single requests
+ * @param $message failure message
+ * @return array
+ */
+function failed($code, $message) {
+    return array(
+        "code" => $code,
+        "fields" => array("status" => "failed", "message" => $message)
+    );
 }
 
-$email = "";
-$tok = "";
-if ($action != "GET") {
-    if (!(isset($_POST["email"]) && isset($_POST["tok"]))) {
-        http_response_code(400);
-        exit;
+/**
+ * looks up a username, caching across the operations of a request
+ * @param $dbcon
+ * @param $id user id
+ * @return string
+ */
+function lookupUsername($dbcon, $id) {
+    static $usernames = array();
+    if (!array_key_exists($id, $usernames)) {
+        $pdounstmt = "SELECT * FROM users WHERE id = :id";
+        $unstmt = $dbcon->prepare($pdounstmt);
+        $unstmt->bindParam(":id", $id);
+        $unstmt->execute();
+        $unrow = $unstmt->fetch(PDO::FETCH_ASSOC);
+        $usernames[$id] = $unrow["username"];
     }
+    return $usernames[$id];
+}
 
-    $email = $_POST["email"];
-    $tok = $_POST["tok"];
-    if (empty($email) || empty($tok)) {
-        http_response_code(400);
-        exit;
+/**
+ * builds the filter of a listing from its q_<field> and qop_<field>
+ * parameters, which hold the value and the operator of a clause as
+ * ReportQuery describes. EQ matches the value, a blank value matching
+ * blank columns. CONTAINS matches every comma separated term in
+ * location, or name of source reports, ignoring case. RANGE takes
+ * "lower,upper" for reportdt or the ppm columns of purity reports and
+ * matches [lower, upper), either bound blank for none. Columns are taken
+ * from a fixed list per report type and every value is bound, so the
+ * filter is safe to append to a statement.
+ * @param $reporttype source or purity
+ * @param $params submitted properties
+ * @return array with the sql to append and the values to bind, or a
+ *         failed result
+ */
+function buildQuery($reporttype, $params) {
+    // fields are named as in the listing and ReportQuery, the source
+    // report of a purity report also by the column it is stored in
+    if ($reporttype == "source") {
+        $owner = "id";
+        $columns = array("id" => "id", "reportid" => "reportid",
+            "reportdt" => "reportdt", "location" => "location",
+            "type" => "type", "cond" => "cond", "name" => "name",
+            "description" => "description");
+        $text = array("location", "name");
+        $ranged = array("reportdt");
+    } else {
+        $owner = "userid";
+        $columns = array("userid" => "userid", "sourceid" => "sourcerptid",
+            "sourcerptid" => "sourcerptid", "reportid" => "reportid",
+            "reportdt" => "reportdt", "location" => "location",
+            "cond" => "cond", "virusppm" => "virusppm",
+            "contaminantppm" => "contaminantppm");
+        $text = array("location");
+        $ranged = array("reportdt", "virusppm", "contaminantppm");
     }
+    $numeric = array("virusppm", "contaminantppm");
 
-    //TODO: probably move auth here...
-}
-
-if ($reporttype == "source") {
-    if ($action == "GET") {
-        if (isset($_POST["reportid"]) && !empty($_POST["reportid"])) {
-            try {
-                $reportid = $_POST["reportid"];
-                if ($reportid == "ALL") {
-                    $pdostmt = "SELECT * FROM sourcereports";
-                    $stmt = $dbcon->prepare($pdostmt);
-                    $pdocntstmt = "SELECT count(*) FROM sourcereports";
-                    $cntstmt = $dbcon->prepare($pdocntstmt);
-                } else {
-                    $pdostmt = "SELECT * FROM sourcereports WHERE reportid = :reportid";
-                    $stmt = $dbcon->prepare($pdostmt);
-                    $stmt->bindParam(":reportid", $reportid);
-                    $pdocntstmt = "SELECT count(*) FROM sourcereports WHERE reportid = :reportid";
-                    $cntstmt = $dbcon->prepare($pdocntstmt);
-                    $cntstmt->bindParam(":reportid", $reportid);
-                }
-                $stmt->execute();
-                $cntstmt->execute();
-                $count = $cntstmt->fetchColumn();
-
-                echo "status=success\r\n";
-                echo "message=fetched report\r\n";
-                echo "variablepayload=" . $count . "\r\n";
-                echo "--- BEGIN ---\r\n";
-                $resultnum = 1;
-                while ($row = $stmt->fetch(PDO::FETCH_ASSOC, PDO::FETCH_ORI_NEXT)) {
-                    $id = $row["id"];
-                    $pdounstmt = "SELECT * FROM users WHERE id = :id";
-                    $unstmt = $dbcon->prepare($pdounstmt);
-                    $unstmt->bindParam(":id", $id);
-                    $unstmt->execute();
-                    $unrow = $unstmt->fetch(PDO::FETCH_ASSOC);
-                    $username = $unrow["username"];
-
-                    echo "" . $resultnum . ":";
-                    echo "username=" . $username . "|";
-                    echo "id=" . $id . "|";
-                    echo "reportid=" . $row["reportid"] . "|";
-                    echo "reportdt=" . $row["reportdt"] . "|";
-                    echo "location=" . $row["location"] . "|";
-                    echo "type=" . $row["type"] . "|";
-                    echo "cond=" . $row["cond"] . "|";
-                    echo "name=" . $row["name"] . "|";
-                    echo "description=" . $row["description"];
-                    echo "\r\n";
-                    $resultnum++;
-                }
-                echo "--- END ---\r\n";
-            } catch (PDOException $e) {
-                http_response_code(500);
-                exit;
-            }
-        } else {
-            // search indexing
-        }
-    } else if ($action == "ADD") {
-        if (!isAuthenticated($email, $tok)) {
-            http_response_code(401);
-            exit;
+    $sql = "";
+    $binds = array();
+    foreach ($params as $key => $value) {
+        if (strpos($key, "q_") !== 0) {
+            continue;
         }
 
-        try {
-            $pdostmt = "SELECT * FROM users WHERE email = :email";
-            $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":email", $email);
-            $stmt->execute();
-            $row = $stmt->fetch(PDO::FETCH_ASSOC);
-            $id = $row["id"];
-            $username = $row["username"];
-
-            $reportid = uniqid("", TRUE);
-            $pdostmt = "INSERT INTO sourcereports "
-                . "(id, reportid) "
-                . "VALUES "
-                . "(:id, :reportid)";
-            $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":id", $id);
-            $stmt->bindParam(":reportid", $reportid);
-            $stmt->execute();
-
-            echo "status=success\r\n";
-            echo "message=void source report created\r\n";
-            echo "submitter=" . $username . "\r\n";
-            echo "reportid=" . $reportid . "\r\n";
-        } catch (PDOException $e) {
-            //http_response_code(500);
-            echo $e;
-            exit;
-        }
-    } else if ($action == "UPDATE") {
-        if (!(isset($_POST["reportid"]))) {
-            http_response_code(400);
-            exit;
+        $field = substr($key, 2);
+        $op = "EQ";
+        if (isset($params["qop_" . $field])) {
+            $op = strtoupper($params["qop_" . $field]);
         }
 
-        $reportid = $_POST["reportid"];
-        if (empty($reportid)) {
-            http_parse_params(400);
-            exit;
+        if ($field == "username") {
+            if ($op != "EQ") {
+                return failed(400, "invalid query on " . $field);
+            }
+            $name = ":q" . count($binds);
+            $sql .= " AND " . $owner
+                . " IN (SELECT id FROM users WHERE username = " . $name . ")";
+            $binds[$name] = $value;
+            continue;
         }
 
-        if (!isAuthenticated($email, $tok)) {
-            http_response_code(401);
-            exit;
+        if (!isset($columns[$field])) {
+            return failed(400, "unknown field " . $field);
         }
-
-        try {
-            $pdostmt = "SELECT * FROM sourcereports WHERE reportid = :reportid";
-            $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":reportid", $reportid);
-            $stmt->execute();
-            $row = $stmt->fetch(PDO::FETCH_ASSOC);
-
-            $id = $row["id"];
-            $reportdt = $row["reportdt"];
-            $location = $row["location"];
-            $type = $row["type"];
-            $cond = $row["cond"];
-            $name = $row["name"];
-            $description = $row["description"];
-
-            if (isset($_POST["id"]) && !empty($_POST["id"])) {
-                $id = $_POST["id"];
+        $column = $columns[$field];
+
+        if ($op == "EQ") {
+            if ($value === "") {
+                $sql .= " AND (" . $column . " IS NULL OR " . $column
+                    . " = '')";
+            } else {
+                $name = ":q" . count($binds);
+                $sql .= " AND " . $column . " = " . $name;
+                $binds[$name] = $value;
             }
-
-            if (empty($id)) {
-                $id = NULL;
+        } else if ($op == "CONTAINS" && in_array($field, $text)) {
+            foreach (explode(",", $value) as $term) {
+                $term = strtolower(trim($term));
+                if ($term === "") {
+                    continue;
+                }
+                $name = ":q" . count($binds);
+                $sql .= " AND LOWER(" . $column . ") LIKE " . $name;
+                $binds[$name] = "%" . addcslashes($term, "\\%_") . "%";
             }
-
-            if (isset($_POST["reportdt"]) && !empty($_POST["reportdt"])) {
-                $reportdt = $_POST["reportdt"];
+        } else if ($op == "RANGE" && in_array($field, $ranged)) {
+            $bounds = explode(",", $value);
+            if (count($bounds) != 2) {
+                return failed(400, "invalid range on " . $field);
             }
-
-            if (empty($reportdt)) {
-                $reportdt = NULL;
+            $ops = array(">=", "<");
+            for ($b = 0; $b < 2; $b++) {
+                $bound = trim($bounds[$b]);
+                if ($bound === "") {
+                    continue;
+                }
+                if (in_array($field, $numeric) && !is_numeric($bound)) {
+                    return failed(400, "invalid range on " . $field);
+                }
+                $name = ":q" . count($binds);
+                $sql .= " AND " . $column . " " . $ops[$b] . " " . $name;
+                $binds[$name] = $bound;
             }
+        } else {
+            return failed(400, "invalid query on " . $field);
+        }
+    }
 
-            if (isset($_POST["location"]) && !empty($_POST["location"])) {
-                $location = $_POST["location"];
-            }
+    return array("sql" => $sql, "binds" => $binds);
+}
 
-            if (empty($location)) {
-                $location = NULL;
-            }
+/**
+ * fetches one report, or the listing when $reportid is ALL. The listing
+ * holds the reports matching the query parameters in id order, newest
+ * first when the order parameter is desc. It is paged once a pagesize
+ * or cursor parameter is given: a page holds up to pagesize reports
+ * after the cursor, or before it newest first, and the cursor field
+ * names the next page, empty after the last. Without either the whole
+ * listing is returned, as clients that do not follow cursors expect.
+ * @param $dbcon
+ * @param $reporttype source or purity
+ * @param $reportid
+ * @param $params submitted properties
+ * @return array
+ */
+function getReports($dbcon, $reporttype, $reportid, $params) {
+    global $max_page_size;
+    if ($reporttype == "source") {
+        $table = "sourcereports";
+    } else {
+        $table = "purityreports";
+    }
 
-            if (isset($_POST["type"]) && !empty($_POST["type"])) {
-                $type = $_POST["type"];
+    try {
+        // 0 for no limit
+        $pagesize = 0;
+        if ($reportid == "ALL") {
+            if (isset($params["pagesize"]) || isset($params["cursor"])) {
+                $pagesize = $max_page_size;
             }
-
-            if (empty($type)) {
-                $type = NULL;
+            if (isset($params["pagesize"])) {
+                if (!ctype_digit($params["pagesize"])
+                    || intval($params["pagesize"]) < 1) {
+                    return failed(400, "invalid page size");
+                }
+                $pagesize = min(intval($params["pagesize"]), $max_page_size);
             }
 
-            if (isset($_POST["cond"]) && !empty($_POST["cond"])) {
-                $cond = $_POST["cond"];
+            $cursor = "";
+            if (isset($params["cursor"])) {
+                $cursor = $params["cursor"];
             }
 
-            if (empty($cond)) {
-                $cond = NULL;
+            $desc = false;
+            if (isset($params["order"])) {
+                if ($params["order"] != "asc" && $params["order"] != "desc") {
+                    return failed(400, "invalid order");
+                }
+                $desc = $params["order"] == "desc";
             }
 
-            if (isset($_POST["name"]) && !empty($_POST["name"])) {
-                $name = $_POST["name"];
+            $query = buildQuery($reporttype, $params);
+            if (isset($query["code"])) {
+                return $query;
             }
 
-            if (empty($name)) {
-                $name = NULL;
+            // newest first seeks below the cursor, from the top when empty
+            $seek = "reportid > :cursor";
+            $order = " ORDER BY reportid";
+            if ($desc) {
+                $seek = "reportid < :cursor";
+                if ($cursor == "") {
+                    $seek = "1 = 1";
+                }
+                $order = " ORDER BY reportid DESC";
             }
 
-            if (isset($_POST["description"]) && !empty($_POST["description"])) {
-                $description = $_POST["description"];
+            // one row past the page tells whether another page follows
+            $limit = "";
+            if ($pagesize > 0) {
+                $limit = " LIMIT :n";
             }
-
-            if (empty($description)) {
-                $description = NULL;
+            $stmt = $dbcon->prepare("SELECT * FROM " . $table
+                . " WHERE " . $seek . $query["sql"] . $order . $limit);
+            if (!$desc || $cursor != "") {
+                $stmt->bindParam(":cursor", $cursor);
             }
-
-            $pdostmt = "UPDATE sourcereports "
-                . "SET "
-                . "id = :id, "
-                . "reportdt = :reportdt, "
-                . "location = :location, "
-                . "type = :type, "
-                . "cond = :cond, "
-                . "name = :name, "
-                . "description = :description "
-                . "WHERE "
-                . "reportid = :reportid";
-            $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":id", $id);
-            $stmt->bindParam(":reportdt", $reportdt);
-            $stmt->bindParam(":location", $location);
-            $stmt->bindParam(":type", $type);
-            $stmt->bindParam(":cond", $cond);
-            $stmt->bindParam(":name", $name);
-            $stmt->bindParam(":description", $description);
+            foreach ($query["binds"] as $name => $value) {
+                $stmt->bindValue($name, $value);
+            }
+            if ($pagesize > 0) {
+                $stmt->bindValue(":n", $pagesize + 1, PDO::PARAM_INT);
+            }
+        } else {
+            $stmt = $dbcon->prepare("SELECT * FROM " . $table
+                . " WHERE reportid = :reportid");
             $stmt->bindParam(":reportid", $reportid);
-            $stmt->execute();
-
-            echo "status=success\r\n";
-            echo "message=source report updated\r\n";
-        } catch (PDOException $e) {
-            http_response_code(500);
-            exit;
-        }
-    } else if ($action == "DELETE") {
-        if (!(isset($_POST["reportid"]))) {
-            http_response_code(400);
-            exit;
         }
+        $stmt->execute();
+
+        $rows = array();
+        $next = "";
+        while ($row = $stmt->fetch(PDO::FETCH_ASSOC, PDO::FETCH_ORI_NEXT)) {
+            if ($pagesize > 0 && count($rows) == $pagesize) {
+                $next = $rows[$pagesize - 1]["reportid"];
+                break;
+            }
 
-        $reportid = $_POST["reportid"];
-        if (empty($reportid)) {
-            http_parse_params(400);
-            exit;
-        }
+            if (deadlineExceeded()) {
+                return failed(504, "deadline exceeded");
+            }
 
-        if (!isAuthenticated($email, $tok)) {
-            http_response_code(401);
-            exit;
+            if ($reporttype == "source") {
+                $id = $row["id"];
+                $rows[] = array(
+                    "username" => lookupUsername($dbcon, $id),
+                    "id" => $id,
+                    "reportid" => $row["reportid"],
+                    "reportdt" => $row["reportdt"],
+                    "location" => $row["location"],
+                    "type" => $row["type"],
+                    "cond" => $row["cond"],
+                    "name" => $row["name"],
+                    "description" => $row["description"]
+                );
+            } else {
+                $id = $row["userid"];
+                $rows[] = array(
+                    "username" => lookupUsername($dbcon, $id),
+                    "userid" => $id,
+                    "sourceid" => $row["sourcerptid"],
+                    "reportid" => $row["reportid"],
+                    "reportdt" => $row["reportdt"],
+                    "location" => $row["location"],
+                    "cond" => $row["cond"],
+                    "virusppm" => $row["virusppm"],
+                    "contaminantppm" => $row["contaminantppm"]
+                );
+            }
         }
+    } catch (PDOException $e) {
+        return failed(500, "could not fetch report");
+    }
 
-        try {
-            $pdostmt = "DELETE FROM sourcereports WHERE reportid = :reportid";
-            $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":reportid", $reportid);
-            $stmt->execute();
-
-            echo "status=success\r\n";
-            echo "message=source report deleted\r\n";
-            echo "reportid=" . $reportid . "\r\n";
-        } catch (PDOException $e) {
-            http_response_code(500);
-            exit;
-        }
-    } else {
-        http_response_code(400);
-        exit;
+    $fields = array("status" => "success", "message" => "fetched report");
+    if ($reportid == "ALL") {
+        $fields["cursor"] = $next;
     }
-} else if ($reporttype == "purity") {
-    if ($action == "GET") {
-        if (isset($_POST["reportid"]) && !empty($_POST["reportid"])) {
-            try {
-                $reportid = $_POST["reportid"];
-                if ($reportid == "ALL") {
-                    $pdostmt = "SELECT * FROM purityreports";
-                    $stmt = $dbcon->prepare($pdostmt);
-                    $pdocntstmt = "SELECT count(*) FROM purityreports";
-                    $cntstmt = $dbcon->prepare($pdocntstmt);
-                } else {
-                    $pdostmt = "SELECT * FROM purityreports WHERE reportid = :reportid";
-                    $stmt = $dbcon->prepare($pdostmt);
-                    $stmt->bindParam(":reportid", $reportid);
-                    $pdocntstmt = "SELECT count(*) FROM purityreports WHERE reportid = :reportid";
-                    $cntstmt = $dbcon->prepare($pdocntstmt);
-                    $cntstmt->bindParam(":reportid", $reportid);
-                }
-                $stmt->execute();
-                $cntstmt->execute();
-                $count = $cntstmt->fetchColumn();
-
-                echo "status=success\r\n";
-                echo "message=fetched report\r\n";
-                echo "variablepayload=" . $count . "\r\n";
-                echo "--- BEGIN ---\r\n";
-                $resultnum = 1;
-                while ($row = $stmt->fetch(PDO::FETCH_ASSOC, PDO::FETCH_ORI_NEXT)) {
-                    $id = $row["userid"];
-                    $pdounstmt = "SELECT * FROM users WHERE id = :id";
-                    $unstmt = $dbcon->prepare($pdounstmt);
-                    $unstmt->bindParam(":id", $id);
-                    $unstmt->execute();
-                    $unrow = $unstmt->fetch(PDO::FETCH_ASSOC);
-                    $username = $unrow["username"];
-
-                    echo "" . $resultnum . ":";
-                    echo "username=" . $username . "|";
-                    echo "userid=" . $id . "|";
-                    echo "sourceid=" . $row["sourcerptid"] . "|";
-                    echo "reportid=" . $row["reportid"] . "|";
-                    echo "reportdt=" . $row["reportdt"] . "|";
-                    echo "location=" . $row["location"] . "|";
-                    echo "cond=" . $row["cond"] . "|";
-                    echo "virusppm=" . $row["virusppm"] . "|";
-                    echo "contaminantppm=" . $row["contaminantppm"];
-                    echo "\r\n";
-                    $resultnum++;
-                }
-                echo "--- END ---\r\n";
-            } catch (PDOException $e) {
-                http_response_code(500);
-                exit;
-            }
-        } else {
-            // search indexing
-        }
-    } else if ($action == "ADD") {
-        if (!isAuthenticated($email, $tok)) {
-            http_response_code(401);
-            exit;
-        }
+    return array(
+        "code" => 200,
+        "fields" => $fields,
+        "rows" => $rows
+    );
+}
 
-        try {
-            $pdostmt = "SELECT * FROM users WHERE email = :email";
+/**
+ * creates a void report owned by the authenticated user
+ * @param $dbcon
+ * @param $reporttype source or purity
+ * @param $email authenticated email
+ * @return array
+ */
+function addReport($dbcon, $reporttype, $email) {
+    try {
+        $pdostmt = "SELECT * FROM users WHERE email = :email";
+        $stmt = $dbcon->prepare($pdostmt);
+        $stmt->bindParam(":email", $email);
+        $stmt->execute();
+        $row = $stmt->fetch(PDO::FETCH_ASSOC);
+        $id = $row["id"];
+        $username = $row["username"];
+
+        $reportid = uniqid("", TRUE);
+        if ($reporttype == "source") {
+            $pdostmt = "INSERT INTO sourcereports "
+                . "(id, reportid) "
+                . "VALUES "
+                . "(:id, :reportid)";
             $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":email", $email);
-            $stmt->execute();
-            $row = $stmt->fetch(PDO::FETCH_ASSOC);
-            $id = $row["id"];
-            $username = $row["username"];
-
-            $reportid = uniqid("", TRUE);
+            $stmt->bindParam(":id", $id);
+        } else {
             $pdostmt = "INSERT INTO purityreports "
                 . "(userid, reportid) "
                 . "VALUES "
                 . "(:userid, :reportid)";
-            $stmt =  $dbcon->prepare($pdostmt);
+            $stmt = $dbcon->prepare($pdostmt);
             $stmt->bindParam(":userid", $id);
-            $stmt->bindParam(":reportid", $reportid);
-            $stmt->execute();
-
-            echo "status=success\r\n";
-            echo "message=void purity report created\r\n";
-            echo "username=" . $username . "\r\n";
-            echo "reportid=" . $reportid . "\r\n";
-        } catch (PDOException $e) {
-            //http_response_code(500);
-            echo $e;
-            exit;
-        }
-    } else if ($action == "UPDATE") {
-        if (!(isset($_POST["reportid"]))) {
-            http_response_code(400);
-            exit;
         }
+        $stmt->bindParam(":reportid", $reportid);
+        $stmt->execute();
+    } catch (PDOException $e) {
+        return failed(500, "could not create report");
+    }
 
-        $reportid = $_POST["reportid"];
-        if (empty($reportid)) {
-            http_parse_params(400);
-            exit;
-        }
+    if ($reporttype == "source") {
+        $fields = array(
+            "status" => "success",
+            "message" => "void source report created",
+            "submitter" => $username,
+            "reportid" => $reportid
+        );
+    } else {
+        $fields = array(
+            "status" => "success",
+            "message" => "void purity report created",
+            "username" => $username,
+            "reportid" => $reportid
+        );
+    }
+    return array("code" => 200, "fields" => $fields);
+}
 
-        if (!isAuthenticated($email, $tok)) {
-            http_response_code(401);
-            exit;
+/**
+ * overwrites the columns given in $params, keeping stored values for
+ * columns that are absent or empty
+ * @param $dbcon
+ * @param $reporttype source or purity
+ * @param $reportid
+ * @param $params submitted properties
+ * @return array
+ */
+function updateReport($dbcon, $reporttype, $reportid, $params) {
+    if ($reporttype == "source") {
+        $table = "sourcereports";
+        $columns = array("id", "reportdt", "location", "type", "cond",
+            "name", "description");
+        $message = "source report updated";
+    } else {
+        $table = "purityreports";
+        $columns = array("userid", "sourcerptid", "reportdt", "location",
+            "cond", "virusppm", "contaminantppm");
+        $message = "purity report updated";
+
+        // clients read the bound report back as sourceid
+        if (empty($params["sourcerptid"]) && !empty($params["sourceid"])) {
+            $params["sourcerptid"] = $params["sourceid"];
         }
+    }
 
-        try {
-            $pdostmt = "SELECT * FROM purityreports WHERE reportid = :reportid";
-            $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":reportid", $reportid);
-            $stmt->execute();
-            $row = $stmt->fetch(PDO::FETCH_ASSOC);
-
-            $userid = $row["userid"];
-            $sourceid = $row["sourcerptid"];
-            $reportdt = $row["reportdt"];
-            $location = $row["location"];
-            $cond = $row["cond"];
-            $virusppm = $row["virusppm"];
-            $contaminantppm = $row["contaminantppm"];
-
-            if (isset($_POST["userid"]) && !empty($_POST["userid"])) {
-                $userid = $_POST["userid"];
+    try {
+        $pdostmt = "SELECT * FROM " . $table . " WHERE reportid = :reportid";
+        $stmt = $dbcon->prepare($pdostmt);
+        $stmt->bindParam(":reportid", $reportid);
+        $stmt->execute();
+        $row = $stmt->fetch(PDO::FETCH_ASSOC);
+
+        $values = array();
+        $assignments = array();
+        foreach ($columns as $column) {
+            $value = $row[$column];
+            if (isset($params[$column]) && !empty($params[$column])) {
+                $value = $params[$column];
             }
 
-            if (empty($userid)) {
-                $userid = NULL;
+            if (empty($value)) {
+                $value = NULL;
             }
+            $values[$column] = $value;
+            $assignments[] = $column . " = :" . $column;
+        }
 
-            if (isset($_POST["sourcerptid"]) && !empty($_POST["sourcerptid"])) {
-                $sourcerptid = $_POST["sourcerptid"];
-            }
+        $pdostmt = "UPDATE " . $table . " "
+            . "SET "
+            . implode(", ", $assignments) . " "
+            . "WHERE "
+            . "reportid = :reportid";
+        $stmt = $dbcon->prepare($pdostmt);
+        foreach ($columns as $column) {
+            $stmt->bindParam(":" . $column, $values[$column]);
+        }
+        $stmt->bindParam(":reportid", $reportid);
+        $stmt->execute();
+    } catch (PDOException $e) {
+        return failed(500, "could not update report");
+    }
 
-            if (empty($sourcerptid)) {
-                $sourcerptid = NULL;
-            }
+    return array(
+        "code" => 200,
+        "fields" => array("status" => "success", "message" => $message)
+    );
+}
 
-            if (isset($_POST["reportdt"]) && !empty($_POST["reportdt"])) {
-                $reportdt = $_POST["reportdt"];
-            }
+/**
+ * deletes a report
+ * @param $dbcon
+ * @param $reporttype source or purity
+ * @param $reportid
+ * @return array
+ */
+function deleteReport($dbcon, $reporttype, $reportid) {
+    if ($reporttype == "source") {
+        $table = "sourcereports";
+    } else {
+        $table = "purityreports";
+    }
 
-            if (empty($reportdt)) {
-                $reportdt = NULL;
-            }
+    try {
+        $pdostmt = "DELETE FROM " . $table . " WHERE reportid = :reportid";
+        $stmt = $dbcon->prepare($pdostmt);
+        $stmt->bindParam(":reportid", $reportid);
+        $stmt->execute();
+    } catch (PDOException $e) {
+        return failed(500, "could not delete report");
+    }
 
-            if (isset($_POST["location"]) && !empty($_POST["location"])) {
-                $location = $_POST["location"];
-            }
+    return array(
+        "code" => 200,
+        "fields" => array(
+            "status" => "success",
+            "message" => $reporttype . " report deleted",
+            "reportid" => $reportid
+        )
+    );
+}
 
-            if (empty($location)) {
-                $location = NULL;
-            }
+/**
+ * runs one operation. Credentials must already have been checked for
+ * every action but GET.
+ * @param $dbcon
+ * @param $reporttype source or purity
+ * @param $action GET, ADD, UPDATE or DELETE
+ * @param $reportid report id, may be empty for ADD
+ * @param $params submitted properties
+ * @param $email authenticated email
+ * @return array
+ */
+function runOperation($dbcon, $reporttype, $action, $reportid, $params,
+                      $email) {
+    if (!($reporttype == "source" || $reporttype == "purity")) {
+        return failed(400, "unknown report type");
+    }
 
-            if (isset($_POST["cond"]) && !empty($_POST["cond"])) {
-                $cond = $_POST["cond"];
-            }
+    if ($action == "ADD") {
+        return addReport($dbcon, $reporttype, $email);
+    }
 
-            if (empty($cond)) {
-                $cond = NULL;
-            }
+    if (empty($reportid)) {
+        return failed(400, "missing report id");
+    }
 
-            if (isset($_POST["virusppm"]) && !empty($_POST["virusppm"])) {
-                $virusppm = $_POST["virusppm"];
-            }
+    if ($action == "GET") {
+        return getReports($dbcon, $reporttype, $reportid, $params);
+    } else if ($action == "UPDATE") {
+        return updateReport($dbcon, $reporttype, $reportid, $params);
+    } else if ($action == "DELETE") {
+        return deleteReport($dbcon, $reporttype, $reportid);
+    }
+    return failed(400, "unknown action");
+}
 
-            if (empty($virusppm)) {
-                $virusppm = NULL;
-            }
+/**
+ * writes a result as the response body, or as an http status for
+ * failures
+ * @param $result
+ */
+function emitResult($result) {
+    if ($result["code"] != 200) {
+        http_response_code($result["code"]);
+        exit;
+    }
 
-            if (isset($_POST["contaminantppm"]) && !empty($_POST["contaminantppm"])) {
-                $contaminantppm = $_POST["contaminantppm"];
-            }
+    foreach ($result["fields"] as $key => $value) {
+        echo $key . "=" . $value . "\r\n";
+    }
 
-            if (empty($contaminantppm)) {
-                $contaminantppm = NULL;
-            }
+    if (isset($result["rows"])) {
+        echo "variablepayload=" . count($result["rows"]) . "\r\n";
+        echo "--- BEGIN ---\r\n";
+        $resultnum = 1;
+        foreach ($result["rows"] as $row) {
+            echo "" . $resultnum . ":" . encodeRow($row) . "\r\n";
+            $resultnum++;
+        }
+        echo "--- END ---\r\n";
+    }
+}
 
-            $pdostmt = "UPDATE purityreports "
-                . "SET "
-                . "userid = :userid, "
-                . "sourcerptid = :sourcerptid, "
-                . "reportdt = :reportdt, "
-                . "location = :location, "
-                . "cond = :cond, "
-                . "virusppm = :virusppm, "
-                . "contaminantppm = :contaminantppm "
-                . "WHERE "
-                . "reportid = :reportid";
-            $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":userid", $userid);
-            $stmt->bindParam(":sourcerptid", $sourcerptid);
-            $stmt->bindParam(":reportdt", $reportdt);
-            $stmt->bindParam(":location", $location);
-            $stmt->bindParam(":cond", $cond);
-            $stmt->bindParam(":virusppm", $virusppm);
-            $stmt->bindParam(":contaminantppm", $contaminantppm);
-            $stmt->bindParam(":reportid", $reportid);
-            $stmt->execute();
+/**
+ * encodes a dynamic entry
+ * @param $row
+ * @return string
+ */
+function encodeRow($row) {
+    $pairs = array();
+    foreach ($row as $key => $value) {
+        $pairs[] = $key . "=" . $value;
+    }
+    return implode("|", $pairs);
+}
+
+/**
+ * runs every operation of a BATCH request. Operation i is described by
+ * the parameters op{i}_action, op{i}_reporttype, op{i}_reportid and
+ * op{i}_<property>. A report id of @n names the report id produced by
+ * operation n, so a report can be created, written and read back in one
+ * request. Credentials are checked once, and only if some operation
+ * writes. Operations run in order and independently; each one reports
+ * its own status in the entry with its index.
+ * @param $dbcon
+ */
+function runBatch($dbcon) {
+    global $max_batch_ops;
+
+    if (!isset($_POST["ops"]) || !ctype_digit($_POST["ops"])) {
+        http_response_code(400);
+        exit;
+    }
+
+    $ops = intval($_POST["ops"]);
+    if ($ops < 1 || $ops > $max_batch_ops) {
+        http_response_code(400);
+        exit;
+    }
 
-            echo "status=success\r\n";
-            echo "message=source report updated\r\n";
-        } catch (PDOException $e) {
-            http_response_code(500);
+    $writes = false;
+    for ($i = 0; $i < $ops; $i++) {
+        $key = "op" . $i . "_action";
+        if (!isset($_POST[$key]) || empty($_POST[$key])) {
+            http_response_code(400);
             exit;
         }
-    } else if ($action == "DELETE") {
-        if (!(isset($_POST["reportid"]))) {
+
+        if ($_POST[$key] != "GET") {
+            $writes = true;
+        }
+    }
+
+    $email = "";
+    if ($writes) {
+        if (!(isset($_POST["email"]) && isset($_POST["tok"]))) {
             http_response_code(400);
             exit;
         }
 
-        $reportid = $_POST["reportid"];
-        if (empty($reportid)) {
-            http_parse_params(400);
+        $email = $_POST["email"];
+        $tok = $_POST["tok"];
+        if (empty($email) || empty($tok)) {
+            http_response_code(400);
             exit;
         }
 
@@ -511,27 +607,138 @@ if ($reporttype == "source") {
             http_response_code(401);
             exit;
         }
+    }
+
+    $results = array();
+    for ($i = 0; $i < $ops; $i++) {
+        $prefix = "op" . $i . "_";
+        $params = array();
+        foreach ($_POST as $key => $value) {
+            if (strpos($key, $prefix) === 0) {
+                $params[substr($key, strlen($prefix))] = $value;
+            }
+        }
 
-        try {
-            $pdostmt = "DELETE FROM purityreports WHERE reportid = :reportid";
-            $stmt = $dbcon->prepare($pdostmt);
-            $stmt->bindParam(":reportid", $reportid);
-            $stmt->execute();
+        $action = $params["action"];
+        $reporttype = "";
+        if (isset($params["reporttype"])) {
+            $reporttype = $params["reporttype"];
+        }
 
-            echo "status=success\r\n";
-            echo "message=source report deleted\r\n";
-            echo "reportid=" . $reportid . "\r\n";
-        } catch (PDOException $e) {
-            http_response_code(500);
-            exit;
+        $reportid = "";
+        if (isset($params["reportid"])) {
+            $reportid = $params["reportid"];
         }
-    } else {
+
+        $result = NULL;
+        if (deadlineExceeded()) {
+            $result = failed(504, "deadline exceeded");
+        } else if (strpos($reportid, "@") === 0) {
+            $ref = substr($reportid, 1);
+            if (!ctype_digit($ref) || intval($ref) >= $i) {
+                $result = failed(400, "invalid reference " . $reportid);
+            } else if (!isset($results[intval($ref)]["fields"]["reportid"])) {
+                $result = failed(424, "referenced operation failed");
+            } else {
+                $reportid = $results[intval($ref)]["fields"]["reportid"];
+            }
+        }
+
+        if ($result === NULL) {
+            if ($action == "GET" && $reportid == "ALL") {
+                $result = failed(400, "listings cannot be batched");
+            } else {
+                $result = runOperation($dbcon, $reporttype, $action,
+                    $reportid, $params, $email);
+            }
+        }
+
+        // a single report read is returned in the operation's own entry
+        if (isset($result["rows"])) {
+            if (count($result["rows"]) == 0) {
+                $result = failed(404, "report not found");
+            } else {
+                $result["fields"] = array_merge($result["fields"],
+                    $result["rows"][0]);
+                unset($result["rows"]);
+            }
+        }
+        $results[] = $result;
+    }
+
+    echo "status=success\r\n";
+    echo "message=batch processed\r\n";
+    echo "variablepayload=" . $ops . "\r\n";
+    echo "--- BEGIN ---\r\n";
+    for ($i = 0; $i < $ops; $i++) {
+        $row = array_merge(array("code" => $results[$i]["code"]),
+            $results[$i]["fields"]);
+        echo "" . $i . ":" . encodeRow($row) . "\r\n";
+    }
+    echo "--- END ---\r\n";
+}
+
+if (isset($_POST["action"]) && $_POST["action"] == "BATCH") {
+    runBatch($dbcon);
+    exit;
+}
+
+if (!(isset($_POST["reporttype"]) && isset($_POST["action"]))) {
+    http_response_code(400);
+    exit;
+}
+
+$reporttype = $_POST["reporttype"];
+$action = $_POST["action"];
+if (empty($reporttype) || empty($action)) {
+    http_response_code(400);
+    exit;
+}
+
+if (!($reporttype == "source" || $reporttype == "purity")
+    || !($action == "GET" || $action == "ADD"
+        || $action == "UPDATE" || $action == "DELETE")) {
+    http_response_code(400);
+    exit;
+}
+
+$email = "";
+$tok = "";
+if ($action != "GET") {
+    if (!(isset($_POST["email"]) && isset($_POST["tok"]))) {
         http_response_code(400);
         exit;
     }
-} else {
+
+    $email = $_POST["email"];
+    $tok = $_POST["tok"];
+    if (empty($email) || empty($tok)) {
+        http_response_code(400);
+        exit;
+    }
+}
+
+$reportid = "";
+if (isset($_POST["reportid"])) {
+    $reportid = $_POST["reportid"];
+}
+
+if ($action == "GET" && empty($reportid)) {
+    // search indexing
+    exit;
+}
+
+if ($action != "ADD" && empty($reportid)) {
     http_response_code(400);
     exit;
 }
 
-?>
\ No newline at end of file
+if ($action != "GET" && !isAuthenticated($email, $tok)) {
+    http_response_code(401);
+    exit;
+}
+
+emitResult(runOperation($dbcon, $reporttype, $action, $reportid, $_POST,
+    $email));
+
+?>
@@ -5,6 +5,8 @@
  * Date: 10/4/16
  * Time: 2:30 AM
  */
+include 'util/trace.php';
+include 'util/deadline.php';
 include 'creds.php';
 include 'authentication_check.php';
 
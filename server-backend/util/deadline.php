@@ -0,0 +1,31 @@
+<?php
+/**
+ * Request deadlines. A client sends X-Deadline-Ms with the milliseconds
+ * left of its budget for the request. A request that arrives with no
+ * budget left is refused with 504 before any work is done, the script
+ * is stopped once the budget has run out, and long running loops call
+ * deadlineExceeded() to give up early rather than produce a response
+ * nobody is waiting for.
+ */
+$deadline_at = null;
+if (isset($_SERVER["HTTP_X_DEADLINE_MS"])
+        && ctype_digit($_SERVER["HTTP_X_DEADLINE_MS"])) {
+    $deadline_ms = intval($_SERVER["HTTP_X_DEADLINE_MS"]);
+    if ($deadline_ms <= 0) {
+        http_response_code(504);
+        exit;
+    }
+
+    $deadline_at = microtime(true) + $deadline_ms / 1000.0;
+    set_time_limit(max(1, (int) ceil($deadline_ms / 1000.0)));
+}
+
+/**
+ * checks if the client's deadline has passed
+ * @return bool
+ */
+function deadlineExceeded() {
+    global $deadline_at;
+    return $deadline_at !== null && microtime(true) >= $deadline_at;
+}
+?>
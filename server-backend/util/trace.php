@@ -0,0 +1,22 @@
+<?php
+/**
+ * Request tracing. A client sends X-Trace-Id as <trace id>-<span id>,
+ * both 16 hex digits. A well formed id is echoed back in the response
+ * headers, and the script's status and duration are logged under it
+ * once the script ends.
+ */
+$trace_start = microtime(true);
+$trace_id = null;
+if (isset($_SERVER["HTTP_X_TRACE_ID"])
+        && preg_match('/^[0-9a-f]{16}-[0-9a-f]{16}$/', $_SERVER["HTTP_X_TRACE_ID"])) {
+    $trace_id = $_SERVER["HTTP_X_TRACE_ID"];
+    header("X-Trace-Id: " . $trace_id);
+    register_shutdown_function(function () use ($trace_id, $trace_start) {
+        error_log(sprintf("trace=%s script=%s code=%d ms=%.1f",
+            $trace_id,
+            basename($_SERVER["SCRIPT_NAME"]),
+            http_response_code(),
+            (microtime(true) - $trace_start) * 1000));
+    });
+}
+?>